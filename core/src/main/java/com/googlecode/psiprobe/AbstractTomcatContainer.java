@@ -68,10 +68,21 @@ public abstract class AbstractTomcatContainer implements TomcatContainer {
   
   /** The mbean server. */
   protected MBeanServer mbeanServer;
-  
+
+  /** The request latencies recorded by the valve. */
+  protected final RequestLatencies requestLatencies = new RequestLatencies();
+
+  /** The addresses sessions were last accessed from, recorded by the valve. */
+  protected final LastAccessedIps lastAccessedIps = new LastAccessedIps();
+
+  /** The valve added to the host pipeline. */
+  private Valve valve;
+
   @Override
   public void setWrapper(Wrapper wrapper) {
-    Valve valve = createValve();
+    if (valve == null) {
+      valve = createValve();
+    }
     if (wrapper != null) {
       host = (Host) wrapper.getParent().getParent();
       try {
@@ -87,6 +98,16 @@ public abstract class AbstractTomcatContainer implements TomcatContainer {
     }
   }
   
+  @Override
+  public RequestLatencies getRequestLatencies() {
+    return requestLatencies;
+  }
+
+  @Override
+  public LastAccessedIps getLastAccessedIps() {
+    return lastAccessedIps;
+  }
+
   @Override
   public File getAppBase() {
     File base = new File(host.getAppBase());
@@ -0,0 +1,135 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe;
+
+import org.apache.catalina.Session;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The IP address each session was last accessed from, filled in by the agent valve of the container
+ * adapter.
+ *
+ * <p>
+ * The addresses are kept out of the sessions themselves: setting a session attribute on every
+ * request marks the session dirty, fires the attribute listeners of the application and makes
+ * replicated or persistent managers write the session again, although the address rarely changes.
+ * Here a request only costs two map lookups, and the table is only written when the address of a
+ * session changes.
+ * </p>
+ *
+ * <p>
+ * Nothing is attached to the sessions: they belong to other applications, may be swapped out by
+ * their manager, and must not keep the classes of Probe loaded. Instead, the entries of sessions
+ * their manager no longer holds are purged periodically, see {@link #retain(String, Session[])}.
+ * </p>
+ */
+public class LastAccessedIps {
+
+  /** The addresses of the sessions of each context, by context name and session id. */
+  private final ConcurrentMap<String, ConcurrentMap<String, String>> contexts =
+      new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
+  /**
+   * Records the address a session was accessed from.
+   *
+   * @param contextName the context name
+   * @param session the session
+   * @param ip the IP address
+   */
+  public void record(String contextName, Session session, String ip) {
+    String sessionId = session.getIdInternal();
+    if (sessionId == null || ip == null) {
+      return;
+    }
+    update(contextName, sessionId, ip);
+  }
+
+  /**
+   * Records the address a session was accessed from, unless it has not changed.
+   *
+   * @param contextName the context name
+   * @param sessionId the session id
+   * @param ip the IP address
+   * @return true if the table was written
+   */
+  boolean update(String contextName, String sessionId, String ip) {
+    ConcurrentMap<String, String> ips = getSessions(contextName);
+    if (ip.equals(ips.get(sessionId))) {
+      return false;
+    }
+    ips.put(sessionId, ip);
+    return true;
+  }
+
+  /**
+   * Gets the address a session was last accessed from.
+   *
+   * @param contextName the context name
+   * @param sessionId the session id
+   * @return the IP address, or null if unknown
+   */
+  public String get(String contextName, String sessionId) {
+    ConcurrentMap<String, String> ips = contexts.get(contextName);
+    return ips == null || sessionId == null ? null : ips.get(sessionId);
+  }
+
+  /**
+   * Forgets the addresses of the sessions of a context that are not among the given ones, that is,
+   * of sessions which expired, were invalidated or were swapped out since they were recorded.
+   *
+   * @param contextName the context name
+   * @param sessions the sessions the manager of the context currently holds
+   */
+  public void retain(String contextName, Session[] sessions) {
+    ConcurrentMap<String, String> ips = contexts.get(contextName);
+    if (ips == null || ips.isEmpty()) {
+      return;
+    }
+    Set<String> ids = new HashSet<String>(sessions.length * 2);
+    for (Session session : sessions) {
+      ids.add(session.getIdInternal());
+    }
+    ips.keySet().retainAll(ids);
+  }
+
+  /**
+   * Forgets the addresses of the sessions of a context, once it is undeployed.
+   *
+   * @param contextName the context name
+   */
+  public void remove(String contextName) {
+    contexts.remove(contextName);
+  }
+
+  /**
+   * Gets the addresses of the sessions of a context, creating the table the first time.
+   *
+   * @param contextName the context name
+   * @return the addresses by session id
+   */
+  private ConcurrentMap<String, String> getSessions(String contextName) {
+    ConcurrentMap<String, String> ips = contexts.get(contextName);
+    if (ips == null) {
+      ips = new ConcurrentHashMap<String, String>();
+      ConcurrentMap<String, String> existing = contexts.putIfAbsent(contextName, ips);
+      if (existing != null) {
+        ips = existing;
+      }
+    }
+    return ips;
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe;
+
+import com.googlecode.psiprobe.model.stats.LatencyHistogram;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The request latency histograms of each context, filled in by the agent valve of the container
+ * adapter and read by the application stats collector.
+ */
+public class RequestLatencies {
+
+  /** The histograms, by context name. */
+  private final ConcurrentMap<String, LatencyHistogram> histograms =
+      new ConcurrentHashMap<String, LatencyHistogram>();
+
+  /**
+   * Records the latency of a request. Only the first request of a context allocates its histogram.
+   *
+   * @param contextName the context name
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(String contextName, long nanos) {
+    LatencyHistogram histogram = histograms.get(contextName);
+    if (histogram == null) {
+      histogram = new LatencyHistogram();
+      LatencyHistogram existing = histograms.putIfAbsent(contextName, histogram);
+      if (existing != null) {
+        histogram = existing;
+      }
+    }
+    histogram.record(nanos / 1000);
+  }
+
+  /**
+   * Gets the histogram of a context.
+   *
+   * @param contextName the context name
+   * @return the histogram, or null if the context has not served a request yet
+   */
+  public LatencyHistogram getHistogram(String contextName) {
+    return histograms.get(contextName);
+  }
+
+  /**
+   * Forgets the histogram of a context, once it is undeployed.
+   *
+   * @param contextName the context name
+   */
+  public void remove(String contextName) {
+    histograms.remove(contextName);
+  }
+
+}
@@ -132,6 +132,20 @@ public interface TomcatContainer {
    */
   void setWrapper(Wrapper wrapper);
 
+  /**
+   * Gets the request latencies recorded by the valve of this adapter.
+   *
+   * @return the request latencies
+   */
+  RequestLatencies getRequestLatencies();
+
+  /**
+   * Gets the addresses sessions were last accessed from, recorded by the valve of this adapter.
+   *
+   * @return the last accessed ips
+   */
+  LastAccessedIps getLastAccessedIps();
+
   /**
    * Indicates whether this adapter can bind to the container.
    *
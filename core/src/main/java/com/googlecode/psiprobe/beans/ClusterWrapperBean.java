@@ -20,6 +20,10 @@ import com.googlecode.psiprobe.tools.JmxTools;
 
 import org.apache.commons.modeler.Registry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.management.MBeanServer;
@@ -33,6 +37,38 @@ import javax.management.ObjectName;
  */
 public class ClusterWrapperBean {
 
+  /** The attributes read from the cluster. */
+  private static final String[] CLUSTER_ATTRIBUTES = {"clusterName", "info", "managerClassName"};
+
+  /** The attributes read from the cluster membership. */
+  private static final String[] MEMBERSHIP_ATTRIBUTES = {"mcastAddr", "mcastBindAddress",
+      "mcastClusterDomain", "mcastDropTime", "mcastFrequency", "mcastPort", "mcastSoTimeout",
+      "mcastTTL"};
+
+  /** The attributes read from the cluster receiver. */
+  private static final String[] RECEIVER_ATTRIBUTES = {"tcpListenAddress", "tcpListenPort",
+      "nrOfMsgsReceived", "totalReceivedBytes"};
+
+  /** The attributes read from the cluster sender. */
+  private static final String[] SENDER_ATTRIBUTES = {"ackTimeout", "autoConnect",
+      "failureCounter", "nrOfRequests", "replicationMode", "totalBytes", "senderObjectNames"};
+
+  /** The attributes read from each member sender. */
+  private static final String[] MEMBER_ATTRIBUTES = {"address", "port", "avgMessageSize",
+      "avgProcessingTime", "connectCounter", "disconnectCounter", "connected", "keepAliveTimeout",
+      "nrOfRequests", "totalBytes", "resend", "suspect"};
+
+  /** The attributes read from each pooled member sender. */
+  private static final String[] POOLED_MEMBER_ATTRIBUTES = {"maxPoolSocketLimit"};
+
+  /** The attributes read from each synchronous member sender. */
+  private static final String[] SYNC_MEMBER_ATTRIBUTES = {"dataFailureCounter",
+      "dataResendCounter", "socketOpenCounter", "socketCloseCounter", "socketOpenFailureCounter"};
+
+  /** The attributes read from each asynchronous member sender. */
+  private static final String[] ASYNC_MEMBER_ATTRIBUTES = {"inQueueCounter", "outQueueCounter",
+      "queueSize", "queuedNrOfBytes"};
+
   /**
    * Gets the cluster.
    *
@@ -65,112 +101,100 @@ public class ClusterWrapperBean {
       ObjectName clusterOName = clusters.iterator().next().getObjectName();
       cluster = new Cluster();
 
-      cluster.setName(JmxTools.getStringAttr(mbeanServer, clusterOName, "clusterName"));
-      cluster.setInfo(JmxTools.getStringAttr(mbeanServer, clusterOName, "info"));
-      cluster.setManagerClassName(JmxTools.getStringAttr(mbeanServer, clusterOName,
-          "managerClassName"));
-
-      cluster.setMcastAddress(JmxTools.getStringAttr(mbeanServer, membershipOName, "mcastAddr"));
-      cluster.setMcastBindAddress(JmxTools.getStringAttr(mbeanServer, membershipOName,
-          "mcastBindAddress"));
-      cluster.setMcastClusterDomain(JmxTools.getStringAttr(mbeanServer, membershipOName,
-          "mcastClusterDomain"));
-      cluster.setMcastDropTime(JmxTools.getLongAttr(mbeanServer, membershipOName, "mcastDropTime"));
-      cluster.setMcastFrequency(JmxTools
-          .getLongAttr(mbeanServer, membershipOName, "mcastFrequency"));
-      cluster.setMcastPort(JmxTools.getIntAttr(mbeanServer, membershipOName, "mcastPort"));
-      cluster
-          .setMcastSoTimeout(JmxTools.getIntAttr(mbeanServer, membershipOName, "mcastSoTimeout"));
-      cluster.setMcastTtl(JmxTools.getIntAttr(mbeanServer, membershipOName, "mcastTTL"));
-
-      cluster.setTcpListenAddress(JmxTools.getStringAttr(mbeanServer, receiverOName,
-          "tcpListenAddress"));
-      cluster.setTcpListenPort(JmxTools.getIntAttr(mbeanServer, receiverOName, "tcpListenPort"));
-      cluster.setNrOfMsgsReceived(JmxTools.getLongAttr(mbeanServer, receiverOName,
-          "nrOfMsgsReceived"));
-      cluster.setTotalReceivedBytes(JmxTools.getLongAttr(mbeanServer, receiverOName,
-          "totalReceivedBytes"));
-      // cluster.setTcpSelectorTimeout(
-      // JmxTools.getLongAttr(mBeanServer, receiverOName, "tcpSelectorTimeout"));
-      // cluster.setTcpThreadCount(
-      // JmxTools.getIntAttr(mBeanServer, receiverOName, "tcpThreadCount"));
-
-      cluster.setSenderAckTimeout(JmxTools.getLongAttr(mbeanServer, senderOName, "ackTimeout"));
-      cluster.setSenderAutoConnect((Boolean) mbeanServer.getAttribute(senderOName, "autoConnect"));
-      cluster.setSenderFailureCounter(JmxTools.getLongAttr(mbeanServer, senderOName,
-          "failureCounter"));
-      cluster.setSenderNrOfRequests(JmxTools.getLongAttr(mbeanServer, senderOName, "nrOfRequests"));
-      cluster.setSenderReplicationMode(JmxTools.getStringAttr(mbeanServer, senderOName,
-          "replicationMode"));
-      cluster.setSenderTotalBytes(JmxTools.getLongAttr(mbeanServer, senderOName, "totalBytes"));
-
-      if (loadMembers) {
-        ObjectName[] senders =
-            (ObjectName[]) mbeanServer.getAttribute(senderOName, "senderObjectNames");
+      Map<String, Object> attrs =
+          JmxTools.getAttributes(mbeanServer, clusterOName, CLUSTER_ATTRIBUTES);
+      cluster.setName(JmxTools.getStringAttr(attrs, "clusterName"));
+      cluster.setInfo(JmxTools.getStringAttr(attrs, "info"));
+      cluster.setManagerClassName(JmxTools.getStringAttr(attrs, "managerClassName"));
+
+      attrs = JmxTools.getAttributes(mbeanServer, membershipOName, MEMBERSHIP_ATTRIBUTES);
+      cluster.setMcastAddress(JmxTools.getStringAttr(attrs, "mcastAddr"));
+      cluster.setMcastBindAddress(JmxTools.getStringAttr(attrs, "mcastBindAddress"));
+      cluster.setMcastClusterDomain(JmxTools.getStringAttr(attrs, "mcastClusterDomain"));
+      cluster.setMcastDropTime(JmxTools.getLongAttr(attrs, "mcastDropTime"));
+      cluster.setMcastFrequency(JmxTools.getLongAttr(attrs, "mcastFrequency"));
+      cluster.setMcastPort(JmxTools.getIntAttr(attrs, "mcastPort"));
+      cluster.setMcastSoTimeout(JmxTools.getIntAttr(attrs, "mcastSoTimeout"));
+      cluster.setMcastTtl(JmxTools.getIntAttr(attrs, "mcastTTL"));
+
+      attrs = JmxTools.getAttributes(mbeanServer, receiverOName, RECEIVER_ATTRIBUTES);
+      cluster.setTcpListenAddress(JmxTools.getStringAttr(attrs, "tcpListenAddress"));
+      cluster.setTcpListenPort(JmxTools.getIntAttr(attrs, "tcpListenPort"));
+      cluster.setNrOfMsgsReceived(JmxTools.getLongAttr(attrs, "nrOfMsgsReceived"));
+      cluster.setTotalReceivedBytes(JmxTools.getLongAttr(attrs, "totalReceivedBytes"));
+      // cluster.setTcpSelectorTimeout(JmxTools.getLongAttr(attrs, "tcpSelectorTimeout"));
+      // cluster.setTcpThreadCount(JmxTools.getIntAttr(attrs, "tcpThreadCount"));
+
+      attrs = JmxTools.getAttributes(mbeanServer, senderOName, SENDER_ATTRIBUTES);
+      cluster.setSenderAckTimeout(JmxTools.getLongAttr(attrs, "ackTimeout"));
+      cluster.setSenderAutoConnect(JmxTools.getBooleanAttr(attrs, "autoConnect"));
+      cluster.setSenderFailureCounter(JmxTools.getLongAttr(attrs, "failureCounter"));
+      cluster.setSenderNrOfRequests(JmxTools.getLongAttr(attrs, "nrOfRequests"));
+      cluster.setSenderReplicationMode(JmxTools.getStringAttr(attrs, "replicationMode"));
+      cluster.setSenderTotalBytes(JmxTools.getLongAttr(attrs, "totalBytes"));
+
+      ObjectName[] senders = (ObjectName[]) attrs.get("senderObjectNames");
+      if (loadMembers && senders != null) {
         for (ObjectName localSenderOName : senders) {
           ClusterSender sender;
+          String[] typeAttributes;
 
           if ("pooled".equals(cluster.getSenderReplicationMode())) {
             sender = new PooledClusterSender();
+            typeAttributes = POOLED_MEMBER_ATTRIBUTES;
           } else if ("synchronous".equals(cluster.getSenderReplicationMode())) {
             sender = new SyncClusterSender();
+            typeAttributes = SYNC_MEMBER_ATTRIBUTES;
           } else if ("asynchronous".equals(cluster.getSenderReplicationMode())
               || "fastasyncqueue".equals(cluster.getSenderReplicationMode())) {
             sender = new AsyncClusterSender();
+            typeAttributes = ASYNC_MEMBER_ATTRIBUTES;
           } else {
             sender = new ClusterSender();
+            typeAttributes = new String[0];
           }
 
-          sender.setAddress(JmxTools.getStringAttr(mbeanServer, localSenderOName, "address"));
-          sender.setPort(JmxTools.getIntAttr(mbeanServer, localSenderOName, "port"));
-
-          sender.setAvgMessageSize(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-              "avgMessageSize", -1));
-          sender.setAvgProcessingTime(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-              "avgProcessingTime", -1));
-
-          sender.setConnectCounter(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-              "connectCounter"));
-          sender.setDisconnectCounter(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-              "disconnectCounter"));
-          sender.setConnected(((Boolean) mbeanServer.getAttribute(localSenderOName, "connected")));
-          sender.setKeepAliveTimeout(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-              "keepAliveTimeout"));
-          sender.setNrOfRequests(JmxTools
-              .getLongAttr(mbeanServer, localSenderOName, "nrOfRequests"));
-          sender.setTotalBytes(JmxTools.getLongAttr(mbeanServer, localSenderOName, "totalBytes"));
-          sender.setResend(((Boolean) mbeanServer.getAttribute(localSenderOName, "resend")));
-          sender.setSuspect(((Boolean) mbeanServer.getAttribute(localSenderOName, "suspect")));
+          List<String> attrNames = new ArrayList<String>(Arrays.asList(MEMBER_ATTRIBUTES));
+          attrNames.addAll(Arrays.asList(typeAttributes));
+          attrs = JmxTools.getAttributes(mbeanServer, localSenderOName,
+              attrNames.toArray(new String[attrNames.size()]));
+
+          sender.setAddress(JmxTools.getStringAttr(attrs, "address"));
+          sender.setPort(JmxTools.getIntAttr(attrs, "port"));
+
+          sender.setAvgMessageSize(JmxTools.getLongAttr(attrs, "avgMessageSize", -1));
+          sender.setAvgProcessingTime(JmxTools.getLongAttr(attrs, "avgProcessingTime", -1));
+
+          sender.setConnectCounter(JmxTools.getLongAttr(attrs, "connectCounter"));
+          sender.setDisconnectCounter(JmxTools.getLongAttr(attrs, "disconnectCounter"));
+          sender.setConnected(JmxTools.getBooleanAttr(attrs, "connected"));
+          sender.setKeepAliveTimeout(JmxTools.getLongAttr(attrs, "keepAliveTimeout"));
+          sender.setNrOfRequests(JmxTools.getLongAttr(attrs, "nrOfRequests"));
+          sender.setTotalBytes(JmxTools.getLongAttr(attrs, "totalBytes"));
+          sender.setResend(JmxTools.getBooleanAttr(attrs, "resend"));
+          sender.setSuspect(JmxTools.getBooleanAttr(attrs, "suspect"));
 
           if (sender instanceof PooledClusterSender) {
-            ((PooledClusterSender) sender).setMaxPoolSocketLimit(JmxTools.getIntAttr(mbeanServer,
-                localSenderOName, "maxPoolSocketLimit"));
+            ((PooledClusterSender) sender).setMaxPoolSocketLimit(JmxTools.getIntAttr(attrs,
+                "maxPoolSocketLimit"));
           }
 
           if (sender instanceof SyncClusterSender) {
             SyncClusterSender syncSender = (SyncClusterSender) sender;
-            syncSender.setDataFailureCounter(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-                "dataFailureCounter"));
-            syncSender.setDataResendCounter(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-                "dataResendCounter"));
-            syncSender.setSocketOpenCounter(JmxTools.getIntAttr(mbeanServer, localSenderOName,
-                "socketOpenCounter"));
-            syncSender.setSocketCloseCounter(JmxTools.getIntAttr(mbeanServer, localSenderOName,
-                "socketCloseCounter"));
-            syncSender.setSocketOpenFailureCounter(JmxTools.getIntAttr(mbeanServer,
-                localSenderOName, "socketOpenFailureCounter"));
+            syncSender.setDataFailureCounter(JmxTools.getLongAttr(attrs, "dataFailureCounter"));
+            syncSender.setDataResendCounter(JmxTools.getLongAttr(attrs, "dataResendCounter"));
+            syncSender.setSocketOpenCounter(JmxTools.getIntAttr(attrs, "socketOpenCounter"));
+            syncSender.setSocketCloseCounter(JmxTools.getIntAttr(attrs, "socketCloseCounter"));
+            syncSender.setSocketOpenFailureCounter(JmxTools.getIntAttr(attrs,
+                "socketOpenFailureCounter"));
           }
 
           if (sender instanceof AsyncClusterSender) {
             AsyncClusterSender asyncSender = (AsyncClusterSender) sender;
-            asyncSender.setInQueueCounter(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-                "inQueueCounter"));
-            asyncSender.setOutQueueCounter(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-                "outQueueCounter"));
-            asyncSender.setQueueSize(JmxTools
-                .getIntAttr(mbeanServer, localSenderOName, "queueSize"));
-            asyncSender.setQueuedNrOfBytes(JmxTools.getLongAttr(mbeanServer, localSenderOName,
-                "queuedNrOfBytes"));
+            asyncSender.setInQueueCounter(JmxTools.getLongAttr(attrs, "inQueueCounter"));
+            asyncSender.setOutQueueCounter(JmxTools.getLongAttr(attrs, "outQueueCounter"));
+            asyncSender.setQueueSize(JmxTools.getIntAttr(attrs, "queueSize"));
+            asyncSender.setQueuedNrOfBytes(JmxTools.getLongAttr(attrs, "queuedNrOfBytes"));
           }
           cluster.getMembers().add(sender);
         }
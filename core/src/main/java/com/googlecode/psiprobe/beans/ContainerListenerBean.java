@@ -16,6 +16,7 @@ import com.googlecode.psiprobe.model.RequestProcessor;
 import com.googlecode.psiprobe.model.ThreadPool;
 import com.googlecode.psiprobe.model.jmx.ThreadPoolObjectName;
 import com.googlecode.psiprobe.tools.JmxTools;
+import com.googlecode.psiprobe.tools.SnapshotCache;
 
 import net.sf.javainetlocator.InetAddressLocator;
 import org.apache.commons.logging.Log;
@@ -23,7 +24,9 @@ import org.apache.commons.logging.LogFactory;
 
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.management.InstanceNotFoundException;
@@ -33,11 +36,15 @@ import javax.management.Notification;
 import javax.management.NotificationListener;
 import javax.management.ObjectInstance;
 import javax.management.ObjectName;
-import javax.management.RuntimeOperationsException;
 
 /**
  * This class interfaces Tomcat JMX functionality to read connection status. The class essentially
  * provides and maintains the list of connection ThreadPools.
+ *
+ * <p>
+ * The connectors and thread pools read are shared by all callers for the snapshot ttl, so that the
+ * load on the server does not grow with the number of pages open and collectors running.
+ * </p>
  * 
  * @author Vlad Ilyushchenko
  * @author Mark Lewis
@@ -47,6 +54,26 @@ public class ContainerListenerBean implements NotificationListener {
   /** The logger. */
   private final Log logger = LogFactory.getLog(getClass());
   
+  /** The attributes read from executors. */
+  private static final String[] EXECUTOR_ATTRIBUTES = {"maxThreads", "largestPoolSize",
+      "minSpareThreads", "activeCount", "poolSize"};
+
+  /** The attributes read from thread pools. */
+  private static final String[] THREAD_POOL_ATTRIBUTES = {"maxThreads", "maxSpareThreads",
+      "minSpareThreads", "currentThreadsBusy", "currentThreadCount"};
+
+  /** The attributes read from global request processors. */
+  private static final String[] GLOBAL_REQUEST_PROCESSOR_ATTRIBUTES = {"maxTime",
+      "processingTime", "bytesReceived", "bytesSent", "requestCount", "errorCount"};
+
+  /**
+   * The attributes read from request processors. workerThreadName relies on
+   * https://issues.apache.org/bugzilla/show_bug.cgi?id=41128 and is missing from older versions.
+   */
+  private static final String[] REQUEST_PROCESSOR_ATTRIBUTES = {"stage", "requestProcessingTime",
+      "requestBytesSent", "requestBytesReceived", "remoteAddr", "virtualHost", "method",
+      "currentUri", "currentQueryString", "protocol", "workerThreadName"};
+
   /** The pool names. */
   private List<ThreadPoolObjectName> poolNames = null;
   
@@ -58,6 +85,33 @@ public class ContainerListenerBean implements NotificationListener {
    */
   private ContainerWrapperBean containerWrapper;
 
+  /** The thread pools last read. */
+  private final SnapshotCache<List<ThreadPool>> threadPoolSnapshot =
+      new SnapshotCache<List<ThreadPool>>(1000) {
+        @Override
+        protected List<ThreadPool> load() throws Exception {
+          return Collections.unmodifiableList(readThreadPools());
+        }
+      };
+
+  /** The connectors last read, without their request processors. */
+  private final SnapshotCache<List<Connector>> connectorSnapshot =
+      new SnapshotCache<List<Connector>>(1000) {
+        @Override
+        protected List<Connector> load() throws Exception {
+          return Collections.unmodifiableList(readConnectors(false));
+        }
+      };
+
+  /** The connectors last read, with their request processors. */
+  private final SnapshotCache<List<Connector>> requestProcessorSnapshot =
+      new SnapshotCache<List<Connector>>(1000) {
+        @Override
+        protected List<Connector> load() throws Exception {
+          return Collections.unmodifiableList(readConnectors(true));
+        }
+      };
+
   /**
    * Gets the container wrapper.
    *
@@ -76,6 +130,27 @@ public class ContainerListenerBean implements NotificationListener {
     this.containerWrapper = containerWrapper;
   }
 
+  /**
+   * Gets the snapshot ttl.
+   *
+   * @return the snapshot ttl in milliseconds
+   */
+  public long getSnapshotTtl() {
+    return threadPoolSnapshot.getTtl();
+  }
+
+  /**
+   * Sets how long the connectors and thread pools read are shared by callers. With 0, callers only
+   * share the reads in flight.
+   *
+   * @param snapshotTtl the new snapshot ttl in milliseconds
+   */
+  public void setSnapshotTtl(long snapshotTtl) {
+    threadPoolSnapshot.setTtl(snapshotTtl);
+    connectorSnapshot.setTtl(snapshotTtl);
+    requestProcessorSnapshot.setTtl(snapshotTtl);
+  }
+
   /**
    * Checks if is initialized.
    *
@@ -199,10 +274,32 @@ public class ContainerListenerBean implements NotificationListener {
   /**
    * Gets the thread pools.
    *
+   * @return the thread pools, shared by callers and not to be modified
+   * @throws Exception the exception
+   */
+  public List<ThreadPool> getThreadPools() throws Exception {
+    return threadPoolSnapshot.get();
+  }
+
+  /**
+   * Gets the connectors.
+   *
+   * @param includeRequestProcessors the include request processors
+   * @return the connectors, shared by callers and not to be modified
+   * @throws Exception the exception
+   */
+  public List<Connector> getConnectors(boolean includeRequestProcessors) throws Exception {
+    return includeRequestProcessors ? requestProcessorSnapshot.get() : connectorSnapshot.get();
+  }
+
+  /**
+   * Reads the thread pools. The attributes of each executor and thread pool are read in a single
+   * call.
+   *
    * @return the thread pools
    * @throws Exception the exception
    */
-  public synchronized List<ThreadPool> getThreadPools() throws Exception {
+  private synchronized List<ThreadPool> readThreadPools() throws Exception {
     if (!isInitialized()) {
       initialize();
     }
@@ -212,33 +309,35 @@ public class ContainerListenerBean implements NotificationListener {
     MBeanServer server = getContainerWrapper().getResourceResolver().getMBeanServer();
 
     for (ObjectName executorName : executorNames) {
+      Map<String, Object> attrs =
+          JmxTools.getAttributes(server, executorName, EXECUTOR_ATTRIBUTES);
       ThreadPool threadPool = new ThreadPool();
       threadPool.setName(executorName.getKeyProperty("name"));
-      threadPool.setMaxThreads(JmxTools.getIntAttr(server, executorName, "maxThreads"));
-      threadPool.setMaxSpareThreads(JmxTools.getIntAttr(server, executorName, "largestPoolSize"));
-      threadPool.setMinSpareThreads(JmxTools.getIntAttr(server, executorName, "minSpareThreads"));
-      threadPool.setCurrentThreadsBusy(JmxTools.getIntAttr(server, executorName, "activeCount"));
-      threadPool.setCurrentThreadCount(JmxTools.getIntAttr(server, executorName, "poolSize"));
+      threadPool.setMaxThreads(JmxTools.getIntAttr(attrs, "maxThreads"));
+      threadPool.setMaxSpareThreads(JmxTools.getIntAttr(attrs, "largestPoolSize"));
+      threadPool.setMinSpareThreads(JmxTools.getIntAttr(attrs, "minSpareThreads"));
+      threadPool.setCurrentThreadsBusy(JmxTools.getIntAttr(attrs, "activeCount"));
+      threadPool.setCurrentThreadCount(JmxTools.getIntAttr(attrs, "poolSize"));
       threadPools.add(threadPool);
     }
 
     for (ThreadPoolObjectName threadPoolObjectName : poolNames) {
       try {
         ObjectName poolName = threadPoolObjectName.getThreadPoolName();
+        Map<String, Object> attrs =
+            JmxTools.getAttributes(server, poolName, THREAD_POOL_ATTRIBUTES);
 
         ThreadPool threadPool = new ThreadPool();
         threadPool.setName(poolName.getKeyProperty("name"));
-        threadPool.setMaxThreads(JmxTools.getIntAttr(server, poolName, "maxThreads"));
+        threadPool.setMaxThreads(JmxTools.getIntAttr(attrs, "maxThreads"));
 
-        if (JmxTools.hasAttribute(server, poolName, "maxSpareThreads")) {
-          threadPool.setMaxSpareThreads(JmxTools.getIntAttr(server, poolName, "maxSpareThreads"));
-          threadPool.setMinSpareThreads(JmxTools.getIntAttr(server, poolName, "minSpareThreads"));
+        if (attrs.containsKey("maxSpareThreads")) {
+          threadPool.setMaxSpareThreads(JmxTools.getIntAttr(attrs, "maxSpareThreads"));
+          threadPool.setMinSpareThreads(JmxTools.getIntAttr(attrs, "minSpareThreads"));
         }
 
-        threadPool.setCurrentThreadsBusy(JmxTools
-            .getIntAttr(server, poolName, "currentThreadsBusy"));
-        threadPool.setCurrentThreadCount(JmxTools
-            .getIntAttr(server, poolName, "currentThreadCount"));
+        threadPool.setCurrentThreadsBusy(JmxTools.getIntAttr(attrs, "currentThreadsBusy"));
+        threadPool.setCurrentThreadCount(JmxTools.getIntAttr(attrs, "currentThreadCount"));
 
         /*
          * Tomcat 6.0.21+ will return -1 for maxThreads if the connector uses an executor for its
@@ -256,17 +355,16 @@ public class ContainerListenerBean implements NotificationListener {
   }
 
   /**
-   * Gets the connectors.
+   * Reads the connectors. The attributes of each global request processor and request processor
+   * are read in a single call.
    *
    * @param includeRequestProcessors the include request processors
    * @return the connectors
    * @throws Exception the exception
    */
-  public synchronized List<Connector> getConnectors(boolean includeRequestProcessors)
+  private synchronized List<Connector> readConnectors(boolean includeRequestProcessors)
       throws Exception {
 
-    boolean workerThreadNameSupported = true;
-
     if (!isInitialized()) {
       initialize();
     }
@@ -276,7 +374,6 @@ public class ContainerListenerBean implements NotificationListener {
     MBeanServer server = getContainerWrapper().getResourceResolver().getMBeanServer();
 
     for (ThreadPoolObjectName threadPoolObjectName : poolNames) {
-      boolean remoteAddrAvailable = true;
       try {
         ObjectName poolName = threadPoolObjectName.getThreadPoolName();
 
@@ -284,57 +381,44 @@ public class ContainerListenerBean implements NotificationListener {
         connector.setName(poolName.getKeyProperty("name"));
 
         ObjectName grpName = threadPoolObjectName.getGlobalRequestProcessorName();
+        Map<String, Object> grpAttrs =
+            JmxTools.getAttributes(server, grpName, GLOBAL_REQUEST_PROCESSOR_ATTRIBUTES);
 
-        connector.setMaxTime(JmxTools.getLongAttr(server, grpName, "maxTime"));
-        connector.setProcessingTime(JmxTools.getLongAttr(server, grpName, "processingTime"));
-        connector.setBytesReceived(JmxTools.getLongAttr(server, grpName, "bytesReceived"));
-        connector.setBytesSent(JmxTools.getLongAttr(server, grpName, "bytesSent"));
-        connector.setRequestCount(JmxTools.getIntAttr(server, grpName, "requestCount"));
-        connector.setErrorCount(JmxTools.getIntAttr(server, grpName, "errorCount"));
+        connector.setMaxTime(JmxTools.getLongAttr(grpAttrs, "maxTime"));
+        connector.setProcessingTime(JmxTools.getLongAttr(grpAttrs, "processingTime"));
+        connector.setBytesReceived(JmxTools.getLongAttr(grpAttrs, "bytesReceived"));
+        connector.setBytesSent(JmxTools.getLongAttr(grpAttrs, "bytesSent"));
+        connector.setRequestCount(JmxTools.getIntAttr(grpAttrs, "requestCount"));
+        connector.setErrorCount(JmxTools.getIntAttr(grpAttrs, "errorCount"));
 
         if (includeRequestProcessors) {
           List<ObjectName> wrkNames = threadPoolObjectName.getRequestProcessorNames();
           for (ObjectName wrkName : wrkNames) {
             try {
+              Map<String, Object> attrs =
+                  JmxTools.getAttributes(server, wrkName, REQUEST_PROCESSOR_ATTRIBUTES);
               RequestProcessor rp = new RequestProcessor();
               rp.setName(wrkName.getKeyProperty("name"));
-              rp.setStage(JmxTools.getIntAttr(server, wrkName, "stage"));
-              rp.setProcessingTime(JmxTools.getLongAttr(server, wrkName, "requestProcessingTime"));
-              rp.setBytesSent(JmxTools.getLongAttr(server, wrkName, "requestBytesSent"));
-              rp.setBytesReceived(JmxTools.getLongAttr(server, wrkName, "requestBytesReceived"));
-              try {
-                String remoteAddr = JmxTools.getStringAttr(server, wrkName, "remoteAddr");
+              rp.setStage(JmxTools.getIntAttr(attrs, "stage"));
+              rp.setProcessingTime(JmxTools.getLongAttr(attrs, "requestProcessingTime"));
+              rp.setBytesSent(JmxTools.getLongAttr(attrs, "requestBytesSent"));
+              rp.setBytesReceived(JmxTools.getLongAttr(attrs, "requestBytesReceived"));
+              String remoteAddr = JmxTools.getStringAttr(attrs, "remoteAddr");
+              if (remoteAddr != null) {
                 rp.setRemoteAddr(remoteAddr);
                 rp.setRemoteAddrLocale(InetAddressLocator.getLocale(InetAddress.getByName(
                     remoteAddr).getAddress()));
-              } catch (RuntimeOperationsException ex) {
-                /*
-                 * if it's not available for this request processor, then it's not available for any
-                 * request processor in this thread pool
-                 */
-                remoteAddrAvailable = false;
               }
-              rp.setVirtualHost(JmxTools.getStringAttr(server, wrkName, "virtualHost"));
-              rp.setMethod(JmxTools.getStringAttr(server, wrkName, "method"));
-              rp.setCurrentUri(JmxTools.getStringAttr(server, wrkName, "currentUri"));
-              rp.setCurrentQueryString(JmxTools
-                  .getStringAttr(server, wrkName, "currentQueryString"));
-              rp.setProtocol(JmxTools.getStringAttr(server, wrkName, "protocol"));
-
-              // Relies on https://issues.apache.org/bugzilla/show_bug.cgi?id=41128
-              if (workerThreadNameSupported
-                  && JmxTools.hasAttribute(server, wrkName, "workerThreadName")) {
-
-                rp.setWorkerThreadName(JmxTools.getStringAttr(server, wrkName, "workerThreadName"));
+              rp.setVirtualHost(JmxTools.getStringAttr(attrs, "virtualHost"));
+              rp.setMethod(JmxTools.getStringAttr(attrs, "method"));
+              rp.setCurrentUri(JmxTools.getStringAttr(attrs, "currentUri"));
+              rp.setCurrentQueryString(JmxTools.getStringAttr(attrs, "currentQueryString"));
+              rp.setProtocol(JmxTools.getStringAttr(attrs, "protocol"));
+              if (attrs.containsKey("workerThreadName")) {
+                rp.setWorkerThreadName(JmxTools.getStringAttr(attrs, "workerThreadName"));
                 rp.setWorkerThreadNameSupported(true);
               } else {
-                /*
-                 * attribute should consistently either exist or be missing across all the workers
-                 * so it does not make sense to check attribute existence if we have found once that
-                 * it is not supported
-                 */
                 rp.setWorkerThreadNameSupported(false);
-                workerThreadNameSupported = false;
               }
               connector.addRequestProcessor(rp);
             } catch (InstanceNotFoundException e) {
@@ -18,6 +18,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.modeler.Registry;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -30,6 +33,11 @@ import javax.management.openmbean.CompositeDataSupport;
 /**
  * The Class JvmMemoryInfoAccessorBean.
  *
+ * <p>
+ * The pools are read from the memory pool MXBeans of the local JVM, looked up once. If the JVM does
+ * not report any, they are read through JMX attributes instead.
+ * </p>
+ *
  * @author Vlad Ilyushchenko
  */
 public class JvmMemoryInfoAccessorBean {
@@ -37,6 +45,9 @@ public class JvmMemoryInfoAccessorBean {
   /** The logger. */
   private final Log logger = LogFactory.getLog(this.getClass());
 
+  /** The memory pool MXBeans. */
+  private final List<MemoryPoolMXBean> poolBeans = ManagementFactory.getMemoryPoolMXBeans();
+
   /**
    * Gets the pools.
    *
@@ -44,18 +55,50 @@ public class JvmMemoryInfoAccessorBean {
    * @throws Exception the exception
    */
   public List<MemoryPool> getPools() throws Exception {
+    return poolBeans.isEmpty() ? getJmxPools() : getPlatformPools();
+  }
+
+  /**
+   * Gets the pools from the memory pool MXBeans.
+   *
+   * @return the pools
+   */
+  List<MemoryPool> getPlatformPools() {
+    List<MemoryPool> memoryPools = new LinkedList<MemoryPool>();
+    for (MemoryPoolMXBean poolBean : poolBeans) {
+      MemoryPool memoryPool = new MemoryPool();
+      memoryPool.setName(poolBean.getName());
+      memoryPool.setType(poolBean.getType().name());
+
+      // the usage is null once the pool is no longer valid
+      MemoryUsage usage = poolBean.getUsage();
+      if (usage != null) {
+        memoryPool.setMax(usage.getMax());
+        memoryPool.setUsed(usage.getUsed());
+        memoryPool.setInit(usage.getInit());
+        memoryPool.setCommitted(usage.getCommitted());
+      } else {
+        logger.error("Oops, JVM problem? " + poolBean.getName() + " usage is NULL!");
+      }
+      memoryPools.add(memoryPool);
+    }
+    addTotal(memoryPools);
+    return memoryPools;
+  }
+
+  /**
+   * Gets the pools through JMX attributes.
+   *
+   * @return the pools
+   * @throws Exception the exception
+   */
+  List<MemoryPool> getJmxPools() throws Exception {
 
     List<MemoryPool> memoryPools = new LinkedList<MemoryPool>();
     MBeanServer mbeanServer = new Registry().getMBeanServer();
     Set<ObjectInstance> memoryOPools =
         mbeanServer.queryMBeans(new ObjectName("java.lang:type=MemoryPool,*"), null);
 
-    // totals
-    long totalInit = 0;
-    long totalMax = 0;
-    long totalUsed = 0;
-    long totalCommitted = 0;
-
     for (ObjectInstance oi : memoryOPools) {
       ObjectName objName = oi.getObjectName();
       MemoryPool memoryPool = new MemoryPool();
@@ -76,12 +119,30 @@ public class JvmMemoryInfoAccessorBean {
         logger.error("Oops, JVM problem? " + objName.toString() + " \"Usage\" attribute is NULL!");
       }
 
+      memoryPools.add(memoryPool);
+    }
+
+    addTotal(memoryPools);
+    return memoryPools;
+
+  }
+
+  /**
+   * Adds the total of the pools.
+   *
+   * @param memoryPools the pools
+   */
+  private static void addTotal(List<MemoryPool> memoryPools) {
+    long totalInit = 0;
+    long totalMax = 0;
+    long totalUsed = 0;
+    long totalCommitted = 0;
+
+    for (MemoryPool memoryPool : memoryPools) {
       totalInit += memoryPool.getInit();
       totalMax += memoryPool.getMax();
       totalUsed += memoryPool.getUsed();
       totalCommitted += memoryPool.getCommitted();
-
-      memoryPools.add(memoryPool);
     }
 
     if (!memoryPools.isEmpty()) {
@@ -94,8 +155,6 @@ public class JvmMemoryInfoAccessorBean {
       pool.setCommitted(totalCommitted);
       memoryPools.add(pool);
     }
-
-    return memoryPools;
-
   }
+
 }
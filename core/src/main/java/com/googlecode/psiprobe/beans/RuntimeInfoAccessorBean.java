@@ -14,16 +14,27 @@ package com.googlecode.psiprobe.beans;
 import com.googlecode.psiprobe.model.jmx.RuntimeInformation;
 import com.googlecode.psiprobe.tools.JmxTools;
 
+import com.sun.management.UnixOperatingSystemMXBean;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.modeler.Registry;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.RuntimeMXBean;
+
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
 /**
  * The Class RuntimeInfoAccessorBean.
  *
+ * <p>
+ * The runtime information is read from the platform MXBeans of the local JVM, looked up once. On
+ * JVMs that do not provide the {@code com.sun.management} extensions, such as IBM's, it is read
+ * through JMX attributes instead.
+ * </p>
+ *
  * @author Vlad Ilyushchenko
  * @author Mark Lewis
  */
@@ -32,6 +43,15 @@ public class RuntimeInfoAccessorBean {
   /** The logger. */
   private final Log logger = LogFactory.getLog(RuntimeInfoAccessorBean.class);
 
+  /** The runtime MXBean. */
+  private final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+
+  /** The operating system MXBean. */
+  private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+  /** Whether the operating system MXBean can be read directly. */
+  private volatile boolean platformAccess = SunOperatingSystem.supports(os);
+
   /**
    * Gets the runtime information.
    *
@@ -39,6 +59,41 @@ public class RuntimeInfoAccessorBean {
    * @throws Exception the exception
    */
   public RuntimeInformation getRuntimeInformation() throws Exception {
+    if (platformAccess) {
+      try {
+        return getPlatformRuntimeInformation();
+      } catch (RuntimeException e) {
+        logger.debug("Platform MXBeans are unavailable, falling back to JMX", e);
+        platformAccess = false;
+      }
+    }
+    return getJmxRuntimeInformation();
+  }
+
+  /**
+   * Gets the runtime information from the platform MXBeans.
+   *
+   * @return the runtime information
+   */
+  RuntimeInformation getPlatformRuntimeInformation() {
+    RuntimeInformation ri = new RuntimeInformation();
+    ri.setStartTime(runtime.getStartTime());
+    ri.setUptime(runtime.getUptime());
+    ri.setVmVendor(runtime.getVmVendor());
+    ri.setOsName(os.getName());
+    ri.setOsVersion(os.getVersion());
+    ri.setAvailableProcessors(os.getAvailableProcessors());
+    SunOperatingSystem.read(os, ri);
+    return ri;
+  }
+
+  /**
+   * Gets the runtime information through JMX attributes.
+   *
+   * @return the runtime information, or null if it is unavailable
+   * @throws Exception the exception
+   */
+  RuntimeInformation getJmxRuntimeInformation() throws Exception {
     MBeanServer mbeanServer = new Registry().getMBeanServer();
     RuntimeInformation ri = new RuntimeInformation();
 
@@ -83,4 +138,50 @@ public class RuntimeInfoAccessorBean {
       return null;
     }
   }
+
+  /**
+   * Reads the {@code com.sun.management} extensions of the operating system MXBean. Kept apart so
+   * that JVMs without these classes only fail when {@link #supports(OperatingSystemMXBean)} is
+   * called.
+   */
+  private static final class SunOperatingSystem {
+
+    /**
+     * Checks if the extensions are available.
+     *
+     * @param os the operating system MXBean
+     * @return true, if it implements the extensions and the JVM is not IBM's
+     */
+    static boolean supports(OperatingSystemMXBean os) {
+      try {
+        return os instanceof com.sun.management.OperatingSystemMXBean
+            && !System.getProperty("java.vm.vendor", "").startsWith("IBM Corporation");
+      } catch (LinkageError e) {
+        return false;
+      }
+    }
+
+    /**
+     * Reads the memory, CPU time and file descriptor counts.
+     *
+     * @param os the operating system MXBean
+     * @param ri the runtime information
+     */
+    static void read(OperatingSystemMXBean os, RuntimeInformation ri) {
+      com.sun.management.OperatingSystemMXBean sunOs =
+          (com.sun.management.OperatingSystemMXBean) os;
+      ri.setTotalPhysicalMemorySize(sunOs.getTotalPhysicalMemorySize());
+      ri.setCommittedVirtualMemorySize(sunOs.getCommittedVirtualMemorySize());
+      ri.setFreePhysicalMemorySize(sunOs.getFreePhysicalMemorySize());
+      ri.setFreeSwapSpaceSize(sunOs.getFreeSwapSpaceSize());
+      ri.setTotalSwapSpaceSize(sunOs.getTotalSwapSpaceSize());
+      ri.setProcessCpuTime(sunOs.getProcessCpuTime());
+      if (os instanceof UnixOperatingSystemMXBean) {
+        UnixOperatingSystemMXBean unixOs = (UnixOperatingSystemMXBean) os;
+        ri.setOpenFileDescriptorCount(unixOs.getOpenFileDescriptorCount());
+        ri.setMaxFileDescriptorCount(unixOs.getMaxFileDescriptorCount());
+      }
+    }
+  }
+
 }
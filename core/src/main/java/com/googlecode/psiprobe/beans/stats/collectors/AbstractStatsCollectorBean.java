@@ -11,16 +11,19 @@
 
 package com.googlecode.psiprobe.beans.stats.collectors;
 
-import com.googlecode.psiprobe.Utils;
 import com.googlecode.psiprobe.beans.stats.listeners.StatsCollectionEvent;
 import com.googlecode.psiprobe.beans.stats.listeners.StatsCollectionListener;
+import com.googlecode.psiprobe.beans.stats.listeners.ThresholdListener;
+import com.googlecode.psiprobe.model.stats.SeriesKey;
 import com.googlecode.psiprobe.model.stats.StatsCollection;
+import com.googlecode.psiprobe.model.stats.StatsSeries;
 
 import org.jfree.data.xy.XYDataItem;
+import org.springframework.beans.factory.BeanNameAware;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * The Class AbstractStatsCollectorBean.
@@ -29,7 +32,10 @@ import java.util.TreeMap;
  * @author Andy Shapoval
  * @author Mark Lewis
  */
-public abstract class AbstractStatsCollectorBean {
+public abstract class AbstractStatsCollectorBean implements BeanNameAware {
+
+  /** The bean name. */
+  private String beanName;
 
   /** The stats collection. */
   private StatsCollection statsCollection;
@@ -40,11 +46,31 @@ public abstract class AbstractStatsCollectorBean {
   /** The listeners. */
   private List<StatsCollectionListener> listeners;
   
-  /** The previous data. */
-  private final Map<String, Long> previousData = new TreeMap<String, Long>();
-  
-  /** The previous data2 d. */
-  private final Map<String, Entry> previousData2D = new TreeMap<String, Entry>();
+  /** The listener dispatcher, or null to call the listeners on the collector thread. */
+  private ListenerDispatcherBean listenerDispatcher;
+
+  /** The adaptive sampling, or null to always sample at the regular period. */
+  private AdaptiveSampling sampling;
+
+  /** The registered series, by name. */
+  private final Map<String, SeriesHandle> handles = new HashMap<String, SeriesHandle>();
+
+  /** The number of values collected by the current run. */
+  private int collectedCount;
+
+  /**
+   * Gets the bean name.
+   *
+   * @return the bean name
+   */
+  public String getBeanName() {
+    return beanName;
+  }
+
+  @Override
+  public void setBeanName(String beanName) {
+    this.beanName = beanName;
+  }
 
   /**
    * Gets the stats collection.
@@ -100,6 +126,58 @@ public abstract class AbstractStatsCollectorBean {
     this.listeners = listeners;
   }
 
+  /**
+   * Gets the listener dispatcher.
+   *
+   * @return the listener dispatcher
+   */
+  public ListenerDispatcherBean getListenerDispatcher() {
+    return listenerDispatcher;
+  }
+
+  /**
+   * Sets the listener dispatcher. Once set, listeners are called on its thread and the threshold
+   * boost of the sampling sees their state as of the events already delivered.
+   *
+   * @param listenerDispatcher the new listener dispatcher
+   */
+  public void setListenerDispatcher(ListenerDispatcherBean listenerDispatcher) {
+    this.listenerDispatcher = listenerDispatcher;
+  }
+
+  /**
+   * Gets the sampling.
+   *
+   * @return the sampling
+   */
+  public AdaptiveSampling getSampling() {
+    return sampling;
+  }
+
+  /**
+   * Sets the adaptive sampling, which lets the collector sample faster while its series are above
+   * their threshold or change fast.
+   *
+   * @param sampling the new sampling
+   */
+  public void setSampling(AdaptiveSampling sampling) {
+    this.sampling = sampling;
+  }
+
+  /**
+   * Gets the name the overhead series of the collector are recorded under: the bean name, without
+   * its "StatsCollector" suffix.
+   *
+   * @return the collector name
+   */
+  public String getCollectorName() {
+    if (beanName != null && beanName.endsWith("StatsCollector")
+        && beanName.length() > "StatsCollector".length()) {
+      return beanName.substring(0, beanName.length() - "StatsCollector".length());
+    }
+    return beanName;
+  }
+
   /**
    * Collect.
    *
@@ -107,15 +185,110 @@ public abstract class AbstractStatsCollectorBean {
    */
   public abstract void collect() throws Exception;
 
+  /**
+   * Counts values the current run collected without appending them to a series, for collectors
+   * that keep their samples themselves.
+   *
+   * @param count the number of values
+   */
+  protected void countCollected(int count) {
+    collectedCount += count;
+  }
+
+  /**
+   * Records the overhead of a run of the collector, as the {@code probe.collector.duration},
+   * {@code probe.collector.lag}, {@code probe.collector.items} and {@code probe.collector.errors}
+   * series suffixed with the collector name. These series are neither passed to the listeners nor
+   * taken into account by adaptive sampling.
+   *
+   * @param lag the time the run waited after it was triggered, in milliseconds
+   * @param duration the time the run took, in milliseconds
+   * @param failed whether the run failed
+   * @param time the time the run ended
+   */
+  void recordRun(long lag, long duration, boolean failed, long time) {
+    int collected = collectedCount;
+    collectedCount = 0;
+    String name = getCollectorName();
+    if (statsCollection == null || name == null) {
+      return;
+    }
+    appendOverheadStats("probe.collector.duration." + name, duration, time);
+    appendOverheadStats("probe.collector.lag." + name, lag, time);
+    appendOverheadStats("probe.collector.items." + name, collected, time);
+    appendOverheadStats("probe.collector.errors." + name, failed ? 1 : 0, time);
+  }
+
+  /**
+   * Appends a value to an overhead series.
+   *
+   * @param name the name
+   * @param value the value
+   * @param time the time
+   */
+  private void appendOverheadStats(String name, long value, long time) {
+    SeriesKey key = keyOf(getHandle(name));
+    StatsSeries stats = statsCollection.getStats(key);
+    if (stats == null) {
+      stats = statsCollection.newStats(key, maxSeries);
+    }
+    houseKeepStats(key, stats);
+    statsCollection.append(key, stats, time, value);
+  }
+
+  /**
+   * Gets the handle of a series, registering it on first use. Collectors that append to the same
+   * series every cycle should keep the handle, rather than building the series name each time.
+   *
+   * @param name the name
+   * @return the series handle
+   */
+  protected SeriesHandle getHandle(String name) {
+    SeriesHandle handle = handles.get(name);
+    if (handle == null) {
+      handle = new SeriesHandle(statsCollection.getKey(name));
+      handles.put(name, handle);
+    }
+    return handle;
+  }
+
+  /**
+   * Forgets the handles of series the collector no longer appends to, for example those of an
+   * undeployed application. The series themselves are kept until the stats collection removes them
+   * as idle, so that an application redeployed in the meantime goes on with its history.
+   *
+   * @param released the handles
+   */
+  protected void releaseHandles(SeriesHandle... released) {
+    for (SeriesHandle handle : released) {
+      if (handle != null) {
+        handles.remove(handle.getName());
+      }
+    }
+  }
+
+  /**
+   * Gets the key of the series of a handle, looking it up again if the series has been removed as
+   * idle in the meantime.
+   *
+   * @param handle the series handle
+   * @return the key
+   */
+  private SeriesKey keyOf(SeriesHandle handle) {
+    if (handle.key.isRemoved()) {
+      handle.key = statsCollection.getKey(handle.getName());
+    }
+    return handle.key;
+  }
+
   /**
    * Builds the delta stats.
    *
    * @param name the name
    * @param value the value
    * @return the long
-   * @throws InterruptedException the interrupted exception
    */
-  protected long buildDeltaStats(String name, long value) throws InterruptedException {
+  protected long buildDeltaStats(String name, long value) {
     return buildDeltaStats(name, value, System.currentTimeMillis());
   }
 
@@ -126,28 +299,42 @@ public abstract class AbstractStatsCollectorBean {
    * @param value the value
    * @param time the time
    * @return the long
-   * @throws InterruptedException the interrupted exception
    */
-  protected long buildDeltaStats(String name, long value, long time) throws InterruptedException {
+  protected long buildDeltaStats(String name, long value, long time) {
     long delta = 0;
     if (statsCollection != null) {
-      long previousValue = Utils.toLong(previousData.get(name), 0);
-      delta = value - previousValue;
-      delta = delta > 0 ? delta : 0;
-      buildAbsoluteStats(name, delta, time);
-      previousData.put(name, value);
+      delta = buildDeltaStats(getHandle(name), value, time);
     }
     return delta;
   }
 
+  /**
+   * Builds the delta stats. With adaptive sampling, the delta is scaled to the regular period.
+   *
+   * @param handle the series handle
+   * @param value the value
+   * @param time the time
+   * @return the delta recorded
+   */
+  protected long buildDeltaStats(SeriesHandle handle, long value, long time) {
+    long delta = value - handle.previousValue;
+    delta = delta > 0 ? delta : 0;
+    if (sampling != null && handle.previousTime > 0) {
+      delta = sampling.scaleDelta(delta, time - handle.previousTime);
+    }
+    buildAbsoluteStats(handle, delta, time);
+    handle.previousValue = value;
+    handle.previousTime = time;
+    return delta;
+  }
+
   /**
    * Builds the absolute stats.
    *
    * @param name the name
    * @param value the value
-   * @throws InterruptedException the interrupted exception
    */
-  protected void buildAbsoluteStats(String name, long value) throws InterruptedException {
+  protected void buildAbsoluteStats(String name, long value) {
     buildAbsoluteStats(name, value, System.currentTimeMillis());
   }
 
@@ -157,44 +344,70 @@ public abstract class AbstractStatsCollectorBean {
    * @param name the name
    * @param value the value
    * @param time the time
-   * @throws InterruptedException the interrupted exception
    */
-  protected void buildAbsoluteStats(String name, long value, long time)
-      throws InterruptedException {
-    
-    List<XYDataItem> stats = statsCollection.getStats(name);
+  protected void buildAbsoluteStats(String name, long value, long time) {
+    buildAbsoluteStats(getHandle(name), value, time);
+  }
+
+  /**
+   * Builds the absolute stats.
+   *
+   * @param handle the series handle
+   * @param value the value
+   * @param time the time
+   */
+  protected void buildAbsoluteStats(SeriesHandle handle, long value, long time) {
+    collectedCount++;
+    SeriesKey key = keyOf(handle);
+    StatsSeries stats = statsCollection.getStats(key);
     if (stats == null) {
-      stats = statsCollection.newStats(name, maxSeries);
+      statsCollection.newStats(key, maxSeries);
     } else {
-      XYDataItem data = new XYDataItem(time, value);
-      statsCollection.lockForUpdate();
-      try {
-        stats.add(data);
-        houseKeepStats(stats);
-      } finally {
-        statsCollection.releaseLock();
-      }
+      houseKeepStats(key, stats);
+      statsCollection.append(key, stats, time, value);
       if (listeners != null) {
-        StatsCollectionEvent event = new StatsCollectionEvent(name, data);
-        for (StatsCollectionListener listener : listeners) {
-          if (listener.isEnabled()) {
-            listener.statsCollected(event);
+        StatsCollectionEvent event =
+            new StatsCollectionEvent(handle.getName(), new XYDataItem(time, value));
+        if (listenerDispatcher != null) {
+          listenerDispatcher.dispatch(listeners, event);
+        } else {
+          for (StatsCollectionListener listener : listeners) {
+            if (listener.isEnabled()) {
+              listener.statsCollected(event);
+            }
           }
         }
       }
+      if (sampling != null) {
+        adaptSampling(handle, value, time);
+      }
     }
   }
 
   /**
-   * The Class Entry.
+   * Boosts the sampling if a value is above the threshold of a listener, or changed too fast.
+   *
+   * @param handle the series handle
+   * @param value the value
+   * @param time the time
    */
-  private class Entry {
-    
-    /** The time. */
-    long time;
-    
-    /** The value. */
-    long value;
+  private void adaptSampling(SeriesHandle handle, long value, long time) {
+    boolean boost = handle.hasSample
+        && sampling.isChangeTooFast(handle.getName(), handle.lastSample, value);
+    if (!boost && sampling.isThresholdBoost() && listeners != null) {
+      for (StatsCollectionListener listener : listeners) {
+        if (listener.isEnabled() && listener instanceof ThresholdListener
+            && ((ThresholdListener) listener).isAboveThreshold(handle.getName())) {
+          boost = true;
+          break;
+        }
+      }
+    }
+    if (boost) {
+      sampling.boost(handle.getName(), time);
+    }
+    handle.lastSample = value;
+    handle.hasSample = true;
   }
 
   /**
@@ -215,32 +428,35 @@ public abstract class AbstractStatsCollectorBean {
    * @param name the name of the value, which allows the collector to be used for multiple values
    * @param value time spent on the task in milliseconds (A or B in the example above)
    * @param time system time in milliseconds (T1 or T2 in the example above)
-   * @throws InterruptedException if a lock could not be obtained
    */
-  protected void buildTimePercentageStats(String name, long value, long time)
-      throws InterruptedException {
-
-    Entry entry = previousData2D.get(name);
-    if (entry == null) {
-      entry = new Entry();
-      entry.value = value;
-      entry.time = time;
-      previousData2D.put(name, entry);
+  protected void buildTimePercentageStats(String name, long value, long time) {
+    buildTimePercentageStats(getHandle(name), value, time);
+  }
+
+  /**
+   * Builds time percentage stats, see {@link #buildTimePercentageStats(String, long, long)}.
+   *
+   * @param handle the series handle
+   * @param value time spent on the task in milliseconds
+   * @param time system time in milliseconds
+   */
+  protected void buildTimePercentageStats(SeriesHandle handle, long value, long time) {
+    collectedCount++;
+    if (!handle.hasPrevious) {
+      handle.previousValue = value;
+      handle.previousTime = time;
+      handle.hasPrevious = true;
     } else {
-      double valueDelta = value - entry.value;
-      double timeDelta = time - entry.time;
+      double valueDelta = value - handle.previousValue;
+      double timeDelta = time - handle.previousTime;
       double statValue = valueDelta * 100 / timeDelta;
-      statsCollection.lockForUpdate();
-      try {
-        List<XYDataItem> stats = statsCollection.getStats(name);
-        if (stats == null) {
-          stats = statsCollection.newStats(name, maxSeries);
-        }
-        stats.add(stats.size(), new XYDataItem(time, statValue));
-        houseKeepStats(stats);
-      } finally {
-        statsCollection.releaseLock();
+      SeriesKey key = keyOf(handle);
+      StatsSeries stats = statsCollection.getStats(key);
+      if (stats == null) {
+        stats = statsCollection.newStats(key, maxSeries);
       }
+      houseKeepStats(key, stats);
+      statsCollection.append(key, stats, time, statValue);
     }
   }
 
@@ -254,13 +470,17 @@ public abstract class AbstractStatsCollectorBean {
   }
 
   /**
-   * House keep stats.
+   * Makes sure the series holds at most {@code maxSeries} values, or fewer if its retention policy
+   * says so. Series read back from the swap file are sized to their content, so they are resized
+   * the first time they are updated.
    *
+   * @param key the key
    * @param stats the stats
    */
-  private void houseKeepStats(List<XYDataItem> stats) {
-    while (stats.size() > maxSeries) {
-      stats.remove(0);
+  private void houseKeepStats(SeriesKey key, StatsSeries stats) {
+    int capacity = statsCollection.getCapacity(key, maxSeries);
+    if (stats.getCapacity() != capacity) {
+      stats.setCapacity(capacity);
     }
   }
 }
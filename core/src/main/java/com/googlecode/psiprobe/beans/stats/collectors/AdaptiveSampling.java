@@ -0,0 +1,315 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.model.stats.StatsCollection;
+import com.googlecode.psiprobe.tools.TimeExpression;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Lets a collector sample faster while something is going on. The collector is boosted when one of
+ * its series is above the threshold of a
+ * {@link com.googlecode.psiprobe.beans.stats.listeners.ThresholdListener}, or when a value differs
+ * from the previous one of its series by more than both the max change and the min change of the
+ * series. While boosted, the {@link CollectorExecutorBean} runs it every boost period instead of
+ * waiting for its trigger. The collector falls back to its regular period once nothing has boosted
+ * it for the boost duration.
+ *
+ * <p>
+ * Delta series count what happened between two samples, so their values depend on the interval.
+ * They are scaled to the regular period, so that boosted values compare with the others.
+ * </p>
+ */
+public class AdaptiveSampling {
+
+  /** The logger. */
+  private final Log logger = LogFactory.getLog(AdaptiveSampling.class);
+
+  /** The regular period. */
+  private String period = "30s";
+
+  /** The regular period in milliseconds. */
+  private long periodMillis = 30000;
+
+  /** The boost period. */
+  private String boostPeriod = "5s";
+
+  /** The boost period in milliseconds. */
+  private long boostPeriodMillis = 5000;
+
+  /** The boost duration. */
+  private String boostDuration = "2m";
+
+  /** The boost duration in milliseconds. */
+  private long boostDurationMillis = 120000;
+
+  /** The max relative change between two values, 0 to ignore changes. */
+  private double maxChange = 0;
+
+  /** The absolute change two values must differ by before their relative change counts. */
+  private double minChange = 0;
+
+  /** The min changes of the series matching a pattern, the first matching pattern applies. */
+  private Map<String, Double> minChanges = new LinkedHashMap<String, Double>();
+
+  /** The compiled patterns of the min changes, in the same order. */
+  private Map<Pattern, Double> minChangePatterns = new LinkedHashMap<Pattern, Double>();
+
+  /** The min change of each series checked so far, by series name. */
+  private final ConcurrentMap<String, Double> seriesMinChanges =
+      new ConcurrentHashMap<String, Double>();
+
+  /** Whether series above the threshold of a threshold listener boost the collector. */
+  private boolean thresholdBoost = true;
+
+  /** The time until which the collector is boosted. */
+  private volatile long boostedUntil;
+
+  /**
+   * Gets the period.
+   *
+   * @return the period
+   */
+  public String getPeriod() {
+    return period;
+  }
+
+  /**
+   * Sets the regular period of the collector, in {@link TimeExpression} notation.
+   *
+   * @param period the new period
+   */
+  public void setPeriod(String period) {
+    this.periodMillis = TimeExpression.inSeconds(period) * 1000;
+    this.period = period;
+  }
+
+  /**
+   * Gets the boost period.
+   *
+   * @return the boost period
+   */
+  public String getBoostPeriod() {
+    return boostPeriod;
+  }
+
+  /**
+   * Sets the period of the collector while boosted, in {@link TimeExpression} notation.
+   *
+   * @param boostPeriod the new boost period
+   */
+  public void setBoostPeriod(String boostPeriod) {
+    this.boostPeriodMillis = TimeExpression.inSeconds(boostPeriod) * 1000;
+    this.boostPeriod = boostPeriod;
+  }
+
+  /**
+   * Gets the boost duration.
+   *
+   * @return the boost duration
+   */
+  public String getBoostDuration() {
+    return boostDuration;
+  }
+
+  /**
+   * Sets how long the collector stays boosted once nothing boosts it any longer, in
+   * {@link TimeExpression} notation.
+   *
+   * @param boostDuration the new boost duration
+   */
+  public void setBoostDuration(String boostDuration) {
+    this.boostDurationMillis = TimeExpression.inSeconds(boostDuration) * 1000;
+    this.boostDuration = boostDuration;
+  }
+
+  /**
+   * Gets the max change.
+   *
+   * @return the max change
+   */
+  public double getMaxChange() {
+    return maxChange;
+  }
+
+  /**
+   * Sets the max relative change between two values of a series, for example 1 when a value more
+   * than doubling should boost the collector. Changes from 0 are ignored.
+   *
+   * @param maxChange the new max change, 0 to ignore changes
+   */
+  public void setMaxChange(double maxChange) {
+    this.maxChange = Math.max(maxChange, 0);
+  }
+
+  /**
+   * Gets the min change.
+   *
+   * @return the min change
+   */
+  public double getMinChange() {
+    return minChange;
+  }
+
+  /**
+   * Sets the absolute change below which a change never boosts the collector however large it is
+   * relative to the previous value, so that series near 0 do not boost it on noise. With a min
+   * change, changes from 0 above it boost the collector too. Applies to the series no pattern of
+   * {@link #setMinChanges(Map)} matches.
+   *
+   * @param minChange the new min change, 0 for none
+   */
+  public void setMinChange(double minChange) {
+    this.minChange = Math.max(minChange, 0);
+    seriesMinChanges.clear();
+  }
+
+  /**
+   * Gets the min changes.
+   *
+   * @return the min changes, by series name pattern
+   */
+  public Map<String, Double> getMinChanges() {
+    return minChanges;
+  }
+
+  /**
+   * Sets the min changes of the series whose name matches a pattern, where {@code *} matches any
+   * run of characters, for example {@code stat.connector.*.errors}. Series of a collector count
+   * different things, so each needs a floor in its own unit.
+   *
+   * @param minChanges the new min changes, by series name pattern, the first matching one applies
+   */
+  public void setMinChanges(Map<String, Double> minChanges) {
+    Map<Pattern, Double> patterns = new LinkedHashMap<Pattern, Double>();
+    for (Map.Entry<String, Double> entry : minChanges.entrySet()) {
+      patterns.put(StatsCollection.compilePattern(entry.getKey()), Math.max(entry.getValue(), 0));
+    }
+    this.minChangePatterns = patterns;
+    this.minChanges = minChanges;
+    seriesMinChanges.clear();
+  }
+
+  /**
+   * Gets the min change of a series. Patterns are matched once per series.
+   *
+   * @param name the series name
+   * @return the min change
+   */
+  double getMinChange(String name) {
+    Double cached = seriesMinChanges.get(name);
+    if (cached == null) {
+      cached = minChange;
+      for (Map.Entry<Pattern, Double> entry : minChangePatterns.entrySet()) {
+        if (entry.getKey().matcher(name).matches()) {
+          cached = entry.getValue();
+          break;
+        }
+      }
+      seriesMinChanges.put(name, cached);
+    }
+    return cached;
+  }
+
+  /**
+   * Checks if series above their threshold boost the collector.
+   *
+   * @return true, if they do
+   */
+  public boolean isThresholdBoost() {
+    return thresholdBoost;
+  }
+
+  /**
+   * Sets whether series above the threshold of a threshold listener of the collector boost it.
+   *
+   * @param thresholdBoost the new threshold boost
+   */
+  public void setThresholdBoost(boolean thresholdBoost) {
+    this.thresholdBoost = thresholdBoost;
+  }
+
+  /**
+   * Gets the boost period in milliseconds.
+   *
+   * @return the boost period
+   */
+  public long getBoostPeriodMillis() {
+    return boostPeriodMillis;
+  }
+
+  /**
+   * Checks if the collector is boosted.
+   *
+   * @return true, if it is
+   */
+  public boolean isBoosted() {
+    return boostPeriodMillis > 0 && System.currentTimeMillis() < boostedUntil;
+  }
+
+  /**
+   * Boosts the collector for the boost duration.
+   *
+   * @param name the series that boosts it
+   * @param time the time of the value that boosts it
+   */
+  void boost(String name, long time) {
+    if (!isBoosted() && logger.isInfoEnabled()) {
+      logger.info("Sampling every " + boostPeriod + " for " + boostDuration + ", triggered by "
+          + name);
+    }
+    boostedUntil = Math.max(boostedUntil, time + boostDurationMillis);
+  }
+
+  /**
+   * Checks a value against the previous value of its series.
+   *
+   * @param name the series name
+   * @param previous the previous value
+   * @param value the value
+   * @return true, if it changed by more than the max change and the min change of the series
+   */
+  boolean isChangeTooFast(String name, double previous, double value) {
+    if (maxChange <= 0) {
+      return false;
+    }
+    double floor = getMinChange(name);
+    double change = Math.abs(value - previous);
+    if (change <= floor) {
+      return false;
+    }
+    return previous != 0 ? change > maxChange * Math.abs(previous) : floor > 0;
+  }
+
+  /**
+   * Scales a delta to the regular period.
+   *
+   * @param delta the delta
+   * @param interval the milliseconds between the two samples of the delta
+   * @return the delta over the regular period
+   */
+  long scaleDelta(long delta, long interval) {
+    if (interval <= 0 || periodMillis <= 0) {
+      return delta;
+    }
+    return Math.round((double) delta * periodMillis / interval);
+  }
+
+}
@@ -11,9 +11,12 @@
 
 package com.googlecode.psiprobe.beans.stats.collectors;
 
+import com.googlecode.psiprobe.LastAccessedIps;
+import com.googlecode.psiprobe.RequestLatencies;
 import com.googlecode.psiprobe.TomcatContainer;
 import com.googlecode.psiprobe.beans.ContainerWrapperBean;
 import com.googlecode.psiprobe.model.Application;
+import com.googlecode.psiprobe.model.stats.LatencyHistogram;
 import com.googlecode.psiprobe.tools.ApplicationUtils;
 
 import org.apache.catalina.Context;
@@ -21,11 +24,25 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.web.context.ServletContextAware;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.ServletContext;
 
 /**
  * Collects application statistics.
  *
+ * <p>
+ * Besides the counters of the servlets of each application, the 50th, 95th and 99th percentiles
+ * and the maximum of the latency of the requests served since the last collection are recorded, in
+ * milliseconds, from the histograms filled in by the agent valve.
+ * </p>
+ *
  * @author Andy Shapoval
  * @author Mark Lewis
  */
@@ -44,6 +61,9 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean implements
   /** The self ignored. */
   private boolean selfIgnored;
 
+  /** The series of each application, by application name. */
+  private final Map<String, AppSeries> appSeries = new HashMap<String, AppSeries>();
+
   /**
    * Gets the container wrapper.
    *
@@ -110,22 +130,29 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean implements
         long totalErrDelta = 0;
         long totalAvgProcTime = 0;
         int participatingAppCount = 0;
+        Set<AppSeries> deployed = new HashSet<AppSeries>();
+        RequestLatencies latencies = tomcatContainer.getRequestLatencies();
+        LastAccessedIps lastAccessedIps = tomcatContainer.getLastAccessedIps();
 
         for (Context ctx : tomcatContainer.findContexts()) {
           if (ctx != null && ctx.getName() != null) {
             Application app = new Application();
             ApplicationUtils.collectApplicationServletStats(ctx, app);
 
-            String appName = "".equals(ctx.getName()) ? "/" : ctx.getName();
+            AppSeries series = getAppSeries(ctx.getName());
+            deployed.add(series);
 
-            long reqDelta =
-                buildDeltaStats("app.requests." + appName, app.getRequestCount(), currentTime);
-            long errDelta = buildDeltaStats("app.errors." + appName, app.getErrorCount());
+            long reqDelta = buildDeltaStats(series.requests, app.getRequestCount(), currentTime);
+            long errDelta = buildDeltaStats(series.errors, app.getErrorCount(), currentTime);
             long procTimeDelta =
-                buildDeltaStats("app.proc_time." + appName, app.getProcessingTime(), currentTime);
+                buildDeltaStats(series.procTime, app.getProcessingTime(), currentTime);
 
             long avgProcTime = reqDelta == 0 ? 0 : procTimeDelta / reqDelta;
-            buildAbsoluteStats("app.avg_proc_time." + appName, avgProcTime, currentTime);
+            buildAbsoluteStats(series.avgProcTime, avgProcTime, currentTime);
+            buildLatencyStats(series, latencies.getHistogram(ctx.getName()), currentTime);
+            if (ctx.getManager() != null) {
+              lastAccessedIps.retain(ctx.getName(), ctx.getManager().findSessions());
+            }
 
             /*
              * make sure applications that did not serve any requests do not participate in average
@@ -141,6 +168,7 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean implements
             }
           }
         }
+        releaseUndeployed(deployed, tomcatContainer);
         // build totals for all applications
         buildAbsoluteStats("total.requests", totalReqDelta, currentTime);
         buildAbsoluteStats("total.errors", totalErrDelta, currentTime);
@@ -151,6 +179,89 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean implements
     }
   }
 
+  /**
+   * Gets the series of an application, registering them the first time the application is seen.
+   *
+   * @param contextName the context name
+   * @return the app series
+   */
+  private AppSeries getAppSeries(String contextName) {
+    AppSeries series = appSeries.get(contextName);
+    if (series == null) {
+      String appName = "".equals(contextName) ? "/" : contextName;
+      series = new AppSeries(contextName);
+      series.requests = getHandle("app.requests." + appName);
+      series.errors = getHandle("app.errors." + appName);
+      series.procTime = getHandle("app.proc_time." + appName);
+      series.avgProcTime = getHandle("app.avg_proc_time." + appName);
+      series.latencyMedian = getHandle("app.latency.p50." + appName);
+      series.latency95 = getHandle("app.latency.p95." + appName);
+      series.latency99 = getHandle("app.latency.p99." + appName);
+      series.latencyMax = getHandle("app.latency.max." + appName);
+      appSeries.put(contextName, series);
+    }
+    return series;
+  }
+
+  /**
+   * Records the latency percentiles of the requests an application served since the last
+   * collection.
+   *
+   * @param series the series of the application
+   * @param histogram the latency histogram of the application, null if it served no request yet
+   * @param time the time
+   */
+  private void buildLatencyStats(AppSeries series, LatencyHistogram histogram, long time) {
+    long[] interval = series.latencyInterval;
+    if (histogram == null) {
+      Arrays.fill(interval, 0);
+    } else {
+      // the histogram counts since startup, keep the difference with the previous collection
+      long[] counts = series.latencyCounts;
+      histogram.getCounts(interval);
+      for (int i = 0; i < interval.length; i++) {
+        long count = interval[i];
+        interval[i] = count - counts[i];
+        counts[i] = count;
+      }
+    }
+    buildAbsoluteStats(series.latencyMedian, toMillis(interval, 0.5), time);
+    buildAbsoluteStats(series.latency95, toMillis(interval, 0.95), time);
+    buildAbsoluteStats(series.latency99, toMillis(interval, 0.99), time);
+    buildAbsoluteStats(series.latencyMax, toMillis(interval, 1), time);
+  }
+
+  /**
+   * Gets the latency at a quantile in milliseconds.
+   *
+   * @param counts the latency counts
+   * @param quantile the quantile
+   * @return the latency in milliseconds
+   */
+  private static long toMillis(long[] counts, double quantile) {
+    return TimeUnit.MICROSECONDS.toMillis(LatencyHistogram.getValueAtQuantile(counts, quantile));
+  }
+
+  /**
+   * Forgets the series handles, latency histograms and last accessed ips of the applications that
+   * are no longer deployed.
+   *
+   * @param deployed the series of the deployed applications
+   * @param tomcatContainer the tomcat container
+   */
+  private void releaseUndeployed(Set<AppSeries> deployed, TomcatContainer tomcatContainer) {
+    for (Iterator<AppSeries> it = appSeries.values().iterator(); it.hasNext();) {
+      AppSeries series = it.next();
+      if (!deployed.contains(series)) {
+        releaseHandles(series.requests, series.errors, series.procTime, series.avgProcTime,
+            series.latencyMedian, series.latency95, series.latency99, series.latencyMax);
+        tomcatContainer.getRequestLatencies().remove(series.contextName);
+        tomcatContainer.getLastAccessedIps().remove(series.contextName);
+        it.remove();
+      }
+    }
+  }
+
   /**
    * Exclude from total.
    *
@@ -193,6 +304,58 @@ public class AppStatsCollectorBean extends AbstractStatsCollectorBean implements
     resetStats("app.proc_time." + appName);
     resetStats("app.errors." + appName);
     resetStats("app.avg_proc_time." + appName);
+    resetStats("app.latency.p50." + appName);
+    resetStats("app.latency.p95." + appName);
+    resetStats("app.latency.p99." + appName);
+    resetStats("app.latency.max." + appName);
+  }
+
+  /**
+   * The series collected for an application.
+   */
+  private static class AppSeries {
+
+    /** The context name. */
+    final String contextName;
+
+    /** The requests. */
+    SeriesHandle requests;
+
+    /** The errors. */
+    SeriesHandle errors;
+
+    /** The processing time. */
+    SeriesHandle procTime;
+
+    /** The average processing time. */
+    SeriesHandle avgProcTime;
+
+    /** The median latency. */
+    SeriesHandle latencyMedian;
+
+    /** The 95th percentile of the latency. */
+    SeriesHandle latency95;
+
+    /** The 99th percentile of the latency. */
+    SeriesHandle latency99;
+
+    /** The maximum latency. */
+    SeriesHandle latencyMax;
+
+    /** The latency counts at the previous collection. */
+    final long[] latencyCounts = new long[LatencyHistogram.BUCKET_COUNT];
+
+    /** The latency counts since the previous collection. */
+    final long[] latencyInterval = new long[LatencyHistogram.BUCKET_COUNT];
+
+    /**
+     * Instantiates new application series.
+     *
+     * @param contextName the context name
+     */
+    AppSeries(String contextName) {
+      this.contextName = contextName;
+    }
   }
 
 }
@@ -0,0 +1,343 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.tools.TimeExpression;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs stats collectors on a dedicated pool of worker threads, so that a slow collector does not
+ * delay the others. The scheduler triggers {@link #execute(AbstractStatsCollectorBean)}, which only
+ * hands the collector over to the pool.
+ *
+ * <p>
+ * A collector runs at most once at a time: if its previous run is still pending when it is
+ * triggered again, the new run is skipped rather than queued. A run that takes longer than the
+ * timeout of its collector is interrupted. Collectors blocked in a call that ignores interrupts
+ * keep their worker thread, but are still not run again until they return.
+ * </p>
+ *
+ * <p>
+ * Each run is recorded in the overhead series of its collector, see
+ * {@link AbstractStatsCollectorBean#recordRun(long, long, boolean, long)}.
+ * </p>
+ *
+ * <p>
+ * A collector whose {@link AdaptiveSampling} is boosted is run again every boost period after each
+ * run, and its regular triggers are skipped meanwhile.
+ * </p>
+ */
+public class CollectorExecutorBean implements InitializingBean, DisposableBean {
+
+  /** The logger. */
+  private final Log logger = LogFactory.getLog(CollectorExecutorBean.class);
+
+  /** The number of worker threads. */
+  private int poolSize = 4;
+
+  /** The default timeout. */
+  private String timeout = "1m";
+
+  /** The default timeout in milliseconds. */
+  private long timeoutMillis = 60000;
+
+  /** The timeouts of individual collectors, by bean name. */
+  private Map<String, String> timeouts = new HashMap<String, String>();
+
+  /** The status of each collector run so far. */
+  private final ConcurrentMap<AbstractStatsCollectorBean, CollectorStatus> statuses =
+      new ConcurrentHashMap<AbstractStatsCollectorBean, CollectorStatus>();
+
+  /** The worker threads. */
+  private ThreadPoolExecutor workers;
+
+  /** Interrupts the runs that time out, and schedules the boosted runs. */
+  private ScheduledExecutorService watchdog;
+
+  /**
+   * Gets the pool size.
+   *
+   * @return the pool size
+   */
+  public int getPoolSize() {
+    return poolSize;
+  }
+
+  /**
+   * Sets the number of worker threads.
+   *
+   * @param poolSize the new pool size
+   */
+  public void setPoolSize(int poolSize) {
+    this.poolSize = poolSize > 0 ? poolSize : 4;
+  }
+
+  /**
+   * Gets the timeout.
+   *
+   * @return the timeout
+   */
+  public String getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Sets how long a collector may run, in {@link TimeExpression} notation, unless a timeout is set
+   * for that collector.
+   *
+   * @param timeout the new timeout
+   */
+  public void setTimeout(String timeout) {
+    this.timeoutMillis = TimeExpression.inSeconds(timeout) * 1000;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Gets the timeouts.
+   *
+   * @return the timeouts
+   */
+  public Map<String, String> getTimeouts() {
+    return timeouts;
+  }
+
+  /**
+   * Sets the timeouts of individual collectors, keyed by bean name.
+   *
+   * @param timeouts the new timeouts
+   */
+  public void setTimeouts(Map<String, String> timeouts) {
+    this.timeouts = timeouts;
+  }
+
+  /**
+   * Gets the status of the collectors run so far.
+   *
+   * @return the statuses
+   */
+  public List<CollectorStatus> getStatuses() {
+    return new ArrayList<CollectorStatus>(statuses.values());
+  }
+
+  /**
+   * Gets the status of a collector.
+   *
+   * @param collector the collector
+   * @return the status, or null if the collector has never been triggered
+   */
+  public CollectorStatus getStatus(AbstractStatsCollectorBean collector) {
+    return statuses.get(collector);
+  }
+
+  /**
+   * Triggers a run of a collector.
+   *
+   * @param collector the collector
+   * @return true, if the run has been handed over to the pool, false if it has been skipped
+   */
+  public boolean execute(AbstractStatsCollectorBean collector) {
+    CollectorStatus status = getOrCreateStatus(collector);
+    if (status.boostScheduled.get()) {
+      // the boosted runs take over from the regular ones
+      return false;
+    }
+    return submit(status);
+  }
+
+  /**
+   * Hands a run of a collector over to the pool, unless its previous run is still pending.
+   *
+   * @param status the status of the collector
+   * @return true, if the run has been handed over to the pool, false if it has been skipped
+   */
+  private boolean submit(final CollectorStatus status) {
+    AbstractStatsCollectorBean collector = status.getCollector();
+    if (!status.state.compareAndSet(CollectorStatus.IDLE, CollectorStatus.QUEUED)) {
+      status.skipped();
+      logger.warn("Skipping stats collector " + status.getName()
+          + ", its previous run is still pending");
+      return false;
+    }
+    final long runNumber = ++status.runNumber;
+    final long triggered = System.currentTimeMillis();
+    final Future<?> future;
+    try {
+      future = workers.submit(new Runnable() {
+        @Override
+        public void run() {
+          if (status.state.compareAndSet(CollectorStatus.QUEUED, CollectorStatus.RUNNING)) {
+            runCollector(status, triggered);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      status.state.set(CollectorStatus.IDLE);
+      return false;
+    }
+    long limit = timeoutOf(collector);
+    if (limit > 0) {
+      watchdog.schedule(new Runnable() {
+        @Override
+        public void run() {
+          checkTimeout(status, runNumber, future);
+        }
+      }, limit, TimeUnit.MILLISECONDS);
+    }
+    return true;
+  }
+
+  /**
+   * Runs a collector on a worker thread.
+   *
+   * @param status the status of the collector
+   * @param triggered the time the run was triggered
+   */
+  private void runCollector(CollectorStatus status, long triggered) {
+    long start = System.currentTimeMillis();
+    Throwable error = null;
+    try {
+      status.getCollector().collect();
+    } catch (Exception e) {
+      error = e;
+      logger.error("Stats collector " + status.getName() + " failed", e);
+    } finally {
+      long end = System.currentTimeMillis();
+      status.completed(triggered, start, end, error);
+      try {
+        status.getCollector().recordRun(start - triggered, end - start, error != null, end);
+      } catch (RuntimeException e) {
+        logger.error("Cannot record the overhead of stats collector " + status.getName(), e);
+      }
+      status.state.set(CollectorStatus.IDLE);
+      scheduleBoostedRun(status);
+      if (logger.isDebugEnabled()) {
+        logger.debug("stats collector " + status.getName() + " ran in " + (end - start)
+            + "ms, " + (start - triggered) + "ms after it was triggered.");
+      }
+    }
+  }
+
+  /**
+   * Schedules the next run of a collector after its boost period, if it is boosted.
+   *
+   * @param status the status of the collector
+   */
+  private void scheduleBoostedRun(final CollectorStatus status) {
+    AdaptiveSampling sampling = status.getCollector().getSampling();
+    if (sampling == null || !sampling.isBoosted()
+        || !status.boostScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      watchdog.schedule(new Runnable() {
+        @Override
+        public void run() {
+          status.boostScheduled.set(false);
+          submit(status);
+        }
+      }, sampling.getBoostPeriodMillis(), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      status.boostScheduled.set(false);
+    }
+  }
+
+  /**
+   * Interrupts a run that is still pending once its timeout is over.
+   *
+   * @param status the status of the collector
+   * @param runNumber the number of the run
+   * @param future the run
+   */
+  private void checkTimeout(CollectorStatus status, long runNumber, Future<?> future) {
+    if (status.runNumber != runNumber) {
+      return;
+    }
+    if (status.state.compareAndSet(CollectorStatus.QUEUED, CollectorStatus.IDLE)) {
+      future.cancel(false);
+      status.timedOut();
+      logger.warn("Stats collector " + status.getName()
+          + " timed out waiting for a worker thread");
+    } else if (status.state.get() == CollectorStatus.RUNNING) {
+      status.timedOut();
+      logger.warn("Stats collector " + status.getName() + " timed out, interrupting it");
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Gets the status of a collector, creating it the first time the collector is triggered.
+   *
+   * @param collector the collector
+   * @return the status
+   */
+  private CollectorStatus getOrCreateStatus(AbstractStatsCollectorBean collector) {
+    CollectorStatus status = statuses.get(collector);
+    if (status == null) {
+      CollectorStatus newStatus = new CollectorStatus(collector);
+      status = statuses.putIfAbsent(collector, newStatus);
+      if (status == null) {
+        status = newStatus;
+      }
+    }
+    return status;
+  }
+
+  /**
+   * Gets the timeout of a collector.
+   *
+   * @param collector the collector
+   * @return the timeout in milliseconds, 0 for none
+   */
+  private long timeoutOf(AbstractStatsCollectorBean collector) {
+    String specific = collector.getBeanName() == null ? null : timeouts.get(collector.getBeanName());
+    return specific == null ? timeoutMillis : TimeExpression.inSeconds(specific) * 1000;
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    CustomizableThreadFactory workerFactory = new CustomizableThreadFactory("psi-probe-collector-");
+    workerFactory.setDaemon(true);
+    workers = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(), workerFactory);
+    CustomizableThreadFactory watchdogFactory =
+        new CustomizableThreadFactory("psi-probe-collector-watchdog-");
+    watchdogFactory.setDaemon(true);
+    watchdog = Executors.newSingleThreadScheduledExecutor(watchdogFactory);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    watchdog.shutdownNow();
+    workers.shutdownNow();
+    workers.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+}
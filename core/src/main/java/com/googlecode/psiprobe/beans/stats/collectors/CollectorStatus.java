@@ -0,0 +1,232 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The runs of a collector by a {@link CollectorExecutorBean}: whether a run is pending, and how
+ * long the past runs took.
+ */
+public class CollectorStatus {
+
+  /** No run is pending. */
+  static final int IDLE = 0;
+
+  /** A run is waiting for a worker thread. */
+  static final int QUEUED = 1;
+
+  /** A run is in progress. */
+  static final int RUNNING = 2;
+
+  /** The collector. */
+  private final AbstractStatsCollectorBean collector;
+
+  /** The state of the pending run. */
+  final AtomicInteger state = new AtomicInteger(IDLE);
+
+  /** The number of the pending run. */
+  volatile long runNumber;
+
+  /** Whether a boosted run is scheduled. */
+  final AtomicBoolean boostScheduled = new AtomicBoolean();
+
+  /** The number of completed runs. */
+  private volatile long runs;
+
+  /** The number of runs skipped because the previous run was still pending. */
+  private volatile long skippedRuns;
+
+  /** The number of runs that timed out. */
+  private volatile long timeouts;
+
+  /** The number of runs that failed. */
+  private volatile long failures;
+
+  /** The time the last run started. */
+  private volatile long lastStart;
+
+  /** The time taken by the last run, in milliseconds. */
+  private volatile long lastDuration;
+
+  /** The longest time taken by a run, in milliseconds. */
+  private volatile long maxDuration;
+
+  /** The time the last run waited for a worker thread, in milliseconds. */
+  private volatile long lastLag;
+
+  /** The message of the last failure. */
+  private volatile String lastError;
+
+  /**
+   * Instantiates a new collector status.
+   *
+   * @param collector the collector
+   */
+  CollectorStatus(AbstractStatsCollectorBean collector) {
+    this.collector = collector;
+  }
+
+  /**
+   * Gets the collector.
+   *
+   * @return the collector
+   */
+  public AbstractStatsCollectorBean getCollector() {
+    return collector;
+  }
+
+  /**
+   * Gets the name of the collector.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return collector.getBeanName();
+  }
+
+  /**
+   * Checks if a run is waiting or in progress.
+   *
+   * @return true, if a run is pending
+   */
+  public boolean isPending() {
+    return state.get() != IDLE;
+  }
+
+  /**
+   * Checks if the collector samples at its boost period.
+   *
+   * @return true, if it is boosted
+   */
+  public boolean isBoosted() {
+    AdaptiveSampling sampling = collector.getSampling();
+    return sampling != null && sampling.isBoosted();
+  }
+
+  /**
+   * Gets the number of completed runs.
+   *
+   * @return the runs
+   */
+  public long getRuns() {
+    return runs;
+  }
+
+  /**
+   * Gets the number of runs skipped because the previous run was still pending.
+   *
+   * @return the skipped runs
+   */
+  public long getSkippedRuns() {
+    return skippedRuns;
+  }
+
+  /**
+   * Gets the number of runs that timed out.
+   *
+   * @return the timeouts
+   */
+  public long getTimeouts() {
+    return timeouts;
+  }
+
+  /**
+   * Gets the number of runs that failed.
+   *
+   * @return the failures
+   */
+  public long getFailures() {
+    return failures;
+  }
+
+  /**
+   * Gets the time the last run started.
+   *
+   * @return the last start
+   */
+  public long getLastStart() {
+    return lastStart;
+  }
+
+  /**
+   * Gets the time taken by the last run.
+   *
+   * @return the last duration in milliseconds
+   */
+  public long getLastDuration() {
+    return lastDuration;
+  }
+
+  /**
+   * Gets the longest time taken by a run.
+   *
+   * @return the max duration in milliseconds
+   */
+  public long getMaxDuration() {
+    return maxDuration;
+  }
+
+  /**
+   * Gets the time the last run waited for a worker thread after it was triggered.
+   *
+   * @return the last lag in milliseconds
+   */
+  public long getLastLag() {
+    return lastLag;
+  }
+
+  /**
+   * Gets the message of the last failure.
+   *
+   * @return the last error, or null
+   */
+  public String getLastError() {
+    return lastError;
+  }
+
+  /**
+   * Records that a run has been skipped.
+   */
+  synchronized void skipped() {
+    skippedRuns++;
+  }
+
+  /**
+   * Records that a run has timed out.
+   */
+  synchronized void timedOut() {
+    timeouts++;
+  }
+
+  /**
+   * Records a run.
+   *
+   * @param triggered the time the run was triggered
+   * @param start the time the run started
+   * @param end the time the run ended
+   * @param error the failure, or null
+   */
+  synchronized void completed(long triggered, long start, long end, Throwable error) {
+    runs++;
+    lastStart = start;
+    lastLag = start - triggered;
+    lastDuration = end - start;
+    maxDuration = Math.max(maxDuration, lastDuration);
+    if (error != null) {
+      failures++;
+      lastError = error.toString();
+    }
+  }
+
+}
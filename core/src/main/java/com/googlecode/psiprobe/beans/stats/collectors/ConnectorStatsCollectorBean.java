@@ -14,6 +14,12 @@ package com.googlecode.psiprobe.beans.stats.collectors;
 import com.googlecode.psiprobe.beans.ContainerListenerBean;
 import com.googlecode.psiprobe.model.Connector;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * The Class ConnectorStatsCollectorBean.
  *
@@ -25,6 +31,9 @@ public class ConnectorStatsCollectorBean extends AbstractStatsCollectorBean {
   /** The listener bean. */
   private ContainerListenerBean listenerBean;
 
+  /** The series of each connector, by connector name. */
+  private final Map<String, SeriesHandle[]> connectorSeries = new HashMap<String, SeriesHandle[]>();
+
   /**
    * Gets the listener bean.
    *
@@ -45,14 +54,48 @@ public class ConnectorStatsCollectorBean extends AbstractStatsCollectorBean {
 
   @Override
   public void collect() throws Exception {
+    Set<String> names = new HashSet<String>();
     for (Connector connector : listenerBean.getConnectors(false)) {
-      String statName = "stat.connector." + connector.getName();
-      buildDeltaStats(statName + ".requests", connector.getRequestCount());
-      buildDeltaStats(statName + ".errors", connector.getErrorCount());
-      buildDeltaStats(statName + ".sent", connector.getBytesSent());
-      buildDeltaStats(statName + ".received", connector.getBytesReceived());
-      buildDeltaStats(statName + ".proc_time", connector.getProcessingTime());
+      SeriesHandle[] series = getConnectorSeries(connector.getName());
+      names.add(connector.getName());
+      long time = System.currentTimeMillis();
+      buildDeltaStats(series[0], connector.getRequestCount(), time);
+      buildDeltaStats(series[1], connector.getErrorCount(), time);
+      buildDeltaStats(series[2], connector.getBytesSent(), time);
+      buildDeltaStats(series[3], connector.getBytesReceived(), time);
+      buildDeltaStats(series[4], connector.getProcessingTime(), time);
+    }
+    // forget the connectors that have been removed
+    for (Iterator<Map.Entry<String, SeriesHandle[]>> it = connectorSeries.entrySet().iterator();
+        it.hasNext();) {
+      Map.Entry<String, SeriesHandle[]> entry = it.next();
+      if (!names.contains(entry.getKey())) {
+        releaseHandles(entry.getValue());
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Gets the series of a connector, registering them the first time the connector is seen.
+   *
+   * @param connectorName the connector name
+   * @return the requests, errors, sent, received and proc_time series
+   */
+  private SeriesHandle[] getConnectorSeries(String connectorName) {
+    SeriesHandle[] series = connectorSeries.get(connectorName);
+    if (series == null) {
+      String statName = "stat.connector." + connectorName;
+      series = new SeriesHandle[] {
+        getHandle(statName + ".requests"),
+        getHandle(statName + ".errors"),
+        getHandle(statName + ".sent"),
+        getHandle(statName + ".received"),
+        getHandle(statName + ".proc_time")
+      };
+      connectorSeries.put(connectorName, series);
     }
+    return series;
   }
 
   /**
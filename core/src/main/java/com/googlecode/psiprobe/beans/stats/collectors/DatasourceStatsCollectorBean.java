@@ -18,6 +18,12 @@ import com.googlecode.psiprobe.model.DataSourceInfo;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * The Class DatasourceStatsCollectorBean.
  *
@@ -37,6 +43,10 @@ public class DatasourceStatsCollectorBean extends AbstractStatsCollectorBean {
   /** The container wrapper. */
   private ContainerWrapperBean containerWrapper;
 
+  /** The established and busy series of each datasource, by application and resource name. */
+  private final Map<String, Map<String, SeriesHandle[]>> datasourceSeries =
+      new HashMap<String, Map<String, SeriesHandle[]>>();
+
   /**
    * Gets the container wrapper.
    *
@@ -61,21 +71,75 @@ public class DatasourceStatsCollectorBean extends AbstractStatsCollectorBean {
     if (containerWrapper == null) {
       logger.error("Cannot collect data source stats. Container wrapper is not set.");
     } else {
+      Set<SeriesHandle[]> available = new HashSet<SeriesHandle[]>();
       for (ApplicationResource ds : getContainerWrapper().getDataSources()) {
-        String appName = ds.getApplicationName();
-        String name = (appName == null ? "" : appName) + "/" + ds.getName();
+        SeriesHandle[] series = getDatasourceSeries(ds.getApplicationName(), ds.getName());
+        available.add(series);
         DataSourceInfo dsi = ds.getDataSourceInfo();
         int numEstablished = dsi.getEstablishedConnections();
         int numBusy = dsi.getBusyConnections();
-        logger.trace("Collecting stats for datasource: " + name);
-        buildAbsoluteStats(PREFIX_ESTABLISHED + name, numEstablished, currentTime);
-        buildAbsoluteStats(PREFIX_BUSY + name, numBusy, currentTime);
+        if (logger.isTraceEnabled()) {
+          logger.trace("Collecting stats for datasource: "
+              + series[0].getName().substring(PREFIX_ESTABLISHED.length()));
+        }
+        buildAbsoluteStats(series[0], numEstablished, currentTime);
+        buildAbsoluteStats(series[1], numBusy, currentTime);
       }
+      releaseRemoved(available);
       logger.debug("datasource stats collected in " + (System.currentTimeMillis() - currentTime)
           + "ms");
     }
   }
 
+  /**
+   * Gets the series of a datasource, registering them the first time the datasource is seen.
+   *
+   * @param appName the application name, may be null
+   * @param resourceName the resource name
+   * @return the established and busy series
+   */
+  private SeriesHandle[] getDatasourceSeries(String appName, String resourceName) {
+    String app = appName == null ? "" : appName;
+    Map<String, SeriesHandle[]> appSeries = datasourceSeries.get(app);
+    if (appSeries == null) {
+      appSeries = new HashMap<String, SeriesHandle[]>();
+      datasourceSeries.put(app, appSeries);
+    }
+    SeriesHandle[] series = appSeries.get(resourceName);
+    if (series == null) {
+      String name = app + "/" + resourceName;
+      series = new SeriesHandle[] {
+        getHandle(PREFIX_ESTABLISHED + name),
+        getHandle(PREFIX_BUSY + name)
+      };
+      appSeries.put(resourceName, series);
+    }
+    return series;
+  }
+
+  /**
+   * Forgets the series handles of the datasources that have been removed, along with those of
+   * undeployed applications.
+   *
+   * @param available the series of the datasources found by the last run
+   */
+  private void releaseRemoved(Set<SeriesHandle[]> available) {
+    for (Iterator<Map<String, SeriesHandle[]>> apps = datasourceSeries.values().iterator();
+        apps.hasNext();) {
+      Map<String, SeriesHandle[]> appSeries = apps.next();
+      for (Iterator<SeriesHandle[]> it = appSeries.values().iterator(); it.hasNext();) {
+        SeriesHandle[] series = it.next();
+        if (!available.contains(series)) {
+          releaseHandles(series);
+          it.remove();
+        }
+      }
+      if (appSeries.isEmpty()) {
+        apps.remove();
+      }
+    }
+  }
+
   /**
    * Reset.
    *
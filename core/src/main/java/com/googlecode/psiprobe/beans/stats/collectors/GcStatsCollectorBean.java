@@ -0,0 +1,303 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.model.stats.QuantileSketch;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Collects garbage collection statistics from the platform {@link GarbageCollectorMXBean}s: the
+ * collection count and time of each collector, the share of time spent collecting, and, where the
+ * JVM sends garbage collection notifications, the pause durations and the allocation rate.
+ *
+ * <p>
+ * Pause durations are added to a histogram as the notifications arrive, and its median, 99th
+ * percentile and max are recorded at every collection, as 0 when nothing was collected in between.
+ * Concurrent collectors report the duration of their whole cycle, most of which the application
+ * keeps running through: these notifications are kept out of the pauses and recorded in the
+ * {@code gc.cycle.*} series instead, see {@link #isConcurrentCycle(String, String)}. The pauses of
+ * a concurrent collector are only recorded where the JVM reports them separately, as G1 young and
+ * mixed collections or the pause beans of ZGC and Shenandoah do.
+ * The allocation rate is the growth of the heap plus what the collections freed, over the time
+ * since the previous collection.
+ * </p>
+ */
+public class GcStatsCollectorBean extends AbstractStatsCollectorBean implements InitializingBean,
+    DisposableBean {
+
+  /** The logger. */
+  private final Log logger = LogFactory.getLog(GcStatsCollectorBean.class);
+
+  /** The garbage collectors. */
+  private final List<GarbageCollectorMXBean> collectors =
+      ManagementFactory.getGarbageCollectorMXBeans();
+
+  /** The memory MXBean. */
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+  /** The names of the heap pools. */
+  private final Set<String> heapPools = new HashSet<String>();
+
+  /** The collectors the pause listener is registered with. */
+  private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+
+  /** The pause listener, if notifications are available. */
+  private PauseListener pauseListener;
+
+  /** The pauses since the last collection, in milliseconds. */
+  private final QuantileSketch pauses = new QuantileSketch(0.02);
+
+  /** The longest pause since the last collection, in milliseconds. */
+  private long maxPause;
+
+  /** The concurrent cycles since the last collection, in milliseconds. Guarded by pauses. */
+  private final QuantileSketch cycles = new QuantileSketch(0.02);
+
+  /** The longest concurrent cycle since the last collection, in milliseconds. */
+  private long maxCycle;
+
+  /** The bytes freed since the last collection. */
+  private long freedBytes;
+
+  /** The heap used at the last collection. */
+  private long previousHeapUsed = -1;
+
+  /** The time of the last collection. */
+  private long previousTime;
+
+  /**
+   * Subscribes to the garbage collection notifications, if the JVM sends them.
+   *
+   * @throws Exception the exception
+   */
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool.getName());
+      }
+    }
+    pauseListener = PauseListener.create(this);
+    if (pauseListener == null) {
+      logger.info("Garbage collection notifications are not available, pauses are not recorded");
+      return;
+    }
+    for (GarbageCollectorMXBean collector : collectors) {
+      if (collector instanceof NotificationEmitter) {
+        NotificationEmitter emitter = (NotificationEmitter) collector;
+        emitter.addNotificationListener(pauseListener, pauseListener, null);
+        emitters.add(emitter);
+      }
+    }
+  }
+
+  /**
+   * Unsubscribes from the garbage collection notifications, so that the listener does not keep the
+   * web application loaded once it is stopped.
+   *
+   * @throws Exception the exception
+   */
+  @Override
+  public void destroy() throws Exception {
+    for (NotificationEmitter emitter : emitters) {
+      try {
+        emitter.removeNotificationListener(pauseListener, pauseListener, null);
+      } catch (Exception e) {
+        logger.debug("Could not remove the garbage collection listener", e);
+      }
+    }
+    emitters.clear();
+  }
+
+  @Override
+  public void collect() throws Exception {
+    long time = System.currentTimeMillis();
+    long totalTime = 0;
+    for (GarbageCollectorMXBean collector : collectors) {
+      long count = collector.getCollectionCount();
+      long collectionTime = collector.getCollectionTime();
+      if (count < 0 || collectionTime < 0) {
+        continue;
+      }
+      buildDeltaStats("gc.count." + collector.getName(), count, time);
+      buildDeltaStats("gc.time." + collector.getName(), collectionTime, time);
+      totalTime += collectionTime;
+    }
+    buildTimePercentageStats("gc.overhead", totalTime, time);
+
+    if (emitters.isEmpty()) {
+      return;
+    }
+    long heapUsed = memory.getHeapMemoryUsage().getUsed();
+    long median;
+    long p99;
+    long max;
+    long cycleMedian;
+    long cycleP99;
+    long cycleMax;
+    long freed;
+    synchronized (pauses) {
+      median = Math.round(pauses.getQuantile(0.5));
+      p99 = Math.round(pauses.getQuantile(0.99));
+      max = maxPause;
+      cycleMedian = Math.round(cycles.getQuantile(0.5));
+      cycleP99 = Math.round(cycles.getQuantile(0.99));
+      cycleMax = maxCycle;
+      freed = freedBytes;
+      pauses.clear();
+      maxPause = 0;
+      cycles.clear();
+      maxCycle = 0;
+      freedBytes = 0;
+    }
+    buildAbsoluteStats("gc.pause.median", median, time);
+    buildAbsoluteStats("gc.pause.p99", p99, time);
+    buildAbsoluteStats("gc.pause.max", max, time);
+    buildAbsoluteStats("gc.cycle.median", cycleMedian, time);
+    buildAbsoluteStats("gc.cycle.p99", cycleP99, time);
+    buildAbsoluteStats("gc.cycle.max", cycleMax, time);
+    if (previousHeapUsed >= 0 && time > previousTime) {
+      long allocated = Math.max(heapUsed - previousHeapUsed + freed, 0);
+      // KB per second
+      buildAbsoluteStats("gc.alloc", allocated * 1000 / 1024 / (time - previousTime), time);
+    }
+    previousHeapUsed = heapUsed;
+    previousTime = time;
+  }
+
+  /**
+   * Records a collection reported by a notification.
+   *
+   * @param gcName the name of the collector
+   * @param gcAction the action of the collector
+   * @param duration the duration in milliseconds
+   * @param before the memory usage of each pool before the collection
+   * @param after the memory usage of each pool after the collection
+   */
+  void recordCollection(String gcName, String gcAction, long duration,
+      Map<String, MemoryUsage> before, Map<String, MemoryUsage> after) {
+
+    long freed = 0;
+    for (Map.Entry<String, MemoryUsage> entry : before.entrySet()) {
+      MemoryUsage usage = after.get(entry.getKey());
+      if (usage != null && heapPools.contains(entry.getKey())) {
+        freed += entry.getValue().getUsed() - usage.getUsed();
+      }
+    }
+    boolean concurrent = isConcurrentCycle(gcName, gcAction);
+    synchronized (pauses) {
+      if (concurrent) {
+        cycles.add(duration);
+        maxCycle = Math.max(maxCycle, duration);
+      } else {
+        pauses.add(duration);
+        maxPause = Math.max(maxPause, duration);
+      }
+      freedBytes += Math.max(freed, 0);
+    }
+  }
+
+  /**
+   * Checks whether a notification reports a concurrent cycle rather than a pause: the collections
+   * of CMS and of ZGC before JDK 17, the cycle beans of ZGC and Shenandoah, and the concurrent
+   * cycles of G1 from JDK 20 on.
+   *
+   * @param gcName the name of the collector
+   * @param gcAction the action of the collector
+   * @return true, if the duration is that of a concurrent cycle
+   */
+  static boolean isConcurrentCycle(String gcName, String gcAction) {
+    if (gcAction != null && gcAction.toLowerCase(Locale.ENGLISH).contains("concurrent")) {
+      return true;
+    }
+    return gcName != null && (gcName.endsWith("Cycles") || "ConcurrentMarkSweep".equals(gcName)
+        || "ZGC".equals(gcName) || "G1 Concurrent GC".equals(gcName));
+  }
+
+  /**
+   * Passes the garbage collection notifications to the collector. The notification classes are
+   * HotSpot extensions, so they are only touched in here and the collector works without them.
+   */
+  private static final class PauseListener implements NotificationListener, NotificationFilter {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The collector. */
+    private final transient GcStatsCollectorBean collector;
+
+    /**
+     * Instantiates a new pause listener.
+     *
+     * @param collector the collector
+     */
+    private PauseListener(GcStatsCollectorBean collector) {
+      this.collector = collector;
+    }
+
+    /**
+     * Creates a listener, if the JVM has the notification classes.
+     *
+     * @param collector the collector
+     * @return the listener, or null
+     */
+    static PauseListener create(GcStatsCollectorBean collector) {
+      try {
+        Class.forName("com.sun.management.GarbageCollectionNotificationInfo");
+        return new PauseListener(collector);
+      } catch (ClassNotFoundException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public boolean isNotificationEnabled(Notification notification) {
+      return GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+          .equals(notification.getType());
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+      GarbageCollectionNotificationInfo info =
+          GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+      GcInfo gcInfo = info.getGcInfo();
+      collector.recordCollection(info.getGcName(), info.getGcAction(), gcInfo.getDuration(),
+          gcInfo.getMemoryUsageBeforeGc(), gcInfo.getMemoryUsageAfterGc());
+    }
+  }
+
+}
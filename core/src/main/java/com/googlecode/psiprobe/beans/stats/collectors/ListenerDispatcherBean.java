@@ -0,0 +1,328 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.beans.stats.listeners.StatsCollectionEvent;
+import com.googlecode.psiprobe.beans.stats.listeners.StatsCollectionListener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the events of stats collectors to their listeners on a dedicated thread, so that a slow
+ * listener, such as one sending mail, does not delay collection.
+ *
+ * <p>
+ * Pending events are kept by series name, in the order their series were first queued. An event
+ * for a series that already has one pending replaces it: listeners then only see the latest value
+ * of a series they fell behind on. At most {@code capacity} series are pending at a time; events of
+ * other series are dropped until the listener thread catches up. Events are delivered one at a
+ * time, so listeners need not be thread safe, except for what collectors read from them.
+ * </p>
+ */
+public class ListenerDispatcherBean implements InitializingBean, DisposableBean {
+
+  /** The logger. */
+  private static final Log logger = LogFactory.getLog(ListenerDispatcherBean.class);
+
+  /** The maximum number of pending series. */
+  private int capacity = 1000;
+
+  /** The pending events, by series name. Guards all the counters below. */
+  private final Map<String, PendingEvent> pending = new LinkedHashMap<String, PendingEvent>();
+
+  /** Whether a drain task is scheduled or running. */
+  private boolean draining;
+
+  /** Whether events were dropped since the queue was last empty. */
+  private boolean overflowing;
+
+  /** The highest number of pending series so far. */
+  private int maxQueueDepth;
+
+  /** The number of events delivered. */
+  private long dispatchedCount;
+
+  /** The number of events replaced by a later event of their series. */
+  private long coalescedCount;
+
+  /** The number of events dropped because the queue was full. */
+  private long droppedCount;
+
+  /** The number of listener calls that failed. */
+  private long failedCount;
+
+  /** The listener thread. */
+  private ExecutorService executor;
+
+  /** Drains the pending events. */
+  private final Runnable drainTask = new Runnable() {
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+
+  /**
+   * Gets the capacity.
+   *
+   * @return the maximum number of pending series
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Sets the capacity.
+   *
+   * @param capacity the maximum number of pending series
+   */
+  public void setCapacity(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Queues an event for the listeners of a collector.
+   *
+   * @param listeners the listeners
+   * @param event the event
+   */
+  public void dispatch(List<StatsCollectionListener> listeners, StatsCollectionEvent event) {
+    boolean schedule;
+    synchronized (pending) {
+      PendingEvent previous = pending.get(event.getName());
+      if (previous != null) {
+        previous.listeners = listeners;
+        previous.event = event;
+        coalescedCount++;
+        return;
+      }
+      if (pending.size() >= capacity) {
+        droppedCount++;
+        if (!overflowing) {
+          overflowing = true;
+          logger.warn("Listener queue is full (" + capacity + " series), dropping events");
+        }
+        return;
+      }
+      pending.put(event.getName(), new PendingEvent(listeners, event));
+      maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+      schedule = !draining;
+      draining = true;
+    }
+    if (schedule) {
+      schedule();
+    }
+  }
+
+  /**
+   * Schedules the drain task, or drains on the calling thread when the bean is not started, so that
+   * events are never left pending.
+   */
+  private void schedule() {
+    if (executor != null) {
+      try {
+        executor.execute(drainTask);
+        return;
+      } catch (RejectedExecutionException ex) {
+        logger.debug("Listener thread is shut down, dispatching inline", ex);
+      }
+    }
+    drain();
+  }
+
+  /**
+   * Delivers the pending events until there are none left. If a listener throws an error, the
+   * events still pending are handed to a new drain task before the error propagates, so that the
+   * queue is never left without one.
+   */
+  void drain() {
+    boolean drained = false;
+    try {
+      while (true) {
+        PendingEvent next;
+        synchronized (pending) {
+          Iterator<PendingEvent> it = pending.values().iterator();
+          if (!it.hasNext()) {
+            draining = false;
+            overflowing = false;
+            drained = true;
+            return;
+          }
+          next = it.next();
+          it.remove();
+        }
+        deliver(next);
+      }
+    } finally {
+      if (!drained) {
+        boolean reschedule;
+        synchronized (pending) {
+          draining = !pending.isEmpty();
+          reschedule = draining;
+        }
+        if (reschedule) {
+          schedule();
+        }
+      }
+    }
+  }
+
+  /**
+   * Delivers an event to the enabled listeners, isolating them from each other's failures. Errors
+   * are counted and propagated once the event is delivered to the other listeners.
+   *
+   * @param pendingEvent the event and its listeners
+   */
+  private void deliver(PendingEvent pendingEvent) {
+    int failures = 0;
+    Error error = null;
+    for (StatsCollectionListener listener : pendingEvent.listeners) {
+      try {
+        if (listener.isEnabled()) {
+          listener.statsCollected(pendingEvent.event);
+        }
+      } catch (RuntimeException ex) {
+        failures++;
+        logger.error("Listener " + listener + " failed on " + pendingEvent.event.getName(), ex);
+      } catch (Error err) {
+        failures++;
+        logger.error("Listener " + listener + " failed on " + pendingEvent.event.getName(), err);
+        if (error == null) {
+          error = err;
+        }
+      }
+    }
+    synchronized (pending) {
+      dispatchedCount++;
+      failedCount += failures;
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Gets the queue depth.
+   *
+   * @return the number of series with a pending event
+   */
+  public int getQueueDepth() {
+    synchronized (pending) {
+      return pending.size();
+    }
+  }
+
+  /**
+   * Gets the max queue depth.
+   *
+   * @return the highest number of series pending at a time so far
+   */
+  public int getMaxQueueDepth() {
+    synchronized (pending) {
+      return maxQueueDepth;
+    }
+  }
+
+  /**
+   * Gets the dispatched count.
+   *
+   * @return the number of events delivered
+   */
+  public long getDispatchedCount() {
+    synchronized (pending) {
+      return dispatchedCount;
+    }
+  }
+
+  /**
+   * Gets the coalesced count.
+   *
+   * @return the number of events replaced by a later event of their series
+   */
+  public long getCoalescedCount() {
+    synchronized (pending) {
+      return coalescedCount;
+    }
+  }
+
+  /**
+   * Gets the dropped count.
+   *
+   * @return the number of events dropped because the queue was full
+   */
+  public long getDroppedCount() {
+    synchronized (pending) {
+      return droppedCount;
+    }
+  }
+
+  /**
+   * Gets the failed count.
+   *
+   * @return the number of listener calls that threw an exception
+   */
+  public long getFailedCount() {
+    synchronized (pending) {
+      return failedCount;
+    }
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    CustomizableThreadFactory factory = new CustomizableThreadFactory("psi-probe-listener-");
+    factory.setDaemon(true);
+    executor = Executors.newSingleThreadExecutor(factory);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    executor.shutdownNow();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * An event waiting for delivery, with the listeners of its collector.
+   */
+  private static class PendingEvent {
+
+    /** The listeners. */
+    private List<StatsCollectionListener> listeners;
+
+    /** The event. */
+    private StatsCollectionEvent event;
+
+    /**
+     * Instantiates a new pending event.
+     *
+     * @param listeners the listeners
+     * @param event the event
+     */
+    PendingEvent(List<StatsCollectionListener> listeners, StatsCollectionEvent event) {
+      this.listeners = listeners;
+      this.event = event;
+    }
+  }
+
+}
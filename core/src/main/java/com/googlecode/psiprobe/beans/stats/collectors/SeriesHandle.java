@@ -0,0 +1,60 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.model.stats.SeriesKey;
+
+/**
+ * A series registered by a collector through {@link AbstractStatsCollectorBean#getHandle(String)}.
+ * Besides the key of the series, it holds the previous raw value the collector needs to build
+ * delta and time percentage stats, and the last value recorded, so that no per-sample map lookups
+ * are needed.
+ */
+public final class SeriesHandle {
+
+  /** The key, looked up again if the series is removed while the handle is held. */
+  SeriesKey key;
+
+  /** The previous raw value. */
+  long previousValue;
+
+  /** The time of the previous raw value. */
+  long previousTime;
+
+  /** Whether a previous raw value has been recorded. */
+  boolean hasPrevious;
+
+  /** The last value recorded, for adaptive sampling. */
+  double lastSample;
+
+  /** Whether a value has been recorded. */
+  boolean hasSample;
+
+  /**
+   * Instantiates a new series handle.
+   *
+   * @param key the key
+   */
+  SeriesHandle(SeriesKey key) {
+    this.key = key;
+  }
+
+  /**
+   * Gets the series name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return key.getName();
+  }
+
+}
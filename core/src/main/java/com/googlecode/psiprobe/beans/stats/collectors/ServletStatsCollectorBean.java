@@ -0,0 +1,360 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.TomcatContainer;
+import com.googlecode.psiprobe.beans.ContainerWrapperBean;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.apache.catalina.core.StandardWrapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the request count, error count and average processing time of individual servlets, so
+ * that the servlet behind a latency regression of an application can be told apart.
+ *
+ * <p>
+ * Large applications have many servlets, so series are only recorded for the busiest ones: each
+ * collection ranks the servlets of an application by the processing time they added, and the
+ * {@code top} ones are tracked. A tracked servlet keeps its series until it has been out of the top
+ * for {@code releaseAfter} collections, so that its history does not break up whenever the ranking
+ * shifts a little. No more than {@code maxServlets} servlets are tracked in all.
+ * </p>
+ *
+ * <p>
+ * Series are named {@code servlet.requests.<app>:<servlet>},
+ * {@code servlet.errors.<app>:<servlet>}, {@code servlet.proc_time.<app>:<servlet>} and
+ * {@code servlet.avg_proc_time.<app>:<servlet>}. The processing time is the total spent serving
+ * the requests of the period, which the average is derived from; unlike the average, it adds up
+ * across periods when the series is rolled up.
+ * </p>
+ */
+public class ServletStatsCollectorBean extends AbstractStatsCollectorBean {
+
+  /** The logger. */
+  private final Log logger = LogFactory.getLog(ServletStatsCollectorBean.class);
+
+  /** The container wrapper. */
+  private ContainerWrapperBean containerWrapper;
+
+  /** The number of servlets tracked per application. */
+  private int top = 5;
+
+  /** The number of servlets tracked in all. */
+  private int maxServlets = 100;
+
+  /** The number of collections a servlet stays tracked once out of the top. */
+  private int releaseAfter = 10;
+
+  /** The servlets seen, by application name and servlet name. */
+  private final Map<String, ServletSeries> servlets = new HashMap<String, ServletSeries>();
+
+  /** The number of servlets tracked. */
+  private int tracked;
+
+  /**
+   * Gets the container wrapper.
+   *
+   * @return the container wrapper
+   */
+  public ContainerWrapperBean getContainerWrapper() {
+    return containerWrapper;
+  }
+
+  /**
+   * Sets the container wrapper.
+   *
+   * @param containerWrapper the new container wrapper
+   */
+  public void setContainerWrapper(ContainerWrapperBean containerWrapper) {
+    this.containerWrapper = containerWrapper;
+  }
+
+  /**
+   * Gets the top.
+   *
+   * @return the top
+   */
+  public int getTop() {
+    return top;
+  }
+
+  /**
+   * Sets the number of servlets tracked per application.
+   *
+   * @param top the new top
+   */
+  public void setTop(int top) {
+    this.top = top;
+  }
+
+  /**
+   * Gets the max servlets.
+   *
+   * @return the max servlets
+   */
+  public int getMaxServlets() {
+    return maxServlets;
+  }
+
+  /**
+   * Sets the number of servlets tracked in all applications together.
+   *
+   * @param maxServlets the new max servlets
+   */
+  public void setMaxServlets(int maxServlets) {
+    this.maxServlets = maxServlets;
+  }
+
+  /**
+   * Gets the release after.
+   *
+   * @return the release after
+   */
+  public int getReleaseAfter() {
+    return releaseAfter;
+  }
+
+  /**
+   * Sets the number of collections a servlet stays tracked once it is out of the top.
+   *
+   * @param releaseAfter the new release after
+   */
+  public void setReleaseAfter(int releaseAfter) {
+    this.releaseAfter = releaseAfter;
+  }
+
+  @Override
+  public void collect() throws Exception {
+    if (containerWrapper == null) {
+      logger.error("Cannot collect servlet stats. Container wrapper is not set.");
+      return;
+    }
+    TomcatContainer tomcatContainer = containerWrapper.getTomcatContainer();
+    if (tomcatContainer == null) {
+      return;
+    }
+    Map<String, Container[]> apps = new HashMap<String, Container[]>();
+    for (Context ctx : tomcatContainer.findContexts()) {
+      if (ctx != null && ctx.getName() != null) {
+        apps.put("".equals(ctx.getName()) ? "/" : ctx.getName(), ctx.findChildren());
+      }
+    }
+    collect(apps, System.currentTimeMillis());
+  }
+
+  /**
+   * Collects the servlet stats of applications.
+   *
+   * @param apps the children of the context of each application, by application name
+   * @param time the time
+   */
+  void collect(Map<String, Container[]> apps, long time) {
+    Set<ServletSeries> deployed = new HashSet<ServletSeries>();
+    for (Map.Entry<String, Container[]> app : apps.entrySet()) {
+      List<ServletSeries> ranking = new ArrayList<ServletSeries>();
+      for (Container container : app.getValue()) {
+        if (container instanceof StandardWrapper) {
+          ServletSeries series = read(app.getKey(), (StandardWrapper) container);
+          deployed.add(series);
+          if (series.procTimeDelta > 0 || series.isTracked()) {
+            ranking.add(series);
+          }
+        }
+      }
+      record(ranking, time);
+    }
+    releaseUndeployed(deployed);
+  }
+
+  /**
+   * Reads the counters of a servlet and works out what it did since the last collection.
+   *
+   * @param appName the application name
+   * @param wrapper the wrapper of the servlet
+   * @return the series of the servlet
+   */
+  private ServletSeries read(String appName, StandardWrapper wrapper) {
+    String name = appName + ":" + wrapper.getName();
+    ServletSeries series = servlets.get(name);
+    if (series == null) {
+      series = new ServletSeries(name);
+      servlets.put(name, series);
+    }
+    series.requests = wrapper.getRequestCount();
+    series.errors = wrapper.getErrorCount();
+    long procTime = wrapper.getProcessingTime();
+    series.procTimeDelta = series.seen ? Math.max(procTime - series.procTime, 0) : 0;
+    series.procTime = procTime;
+    series.seen = true;
+    return series;
+  }
+
+  /**
+   * Records the series of the busiest servlets of an application.
+   *
+   * @param ranking the servlets that did some work or are tracked
+   * @param time the time
+   */
+  private void record(List<ServletSeries> ranking, long time) {
+    Collections.sort(ranking, new Comparator<ServletSeries>() {
+      @Override
+      public int compare(ServletSeries series1, ServletSeries series2) {
+        long delta1 = series1.procTimeDelta;
+        long delta2 = series2.procTimeDelta;
+        return delta1 > delta2 ? -1 : (delta1 == delta2 ? 0 : 1);
+      }
+    });
+    for (int i = 0; i < ranking.size(); i++) {
+      ServletSeries series = ranking.get(i);
+      boolean inTop = i < top && series.procTimeDelta > 0;
+      if (inTop) {
+        series.missed = 0;
+      } else if (++series.missed > releaseAfter && series.isTracked()) {
+        release(series);
+        continue;
+      }
+      if (!series.isTracked()) {
+        if (!inTop || tracked >= maxServlets) {
+          continue;
+        }
+        track(series);
+      }
+      long reqDelta = buildDeltaStats(series.requestsHandle, series.requests, time);
+      buildDeltaStats(series.errorsHandle, series.errors, time);
+      long procTimeDelta = buildDeltaStats(series.procTimeHandle, series.procTime, time);
+      buildAbsoluteStats(series.avgProcTimeHandle, reqDelta == 0 ? 0 : procTimeDelta / reqDelta,
+          time);
+    }
+  }
+
+  /**
+   * Starts recording the series of a servlet.
+   *
+   * @param series the series of the servlet
+   */
+  private void track(ServletSeries series) {
+    series.requestsHandle = getHandle("servlet.requests." + series.name);
+    series.errorsHandle = getHandle("servlet.errors." + series.name);
+    series.procTimeHandle = getHandle("servlet.proc_time." + series.name);
+    series.avgProcTimeHandle = getHandle("servlet.avg_proc_time." + series.name);
+    // start the deltas from the previous collection, so the first value is not the whole history
+    series.requestsHandle.previousValue = series.requests;
+    series.errorsHandle.previousValue = series.errors;
+    series.procTimeHandle.previousValue = series.procTime - series.procTimeDelta;
+    series.missed = 0;
+    tracked++;
+  }
+
+  /**
+   * Stops recording the series of a servlet. The series are kept until the stats collection removes
+   * them as idle.
+   *
+   * @param series the series of the servlet
+   */
+  private void release(ServletSeries series) {
+    releaseHandles(series.requestsHandle, series.errorsHandle, series.procTimeHandle,
+        series.avgProcTimeHandle);
+    series.requestsHandle = null;
+    series.errorsHandle = null;
+    series.procTimeHandle = null;
+    series.avgProcTimeHandle = null;
+    tracked--;
+  }
+
+  /**
+   * Forgets the servlets that are no longer deployed.
+   *
+   * @param deployed the series of the deployed servlets
+   */
+  private void releaseUndeployed(Set<ServletSeries> deployed) {
+    for (Iterator<ServletSeries> it = servlets.values().iterator(); it.hasNext();) {
+      ServletSeries series = it.next();
+      if (!deployed.contains(series)) {
+        if (series.isTracked()) {
+          release(series);
+        }
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * The counters and, while it is tracked, the series of a servlet.
+   */
+  private static class ServletSeries {
+
+    /** The application and servlet name. */
+    final String name;
+
+    /** Whether the counters have been read before. */
+    boolean seen;
+
+    /** The request count. */
+    long requests;
+
+    /** The error count. */
+    long errors;
+
+    /** The processing time. */
+    long procTime;
+
+    /** The processing time added since the last collection. */
+    long procTimeDelta;
+
+    /** The number of collections the servlet has been out of the top. */
+    int missed;
+
+    /** The requests, null while the servlet is not tracked. */
+    SeriesHandle requestsHandle;
+
+    /** The errors. */
+    SeriesHandle errorsHandle;
+
+    /** The processing time. */
+    SeriesHandle procTimeHandle;
+
+    /** The average processing time. */
+    SeriesHandle avgProcTimeHandle;
+
+    /**
+     * Instantiates a new servlet series.
+     *
+     * @param name the application and servlet name
+     */
+    ServletSeries(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Checks if the servlet is tracked.
+     *
+     * @return true, if its series are recorded
+     */
+    boolean isTracked() {
+      return requestsHandle != null;
+    }
+  }
+
+}
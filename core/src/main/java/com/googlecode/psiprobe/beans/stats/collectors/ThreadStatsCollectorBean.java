@@ -0,0 +1,566 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.beans.ContainerWrapperBean;
+import com.googlecode.psiprobe.model.java.HotThread;
+import com.googlecode.psiprobe.tools.TimeExpression;
+
+import org.apache.catalina.Context;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples the CPU time and, where the JVM counts them, the allocated bytes of every thread, so that
+ * the threads burning CPU or allocating the most over the last minutes can be listed along with
+ * their pool and application. Threads are mapped to applications through their context
+ * classloader, as {@link com.googlecode.psiprobe.controllers.threads.ListThreadsController} does.
+ *
+ * <p>
+ * Each sample keeps the deltas of at most {@code retained} threads, those with the highest CPU time
+ * and those with the most allocations, and samples are dropped once they are older than the longest
+ * window. Memory use is therefore bounded, while a thread that was among the busiest of a sample is
+ * counted in every window covering it.
+ * </p>
+ *
+ * <p>
+ * The collector records no series; it keeps its rankings for the threads page.
+ * </p>
+ */
+public class ThreadStatsCollectorBean extends AbstractStatsCollectorBean {
+
+  /** The logger. */
+  private final Log logger = LogFactory.getLog(ThreadStatsCollectorBean.class);
+
+  /** The thread MXBean. */
+  private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+  /** Whether the bulk reads of the HotSpot thread MXBean can be used. */
+  private volatile boolean bulkAccess = SunThreads.supports(threadBean);
+
+  /** The container wrapper. */
+  private ContainerWrapperBean containerWrapper;
+
+  /** The number of threads listed in a ranking. */
+  private int top = 10;
+
+  /** The number of threads kept in each sample. */
+  private int retained = 50;
+
+  /** The windows rankings are computed over. */
+  private List<String> windows = Arrays.asList("1m", "5m", "15m");
+
+  /** The windows in milliseconds. */
+  private long[] windowMillis = {60000, 300000, 900000};
+
+  /** The CPU time and allocated bytes of each thread at the last sample, by thread id. */
+  private Map<Long, long[]> previous = new HashMap<Long, long[]>();
+
+  /** The time of the last sample. */
+  private long previousTime;
+
+  /** The samples, oldest first. */
+  private final LinkedList<Sample> samples = new LinkedList<Sample>();
+
+  /**
+   * Gets the container wrapper.
+   *
+   * @return the container wrapper
+   */
+  public ContainerWrapperBean getContainerWrapper() {
+    return containerWrapper;
+  }
+
+  /**
+   * Sets the container wrapper.
+   *
+   * @param containerWrapper the new container wrapper
+   */
+  public void setContainerWrapper(ContainerWrapperBean containerWrapper) {
+    this.containerWrapper = containerWrapper;
+  }
+
+  /**
+   * Gets the top.
+   *
+   * @return the top
+   */
+  public int getTop() {
+    return top;
+  }
+
+  /**
+   * Sets the number of threads listed in a ranking.
+   *
+   * @param top the new top
+   */
+  public void setTop(int top) {
+    this.top = top;
+  }
+
+  /**
+   * Gets the retained.
+   *
+   * @return the retained
+   */
+  public int getRetained() {
+    return retained;
+  }
+
+  /**
+   * Sets the number of threads kept in each sample, for the CPU time and for allocations each.
+   *
+   * @param retained the new retained
+   */
+  public void setRetained(int retained) {
+    this.retained = retained;
+  }
+
+  /**
+   * Gets the windows.
+   *
+   * @return the windows
+   */
+  public List<String> getWindows() {
+    return windows;
+  }
+
+  /**
+   * Sets the windows rankings are computed over, in {@link TimeExpression} notation.
+   *
+   * @param windows the new windows, at least one
+   */
+  public void setWindows(List<String> windows) {
+    if (windows == null || windows.isEmpty()) {
+      throw new IllegalArgumentException("At least one window is required");
+    }
+    long[] millis = new long[windows.size()];
+    for (int i = 0; i < millis.length; i++) {
+      millis[i] = TimeExpression.inSeconds(windows.get(i)) * 1000;
+    }
+    this.windowMillis = millis;
+    this.windows = windows;
+  }
+
+  /**
+   * Checks if allocated bytes are sampled.
+   *
+   * @return true, if the JVM counts the bytes allocated by each thread
+   */
+  public boolean isAllocationSampled() {
+    try {
+      return bulkAccess && SunThreads.isAllocationEnabled(threadBean);
+    } catch (LinkageError e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void collect() throws Exception {
+    if (!threadBean.isThreadCpuTimeSupported() || !threadBean.isThreadCpuTimeEnabled()) {
+      return;
+    }
+    long time = System.currentTimeMillis();
+    Thread[] threads = enumerateThreads();
+    long[] ids = new long[threads.length];
+    for (int i = 0; i < threads.length; i++) {
+      ids[i] = threads[i].getId();
+    }
+    long[] cpuTimes = null;
+    long[] allocated = null;
+    if (bulkAccess) {
+      try {
+        cpuTimes = SunThreads.getCpuTimes(threadBean, ids);
+        if (SunThreads.isAllocationEnabled(threadBean)) {
+          allocated = SunThreads.getAllocatedBytes(threadBean, ids);
+        }
+      } catch (LinkageError e) {
+        logger.debug("Bulk thread reads are not available", e);
+        bulkAccess = false;
+      }
+    }
+    if (cpuTimes == null) {
+      cpuTimes = new long[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+        cpuTimes[i] = threadBean.getThreadCpuTime(ids[i]);
+      }
+    }
+
+    countCollected(ids.length);
+    Map<ClassLoader, String> apps = mapClassLoaders();
+    Map<Long, long[]> current = new HashMap<Long, long[]>(ids.length * 2);
+    List<ThreadDelta> deltas = new ArrayList<ThreadDelta>();
+    for (int i = 0; i < ids.length; i++) {
+      if (cpuTimes[i] < 0) {
+        // the thread has died since it was enumerated
+        continue;
+      }
+      long[] values = {cpuTimes[i], allocated != null ? Math.max(allocated[i], 0) : 0};
+      current.put(ids[i], values);
+      long[] last = previous.get(ids[i]);
+      if (last == null && previousTime > 0) {
+        // the thread started after the last sample, so all it did falls into this one
+        last = new long[2];
+      }
+      if (last != null) {
+        long cpuDelta = Math.max(values[0] - last[0], 0);
+        long allocatedDelta = Math.max(values[1] - last[1], 0);
+        if (cpuDelta > 0 || allocatedDelta > 0) {
+          deltas.add(new ThreadDelta(threads[i], apps, cpuDelta, allocatedDelta));
+        }
+      }
+    }
+    if (previousTime > 0 && time > previousTime) {
+      Sample sample = new Sample(time, time - previousTime, retain(deltas));
+      synchronized (samples) {
+        samples.addLast(sample);
+        long oldest = time - getLongestWindow();
+        while (!samples.isEmpty() && samples.getFirst().time <= oldest) {
+          samples.removeFirst();
+        }
+      }
+    }
+    previous = current;
+    previousTime = time;
+  }
+
+  /**
+   * Gets the threads that burnt the most CPU time over a window.
+   *
+   * @param window the index of the window
+   * @return the threads, the busiest first
+   */
+  public List<HotThread> getTopCpuThreads(int window) {
+    return rank(window, new Comparator<HotThread>() {
+      @Override
+      public int compare(HotThread thread1, HotThread thread2) {
+        return compareLongs(thread2.getCpuTime(), thread1.getCpuTime());
+      }
+    });
+  }
+
+  /**
+   * Gets the threads that allocated the most over a window.
+   *
+   * @param window the index of the window
+   * @return the threads, the one allocating the most first
+   */
+  public List<HotThread> getTopAllocatingThreads(int window) {
+    return rank(window, new Comparator<HotThread>() {
+      @Override
+      public int compare(HotThread thread1, HotThread thread2) {
+        return compareLongs(thread2.getAllocatedBytes(), thread1.getAllocatedBytes());
+      }
+    });
+  }
+
+  /**
+   * Sums the samples of a window by thread and ranks the threads.
+   *
+   * @param window the index of the window
+   * @param comparator the order of the ranking
+   * @return the top threads
+   */
+  private List<HotThread> rank(int window, Comparator<HotThread> comparator) {
+    if (window < 0 || window >= windowMillis.length) {
+      throw new IllegalArgumentException("No window " + window + " in " + windows);
+    }
+    long from = System.currentTimeMillis() - windowMillis[window];
+    Map<Long, HotThread> totals = new HashMap<Long, HotThread>();
+    long elapsed = 0;
+    synchronized (samples) {
+      for (Sample sample : samples) {
+        if (sample.time <= from) {
+          continue;
+        }
+        elapsed += sample.interval;
+        for (ThreadDelta delta : sample.deltas) {
+          HotThread thread = totals.get(delta.id);
+          if (thread == null) {
+            thread = new HotThread();
+            thread.setId(delta.id);
+            thread.setName(delta.name);
+            thread.setPoolName(delta.poolName);
+            thread.setAppName(delta.appName);
+            totals.put(delta.id, thread);
+          }
+          thread.setCpuTime(thread.getCpuTime() + delta.cpuTime);
+          thread.setAllocatedBytes(thread.getAllocatedBytes() + delta.allocatedBytes);
+        }
+      }
+    }
+    List<HotThread> ranking = new ArrayList<HotThread>(totals.values());
+    Collections.sort(ranking, comparator);
+    if (ranking.size() > top) {
+      ranking = new ArrayList<HotThread>(ranking.subList(0, top));
+    }
+    for (HotThread thread : ranking) {
+      // summed in nanoseconds, so that short bursts are not rounded away
+      long cpuNanos = thread.getCpuTime();
+      thread.setCpuTime(cpuNanos / 1000000);
+      if (elapsed > 0) {
+        thread.setCpuUsage(cpuNanos / 10000.0 / elapsed);
+        thread.setAllocationRate(thread.getAllocatedBytes() * 1000 / elapsed);
+      }
+    }
+    return ranking;
+  }
+
+  /**
+   * Keeps the deltas with the highest CPU time and those with the most allocations.
+   *
+   * @param deltas the deltas of a sample
+   * @return the retained deltas
+   */
+  private ThreadDelta[] retain(List<ThreadDelta> deltas) {
+    if (deltas.size() <= retained) {
+      return deltas.toArray(new ThreadDelta[deltas.size()]);
+    }
+    List<ThreadDelta> kept = new ArrayList<ThreadDelta>(retained * 2);
+    Collections.sort(deltas, new Comparator<ThreadDelta>() {
+      @Override
+      public int compare(ThreadDelta delta1, ThreadDelta delta2) {
+        return compareLongs(delta2.cpuTime, delta1.cpuTime);
+      }
+    });
+    kept.addAll(deltas.subList(0, retained));
+    List<ThreadDelta> rest = deltas.subList(retained, deltas.size());
+    Collections.sort(rest, new Comparator<ThreadDelta>() {
+      @Override
+      public int compare(ThreadDelta delta1, ThreadDelta delta2) {
+        return compareLongs(delta2.allocatedBytes, delta1.allocatedBytes);
+      }
+    });
+    // the deltas kept for their CPU time are left out of the allocation ranking
+    for (int i = 0; i < rest.size() && i < retained; i++) {
+      if (rest.get(i).allocatedBytes == 0) {
+        break;
+      }
+      kept.add(rest.get(i));
+    }
+    return kept.toArray(new ThreadDelta[kept.size()]);
+  }
+
+  /**
+   * Gets the longest window.
+   *
+   * @return the longest window in milliseconds
+   */
+  private long getLongestWindow() {
+    long longest = 0;
+    for (long window : windowMillis) {
+      longest = Math.max(longest, window);
+    }
+    return longest;
+  }
+
+  /**
+   * Maps the classloaders of the applications to their names.
+   *
+   * @return the application names, by classloader
+   */
+  private Map<ClassLoader, String> mapClassLoaders() {
+    Map<ClassLoader, String> apps = new IdentityHashMap<ClassLoader, String>();
+    if (containerWrapper != null && containerWrapper.getTomcatContainer() != null) {
+      for (Context context : containerWrapper.getTomcatContainer().findContexts()) {
+        if (context.getLoader() != null && context.getLoader().getClassLoader() != null) {
+          apps.put(context.getLoader().getClassLoader(), context.getName());
+        }
+      }
+    }
+    return apps;
+  }
+
+  /**
+   * Enumerates the live threads.
+   *
+   * @return the threads
+   */
+  private static Thread[] enumerateThreads() {
+    ThreadGroup masterGroup = Thread.currentThread().getThreadGroup();
+    while (masterGroup.getParent() != null) {
+      masterGroup = masterGroup.getParent();
+    }
+    Thread[] threads = new Thread[masterGroup.activeCount() + 16];
+    int count = masterGroup.enumerate(threads);
+    return count == threads.length ? threads : Arrays.copyOf(threads, count);
+  }
+
+  /**
+   * Gets the pool a thread belongs to, from its name without the trailing number, for example
+   * "http-nio-8080-exec" for "http-nio-8080-exec-12".
+   *
+   * @param name the thread name
+   * @return the pool name, or null if the name does not end with a number
+   */
+  static String toPoolName(String name) {
+    int end = name.length();
+    while (end > 0 && Character.isDigit(name.charAt(end - 1))) {
+      end--;
+    }
+    if (end == name.length() || end == 0) {
+      return null;
+    }
+    while (end > 0 && "-_#. ".indexOf(name.charAt(end - 1)) >= 0) {
+      end--;
+    }
+    return end > 0 ? name.substring(0, end) : null;
+  }
+
+  /**
+   * Compares two longs.
+   *
+   * @param value1 the first value
+   * @param value2 the second value
+   * @return the comparison
+   */
+  private static int compareLongs(long value1, long value2) {
+    return value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+  }
+
+  /**
+   * The deltas of the threads retained in a sample.
+   */
+  private static final class Sample {
+
+    /** The time of the sample. */
+    final long time;
+
+    /** The milliseconds since the previous sample. */
+    final long interval;
+
+    /** The deltas. */
+    final ThreadDelta[] deltas;
+
+    /**
+     * Instantiates a new sample.
+     *
+     * @param time the time
+     * @param interval the milliseconds since the previous sample
+     * @param deltas the deltas
+     */
+    Sample(long time, long interval, ThreadDelta[] deltas) {
+      this.time = time;
+      this.interval = interval;
+      this.deltas = deltas;
+    }
+  }
+
+  /**
+   * The CPU time and allocations of a thread between two samples.
+   */
+  private static final class ThreadDelta {
+
+    /** The thread id. */
+    final long id;
+
+    /** The thread name. */
+    final String name;
+
+    /** The pool name. */
+    final String poolName;
+
+    /** The app name. */
+    final String appName;
+
+    /** The CPU time in nanoseconds. */
+    final long cpuTime;
+
+    /** The allocated bytes. */
+    final long allocatedBytes;
+
+    /**
+     * Instantiates a new delta.
+     *
+     * @param thread the thread
+     * @param apps the application names, by classloader
+     * @param cpuTime the CPU time in nanoseconds
+     * @param allocatedBytes the allocated bytes
+     */
+    ThreadDelta(Thread thread, Map<ClassLoader, String> apps, long cpuTime, long allocatedBytes) {
+      this.id = thread.getId();
+      this.name = thread.getName();
+      this.poolName = toPoolName(name);
+      ClassLoader cl = thread.getContextClassLoader();
+      this.appName = cl == null ? null : apps.get(cl);
+      this.cpuTime = cpuTime;
+      this.allocatedBytes = allocatedBytes;
+    }
+  }
+
+  /**
+   * Bulk reads through the HotSpot extension of the thread MXBean, only touched in here so that the
+   * collector works without it.
+   */
+  private static final class SunThreads {
+
+    /**
+     * Checks if the extension is available.
+     *
+     * @param threadBean the thread MXBean
+     * @return true, if it implements the extension
+     */
+    static boolean supports(ThreadMXBean threadBean) {
+      try {
+        return threadBean instanceof com.sun.management.ThreadMXBean;
+      } catch (LinkageError e) {
+        return false;
+      }
+    }
+
+    /**
+     * Checks if the bytes allocated by each thread are counted.
+     *
+     * @param threadBean the thread MXBean
+     * @return true, if they are
+     */
+    static boolean isAllocationEnabled(ThreadMXBean threadBean) {
+      com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) threadBean;
+      return sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Gets the CPU times of threads.
+     *
+     * @param threadBean the thread MXBean
+     * @param ids the thread ids
+     * @return the CPU times in nanoseconds, -1 for dead threads
+     */
+    static long[] getCpuTimes(ThreadMXBean threadBean, long[] ids) {
+      return ((com.sun.management.ThreadMXBean) threadBean).getThreadCpuTime(ids);
+    }
+
+    /**
+     * Gets the bytes allocated by threads.
+     *
+     * @param threadBean the thread MXBean
+     * @param ids the thread ids
+     * @return the allocated bytes, -1 for dead threads
+     */
+    static long[] getAllocatedBytes(ThreadMXBean threadBean, long[] ids) {
+      return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(ids);
+    }
+  }
+
+}
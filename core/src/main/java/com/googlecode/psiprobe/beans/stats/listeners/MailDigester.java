@@ -0,0 +1,283 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.listeners;
+
+import com.googlecode.psiprobe.tools.MailMessage;
+import com.googlecode.psiprobe.tools.Mailer;
+import com.googlecode.psiprobe.tools.TimeExpression;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.MessageSource;
+import org.springframework.context.MessageSourceAware;
+import org.springframework.context.support.MessageSourceAccessor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+
+/**
+ * Gathers the notifications of listeners and mails them as one digest per window, rather than one
+ * mail per notification.
+ *
+ * <p>
+ * Notifications are kept by series. A notification replaces the one of its series still waiting,
+ * so that a digest only carries the latest state of each series. A series is mailed at most once
+ * per {@code minInterval}: its notification is held back in the meantime, and is still mailed once
+ * the interval is over unless a later one replaces it. Mails are sent from the thread of the
+ * digester, never from the thread of the listener.
+ * </p>
+ */
+public class MailDigester implements MessageSourceAware, InitializingBean, DisposableBean {
+
+  /** The Constant BASE_PROPERTY. */
+  private static final String BASE_PROPERTY = "probe.src.stats.listener.digest.";
+
+  /** The logger. */
+  private static final Log logger = LogFactory.getLog(MailDigester.class);
+
+  /** The mailer. */
+  private Mailer mailer;
+
+  /** The message source accessor. */
+  private MessageSourceAccessor messageSourceAccessor;
+
+  /** The window, in {@link TimeExpression} notation. */
+  private String window = "1m";
+
+  /** The window in milliseconds. */
+  private long windowMillis = 60000;
+
+  /** The minimum interval between two mails about a series, in {@link TimeExpression} notation. */
+  private String minInterval = "5m";
+
+  /** The minimum interval in milliseconds. */
+  private long minIntervalMillis = 300000;
+
+  /** The pending notifications, by series. */
+  private final Map<String, Notification> pending = new LinkedHashMap<String, Notification>();
+
+  /** The time each series was last mailed at, by series. Guarded by {@link #pending}. */
+  private final Map<String, Long> lastSent = new HashMap<String, Long>();
+
+  /** The scheduler flushing the digest every window. */
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * Gets the mailer.
+   *
+   * @return the mailer
+   */
+  public Mailer getMailer() {
+    return mailer;
+  }
+
+  /**
+   * Sets the mailer.
+   *
+   * @param mailer the new mailer
+   */
+  public void setMailer(Mailer mailer) {
+    this.mailer = mailer;
+  }
+
+  @Override
+  public void setMessageSource(MessageSource messageSource) {
+    this.messageSourceAccessor = new MessageSourceAccessor(messageSource);
+  }
+
+  /**
+   * Gets the window.
+   *
+   * @return the window
+   */
+  public String getWindow() {
+    return window;
+  }
+
+  /**
+   * Sets how long notifications are gathered before they are mailed, in {@link TimeExpression}
+   * notation.
+   *
+   * @param window the new window
+   */
+  public void setWindow(String window) {
+    this.windowMillis = TimeExpression.inSeconds(window) * 1000;
+    this.window = window;
+  }
+
+  /**
+   * Gets the min interval.
+   *
+   * @return the min interval
+   */
+  public String getMinInterval() {
+    return minInterval;
+  }
+
+  /**
+   * Sets the minimum interval between two mails about the same series, in {@link TimeExpression}
+   * notation.
+   *
+   * @param minInterval the new min interval
+   */
+  public void setMinInterval(String minInterval) {
+    this.minIntervalMillis = TimeExpression.inSeconds(minInterval) * 1000;
+    this.minInterval = minInterval;
+  }
+
+  /**
+   * Queues a notification for the next digest.
+   *
+   * @param series the series the notification is about
+   * @param subject the subject
+   * @param body the body
+   */
+  public void notify(String series, String subject, String body) {
+    synchronized (pending) {
+      Notification previous = pending.remove(series);
+      Notification notification = new Notification(subject, body);
+      if (previous != null) {
+        notification.superseded = previous.superseded + 1;
+      }
+      pending.put(series, notification);
+    }
+  }
+
+  /**
+   * Mails the pending notifications whose series were not mailed too recently.
+   *
+   * @param now the current time
+   * @return the number of notifications mailed
+   */
+  int flush(long now) {
+    List<Notification> due = new ArrayList<Notification>();
+    synchronized (pending) {
+      for (Iterator<Map.Entry<String, Notification>> it = pending.entrySet().iterator();
+          it.hasNext();) {
+        Map.Entry<String, Notification> entry = it.next();
+        Long sent = lastSent.get(entry.getKey());
+        if (sent == null || now - sent >= minIntervalMillis) {
+          due.add(entry.getValue());
+          lastSent.put(entry.getKey(), now);
+          it.remove();
+        }
+      }
+    }
+    if (due.isEmpty()) {
+      return 0;
+    }
+    try {
+      mailer.send(createDigest(due));
+    } catch (MessagingException ex) {
+      logger.error("Cannot send digest of " + due.size() + " notifications", ex);
+    }
+    return due.size();
+  }
+
+  /**
+   * Creates the mail for notifications, as is for a single one.
+   *
+   * @param notifications the notifications
+   * @return the mail message
+   */
+  private MailMessage createDigest(List<Notification> notifications) {
+    Notification first = notifications.get(0);
+    if (notifications.size() == 1) {
+      return new MailMessage(null, first.subject, bodyOf(first));
+    }
+    String subject = messageSourceAccessor.getMessage(BASE_PROPERTY + "subject",
+        new Object[] {first.subject, notifications.size() - 1});
+    StringBuilder body = new StringBuilder();
+    for (Notification notification : notifications) {
+      if (body.length() > 0) {
+        body.append("\n\n----------\n\n");
+      }
+      body.append(notification.subject).append("\n\n").append(bodyOf(notification));
+    }
+    return new MailMessage(null, subject, body.toString());
+  }
+
+  /**
+   * Gets the body of a notification, noting the notifications it replaced.
+   *
+   * @param notification the notification
+   * @return the body
+   */
+  private String bodyOf(Notification notification) {
+    if (notification.superseded == 0) {
+      return notification.body;
+    }
+    return notification.body + "\n\n" + messageSourceAccessor.getMessage(
+        BASE_PROPERTY + "superseded", new Object[] {notification.superseded});
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    CustomizableThreadFactory factory = new CustomizableThreadFactory("psi-probe-mail-");
+    factory.setDaemon(true);
+    scheduler = Executors.newSingleThreadScheduledExecutor(factory);
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flush(System.currentTimeMillis());
+        } catch (RuntimeException ex) {
+          logger.error("Cannot flush mail digest", ex);
+        }
+      }
+    }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * A notification waiting for the next digest.
+   */
+  private static class Notification {
+
+    /** The subject. */
+    private final String subject;
+
+    /** The body. */
+    private final String body;
+
+    /** The number of earlier notifications of the same series it replaced. */
+    private int superseded;
+
+    /**
+     * Instantiates a new notification.
+     *
+     * @param subject the subject
+     * @param body the body
+     */
+    Notification(String subject, String body) {
+      this.subject = subject;
+      this.body = body;
+    }
+  }
+
+}
@@ -44,6 +44,9 @@ public class MemoryPoolMailingListener extends FlapListener implements MessageSo
   /** The mailer. */
   private Mailer mailer;
 
+  /** The digester, or null to mail each notification on its own. */
+  private MailDigester digester;
+
   /**
    * Instantiates a new memory pool mailing listener.
    */
@@ -81,6 +84,24 @@ public class MemoryPoolMailingListener extends FlapListener implements MessageSo
     this.mailer = mailer;
   }
 
+  /**
+   * Gets the digester.
+   *
+   * @return the digester
+   */
+  public MailDigester getDigester() {
+    return digester;
+  }
+
+  /**
+   * Sets the digester. Once set, notifications are mailed in digests from its thread.
+   *
+   * @param digester the new digester
+   */
+  public void setDigester(MailDigester digester) {
+    this.digester = digester;
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
     if (getMailer().getSmtp() == null) {
@@ -145,6 +166,10 @@ public class MemoryPoolMailingListener extends FlapListener implements MessageSo
     String body =
         getMessageSourceAccessor().getMessage(BASE_PROPERTY + message + ".body",
             new Object[] {bodyPrefix, name, value, threshold});
+    if (digester != null) {
+      digester.notify(name, subject, body);
+      return;
+    }
     MailMessage mail = new MailMessage(null, subject, body);
     try {
       getMailer().send(mail);
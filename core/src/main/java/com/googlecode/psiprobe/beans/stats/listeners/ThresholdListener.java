@@ -14,7 +14,7 @@ package com.googlecode.psiprobe.beans.stats.listeners;
 import com.googlecode.psiprobe.Utils;
 import com.googlecode.psiprobe.tools.SizeExpression;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The listener interface for receiving threshold events.
@@ -35,11 +35,16 @@ public abstract class ThresholdListener extends AbstractStatsCollectionListener
   /** The Constant DEFAULT_VALUE. */
   public static final long DEFAULT_VALUE = Long.MIN_VALUE;
 
-  /** The previous values. */
-  private final HashMap<String, Long> previousValues = new HashMap<String, Long>();
+  /**
+   * The previous values. Concurrent, since collectors read them from their own thread through
+   * {@link #isAboveThreshold(String)} when events are dispatched asynchronously.
+   */
+  private final ConcurrentHashMap<String, Long> previousValues =
+      new ConcurrentHashMap<String, Long>();
   
   /** The series disabled. */
-  private final HashMap<String, Boolean> seriesDisabled = new HashMap<String, Boolean>();
+  private final ConcurrentHashMap<String, Boolean> seriesDisabled =
+      new ConcurrentHashMap<String, Boolean>();
 
   /**
    * Crossed above threshold.
@@ -98,6 +103,20 @@ public abstract class ThresholdListener extends AbstractStatsCollectionListener
     super.reset();
   }
 
+  /**
+   * Checks if the last value of a series was above its threshold.
+   *
+   * @param name the name
+   * @return true, if the series is enabled and its last value was above its threshold
+   */
+  public boolean isAboveThreshold(String name) {
+    if (isSeriesDisabled(name)) {
+      return false;
+    }
+    long previousValue = getPreviousValue(name);
+    return previousValue != DEFAULT_VALUE && previousValue > getThreshold(name);
+  }
+
   /**
    * Checks if is previous value above threshold.
    *
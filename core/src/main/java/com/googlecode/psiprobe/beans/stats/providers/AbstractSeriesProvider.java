@@ -11,12 +11,17 @@
 
 package com.googlecode.psiprobe.beans.stats.providers;
 
+import com.googlecode.psiprobe.model.stats.SeriesView;
+import com.googlecode.psiprobe.model.stats.StatsCollection;
+import com.googlecode.psiprobe.model.stats.StatsSeries;
+import com.googlecode.psiprobe.tools.TimeExpression;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.jfree.data.xy.XYDataItem;
 import org.jfree.data.xy.XYSeries;
+import org.springframework.web.bind.ServletRequestUtils;
 
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
 
 /**
  * The Class AbstractSeriesProvider.
@@ -36,14 +41,64 @@ public abstract class AbstractSeriesProvider implements SeriesProvider {
    * @param stats the stats
    * @return the XY series
    */
-  protected XYSeries toSeries(String legend, List<XYDataItem> stats) {
+  protected XYSeries toSeries(String legend, StatsSeries stats) {
     XYSeries xySeries = new XYSeries(legend, true, false);
     synchronized (stats) {
-      for (XYDataItem item : stats) {
-        xySeries.addOrUpdate(item.getX(), item.getY());
+      for (int i = 0; i < stats.size(); i++) {
+        xySeries.addOrUpdate(stats.getTime(i), stats.getValue(i));
       }
     }
     return xySeries;
   }
 
+  /**
+   * Converts the part of a series that falls into the time window requested by the "w" parameter,
+   * for example "1d". If the raw values of the series do not reach back far enough, the rollup that
+   * best fits the window is used instead. Without the parameter the whole raw series is converted.
+   * Series with more points than the chart is wide, as requested by the "xz" parameter, are
+   * downsampled to one point per pixel.
+   *
+   * @param legend the legend
+   * @param stats the stats
+   * @param request the request
+   * @return the XY series
+   */
+  protected XYSeries toSeries(String legend, StatsSeries stats, HttpServletRequest request) {
+    long window = getWindow(request);
+    long from = window <= 0 ? Long.MIN_VALUE : System.currentTimeMillis() - window;
+    int maxPoints = ServletRequestUtils.getIntParameter(request, "xz", 0);
+    return toSeries(legend, StatsCollection.query(stats, from, Long.MAX_VALUE, maxPoints));
+  }
+
+  /**
+   * To series.
+   *
+   * @param legend the legend
+   * @param view the result of a query
+   * @return the XY series
+   */
+  protected XYSeries toSeries(String legend, SeriesView view) {
+    XYSeries xySeries = new XYSeries(legend, true, false);
+    for (int i = 0; i < view.size(); i++) {
+      xySeries.addOrUpdate(view.getTime(i), view.getValue(i));
+    }
+    return xySeries;
+  }
+
+  /**
+   * Gets the time window requested by the "w" parameter.
+   *
+   * @param request the request
+   * @return the window in milliseconds, 0 if none was requested
+   */
+  protected long getWindow(HttpServletRequest request) {
+    String window = ServletRequestUtils.getStringParameter(request, "w", null);
+    try {
+      return TimeExpression.inSeconds(window) * 1000;
+    } catch (IllegalArgumentException e) {
+      logger.debug("Invalid chart window: " + window);
+      return 0;
+    }
+  }
+
 }
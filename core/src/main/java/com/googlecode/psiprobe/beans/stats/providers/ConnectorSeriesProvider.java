@@ -12,12 +12,11 @@
 package com.googlecode.psiprobe.beans.stats.providers;
 
 import com.googlecode.psiprobe.model.stats.StatsCollection;
+import com.googlecode.psiprobe.model.stats.StatsSeries;
 
 import org.jfree.data.xy.DefaultTableXYDataset;
-import org.jfree.data.xy.XYDataItem;
 import org.springframework.web.bind.ServletRequestUtils;
 
-import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -42,10 +41,10 @@ public class ConnectorSeriesProvider extends AbstractSeriesProvider {
     String series1Legend = ServletRequestUtils.getStringParameter(request, "sl", "");
 
     if (connectorName != null && statType != null) {
-      List<XYDataItem> stats =
+      StatsSeries stats =
           statsCollection.getStats("stat.connector." + connectorName + "." + statType);
       if (stats != null) {
-        dataset.addSeries(toSeries(series1Legend, stats));
+        dataset.addSeries(toSeries(series1Legend, stats, request));
       }
     }
   }
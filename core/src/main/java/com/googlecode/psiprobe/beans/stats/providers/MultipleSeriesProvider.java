@@ -12,15 +12,12 @@
 package com.googlecode.psiprobe.beans.stats.providers;
 
 import com.googlecode.psiprobe.model.stats.StatsCollection;
+import com.googlecode.psiprobe.model.stats.StatsSeries;
 
 import org.jfree.data.xy.DefaultTableXYDataset;
-import org.jfree.data.xy.XYDataItem;
+import org.springframework.web.bind.ServletRequestUtils;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-import java.util.ListIterator;
+import java.text.MessageFormat;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
@@ -28,8 +25,9 @@ import javax.servlet.http.HttpServletRequest;
 /**
  * Retrieves stats series with names that start with the statNamePrefix. Either all matching series
  * or only "top" N ones can be retrieved. Determines top series by comparing max moving avg values.
- * Derrives legend entries from series names by removing the statNamePrefix. Ignores series param
- * (sp) and legend (s...l) request parameters.
+ * Derrives legend entries from series names by removing the statNamePrefix. A {0} in the prefix is
+ * replaced with the series param (sp), for example to list the series of one application. Ignores
+ * legend (s...l) request parameters.
  *
  * @author Andy Shapoval
  */
@@ -94,7 +92,7 @@ public class MultipleSeriesProvider extends AbstractSeriesProvider {
    * Sets the moving avg frame.
    *
    * @param movingAvgFrame - if this value is greater than 0, a moving avg value is calculated for
-   *        every series using every Nth value, where N % movingAvgFrame == 0. Top series are
+   *        every series over the last movingAvgFrame values at each point. Top series are
    *        identified based on a max moving avg value of each series. If the movingAvgFrame equals
    *        to 0, top series are determined based on a simple avg of all series values.
    */
@@ -106,99 +104,22 @@ public class MultipleSeriesProvider extends AbstractSeriesProvider {
   public void populate(DefaultTableXYDataset dataset, StatsCollection statsCollection,
       HttpServletRequest request) {
 
-    Map<String, List<XYDataItem>> statMap = statsCollection.getStatsByPrefix(statNamePrefix);
-    boolean useTop = getTop() > 0 && getTop() < statMap.size();
-    List<Series> seriesList = new ArrayList<Series>();
-
-    for (Map.Entry<String, List<XYDataItem>> entry : statMap.entrySet()) {
-      Series ser = new Series(entry);
-      if (useTop) {
-        ser.calculateAvg();
-      }
-      seriesList.add(ser);
-    }
-
-    if (useTop) {
-      // sorting stats by the avg value to identify the top series
-      Collections.sort(seriesList, new Comparator<Series>() {
-        @Override
-        public int compare(Series s1, Series s2) {
-          return s1.avg == s2.avg ? s1.key.compareTo(s2.key) : (s1.avg > s2.avg ? -1 : 1);
-        }
-      });
-
-      // keeping only the top series in the list
-      for (ListIterator<Series> i = seriesList.listIterator(getTop()); i.hasNext();) {
-        i.next();
-        i.remove();
-      }
+    String prefix = statNamePrefix;
+    String seriesParam = ServletRequestUtils.getStringParameter(request, "sp", null);
+    if (seriesParam != null) {
+      prefix = MessageFormat.format(prefix, new Object[] {seriesParam});
     }
-
-    // sorting the remaining series by name
-    Collections.sort(seriesList, new Comparator<Series>() {
-      @Override
-      public int compare(Series s1, Series s2) {
-        return (s1.key).compareTo(s2.key);
-      }
-    });
-
-    for (Series ser : seriesList) {
-      dataset.addSeries(toSeries(ser.key, ser.stats));
+    Map<String, StatsSeries> statMap = statsCollection.getStatsByPrefix(prefix);
+    if (getTop() > 0 && getTop() < statMap.size()) {
+      // keeping only the top series
+      statMap.keySet().retainAll(
+          statsCollection.getTopStats(prefix, getTop(), getMovingAvgFrame()));
     }
-  }
-
-  /**
-   * The Class Series.
-   */
-  // a helper class that holds series and calculates an avg value
-  private class Series {
-    
-    /** The key. */
-    final String key;
-    
-    /** The stats. */
-    final List<XYDataItem> stats;
-    
-    /** The avg. */
-    double avg = 0;
-
-    /**
-     * Instantiates a new series.
-     *
-     * @param en the en
-     */
-    Series(Map.Entry<String, List<XYDataItem>> en) {
-      key = en.getKey().substring(statNamePrefix.length());
-      stats = en.getValue();
-    }
-
-    /**
-     * Calculate avg.
-     */
-    // calculating an avg value that is used for identifying the top series
-    void calculateAvg() {
-      long sum = 0;
-      int count = 1;
-
-      synchronized (stats) {
-        boolean useMovingAvg = getMovingAvgFrame() > 0 && getMovingAvgFrame() < stats.size();
-
-        for (ListIterator<XYDataItem> it = stats.listIterator(); it.hasNext();) {
-          XYDataItem xy = it.next();
-          sum += xy.getY().longValue();
 
-          if ((useMovingAvg && count % getMovingAvgFrame() == 0) || !it.hasNext()) {
-            double thisAvg = (double) sum / count;
-            if (thisAvg > avg) {
-              avg = thisAvg;
-            }
-            sum = 0;
-            count = 1;
-          } else {
-            count++;
-          }
-        }
-      }
+    // the map is sorted by name, so is the dataset
+    for (Map.Entry<String, StatsSeries> entry : statMap.entrySet()) {
+      String key = entry.getKey().substring(prefix.length());
+      dataset.addSeries(toSeries(key, entry.getValue(), request));
     }
   }
 }
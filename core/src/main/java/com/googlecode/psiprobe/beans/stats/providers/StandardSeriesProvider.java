@@ -12,9 +12,9 @@
 package com.googlecode.psiprobe.beans.stats.providers;
 
 import com.googlecode.psiprobe.model.stats.StatsCollection;
+import com.googlecode.psiprobe.model.stats.StatsSeries;
 
 import org.jfree.data.xy.DefaultTableXYDataset;
-import org.jfree.data.xy.XYDataItem;
 import org.springframework.web.bind.ServletRequestUtils;
 
 import java.text.MessageFormat;
@@ -61,11 +61,11 @@ public class StandardSeriesProvider extends AbstractSeriesProvider {
       if (seriesParam != null) {
         statName = MessageFormat.format(statName, new Object[] {seriesParam});
       }
-      List<XYDataItem> stats = statsCollection.getStats(statName);
+      StatsSeries stats = statsCollection.getStats(statName);
       if (stats != null) {
         String series =
             ServletRequestUtils.getStringParameter(request, "s" + (i + 1) + "l", "series" + i);
-        dataset.addSeries(toSeries(series, stats));
+        dataset.addSeries(toSeries(series, stats, request));
       }
     }
   }
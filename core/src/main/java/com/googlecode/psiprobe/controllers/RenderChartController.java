@@ -49,6 +49,7 @@ import javax.servlet.http.HttpServletResponse;
  * <li>yx - image height</li>
  * <li>l - show legend (boolean: true|false)</li>
  * <li>p - name of series provider bean</li>
+ * <li>w - time window to plot, for example 1d. Defaults to the raw series.</li>
  * </ul>
  * 
  * @author Vlad Ilyushchenko
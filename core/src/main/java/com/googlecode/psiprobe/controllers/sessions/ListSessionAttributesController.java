@@ -40,8 +40,8 @@ public class ListSessionAttributesController extends ContextHandlerController {
     String sid = ServletRequestUtils.getStringParameter(request, "sid");
 
     ApplicationSession appSession =
-        ApplicationUtils.getApplicationSession(context.getManager().findSession(sid), calcSize,
-            true);
+        ApplicationUtils.getApplicationSession(context.getManager().findSession(sid), context,
+            calcSize, true, getContainerWrapper());
 
     if (appSession != null) {
       appSession.setAllowedToViewValues(privileged);
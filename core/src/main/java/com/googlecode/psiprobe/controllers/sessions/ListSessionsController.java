@@ -104,7 +104,8 @@ public class ListSessionsController extends ContextHandlerController {
         Session[] sessions = ctx.getManager().findSessions();
         for (Session session : sessions) {
           ApplicationSession appSession =
-              ApplicationUtils.getApplicationSession(session, calcSize, searchInfo.isUseAttr());
+              ApplicationUtils.getApplicationSession(session, ctx, calcSize,
+                  searchInfo.isUseAttr(), getContainerWrapper());
           if (appSession != null && matchSession(appSession, searchInfo)) {
             if (ctx.getName() != null) {
               appSession.setApplicationName(ctx.getName().length() > 0 ? ctx.getName() : "/");
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.controllers.system;
+
+import com.googlecode.psiprobe.beans.stats.collectors.CollectorExecutorBean;
+import com.googlecode.psiprobe.beans.stats.collectors.CollectorStatus;
+import com.googlecode.psiprobe.beans.stats.collectors.ListenerDispatcherBean;
+
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.ParameterizableViewController;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Shows what the stats collectors of Probe cost: the status of their runs so far, and the series
+ * of their duration, lag, collected values and errors, along with the backlog of their listeners.
+ */
+public class ProbeOverheadController extends ParameterizableViewController {
+
+  /** The collector executor. */
+  private CollectorExecutorBean collectorExecutor;
+
+  /** The listener dispatcher. */
+  private ListenerDispatcherBean listenerDispatcher;
+
+  /** The collection period. */
+  private long collectionPeriod;
+
+  /**
+   * Gets the collector executor.
+   *
+   * @return the collector executor
+   */
+  public CollectorExecutorBean getCollectorExecutor() {
+    return collectorExecutor;
+  }
+
+  /**
+   * Sets the collector executor.
+   *
+   * @param collectorExecutor the new collector executor
+   */
+  public void setCollectorExecutor(CollectorExecutorBean collectorExecutor) {
+    this.collectorExecutor = collectorExecutor;
+  }
+
+  /**
+   * Gets the listener dispatcher.
+   *
+   * @return the listener dispatcher
+   */
+  public ListenerDispatcherBean getListenerDispatcher() {
+    return listenerDispatcher;
+  }
+
+  /**
+   * Sets the listener dispatcher.
+   *
+   * @param listenerDispatcher the new listener dispatcher
+   */
+  public void setListenerDispatcher(ListenerDispatcherBean listenerDispatcher) {
+    this.listenerDispatcher = listenerDispatcher;
+  }
+
+  /**
+   * Gets the collection period.
+   *
+   * @return the collection period
+   */
+  public long getCollectionPeriod() {
+    return collectionPeriod;
+  }
+
+  /**
+   * Sets the collection period.
+   *
+   * @param collectionPeriod the new collection period
+   */
+  public void setCollectionPeriod(long collectionPeriod) {
+    this.collectionPeriod = collectionPeriod;
+  }
+
+  @Override
+  protected ModelAndView handleRequestInternal(HttpServletRequest request,
+      HttpServletResponse response) throws Exception {
+
+    List<CollectorStatus> statuses = collectorExecutor.getStatuses();
+    Collections.sort(statuses, new Comparator<CollectorStatus>() {
+      @Override
+      public int compare(CollectorStatus status1, CollectorStatus status2) {
+        return String.valueOf(status1.getName()).compareTo(String.valueOf(status2.getName()));
+      }
+    });
+    ModelAndView mv = new ModelAndView(getViewName());
+    mv.addObject("collectors", statuses);
+    mv.addObject("listenerDispatcher", getListenerDispatcher());
+    mv.addObject("collectionPeriod", getCollectionPeriod());
+    return mv;
+  }
+
+}
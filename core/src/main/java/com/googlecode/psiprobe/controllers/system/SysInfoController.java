@@ -14,6 +14,7 @@ package com.googlecode.psiprobe.controllers.system;
 import com.googlecode.psiprobe.beans.RuntimeInfoAccessorBean;
 import com.googlecode.psiprobe.controllers.TomcatContainerController;
 import com.googlecode.psiprobe.model.SystemInformation;
+import com.googlecode.psiprobe.model.stats.StatsCollection;
 import com.googlecode.psiprobe.tools.SecurityUtils;
 
 import org.springframework.web.servlet.ModelAndView;
@@ -43,6 +44,9 @@ public class SysInfoController extends TomcatContainerController {
   /** The collection period. */
   private long collectionPeriod;
 
+  /** The stats collection, whose footprint is shown if set. */
+  private StatsCollection statsCollection;
+
   /**
    * Gets the filter out keys.
    *
@@ -97,6 +101,24 @@ public class SysInfoController extends TomcatContainerController {
     this.collectionPeriod = collectionPeriod;
   }
 
+  /**
+   * Gets the stats collection.
+   *
+   * @return the stats collection
+   */
+  public StatsCollection getStatsCollection() {
+    return statsCollection;
+  }
+
+  /**
+   * Sets the stats collection.
+   *
+   * @param statsCollection the new stats collection
+   */
+  public void setStatsCollection(StatsCollection statsCollection) {
+    this.statsCollection = statsCollection;
+  }
+
   @Override
   protected ModelAndView handleRequestInternal(HttpServletRequest request,
       HttpServletResponse response) throws Exception {
@@ -124,6 +146,11 @@ public class SysInfoController extends TomcatContainerController {
     mv.addObject("systemInformation", systemInformation);
     mv.addObject("runtime", getRuntimeInfoAccessor().getRuntimeInformation());
     mv.addObject("collectionPeriod", getCollectionPeriod());
+    if (statsCollection != null) {
+      mv.addObject("statsSeriesCount", statsCollection.getSeriesCount());
+      mv.addObject("statsMemoryUsage", statsCollection.getMemoryUsage());
+      mv.addObject("statsMemoryBudget", statsCollection.getMemoryBudgetBytes());
+    }
     return mv;
   }
 
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.controllers.threads;
+
+import com.googlecode.psiprobe.beans.stats.collectors.ThreadStatsCollectorBean;
+
+import org.springframework.web.bind.ServletRequestUtils;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.ParameterizableViewController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Lists the threads that burnt the most CPU time and allocated the most over a window, as sampled
+ * by the {@link ThreadStatsCollectorBean}.
+ */
+public class HotThreadsController extends ParameterizableViewController {
+
+  /** The thread stats collector. */
+  private ThreadStatsCollectorBean threadStatsCollector;
+
+  /**
+   * Gets the thread stats collector.
+   *
+   * @return the thread stats collector
+   */
+  public ThreadStatsCollectorBean getThreadStatsCollector() {
+    return threadStatsCollector;
+  }
+
+  /**
+   * Sets the thread stats collector.
+   *
+   * @param threadStatsCollector the new thread stats collector
+   */
+  public void setThreadStatsCollector(ThreadStatsCollectorBean threadStatsCollector) {
+    this.threadStatsCollector = threadStatsCollector;
+  }
+
+  @Override
+  protected ModelAndView handleRequestInternal(HttpServletRequest request,
+      HttpServletResponse response) throws Exception {
+
+    int window = ServletRequestUtils.getIntParameter(request, "w", 0);
+    if (window < 0 || window >= threadStatsCollector.getWindows().size()) {
+      window = 0;
+    }
+    ModelAndView mv = new ModelAndView(getViewName());
+    mv.addObject("windows", threadStatsCollector.getWindows());
+    mv.addObject("window", window);
+    mv.addObject("cpuThreads", threadStatsCollector.getTopCpuThreads(window));
+    if (threadStatsCollector.isAllocationSampled()) {
+      mv.addObject("allocatingThreads", threadStatsCollector.getTopAllocatingThreads(window));
+    }
+    return mv;
+  }
+
+}
@@ -24,9 +24,6 @@ import java.util.Locale;
  */
 public class ApplicationSession {
 
-  /** The Constant LAST_ACCESSED_BY_IP. */
-  public static final String LAST_ACCESSED_BY_IP = "__psiprobe_la_ip";
-
   /** The id. */
   private String id;
   
@@ -0,0 +1,187 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.java;
+
+/**
+ * The CPU time and allocations of a thread over a window of recent samples.
+ */
+public class HotThread {
+
+  /** The thread id. */
+  private long id;
+
+  /** The name. */
+  private String name;
+
+  /** The name of the pool the thread belongs to, derived from its name. */
+  private String poolName;
+
+  /** The app name, from the context classloader of the thread. */
+  private String appName;
+
+  /** The CPU time in milliseconds. */
+  private long cpuTime;
+
+  /** The CPU usage, in percent of one processor. */
+  private double cpuUsage;
+
+  /** The allocated bytes. */
+  private long allocatedBytes;
+
+  /** The allocation rate in bytes per second. */
+  private long allocationRate;
+
+  /**
+   * Gets the id.
+   *
+   * @return the id
+   */
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Sets the id.
+   *
+   * @param id the new id
+   */
+  public void setId(long id) {
+    this.id = id;
+  }
+
+  /**
+   * Gets the name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Sets the name.
+   *
+   * @param name the new name
+   */
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Gets the pool name.
+   *
+   * @return the pool name
+   */
+  public String getPoolName() {
+    return poolName;
+  }
+
+  /**
+   * Sets the pool name.
+   *
+   * @param poolName the new pool name
+   */
+  public void setPoolName(String poolName) {
+    this.poolName = poolName;
+  }
+
+  /**
+   * Gets the app name.
+   *
+   * @return the app name
+   */
+  public String getAppName() {
+    return appName;
+  }
+
+  /**
+   * Sets the app name.
+   *
+   * @param appName the new app name
+   */
+  public void setAppName(String appName) {
+    this.appName = appName;
+  }
+
+  /**
+   * Gets the CPU time.
+   *
+   * @return the CPU time in milliseconds
+   */
+  public long getCpuTime() {
+    return cpuTime;
+  }
+
+  /**
+   * Sets the CPU time.
+   *
+   * @param cpuTime the new CPU time in milliseconds
+   */
+  public void setCpuTime(long cpuTime) {
+    this.cpuTime = cpuTime;
+  }
+
+  /**
+   * Gets the CPU usage.
+   *
+   * @return the CPU usage, in percent of one processor
+   */
+  public double getCpuUsage() {
+    return cpuUsage;
+  }
+
+  /**
+   * Sets the CPU usage.
+   *
+   * @param cpuUsage the new CPU usage, in percent of one processor
+   */
+  public void setCpuUsage(double cpuUsage) {
+    this.cpuUsage = cpuUsage;
+  }
+
+  /**
+   * Gets the allocated bytes.
+   *
+   * @return the allocated bytes
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Sets the allocated bytes.
+   *
+   * @param allocatedBytes the new allocated bytes
+   */
+  public void setAllocatedBytes(long allocatedBytes) {
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  /**
+   * Gets the allocation rate.
+   *
+   * @return the allocation rate in bytes per second
+   */
+  public long getAllocationRate() {
+    return allocationRate;
+  }
+
+  /**
+   * Sets the allocation rate.
+   *
+   * @param allocationRate the new allocation rate in bytes per second
+   */
+  public void setAllocationRate(long allocationRate) {
+    this.allocationRate = allocationRate;
+  }
+
+}
@@ -0,0 +1,451 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact binary layout of the stats swap file.
+ *
+ * <p>
+ * The file starts with a magic number and a format version, followed by a series directory (name
+ * and number of points of each series) and then by one data block per series, in directory order.
+ * A data block holds the timestamps as zigzag varint deltas, followed by the values. Series whose
+ * values are all integral, which is almost all of them, store the values as varint deltas as well;
+ * the others fall back to raw IEEE 754 doubles. Since version 2 the block ends with the rollups of
+ * the series.
+ * </p>
+ *
+ * <pre>
+ * int     magic ("PSIS")
+ * byte    version
+ * varint  series count
+ * [varint name length, UTF-8 name, varint point count] * series count
+ * [byte value encoding, varint time delta * points, value * points, rollups] * series count
+ *
+ * rollups:
+ * varint  rollup count
+ * [varint resolution, varint capacity, varint bucket count,
+ *     [varint time delta, varint count, double min, double max, double sum] * bucket count]
+ *     * rollup count
+ * </pre>
+ */
+public final class BinaryStatsFormat {
+
+  /** The magic number every binary swap file starts with. */
+  public static final int MAGIC = 0x50534953;
+
+  /** The current format version. */
+  public static final byte VERSION = 2;
+
+  /** The first format version with rollups. */
+  private static final byte VERSION_ROLLUPS = 2;
+
+  /** Values are stored as zigzag varint deltas. */
+  private static final byte VALUES_DELTA = 0;
+
+  /** Values are stored as raw doubles. */
+  private static final byte VALUES_RAW = 1;
+
+  /** Largest magnitude a double can have and still represent every integer exactly. */
+  private static final double MAX_EXACT = 9007199254740992d;
+
+  /** The size of the write buffer. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Prevent instantiation.
+   */
+  private BinaryStatsFormat() {
+  }
+
+  /**
+   * Writes the series to a file and forces it to disk. Each series is read under its own monitor,
+   * so callers wanting a point-in-time image should pass copies.
+   *
+   * @param data the series, keyed by name
+   * @param file the file
+   * @return the number of bytes written
+   * @throws IOException if the file cannot be written
+   */
+  public static long write(Map<String, StatsSeries> data, File file) throws IOException {
+    FileOutputStream fos = new FileOutputStream(file);
+    try {
+      Output out = new Output(fos.getChannel());
+      out.ensure(5);
+      out.buffer.putInt(MAGIC);
+      out.buffer.put(VERSION);
+      out.putVarLong(data.size());
+      for (Map.Entry<String, StatsSeries> en : data.entrySet()) {
+        out.putString(en.getKey());
+        out.putVarLong(en.getValue().size());
+      }
+      for (StatsSeries series : data.values()) {
+        writeSeries(out, series);
+      }
+      long written = out.flush();
+      fos.getChannel().force(false);
+      return written;
+    } finally {
+      fos.close();
+    }
+  }
+
+  /**
+   * Reads a file written by {@link #write(Map, File)}.
+   *
+   * @param file the file
+   * @return the series, keyed by name
+   * @throws IOException if the file cannot be read or is not a supported binary swap file
+   */
+  public static Map<String, StatsSeries> read(File file) throws IOException {
+    ByteBuffer in = readFully(file);
+    try {
+      if (in.remaining() < 5 || in.getInt() != MAGIC) {
+        throw new IOException(file.getAbsolutePath() + " is not a binary stats file");
+      }
+      byte version = in.get();
+      if (version < 1 || version > VERSION) {
+        throw new IOException("Unsupported stats file version " + version + " in "
+            + file.getAbsolutePath());
+      }
+      int count = (int) getVarLong(in);
+      String[] names = new String[count];
+      int[] sizes = new int[count];
+      for (int i = 0; i < count; i++) {
+        names[i] = getString(in);
+        sizes[i] = (int) getVarLong(in);
+      }
+      Map<String, StatsSeries> data = new TreeMap<String, StatsSeries>();
+      for (int i = 0; i < count; i++) {
+        data.put(names[i], readSeries(in, sizes[i], version));
+      }
+      return data;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated stats file " + file.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Checks whether a file starts with the binary swap file magic number.
+   *
+   * @param file the file
+   * @return true, if the file is a binary swap file
+   */
+  public static boolean isBinary(File file) {
+    try {
+      FileInputStream fis = new FileInputStream(file);
+      try {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        FileChannel channel = fis.getChannel();
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+          // keep reading
+        }
+        header.flip();
+        return header.remaining() == 4 && header.getInt() == MAGIC;
+      } finally {
+        fis.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes the data block of a series.
+   *
+   * @param out the output
+   * @param series the series
+   * @throws IOException if the block cannot be written
+   */
+  static void writeSeries(Output out, StatsSeries series) throws IOException {
+    synchronized (series) {
+      int size = series.size();
+      boolean integral = true;
+      for (int i = 0; i < size && integral; i++) {
+        double value = series.getValue(i);
+        integral = value == Math.rint(value) && Math.abs(value) < MAX_EXACT;
+      }
+      out.ensure(1);
+      out.buffer.put(integral ? VALUES_DELTA : VALUES_RAW);
+      long previous = 0;
+      for (int i = 0; i < size; i++) {
+        long time = series.getTime(i);
+        out.putVarLong(zigzag(time - previous));
+        previous = time;
+      }
+      previous = 0;
+      for (int i = 0; i < size; i++) {
+        if (integral) {
+          long value = (long) series.getValue(i);
+          out.putVarLong(zigzag(value - previous));
+          previous = value;
+        } else {
+          out.ensure(8);
+          out.buffer.putDouble(series.getValue(i));
+        }
+      }
+      out.putVarLong(series.getRollupCount());
+      for (int r = 0; r < series.getRollupCount(); r++) {
+        RollupSeries rollup = series.getRollup(r);
+        out.putVarLong(rollup.getResolution());
+        out.putVarLong(rollup.getCapacity());
+        out.putVarLong(rollup.size());
+        previous = 0;
+        for (int i = 0; i < rollup.size(); i++) {
+          long time = rollup.getTime(i);
+          out.putVarLong(zigzag(time - previous));
+          previous = time;
+          out.putVarLong(rollup.getCount(i));
+          out.ensure(24);
+          out.buffer.putDouble(rollup.getMin(i));
+          out.buffer.putDouble(rollup.getMax(i));
+          out.buffer.putDouble(rollup.getSum(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the data block of a series.
+   *
+   * @param in the input
+   * @param size the number of points
+   * @param version the format version
+   * @return the series
+   * @throws IOException if the block is malformed
+   */
+  static StatsSeries readSeries(ByteBuffer in, int size, int version) throws IOException {
+    byte encoding = in.get();
+    if (encoding != VALUES_DELTA && encoding != VALUES_RAW) {
+      throw new IOException("Unknown value encoding " + encoding);
+    }
+    long[] times = new long[size];
+    long previous = 0;
+    for (int i = 0; i < size; i++) {
+      previous += unzigzag(getVarLong(in));
+      times[i] = previous;
+    }
+    // leave room for the downtime markers added on startup
+    StatsSeries series = new StatsSeries(size + 2);
+    previous = 0;
+    for (int i = 0; i < size; i++) {
+      if (encoding == VALUES_DELTA) {
+        previous += unzigzag(getVarLong(in));
+        series.add(times[i], previous, false);
+      } else {
+        series.add(times[i], in.getDouble(), false);
+      }
+    }
+    if (version >= VERSION_ROLLUPS) {
+      int rollupCount = (int) getVarLong(in);
+      for (int r = 0; r < rollupCount; r++) {
+        RollupSeries rollup = new RollupSeries(getVarLong(in), (int) getVarLong(in));
+        int buckets = (int) getVarLong(in);
+        previous = 0;
+        for (int i = 0; i < buckets; i++) {
+          previous += unzigzag(getVarLong(in));
+          int count = (int) getVarLong(in);
+          rollup.addBucket(previous, in.getDouble(), in.getDouble(), in.getDouble(), count);
+        }
+        series.putRollup(rollup);
+      }
+    }
+    return series;
+  }
+
+  /**
+   * Reads a whole file into a buffer.
+   *
+   * @param file the file
+   * @return the buffer, ready for reading
+   * @throws IOException if the file cannot be read
+   */
+  private static ByteBuffer readFully(File file) throws IOException {
+    FileInputStream fis = new FileInputStream(file);
+    try {
+      FileChannel channel = fis.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException(file.getAbsolutePath() + " is too large");
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // keep reading
+      }
+      buffer.flip();
+      return buffer;
+    } finally {
+      fis.close();
+    }
+  }
+
+  /**
+   * Reads an unsigned varint.
+   *
+   * @param in the input
+   * @return the value
+   * @throws IOException if the varint is longer than 10 bytes
+   */
+  static long getVarLong(ByteBuffer in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = in.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * Reads a length prefixed UTF-8 string.
+   *
+   * @param in the input
+   * @return the string
+   * @throws IOException if the string is malformed
+   */
+  static String getString(ByteBuffer in) throws IOException {
+    int length = (int) getVarLong(in);
+    if (length < 0 || length > in.remaining()) {
+      throw new IOException("Malformed string length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  /**
+   * Maps a signed value onto an unsigned one so that small magnitudes encode to few bytes.
+   *
+   * @param value the value
+   * @return the zigzag encoded value
+   */
+  static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * Reverses {@link #zigzag(long)}.
+   *
+   * @param value the zigzag encoded value
+   * @return the value
+   */
+  static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Buffered writer on top of a file channel.
+   */
+  static class Output {
+
+    /** The channel. */
+    private final FileChannel channel;
+
+    /** The buffer. */
+    final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** The number of bytes flushed to the channel so far. */
+    private long written = 0;
+
+    /**
+     * Instantiates a new output.
+     *
+     * @param channel the channel
+     */
+    Output(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Makes sure the buffer has room for the given number of bytes.
+     *
+     * @param bytes the number of bytes
+     * @throws IOException if the buffer cannot be flushed
+     */
+    void ensure(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        flush();
+      }
+    }
+
+    /**
+     * Writes an unsigned varint.
+     *
+     * @param value the value
+     * @throws IOException if the buffer cannot be flushed
+     */
+    void putVarLong(long value) throws IOException {
+      ensure(10);
+      long rest = value;
+      while ((rest & ~0x7FL) != 0) {
+        buffer.put((byte) ((rest & 0x7F) | 0x80));
+        rest >>>= 7;
+      }
+      buffer.put((byte) rest);
+    }
+
+    /**
+     * Writes a length prefixed UTF-8 string.
+     *
+     * @param value the value
+     * @throws IOException if the buffer cannot be flushed
+     */
+    void putString(String value) throws IOException {
+      byte[] bytes = value.getBytes("UTF-8");
+      putVarLong(bytes.length);
+      if (bytes.length > buffer.capacity()) {
+        flush();
+        write(ByteBuffer.wrap(bytes));
+      } else {
+        ensure(bytes.length);
+        buffer.put(bytes);
+      }
+    }
+
+    /**
+     * Flushes the buffer to the channel.
+     *
+     * @return the total number of bytes written so far
+     * @throws IOException if the channel cannot be written
+     */
+    long flush() throws IOException {
+      buffer.flip();
+      write(buffer);
+      buffer.clear();
+      return written;
+    }
+
+    /**
+     * Writes a buffer to the channel.
+     *
+     * @param src the buffer
+     * @throws IOException if the channel cannot be written
+     */
+    private void write(ByteBuffer src) throws IOException {
+      while (src.hasRemaining()) {
+        written += channel.write(src);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of latencies in microseconds, meant to be updated on the request path.
+ *
+ * <p>
+ * Every power of two range is split into {@value #SUB_BUCKETS} linear buckets, so values are
+ * counted within about 3% of their magnitude, from one microsecond up to about 19 hours, in a fixed
+ * number of buckets. Recording a value only increments a counter: it takes no lock and allocates
+ * nothing. The counters are striped by thread, so that threads serving requests at the same time
+ * rarely contend on the same counter.
+ * </p>
+ *
+ * <p>
+ * The counts only ever grow. Readers take the difference between two snapshots of the counts to
+ * get the latencies of an interval, and work out quantiles from it with
+ * {@link #getValueAtQuantile(long[], double)}.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+  /** The number of bits of the linear buckets of a power of two range. */
+  private static final int SUB_BUCKET_BITS = 5;
+
+  /** The number of linear buckets of a power of two range. */
+  public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** The highest value counted, larger values are counted as this one. */
+  public static final long MAX_VALUE = (1L << 36) - 1;
+
+  /** The number of buckets. */
+  public static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+  /** The highest number of stripes. */
+  private static final int MAX_STRIPES = 8;
+
+  /** The counters of each stripe. */
+  private final AtomicLongArray[] stripes;
+
+  /** The mask applied to thread ids to choose a stripe. */
+  private final int stripeMask;
+
+  /**
+   * Instantiates a new latency histogram with one stripe per processor, up to {@value #MAX_STRIPES}.
+   */
+  public LatencyHistogram() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Instantiates a new latency histogram.
+   *
+   * @param concurrency the number of threads expected to record values at the same time
+   */
+  public LatencyHistogram(int concurrency) {
+    int count = 1;
+    while (count < concurrency && count < MAX_STRIPES) {
+      count <<= 1;
+    }
+    stripes = new AtomicLongArray[count];
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new AtomicLongArray(BUCKET_COUNT);
+    }
+    stripeMask = count - 1;
+  }
+
+  /**
+   * Records a latency.
+   *
+   * @param micros the latency in microseconds
+   */
+  public void record(long micros) {
+    int stripe = (int) Thread.currentThread().getId() & stripeMask;
+    stripes[stripe].incrementAndGet(indexOf(micros));
+  }
+
+  /**
+   * Copies the counts recorded so far.
+   *
+   * @param counts the array receiving the count of each bucket, of {@link #BUCKET_COUNT} length
+   */
+  public void getCounts(long[] counts) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = 0;
+      for (AtomicLongArray stripe : stripes) {
+        count += stripe.get(i);
+      }
+      counts[i] = count;
+    }
+  }
+
+  /**
+   * Gets the bucket a value is counted in.
+   *
+   * @param value the value
+   * @return the index of the bucket
+   */
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return value < 0 ? 0 : (int) value;
+    }
+    long bounded = Math.min(value, MAX_VALUE);
+    int exponent = 63 - Long.numberOfLeadingZeros(bounded);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return (shift << SUB_BUCKET_BITS) + (int) (bounded >>> shift);
+  }
+
+  /**
+   * Gets the highest value counted in a bucket.
+   *
+   * @param index the index of the bucket
+   * @return the highest value of the bucket
+   */
+  static long highestValueOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    long lowest = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  /**
+   * Gets the value at a quantile of counts.
+   *
+   * @param counts the count of each bucket, for example the difference between two snapshots
+   * @param quantile the quantile, between 0 and 1, 1 giving the highest value
+   * @return the highest value of the bucket holding the quantile, 0 if nothing was counted
+   */
+  public static long getValueAtQuantile(long[] counts, double quantile) {
+    long total = 0;
+    int highest = -1;
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        total += counts[i];
+        highest = i;
+      }
+    }
+    if (highest < 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(quantile * total), 1);
+    long seen = 0;
+    for (int i = 0; i < highest; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return highestValueOf(i);
+      }
+    }
+    return highestValueOf(highest);
+  }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+/**
+ * Small quantile sketch with a bounded relative error. Values are counted in logarithmically sized
+ * buckets, so that every value is estimated within the relative accuracy, and the number of
+ * buckets only grows with the logarithm of the value range. Unlike most sketches it supports
+ * removing values, which makes it suitable for sliding windows.
+ *
+ * <p>
+ * Not thread safe.
+ * </p>
+ */
+public final class QuantileSketch {
+
+  /** Values closer to zero than this are counted as zero. */
+  private static final double MIN_VALUE = 1e-9;
+
+  /** The ratio between the bounds of a bucket. */
+  private final double gamma;
+
+  /** The natural logarithm of gamma. */
+  private final double logGamma;
+
+  /** The buckets of positive values. */
+  private final Buckets positive = new Buckets();
+
+  /** The buckets of negative values, by magnitude. */
+  private final Buckets negative = new Buckets();
+
+  /** The number of values counted as zero. */
+  private long zeroCount = 0;
+
+  /**
+   * Instantiates a new quantile sketch.
+   *
+   * @param relativeAccuracy the relative error of the estimated quantiles, for example 0.02
+   */
+  public QuantileSketch(double relativeAccuracy) {
+    if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+      throw new IllegalArgumentException("Invalid relative accuracy: " + relativeAccuracy);
+    }
+    gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    logGamma = Math.log(gamma);
+  }
+
+  /**
+   * Adds a value.
+   *
+   * @param value the value
+   */
+  public void add(double value) {
+    update(value, 1);
+  }
+
+  /**
+   * Removes a value that has been added before.
+   *
+   * @param value the value
+   */
+  public void remove(double value) {
+    update(value, -1);
+  }
+
+  /**
+   * Gets the number of values.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return zeroCount + positive.total + negative.total;
+  }
+
+  /**
+   * Removes all values.
+   */
+  public void clear() {
+    positive.clear();
+    negative.clear();
+    zeroCount = 0;
+  }
+
+  /**
+   * Estimates a quantile.
+   *
+   * @param quantile the quantile, between 0 and 1
+   * @return the estimated value, or 0 if the sketch is empty
+   */
+  public double getQuantile(double quantile) {
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) (Math.max(0, Math.min(1, quantile)) * (count - 1));
+    if (rank < negative.total) {
+      // negative buckets hold magnitudes, so the smallest values are in the highest buckets
+      return -negative.valueAt(negative.total - 1 - rank);
+    }
+    rank -= negative.total;
+    if (rank < zeroCount) {
+      return 0;
+    }
+    return positive.valueAt(rank - zeroCount);
+  }
+
+  /**
+   * Updates the count of the bucket of a value.
+   *
+   * @param value the value
+   * @param delta the delta
+   */
+  private void update(double value, int delta) {
+    if (value > MIN_VALUE) {
+      positive.update(index(value), delta);
+    } else if (value < -MIN_VALUE) {
+      negative.update(index(-value), delta);
+    } else {
+      zeroCount += delta;
+    }
+  }
+
+  /**
+   * Gets the bucket index of a positive value.
+   *
+   * @param value the value
+   * @return the index
+   */
+  private int index(double value) {
+    return (int) Math.ceil(Math.log(value) / logGamma);
+  }
+
+  /**
+   * Buckets of values of one sign, covering a growable range of indexes.
+   */
+  private class Buckets {
+
+    /** The counts. */
+    private int[] counts = new int[0];
+
+    /** The index of the first bucket. */
+    private int offset = 0;
+
+    /** The sum of the counts. */
+    private long total = 0;
+
+    /**
+     * Updates the count of a bucket.
+     *
+     * @param index the bucket index
+     * @param delta the delta
+     */
+    void update(int index, int delta) {
+      if (counts.length == 0) {
+        counts = new int[8];
+        offset = index - 4;
+      } else if (index < offset || index >= offset + counts.length) {
+        int low = Math.min(offset, index);
+        int high = Math.max(offset + counts.length, index + 1);
+        int[] grown = new int[Math.max(high - low, counts.length * 2)];
+        int newOffset = index < offset ? high - grown.length : low;
+        System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+        counts = grown;
+        offset = newOffset;
+      }
+      counts[index - offset] += delta;
+      total += delta;
+    }
+
+    /**
+     * Gets the estimated value at a rank, 0 being the smallest value.
+     *
+     * @param rank the rank
+     * @return the value
+     */
+    double valueAt(long rank) {
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen > rank) {
+          return 2 * Math.pow(gamma, i + offset) / (gamma + 1);
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * Removes all values.
+     */
+    void clear() {
+      counts = new int[0];
+      total = 0;
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import com.googlecode.psiprobe.tools.TimeExpression;
+
+import java.util.regex.Pattern;
+
+/**
+ * Bounds the history kept for the series whose name matches a pattern, see
+ * {@link StatsCollection#setRetentionPolicies(java.util.List)}. The max points bound the raw values
+ * of a series, whatever the collector asks for. The max age bounds both the raw values and the
+ * rollups.
+ */
+public class RetentionPolicy {
+
+  /** The pattern, where {@code *} matches any run of characters. */
+  private String pattern;
+
+  /** The compiled pattern. */
+  private Pattern compiled;
+
+  /** The max age of the values kept, empty for no limit. */
+  private String maxAge;
+
+  /** The max age in milliseconds, 0 for no limit. */
+  private long maxAgeMillis = 0;
+
+  /** The max number of raw values kept, 0 for no limit. */
+  private int maxPoints = 0;
+
+  /**
+   * Gets the pattern.
+   *
+   * @return the pattern
+   */
+  public String getPattern() {
+    return pattern;
+  }
+
+  /**
+   * Sets the pattern the series names are matched against, for example {@code memory.pool.*}.
+   *
+   * @param pattern the new pattern
+   */
+  public void setPattern(String pattern) {
+    this.compiled = StatsCollection.compilePattern(pattern);
+    this.pattern = pattern;
+  }
+
+  /**
+   * Gets the max age.
+   *
+   * @return the max age
+   */
+  public String getMaxAge() {
+    return maxAge;
+  }
+
+  /**
+   * Sets the max age of the values kept, in {@link TimeExpression} notation.
+   *
+   * @param maxAge the new max age, empty for no limit
+   */
+  public void setMaxAge(String maxAge) {
+    this.maxAgeMillis = TimeExpression.inSeconds(maxAge) * 1000;
+    this.maxAge = maxAge;
+  }
+
+  /**
+   * Gets the max points.
+   *
+   * @return the max points
+   */
+  public int getMaxPoints() {
+    return maxPoints;
+  }
+
+  /**
+   * Sets the max number of raw values kept.
+   *
+   * @param maxPoints the new max points, 0 for no limit
+   */
+  public void setMaxPoints(int maxPoints) {
+    this.maxPoints = Math.max(maxPoints, 0);
+  }
+
+  /**
+   * Checks if the policy applies to a series.
+   *
+   * @param name the series name
+   * @return true, if the name matches the pattern
+   */
+  public boolean matches(String name) {
+    return compiled != null && compiled.matcher(name).matches();
+  }
+
+  /**
+   * Gets the max age in milliseconds.
+   *
+   * @return the max age, 0 for no limit
+   */
+  long getMaxAgeMillis() {
+    return maxAgeMillis;
+  }
+
+  /**
+   * Bounds the number of raw values of a series.
+   *
+   * @param requested the number of values requested by the collector
+   * @return the number of values kept
+   */
+  int capPoints(int requested) {
+    return maxPoints > 0 ? Math.min(requested, maxPoints) : requested;
+  }
+
+  /**
+   * Bounds the number of buckets of a rollup, so that it spans no more than the max age.
+   *
+   * @param resolution the bucket width in milliseconds
+   * @param requested the number of buckets configured
+   * @return the number of buckets kept
+   */
+  int capBuckets(long resolution, int requested) {
+    if (maxAgeMillis <= 0) {
+      return requested;
+    }
+    return (int) Math.max(1, Math.min(requested, maxAgeMillis / resolution));
+  }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+/**
+ * A downsampled copy of a {@link StatsSeries}. Values are aggregated into fixed width time buckets
+ * holding the min, max, sum and count of the values that fell into them. The newest bucket stays
+ * open until a value for a later bucket arrives. Like the raw series, buckets are kept in a ring
+ * buffer that evicts the oldest bucket once it is full; the buffer grows on demand up to its
+ * capacity, so short lived series stay small.
+ *
+ * <p>
+ * Instances are owned by a stats series and guarded by its monitor.
+ * </p>
+ */
+public class RollupSeries {
+
+  /** The initial number of buckets allocated. */
+  private static final int INITIAL_SIZE = 16;
+
+  /** The bucket width in milliseconds. */
+  private final long resolution;
+
+  /** The max number of buckets. */
+  private int capacity;
+
+  /** The bucket start times. */
+  private long[] times;
+
+  /** The smallest value of each bucket. */
+  private double[] mins;
+
+  /** The largest value of each bucket. */
+  private double[] maxs;
+
+  /** The sum of the values of each bucket. */
+  private double[] sums;
+
+  /** The number of values of each bucket. */
+  private int[] counts;
+
+  /** The position of the oldest bucket. */
+  private int head = 0;
+
+  /** The number of buckets held. */
+  private int size = 0;
+
+  /**
+   * Instantiates a new rollup series.
+   *
+   * @param resolution the bucket width in milliseconds
+   * @param capacity the max number of buckets
+   */
+  public RollupSeries(long resolution, int capacity) {
+    if (resolution <= 0) {
+      throw new IllegalArgumentException("Invalid rollup resolution: " + resolution);
+    }
+    this.resolution = resolution;
+    this.capacity = Math.max(capacity, 1);
+    allocate(Math.min(this.capacity, INITIAL_SIZE));
+  }
+
+  /**
+   * Gets the bucket width.
+   *
+   * @return the resolution in milliseconds
+   */
+  public long getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Gets the max number of buckets.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Gets the time span the series can cover.
+   *
+   * @return the span in milliseconds
+   */
+  public long getSpan() {
+    return resolution * capacity;
+  }
+
+  /**
+   * Gets the number of buckets held.
+   *
+   * @return the size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Estimates the heap taken by the rollup, counting the buffers allocated so far.
+   *
+   * @return the size in bytes
+   */
+  public long getMemoryUsage() {
+    // object and array headers, then a time, min, max, sum and count per bucket
+    return 48 + 5 * 16 + times.length * 36L;
+  }
+
+  /**
+   * Adds a value to the bucket its time falls into. Values older than the newest bucket are
+   * ignored.
+   *
+   * @param time the time
+   * @param value the value
+   */
+  public void add(long time, double value) {
+    long start = time - time % resolution;
+    if (size > 0) {
+      int last = physical(size - 1);
+      if (times[last] == start) {
+        mins[last] = Math.min(mins[last], value);
+        maxs[last] = Math.max(maxs[last], value);
+        sums[last] += value;
+        counts[last]++;
+        return;
+      } else if (times[last] > start) {
+        return;
+      }
+    }
+    addBucket(start, value, value, value, 1);
+  }
+
+  /**
+   * Appends a complete bucket, evicting the oldest one if the series is full.
+   *
+   * @param start the bucket start time
+   * @param min the min
+   * @param max the max
+   * @param sum the sum
+   * @param count the count
+   */
+  public void addBucket(long start, double min, double max, double sum, int count) {
+    if (size == times.length && size < capacity) {
+      resize(Math.min(capacity, times.length * 2));
+    }
+    int pos = physical(size == times.length ? 0 : size);
+    times[pos] = start;
+    mins[pos] = min;
+    maxs[pos] = max;
+    sums[pos] = sum;
+    counts[pos] = count;
+    if (size < times.length) {
+      size++;
+    } else {
+      head = head + 1 == times.length ? 0 : head + 1;
+    }
+  }
+
+  /**
+   * Changes the max number of buckets. When shrinking, only the most recent buckets are kept.
+   *
+   * @param capacity the new capacity
+   */
+  public void setCapacity(int capacity) {
+    this.capacity = Math.max(capacity, 1);
+    if (times.length > this.capacity) {
+      resize(this.capacity);
+    }
+  }
+
+  /**
+   * Gets the start time of a bucket.
+   *
+   * @param index the index, 0 being the oldest bucket
+   * @return the time
+   */
+  public long getTime(int index) {
+    return times[physical(checkIndex(index))];
+  }
+
+  /**
+   * Gets the smallest value of a bucket.
+   *
+   * @param index the index, 0 being the oldest bucket
+   * @return the min
+   */
+  public double getMin(int index) {
+    return mins[physical(checkIndex(index))];
+  }
+
+  /**
+   * Gets the largest value of a bucket.
+   *
+   * @param index the index, 0 being the oldest bucket
+   * @return the max
+   */
+  public double getMax(int index) {
+    return maxs[physical(checkIndex(index))];
+  }
+
+  /**
+   * Gets the sum of the values of a bucket.
+   *
+   * @param index the index, 0 being the oldest bucket
+   * @return the sum
+   */
+  public double getSum(int index) {
+    return sums[physical(checkIndex(index))];
+  }
+
+  /**
+   * Gets the number of values of a bucket.
+   *
+   * @param index the index, 0 being the oldest bucket
+   * @return the count
+   */
+  public int getCount(int index) {
+    return counts[physical(checkIndex(index))];
+  }
+
+  /**
+   * Gets the average value of a bucket.
+   *
+   * @param index the index, 0 being the oldest bucket
+   * @return the average
+   */
+  public double getAvg(int index) {
+    int pos = physical(checkIndex(index));
+    return sums[pos] / counts[pos];
+  }
+
+  /**
+   * Removes all buckets.
+   */
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  /**
+   * Creates an independent copy.
+   *
+   * @return the copy
+   */
+  public RollupSeries copy() {
+    RollupSeries copy = new RollupSeries(resolution, capacity);
+    copy.allocate(Math.max(size, 1));
+    for (int i = 0; i < size; i++) {
+      int pos = physical(i);
+      copy.addBucket(times[pos], mins[pos], maxs[pos], sums[pos], counts[pos]);
+    }
+    return copy;
+  }
+
+  /**
+   * Allocates empty buffers.
+   *
+   * @param length the length
+   */
+  private void allocate(int length) {
+    times = new long[length];
+    mins = new double[length];
+    maxs = new double[length];
+    sums = new double[length];
+    counts = new int[length];
+    head = 0;
+    size = 0;
+  }
+
+  /**
+   * Moves the buckets to buffers of the given length, keeping the most recent ones.
+   *
+   * @param length the length
+   */
+  private void resize(int length) {
+    long[] oldTimes = times;
+    double[] oldMins = mins;
+    double[] oldMaxs = maxs;
+    double[] oldSums = sums;
+    int[] oldCounts = counts;
+    int oldHead = head;
+    int oldSize = size;
+    int keep = Math.min(oldSize, length);
+    allocate(length);
+    for (int i = oldSize - keep; i < oldSize; i++) {
+      int pos = oldHead + i;
+      if (pos >= oldTimes.length) {
+        pos -= oldTimes.length;
+      }
+      addBucket(oldTimes[pos], oldMins[pos], oldMaxs[pos], oldSums[pos], oldCounts[pos]);
+    }
+  }
+
+  /**
+   * Maps a logical index to a position in the buffers.
+   *
+   * @param index the logical index
+   * @return the position
+   */
+  private int physical(int index) {
+    int pos = head + index;
+    return pos >= times.length ? pos - times.length : pos;
+  }
+
+  /**
+   * Check index.
+   *
+   * @param index the index
+   * @return the index
+   */
+  private int checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return index;
+  }
+
+}
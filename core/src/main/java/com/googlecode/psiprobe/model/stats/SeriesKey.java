@@ -0,0 +1,73 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+/**
+ * Interned handle of a series name, obtained once from {@link StatsCollection#getKey(String)} and
+ * then used to append to the series without looking its name up again. There is a single key per
+ * name, and the key keeps track of the series currently registered under that name.
+ */
+public final class SeriesKey {
+
+  /** The series name. */
+  private final String name;
+
+  /** The shard the series is persisted in. */
+  final int shard;
+
+  /** The retention policy of the series, null if none applies. */
+  final RetentionPolicy policy;
+
+  /** The series registered under the name, null if it has not been resolved yet. */
+  volatile StatsSeries series;
+
+  /** Whether the series has been removed from the collection, which retires the key. */
+  volatile boolean removed;
+
+  /**
+   * Instantiates a new series key.
+   *
+   * @param name the series name
+   * @param shard the shard
+   * @param policy the retention policy, may be null
+   */
+  SeriesKey(String name, int shard, RetentionPolicy policy) {
+    this.name = name;
+    this.shard = shard;
+    this.policy = policy;
+  }
+
+  /**
+   * Gets the series name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Checks if the series has been removed. A removed key is no longer interned, so holders must
+   * look the name up again with {@link StatsCollection#getKey(String)} to go on appending.
+   *
+   * @return true, if the series has been removed
+   */
+  public boolean isRemoved() {
+    return removed;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+}
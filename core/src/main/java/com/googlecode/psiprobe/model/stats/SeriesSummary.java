@@ -0,0 +1,164 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+/**
+ * Aggregates of the values a {@link StatsSeries} currently holds, as returned by
+ * {@link StatsCollection#getSummary(String, int)}. Percentiles are estimates within 2% of the
+ * actual value.
+ */
+public class SeriesSummary {
+
+  /** The number of values. */
+  private final int count;
+
+  /** The sum. */
+  private final double sum;
+
+  /** The min. */
+  private final double min;
+
+  /** The max. */
+  private final double max;
+
+  /** The moving average of the most recent values. */
+  private final double movingAvg;
+
+  /** The largest moving average seen within the window. */
+  private final double peakMovingAvg;
+
+  /** The 50th percentile. */
+  private final double p50;
+
+  /** The 90th percentile. */
+  private final double p90;
+
+  /** The 99th percentile. */
+  private final double p99;
+
+  /**
+   * Instantiates a new series summary.
+   *
+   * @param count the count
+   * @param sum the sum
+   * @param min the min
+   * @param max the max
+   * @param movingAvg the moving avg
+   * @param peakMovingAvg the peak moving avg
+   * @param p50 the 50th percentile
+   * @param p90 the 90th percentile
+   * @param p99 the 99th percentile
+   */
+  public SeriesSummary(int count, double sum, double min, double max, double movingAvg,
+      double peakMovingAvg, double p50, double p90, double p99) {
+    this.count = count;
+    this.sum = sum;
+    this.min = min;
+    this.max = max;
+    this.movingAvg = movingAvg;
+    this.peakMovingAvg = peakMovingAvg;
+    this.p50 = p50;
+    this.p90 = p90;
+    this.p99 = p99;
+  }
+
+  /**
+   * Gets the number of values.
+   *
+   * @return the count
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the sum.
+   *
+   * @return the sum
+   */
+  public double getSum() {
+    return sum;
+  }
+
+  /**
+   * Gets the smallest value.
+   *
+   * @return the min, 0 if there are no values
+   */
+  public double getMin() {
+    return min;
+  }
+
+  /**
+   * Gets the largest value.
+   *
+   * @return the max, 0 if there are no values
+   */
+  public double getMax() {
+    return max;
+  }
+
+  /**
+   * Gets the average.
+   *
+   * @return the avg, 0 if there are no values
+   */
+  public double getAvg() {
+    return count == 0 ? 0 : sum / count;
+  }
+
+  /**
+   * Gets the average of the most recent values, as many as the moving average frame.
+   *
+   * @return the moving avg
+   */
+  public double getMovingAvg() {
+    return movingAvg;
+  }
+
+  /**
+   * Gets the largest moving average computed for any of the values held.
+   *
+   * @return the peak moving avg
+   */
+  public double getPeakMovingAvg() {
+    return peakMovingAvg;
+  }
+
+  /**
+   * Gets the estimated median.
+   *
+   * @return the 50th percentile
+   */
+  public double getP50() {
+    return p50;
+  }
+
+  /**
+   * Gets the estimated 90th percentile.
+   *
+   * @return the 90th percentile
+   */
+  public double getP90() {
+    return p90;
+  }
+
+  /**
+   * Gets the estimated 99th percentile.
+   *
+   * @return the 99th percentile
+   */
+  public double getP99() {
+    return p99;
+  }
+
+}
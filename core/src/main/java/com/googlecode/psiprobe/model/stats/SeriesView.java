@@ -0,0 +1,69 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+/**
+ * Immutable result of a time range query, see {@link StatsSeries#query(long, long, int)}. Holds
+ * only the points of the range, oldest first, and can be read without any locking.
+ */
+public class SeriesView {
+
+  /** An empty view. */
+  static final SeriesView EMPTY = new SeriesView(new long[0], new double[0]);
+
+  /** The times. */
+  private final long[] times;
+
+  /** The values. */
+  private final double[] values;
+
+  /**
+   * Instantiates a new series view.
+   *
+   * @param times the times
+   * @param values the values
+   */
+  SeriesView(long[] times, double[] values) {
+    this.times = times;
+    this.values = values;
+  }
+
+  /**
+   * Gets the number of points.
+   *
+   * @return the size
+   */
+  public int size() {
+    return times.length;
+  }
+
+  /**
+   * Gets the time of a point.
+   *
+   * @param index the index, 0 being the oldest point
+   * @return the time
+   */
+  public long getTime(int index) {
+    return times[index];
+  }
+
+  /**
+   * Gets the value of a point.
+   *
+   * @param index the index, 0 being the oldest point
+   * @return the value
+   */
+  public double getValue(int index) {
+    return values[index];
+  }
+
+}
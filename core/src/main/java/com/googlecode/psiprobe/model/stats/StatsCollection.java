@@ -11,7 +11,8 @@
 
 package com.googlecode.psiprobe.model.stats;
 
-import com.googlecode.psiprobe.tools.UpdateCommitLock;
+import com.googlecode.psiprobe.tools.SizeExpression;
+import com.googlecode.psiprobe.tools.TimeExpression;
 
 import com.thoughtworks.xstream.XStream;
 import org.apache.commons.logging.Log;
@@ -22,22 +23,53 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * The Class StatsCollection.
  *
+ * <p>
+ * Series are persisted in shard files, each holding the series whose names hash to it. Only the
+ * shards that changed since they were last written are copied by {@link #serialize()}, and the
+ * copies are written by a background thread, so neither collectors nor the scheduler wait on disk
+ * I/O.
+ * </p>
+ *
+ * <p>
+ * No global lock is taken on the collection path. Series are kept in a concurrent map and each
+ * series guards itself, so collectors and chart readers only ever contend on a single series. A
+ * snapshot taken for persistence copies series one by one while collection goes on; together with
+ * the journal segment started just before the copy it still restores a consistent state, because
+ * every sample is either part of the copy or journaled in that segment, and replay skips samples
+ * the copy already holds.
+ * </p>
+ *
  * @author Vlad Ilyushchenko
  * @author Andy Shapoval
  * @author Mark Lewis
@@ -47,11 +79,24 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
   /** The logger. */
   private final Log logger = LogFactory.getLog(this.getClass());
 
+  /** The name of a shard file. */
+  private static final Pattern SHARD_FILE = Pattern.compile("(\\d+)\\.dat");
+
+  /** The fewest raw values a series is cut down to in order to meet the memory budget. */
+  private static final int MIN_BUDGET_CAPACITY = 2;
+
   /** The stats data. */
-  private Map<String, List<XYDataItem>> statsData = new TreeMap<String, List<XYDataItem>>();
+  private final ConcurrentNavigableMap<String, StatsSeries> statsData =
+      new ConcurrentSkipListMap<String, StatsSeries>();
+
+  /** The interned series keys. */
+  private final ConcurrentMap<String, SeriesKey> keys = new ConcurrentHashMap<String, SeriesKey>();
   
   /** The swap file name. */
   private String swapFileName;
+
+  /** The name of an XML swap file written by older versions, read if there is no swap file. */
+  private String legacySwapFileName;
   
   /** The storage path. */
   private String storagePath = null;
@@ -62,8 +107,83 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
   /** The max files. */
   private int maxFiles = 2;
   
-  /** The lock. */
-  private final UpdateCommitLock lock = new UpdateCommitLock();
+  /** Serializes writers of the swap file. */
+  private final Object swapFileLock = new Object();
+
+  /** Whether samples are journaled as they are collected. */
+  private boolean journalEnabled = false;
+
+  /** The size of each journal segment in bytes. */
+  private int journalSegmentSize = 8 * 1024 * 1024;
+
+  /** The journal, null unless journaling is enabled. */
+  private StatsJournal journal;
+
+  /** The number of shard files the series are spread over. */
+  private int shardCount = 16;
+
+  /** The shards changed since they were last written, 1 if dirty. */
+  private AtomicIntegerArray dirtyShards = new AtomicIntegerArray(shardCount);
+
+  /** Files superseded by the shard files, deleted once every shard has been written. */
+  private final List<File> obsoleteFiles = new ArrayList<File>();
+
+  /** Writes the shard files, null until the collection is initialized. */
+  private ExecutorService writer;
+
+  /** The last write handed to the writer. */
+  private Future<?> pendingWrite;
+
+  /** The number of bytes written by the last write. */
+  private volatile long lastWriteBytes;
+
+  /** The time taken by the last write, including the copy of the series, in milliseconds. */
+  private volatile long lastWriteTime;
+
+  /** The number of shards written by the last write. */
+  private volatile int lastWriteShards;
+
+  /** The number of bytes written since startup. */
+  private volatile long totalBytesWritten;
+
+  /** The number of writes skipped because the previous one was still running. */
+  private volatile int skippedWrites;
+
+  /** The rollup definitions. */
+  private List<String> rollups = new ArrayList<String>();
+
+  /** The rollup bucket widths in milliseconds, finest first. */
+  private long[] rollupResolutions = new long[0];
+
+  /** The max number of buckets of each rollup. */
+  private int[] rollupCapacities = new int[0];
+
+  /** How long a series may go without new values before it is removed, empty to keep it. */
+  private String seriesGracePeriod;
+
+  /** The grace period in milliseconds, 0 to keep idle series. */
+  private long seriesGraceMillis = 0;
+
+  /** The max number of series kept, 0 for no limit. */
+  private int maxSeriesCount = 0;
+
+  /** The number of series removed since startup. */
+  private volatile long removedSeries;
+
+  /** The retention policies, the first matching one applies. */
+  private List<RetentionPolicy> retentionPolicies = new ArrayList<RetentionPolicy>();
+
+  /** The heap the series may take, empty for no limit. */
+  private String memoryBudget;
+
+  /** The memory budget in bytes, 0 for no limit. */
+  private long memoryBudgetBytes = 0;
+
+  /** The number of times rollup capacities were halved to meet the memory budget. */
+  private volatile int rollupCuts;
+
+  /** The number of times raw capacities were halved to meet the memory budget. */
+  private volatile int rawCuts;
 
   /**
    * Gets the swap file name.
@@ -83,6 +203,298 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
     this.swapFileName = swapFileName;
   }
 
+  /**
+   * Gets the legacy swap file name.
+   *
+   * @return the legacy swap file name
+   */
+  public String getLegacySwapFileName() {
+    return legacySwapFileName;
+  }
+
+  /**
+   * Sets the name of an XStream XML swap file written by older versions of Probe. It is only read
+   * when no swap file is found on startup; its data is written in the binary format from then on.
+   *
+   * @param legacySwapFileName the new legacy swap file name
+   */
+  public void setLegacySwapFileName(String legacySwapFileName) {
+    this.legacySwapFileName = legacySwapFileName;
+  }
+
+  /**
+   * Checks if journaling is enabled.
+   *
+   * @return true, if journaling is enabled
+   */
+  public boolean isJournalEnabled() {
+    return journalEnabled;
+  }
+
+  /**
+   * Enables journaling. Every collected sample is then appended to a memory mapped journal next to
+   * the swap file, so that stats collected since the last {@link #serialize()} survive a crash.
+   * The swap file becomes a periodic compaction of the journal.
+   *
+   * @param journalEnabled whether journaling is enabled
+   */
+  public void setJournalEnabled(boolean journalEnabled) {
+    this.journalEnabled = journalEnabled;
+  }
+
+  /**
+   * Gets the journal segment size.
+   *
+   * @return the journal segment size
+   */
+  public int getJournalSegmentSize() {
+    return journalSegmentSize;
+  }
+
+  /**
+   * Sets the size of each of the two journal segments. A segment must hold every sample collected
+   * between two runs of {@link #serialize()}, about 21 bytes per sample.
+   *
+   * @param journalSegmentSize the new journal segment size in bytes
+   */
+  public void setJournalSegmentSize(int journalSegmentSize) {
+    this.journalSegmentSize = journalSegmentSize;
+  }
+
+  /**
+   * Gets the shard count.
+   *
+   * @return the shard count
+   */
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  /**
+   * Sets the number of shard files the series are spread over. More shards mean smaller writes
+   * when only a few series change, at the cost of more files.
+   *
+   * @param shardCount the new shard count
+   */
+  public void setShardCount(int shardCount) {
+    this.shardCount = shardCount > 0 ? shardCount : 16;
+    this.dirtyShards = new AtomicIntegerArray(this.shardCount);
+  }
+
+  /**
+   * Gets the number of bytes written by the last write of the shard files.
+   *
+   * @return the last write bytes
+   */
+  public long getLastWriteBytes() {
+    return lastWriteBytes;
+  }
+
+  /**
+   * Gets the time taken by the last write of the shard files, including copying the series.
+   *
+   * @return the last write time in milliseconds
+   */
+  public long getLastWriteTime() {
+    return lastWriteTime;
+  }
+
+  /**
+   * Gets the number of shards written by the last write.
+   *
+   * @return the last write shards
+   */
+  public int getLastWriteShards() {
+    return lastWriteShards;
+  }
+
+  /**
+   * Gets the number of bytes written to the shard files since startup.
+   *
+   * @return the total bytes written
+   */
+  public long getTotalBytesWritten() {
+    return totalBytesWritten;
+  }
+
+  /**
+   * Gets the number of writes skipped because the previous write was still running.
+   *
+   * @return the skipped writes
+   */
+  public int getSkippedWrites() {
+    return skippedWrites;
+  }
+
+  /**
+   * Gets the rollups.
+   *
+   * @return the rollup definitions
+   */
+  public List<String> getRollups() {
+    return rollups;
+  }
+
+  /**
+   * Sets the rollups kept for every series, in addition to its raw values. Each rollup is defined
+   * as "resolution:retention" using {@link TimeExpression} notation, for example "5m:1d" keeps a day
+   * of five minute min/max/avg buckets.
+   *
+   * @param rollups the rollup definitions
+   */
+  public void setRollups(List<String> rollups) {
+    List<String> sorted = new ArrayList<String>(rollups);
+    Collections.sort(sorted, new Comparator<String>() {
+      @Override
+      public int compare(String r1, String r2) {
+        long res1 = TimeExpression.inSeconds(r1.split(":")[0]);
+        long res2 = TimeExpression.inSeconds(r2.split(":")[0]);
+        return res1 < res2 ? -1 : (res1 == res2 ? 0 : 1);
+      }
+    });
+    long[] resolutions = new long[sorted.size()];
+    int[] capacities = new int[sorted.size()];
+    for (int i = 0; i < sorted.size(); i++) {
+      String[] parts = sorted.get(i).split(":");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid rollup: " + sorted.get(i));
+      }
+      resolutions[i] = TimeExpression.inSeconds(parts[0]) * 1000;
+      capacities[i] = (int) TimeExpression.dataPoints(parts[0], parts[1]);
+      if (resolutions[i] <= 0 || capacities[i] <= 0) {
+        throw new IllegalArgumentException("Invalid rollup: " + sorted.get(i));
+      }
+    }
+    this.rollups = rollups;
+    this.rollupResolutions = resolutions;
+    this.rollupCapacities = capacities;
+  }
+
+  /**
+   * Gets the series grace period.
+   *
+   * @return the series grace period
+   */
+  public String getSeriesGracePeriod() {
+    return seriesGracePeriod;
+  }
+
+  /**
+   * Sets how long a series may go without new values before it is removed, in
+   * {@link TimeExpression} notation. Collectors stop appending to the series of undeployed
+   * applications, removed datasources or connectors, so these are dropped from memory and from the
+   * shard files once the grace period is over. A context redeployed within the grace period goes on
+   * with its history. Empty keeps idle series forever.
+   *
+   * @param seriesGracePeriod the new series grace period
+   */
+  public void setSeriesGracePeriod(String seriesGracePeriod) {
+    this.seriesGraceMillis = TimeExpression.inSeconds(seriesGracePeriod) * 1000;
+    this.seriesGracePeriod = seriesGracePeriod;
+  }
+
+  /**
+   * Gets the max series count.
+   *
+   * @return the max series count
+   */
+  public int getMaxSeriesCount() {
+    return maxSeriesCount;
+  }
+
+  /**
+   * Sets the max number of series kept. When there are more, the least recently updated series are
+   * removed by the next run of {@link #serialize()}, see {@link #applyRetention()}.
+   *
+   * @param maxSeriesCount the new max series count, 0 for no limit
+   */
+  public void setMaxSeriesCount(int maxSeriesCount) {
+    this.maxSeriesCount = Math.max(maxSeriesCount, 0);
+  }
+
+  /**
+   * Gets the retention policies.
+   *
+   * @return the retention policies
+   */
+  public List<RetentionPolicy> getRetentionPolicies() {
+    return retentionPolicies;
+  }
+
+  /**
+   * Sets the retention policies, which bound the history kept for the series matching their
+   * pattern. The first matching policy applies to a series; series matching none keep what their
+   * collector and the rollups ask for.
+   *
+   * @param retentionPolicies the new retention policies
+   */
+  public void setRetentionPolicies(List<RetentionPolicy> retentionPolicies) {
+    this.retentionPolicies = retentionPolicies;
+  }
+
+  /**
+   * Gets the memory budget.
+   *
+   * @return the memory budget
+   */
+  public String getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * Sets the heap the series may take, in {@link SizeExpression} notation, for example "64M". When
+   * the estimated usage exceeds the budget, the next run of {@link #serialize()} cuts the history
+   * of all series, halving the depth of their rollups first, then the number of raw values they
+   * hold, until they fit. Series created later get the cut history as well, until a restart.
+   *
+   * @param memoryBudget the new memory budget, empty for no limit
+   */
+  public void setMemoryBudget(String memoryBudget) {
+    this.memoryBudgetBytes = memoryBudget == null || memoryBudget.length() == 0 ? 0
+        : SizeExpression.parse(memoryBudget);
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Gets the memory budget in bytes.
+   *
+   * @return the memory budget, 0 for no limit
+   */
+  public long getMemoryBudgetBytes() {
+    return memoryBudgetBytes;
+  }
+
+  /**
+   * Estimates the heap taken by the series, see {@link StatsSeries#getMemoryUsage()}.
+   *
+   * @return the memory usage in bytes
+   */
+  public long getMemoryUsage() {
+    long bytes = 0;
+    for (StatsSeries stats : statsData.values()) {
+      bytes += stats.getMemoryUsage();
+    }
+    return bytes;
+  }
+
+  /**
+   * Gets the number of series.
+   *
+   * @return the series count
+   */
+  public int getSeriesCount() {
+    return statsData.size();
+  }
+
+  /**
+   * Gets the number of series removed since startup.
+   *
+   * @return the removed series
+   */
+  public long getRemovedSeries() {
+    return removedSeries;
+  }
+
   /**
    * Gets the storage path.
    *
@@ -134,23 +546,340 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
    *
    * @param name the name
    * @param maxElements the max elements
-   * @return the list
+   * @return the stats series
    */
-  public synchronized List<XYDataItem> newStats(String name, int maxElements) {
-    List<XYDataItem> stats = Collections.synchronizedList(new ArrayList<XYDataItem>(maxElements));
-    statsData.put(name, stats);
+  public StatsSeries newStats(String name, int maxElements) {
+    return newStats(getKey(name), maxElements);
+  }
+
+  /**
+   * New stats.
+   *
+   * @param key the key
+   * @param maxElements the max elements
+   * @return the stats series
+   */
+  public StatsSeries newStats(SeriesKey key, int maxElements) {
+    StatsSeries stats = new StatsSeries(getCapacity(key, maxElements));
+    configureRollups(stats, key.policy);
+    statsData.put(key.getName(), stats);
+    key.series = stats;
+    markDirty(key.shard);
     return stats;
   }
 
+  /**
+   * Gets the interned key of a series name. Collectors should look the key up once and append
+   * through it, which saves building and looking up the name for every sample.
+   *
+   * @param name the series name
+   * @return the key
+   */
+  public SeriesKey getKey(String name) {
+    SeriesKey key = keys.get(name);
+    if (key == null) {
+      SeriesKey newKey = new SeriesKey(name, shardOf(name), policyOf(name));
+      key = keys.putIfAbsent(name, newKey);
+      if (key == null) {
+        key = newKey;
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Gets the number of raw values a series holds, given what its collector asks for and the
+   * retention policy of the series.
+   *
+   * @param key the key
+   * @param maxElements the number of values the collector asks for
+   * @return the capacity
+   */
+  public int getCapacity(SeriesKey key, int maxElements) {
+    int capacity = key.policy == null ? maxElements : key.policy.capPoints(maxElements);
+    return cut(capacity, rawCuts, MIN_BUDGET_CAPACITY);
+  }
+
+  /**
+   * Halves a capacity a number of times, without going below a floor.
+   *
+   * @param capacity the capacity
+   * @param cuts the number of halvings
+   * @param floor the least capacity
+   * @return the cut capacity
+   */
+  private static int cut(int capacity, int cuts, int floor) {
+    if (capacity <= floor) {
+      return capacity;
+    }
+    return Math.max(cuts >= 31 ? 0 : capacity >> cuts, floor);
+  }
+
+  /**
+   * Gets the retention policy of a series.
+   *
+   * @param name the series name
+   * @return the first matching policy, or null
+   */
+  private RetentionPolicy policyOf(String name) {
+    for (RetentionPolicy policy : retentionPolicies) {
+      if (policy.matches(name)) {
+        return policy;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sets up the rollups of a series, bounded by its retention policy.
+   *
+   * @param stats the series
+   * @param policy the retention policy, may be null
+   */
+  private void configureRollups(StatsSeries stats, RetentionPolicy policy) {
+    int[] capacities = new int[rollupCapacities.length];
+    for (int i = 0; i < capacities.length; i++) {
+      int capacity = policy == null ? rollupCapacities[i]
+          : policy.capBuckets(rollupResolutions[i], rollupCapacities[i]);
+      capacities[i] = cut(capacity, rollupCuts, 1);
+    }
+    stats.configureRollups(rollupResolutions, capacities);
+  }
+
   /**
    * Reset stats.
    *
    * @param name the name
    */
-  public synchronized void resetStats(String name) {
-    List<XYDataItem> stats = getStats(name);
+  public void resetStats(String name) {
+    StatsSeries stats = getStats(name);
     if (stats != null) {
       stats.clear();
+      markDirty(name);
+      if (journal != null) {
+        journal.clear(name);
+      }
+    }
+  }
+
+  /**
+   * Removes a series. Its key is retired, and its shard is rewritten without it by the next run of
+   * {@link #serialize()}.
+   *
+   * @param name the name
+   * @return true, if there was such a series
+   */
+  public boolean removeStats(String name) {
+    StatsSeries stats = statsData.get(name);
+    return stats != null && removeStats(name, stats);
+  }
+
+  /**
+   * Removes the series whose name starts with a prefix.
+   *
+   * @param statNamePrefix the stat name prefix
+   * @return the number of series removed
+   */
+  public int removeStatsByPrefix(String statNamePrefix) {
+    int count = 0;
+    for (Map.Entry<String, StatsSeries> en : subMap(statNamePrefix).entrySet()) {
+      if (removeStats(en.getKey(), en.getValue())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Removes a series, unless it has been replaced in the meantime.
+   *
+   * @param name the name
+   * @param stats the series
+   * @return true, if the series was removed
+   */
+  private boolean removeStats(String name, StatsSeries stats) {
+    if (!statsData.remove(name, stats)) {
+      return false;
+    }
+    SeriesKey key = keys.remove(name);
+    if (key != null) {
+      key.removed = true;
+      key.series = null;
+    }
+    markDirty(name);
+    if (journal != null) {
+      // samples of the series still in the journal are replayed into an empty series, which is
+      // dropped on startup
+      journal.clear(name);
+    }
+    removedSeries++;
+    return true;
+  }
+
+  /**
+   * Applies the retention settings. Values older than the max age of their retention policy are
+   * trimmed, and series that have not been updated within the grace period are removed. Then the
+   * least recently updated series in excess of the max series count are removed. Last, if the
+   * series take more heap than the memory budget, their history is cut: series still updated are
+   * never removed for the budget, since their collectors would create them again at once, having
+   * lost their history.
+   *
+   * @return the number of series removed
+   */
+  public int applyRetention() {
+    long now = System.currentTimeMillis();
+    long idle = seriesGraceMillis > 0 ? now - seriesGraceMillis : Long.MIN_VALUE;
+    int count = 0;
+    for (Map.Entry<String, StatsSeries> en : statsData.entrySet()) {
+      StatsSeries stats = en.getValue();
+      if (stats.getLastUpdate() < idle) {
+        if (removeStats(en.getKey(), stats)) {
+          count++;
+        }
+      } else {
+        RetentionPolicy policy = policyOf(en.getKey());
+        if (policy != null && policy.getMaxAgeMillis() > 0
+            && stats.trim(now - policy.getMaxAgeMillis()) > 0) {
+          markDirty(en.getKey());
+        }
+      }
+    }
+    if (maxSeriesCount > 0) {
+      count += removeLeastRecentlyUpdated();
+    }
+    if (count > 0) {
+      logger.debug("removed " + count + " stats series.");
+    }
+    if (memoryBudgetBytes > 0) {
+      fitMemoryBudget();
+    }
+    return count;
+  }
+
+  /**
+   * Cuts the history of the series until they fit the memory budget: the depth of the rollups is
+   * halved first, as they are the least looked at, then the number of raw values.
+   */
+  private void fitMemoryBudget() {
+    long bytes = getMemoryUsage();
+    if (bytes <= memoryBudgetBytes) {
+      return;
+    }
+    logger.warn("stats series take " + bytes + " bytes, over the memory budget of "
+        + memoryBudget + ". Cutting their history.");
+    while (bytes > memoryBudgetBytes) {
+      if (canCutRollups()) {
+        rollupCuts++;
+        for (Map.Entry<String, StatsSeries> en : statsData.entrySet()) {
+          configureRollups(en.getValue(), policyOf(en.getKey()));
+          markDirty(en.getKey());
+        }
+      } else if (!cutRawValues()) {
+        logger.warn("stats series take " + bytes + " bytes with the least history kept, over the"
+            + " memory budget of " + memoryBudget + ". Raise the budget or lower the max series"
+            + " count.");
+        return;
+      }
+      bytes = getMemoryUsage();
+    }
+  }
+
+  /**
+   * Checks if the rollups can be cut any further.
+   *
+   * @return true, if a rollup would keep more than one bucket
+   */
+  private boolean canCutRollups() {
+    for (int capacity : rollupCapacities) {
+      if (cut(capacity, rollupCuts, 1) > 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Halves the number of raw values of each series, down to {@link #MIN_BUDGET_CAPACITY}.
+   *
+   * @return true, if a series was cut
+   */
+  private boolean cutRawValues() {
+    boolean cut = false;
+    for (Map.Entry<String, StatsSeries> en : statsData.entrySet()) {
+      StatsSeries stats = en.getValue();
+      int capacity = cut(stats.getCapacity(), 1, MIN_BUDGET_CAPACITY);
+      if (capacity < stats.getCapacity()) {
+        stats.setCapacity(capacity);
+        markDirty(en.getKey());
+        cut = true;
+      }
+    }
+    if (cut) {
+      rawCuts++;
+    }
+    return cut;
+  }
+
+  /**
+   * Removes the least recently updated series in excess of the max series count.
+   *
+   * @return the number of series removed
+   */
+  private int removeLeastRecentlyUpdated() {
+    List<Map.Entry<String, StatsSeries>> entries =
+        new ArrayList<Map.Entry<String, StatsSeries>>(statsData.entrySet());
+    int excess = entries.size() - maxSeriesCount;
+    if (excess <= 0) {
+      return 0;
+    }
+    // snapshot of the sort keys, which collectors keep changing
+    final Map<String, Long> lastUpdates = new TreeMap<String, Long>();
+    for (Map.Entry<String, StatsSeries> en : entries) {
+      lastUpdates.put(en.getKey(), en.getValue().getLastUpdate());
+    }
+    Collections.sort(entries, new Comparator<Map.Entry<String, StatsSeries>>() {
+      @Override
+      public int compare(Map.Entry<String, StatsSeries> e1, Map.Entry<String, StatsSeries> e2) {
+        return lastUpdates.get(e1.getKey()).compareTo(lastUpdates.get(e2.getKey()));
+      }
+    });
+    int count = 0;
+    for (int i = 0; i < entries.size() && excess > 0; i++) {
+      Map.Entry<String, StatsSeries> en = entries.get(i);
+      if (removeStats(en.getKey(), en.getValue())) {
+        count++;
+        excess--;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Appends a value to a series, journaling it if journaling is enabled. The series is flagged
+   * changed before the value is journaled, which {@link #prepareWrite()} relies on.
+   *
+   * @param name the name of the series
+   * @param stats the series
+   * @param time the time
+   * @param value the value
+   */
+  public void append(String name, StatsSeries stats, long time, double value) {
+    append(getKey(name), stats, time, value);
+  }
+
+  /**
+   * Appends a value to a series, journaling it if journaling is enabled.
+   *
+   * @param key the key of the series
+   * @param stats the series
+   * @param time the time
+   * @param value the value
+   */
+  public void append(SeriesKey key, StatsSeries stats, long time, double value) {
+    stats.add(time, value);
+    markDirty(key.shard);
+    if (journal != null) {
+      journal.append(key.getName(), time, value);
     }
   }
 
@@ -160,10 +889,25 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
    * @param name the name
    * @return the stats
    */
-  public synchronized List<XYDataItem> getStats(String name) {
+  public StatsSeries getStats(String name) {
     return statsData.get(name);
   }
 
+  /**
+   * Gets the stats.
+   *
+   * @param key the key
+   * @return the stats
+   */
+  public StatsSeries getStats(SeriesKey key) {
+    StatsSeries stats = key.series;
+    if (stats == null) {
+      stats = statsData.get(key.getName());
+      key.series = stats;
+    }
+    return stats;
+  }
+
   /**
    * Gets the last value for stat.
    *
@@ -171,83 +915,466 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
    * @return the last value for stat
    */
   public long getLastValueForStat(String statName) {
-    long statValue = 0;
-
-    List<XYDataItem> stats = getStats(statName);
-    if (stats != null && !stats.isEmpty()) {
-      XYDataItem xy = stats.get(stats.size() - 1);
-      if (xy != null && xy.getY() != null) {
-        statValue = xy.getY().longValue();
-      }
-    }
-
-    return statValue;
+    StatsSeries stats = getStats(statName);
+    return stats == null ? 0 : (long) stats.getLastValue();
   }
 
   /**
-   * Returns series if stat name starts with the prefix.
+   * Returns series if stat name starts with the prefix. The prefix may contain {@code *}
+   * wildcards, see {@link #getStatsByPattern(String)}.
    * 
    * @param statNamePrefix they key under which the stats are stored
    * @return a Map of matching stats. Map keys are stat names and map values are corresponding
    *         series.
    */
-  public synchronized Map<String, List<XYDataItem>> getStatsByPrefix(String statNamePrefix) {
-    Map<String, List<XYDataItem>> map = new HashMap<String, List<XYDataItem>>();
-    for (Map.Entry<String, List<XYDataItem>> en : statsData.entrySet()) {
-      if (en.getKey().startsWith(statNamePrefix)) {
+  public Map<String, StatsSeries> getStatsByPrefix(String statNamePrefix) {
+    if (statNamePrefix.indexOf('*') >= 0) {
+      return getStatsByPattern(statNamePrefix + "*");
+    }
+    return new TreeMap<String, StatsSeries>(subMap(statNamePrefix));
+  }
+
+  /**
+   * Returns series whose name matches a pattern, where {@code *} matches any run of characters, for
+   * example {@code ds.busy.*}{@code /jdbc/*}. Only the series sharing the literal part of the
+   * pattern before the first wildcard are looked at.
+   *
+   * @param pattern the pattern
+   * @return a Map of matching stats. Map keys are stat names and map values are corresponding
+   *         series.
+   */
+  public Map<String, StatsSeries> getStatsByPattern(String pattern) {
+    int wildcard = pattern.indexOf('*');
+    if (wildcard < 0) {
+      Map<String, StatsSeries> map = new TreeMap<String, StatsSeries>();
+      StatsSeries stats = statsData.get(pattern);
+      if (stats != null) {
+        map.put(pattern, stats);
+      }
+      return map;
+    }
+    Pattern compiled = compilePattern(pattern);
+    Map<String, StatsSeries> map = new TreeMap<String, StatsSeries>();
+    for (Map.Entry<String, StatsSeries> en : subMap(pattern.substring(0, wildcard)).entrySet()) {
+      if (compiled.matcher(en.getKey()).matches()) {
         map.put(en.getKey(), en.getValue());
       }
     }
     return map;
   }
 
+  /**
+   * Compiles a series name pattern, where {@code *} matches any run of characters.
+   *
+   * @param pattern the pattern
+   * @return the compiled pattern
+   */
+  public static Pattern compilePattern(String pattern) {
+    StringBuilder regex = new StringBuilder();
+    for (String part : pattern.split("\\*", -1)) {
+      if (regex.length() > 0) {
+        regex.append(".*");
+      }
+      if (part.length() > 0) {
+        regex.append(Pattern.quote(part));
+      }
+    }
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  /**
+   * Gets the points of a series that fall into a time range. If the raw values of the series do
+   * not reach back to the start of the range, the rollup that best fits the range is queried
+   * instead, see {@link StatsSeries#select(long)}.
+   *
+   * @param name the name
+   * @param fromTime the earliest time, inclusive
+   * @param toTime the latest time, inclusive
+   * @param maxPoints the max number of points returned, 0 for no limit
+   * @return the points, or null if there is no such series
+   */
+  public SeriesView query(String name, long fromTime, long toTime, int maxPoints) {
+    StatsSeries stats = getStats(name);
+    return stats == null ? null : query(stats, fromTime, toTime, maxPoints);
+  }
+
+  /**
+   * Gets the points of a series that fall into a time range, see
+   * {@link #query(String, long, long, int)}.
+   *
+   * @param stats the series
+   * @param fromTime the earliest time, inclusive
+   * @param toTime the latest time, inclusive
+   * @param maxPoints the max number of points returned, 0 for no limit
+   * @return the points
+   */
+  public static SeriesView query(StatsSeries stats, long fromTime, long toTime, int maxPoints) {
+    StatsSeries selected = fromTime == Long.MIN_VALUE ? stats : stats.select(fromTime);
+    return selected.query(fromTime, toTime, maxPoints);
+  }
+
+  /**
+   * Summarizes the values of a series.
+   *
+   * @param name the name
+   * @param movingAvgFrame the number of values the moving averages are computed over, 0 to average
+   *        all values
+   * @return the summary, or null if there is no such series
+   */
+  public SeriesSummary getSummary(String name, int movingAvgFrame) {
+    StatsSeries stats = getStats(name);
+    return stats == null ? null : stats.getSummary(movingAvgFrame);
+  }
+
+  /**
+   * Summarizes the values of the series whose name starts with a prefix, which may contain
+   * wildcards like {@link #getStatsByPrefix(String)}.
+   *
+   * @param statNamePrefix the stat name prefix
+   * @param movingAvgFrame the number of values the moving averages are computed over, 0 to average
+   *        all values
+   * @return the summaries, keyed and sorted by series name
+   */
+  public Map<String, SeriesSummary> getSummariesByPrefix(String statNamePrefix,
+      int movingAvgFrame) {
+
+    Map<String, SeriesSummary> summaries = new TreeMap<String, SeriesSummary>();
+    for (Map.Entry<String, StatsSeries> en : getStatsByPrefix(statNamePrefix).entrySet()) {
+      summaries.put(en.getKey(), en.getValue().getSummary(movingAvgFrame));
+    }
+    return summaries;
+  }
+
+  /**
+   * Picks the series with the largest values among those whose name starts with a prefix. Series
+   * are ranked by their peak moving average or, if the frame is 0, by their average.
+   *
+   * @param statNamePrefix the stat name prefix, which may contain wildcards
+   * @param top the number of series to pick
+   * @param movingAvgFrame the number of values the moving averages are computed over, 0 to rank by
+   *        average
+   * @return the names of the picked series, highest ranked first
+   */
+  public List<String> getTopStats(String statNamePrefix, int top, final int movingAvgFrame) {
+    Comparator<Map.Entry<String, SeriesSummary>> ranking =
+        new Comparator<Map.Entry<String, SeriesSummary>>() {
+          @Override
+          public int compare(Map.Entry<String, SeriesSummary> e1,
+              Map.Entry<String, SeriesSummary> e2) {
+            double v1 = rank(e1.getValue());
+            double v2 = rank(e2.getValue());
+            return v1 == v2 ? e2.getKey().compareTo(e1.getKey()) : (v1 < v2 ? -1 : 1);
+          }
+
+          private double rank(SeriesSummary summary) {
+            return movingAvgFrame > 0 ? summary.getPeakMovingAvg() : summary.getAvg();
+          }
+        };
+    // keeps the top entries, lowest ranked at the head
+    PriorityQueue<Map.Entry<String, SeriesSummary>> picked =
+        new PriorityQueue<Map.Entry<String, SeriesSummary>>(Math.max(top, 1), ranking);
+    for (Map.Entry<String, SeriesSummary> en : getSummariesByPrefix(statNamePrefix,
+        movingAvgFrame).entrySet()) {
+      picked.add(en);
+      if (picked.size() > top) {
+        picked.poll();
+      }
+    }
+    List<String> names = new ArrayList<String>(picked.size());
+    while (!picked.isEmpty()) {
+      names.add(0, picked.poll().getKey());
+    }
+    return names;
+  }
+
+  /**
+   * Gets a view of the series whose name starts with a prefix. Names are kept sorted, so the view
+   * is found in O(log n).
+   *
+   * @param prefix the prefix
+   * @return the view
+   */
+  private Map<String, StatsSeries> subMap(String prefix) {
+    if (prefix.length() == 0) {
+      return statsData;
+    }
+    return statsData.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+  }
+
   /**
    * Make file.
    *
    * @return the file
    */
   private File makeFile() {
-    return storagePath == null ? new File(contextTempDir, swapFileName) : new File(storagePath,
-        swapFileName);
+    return makeFile(swapFileName);
   }
 
   /**
-   * Shift files.
+   * Make file.
    *
-   * @param index the index
+   * @param fileName the file name
+   * @return the file
    */
-  private void shiftFiles(int index) {
-    if (index >= maxFiles - 1) {
-      new File(makeFile().getAbsolutePath() + "." + index).delete();
-    } else {
-      shiftFiles(index + 1);
-      File srcFile = index == 0 ? makeFile() : new File(makeFile().getAbsolutePath() + "." + index);
-      File destFile = new File(makeFile().getAbsolutePath() + "." + (index + 1));
-      srcFile.renameTo(destFile);
+  private File makeFile(String fileName) {
+    return storagePath == null ? new File(contextTempDir, fileName) : new File(storagePath,
+        fileName);
+  }
+
+  /**
+   * Gets the directory holding the shard files.
+   *
+   * @return the shard directory
+   */
+  private File getShardDirectory() {
+    return new File(makeFile().getAbsolutePath() + ".shards");
+  }
+
+  /**
+   * Gets the shard a series is persisted in.
+   *
+   * @param name the series name
+   * @return the shard index
+   */
+  private int shardOf(String name) {
+    return (name.hashCode() & Integer.MAX_VALUE) % dirtyShards.length();
+  }
+
+  /**
+   * Flags the shard of a series as changed.
+   *
+   * @param name the series name
+   */
+  private void markDirty(String name) {
+    markDirty(shardOf(name));
+  }
+
+  /**
+   * Flags a shard as changed.
+   *
+   * @param shard the shard index
+   */
+  private void markDirty(int shard) {
+    if (dirtyShards.get(shard) == 0) {
+      dirtyShards.set(shard, 1);
     }
   }
 
   /**
-   * Writes stats data to file on disk.
+   * Copies the series of the changed shards, giving an image of them that can be written to disk
+   * without holding any lock, and rotates the journal. Collection is not paused: the journal is
+   * rotated first and the changed flags are cleared next, so a sample journaled in the superseded
+   * segment has flagged its shard before the flags are read and was added to its series before the
+   * series is copied.
    *
-   * @throws InterruptedException if a lock cannot be obtained
+   * @return the write, empty if no shard has changed
    */
-  public synchronized void serialize() throws InterruptedException {
-    lock.lockForCommit();
+  private ShardWrite prepareWrite() {
     long start = System.currentTimeMillis();
-    try {
-      shiftFiles(0);
-      OutputStream os = new FileOutputStream(makeFile());
+    Map<Integer, Map<String, StatsSeries>> shards = new TreeMap<Integer, Map<String, StatsSeries>>();
+    boolean changed = false;
+    for (int i = 0; i < dirtyShards.length() && !changed; i++) {
+      changed = dirtyShards.get(i) == 1;
+    }
+    if (!changed) {
+      return new ShardWrite(shards, -1, start);
+    }
+    int supersededSegment = journal != null ? journal.rotate() : -1;
+    for (int i = 0; i < dirtyShards.length(); i++) {
+      if (dirtyShards.getAndSet(i, 0) == 1) {
+        shards.put(i, new TreeMap<String, StatsSeries>());
+      }
+    }
+    for (Map.Entry<String, StatsSeries> en : statsData.entrySet()) {
+      Map<String, StatsSeries> shard = shards.get(shardOf(en.getKey()));
+      if (shard != null) {
+        shard.put(en.getKey(), en.getValue().copy());
+      }
+    }
+    return new ShardWrite(shards, supersededSegment, start);
+  }
+
+  /**
+   * Writes the series changed since the last run to the shard files on disk. Collectors are never
+   * held back; the changed series are copied while collection goes on and the files are written by
+   * a background thread. If the previous write is still running, this run is skipped and its
+   * changes are picked up by the next one. Retention settings are applied first, see
+   * {@link #applyRetention()}.
+   */
+  public void serialize() {
+    applyRetention();
+    synchronized (swapFileLock) {
+      if (pendingWrite != null && !pendingWrite.isDone()) {
+        skippedWrites++;
+        logger.debug("previous stats write still running, skipping this one.");
+        return;
+      }
+      ShardWrite write = prepareWrite();
+      if (!write.isEmpty()) {
+        if (writer == null) {
+          write.run();
+        } else {
+          try {
+            pendingWrite = writer.submit(write);
+          } catch (RejectedExecutionException e) {
+            // shutting down, destroy() writes the remaining changes
+            write.rollback();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits for the last write handed to the background thread to finish.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void flush() throws InterruptedException {
+    Future<?> write;
+    synchronized (swapFileLock) {
+      write = pendingWrite;
+    }
+    if (write != null) {
       try {
-        new XStream().toXML(statsData, os);
-      } finally {
-        os.close();
+        write.get();
+      } catch (ExecutionException e) {
+        logger.error("Could not write stats data", e.getCause());
       }
-    } catch (Exception e) {
-      logger.error("Could not write stats data to " + makeFile().getAbsolutePath(), e);
-    } finally {
-      lock.releaseCommitLock();
-      logger.debug("stats serialized in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+  }
+
+  /**
+   * Reads the shard files.
+   *
+   * @param dir the shard directory
+   * @return the series of all shards, or null if there are no shard files
+   */
+  private Map<String, StatsSeries> readShards(File dir) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return null;
+    }
+    Map<String, StatsSeries> stats = null;
+    for (File file : files) {
+      Matcher matcher = SHARD_FILE.matcher(file.getName());
+      if (matcher.matches()) {
+        Map<String, StatsSeries> shard = deserialize(file);
+        if (shard != null) {
+          if (stats == null) {
+            stats = new TreeMap<String, StatsSeries>();
+          }
+          stats.putAll(shard);
+        }
+        if (Integer.parseInt(matcher.group(1)) >= shardCount) {
+          obsoleteFiles.add(file);
+        }
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Writes a copy of the changed shards to disk.
+   */
+  private class ShardWrite implements Runnable {
+
+    /** The copied series, by shard. */
+    private final Map<Integer, Map<String, StatsSeries>> shards;
+
+    /** The journal segment superseded by the copy, -1 if the journal has not been rotated. */
+    private final int supersededSegment;
+
+    /** The time the copy was started. */
+    private final long start;
+
+    /**
+     * Instantiates a new shard write.
+     *
+     * @param shards the copied series, by shard
+     * @param supersededSegment the superseded journal segment
+     * @param start the time the copy was started
+     */
+    ShardWrite(Map<Integer, Map<String, StatsSeries>> shards, int supersededSegment, long start) {
+      this.shards = shards;
+      this.supersededSegment = supersededSegment;
+      this.start = start;
+    }
+
+    /**
+     * Checks if there is nothing to write.
+     *
+     * @return true, if no shard has changed
+     */
+    boolean isEmpty() {
+      return shards.isEmpty();
+    }
+
+    @Override
+    public void run() {
+      if (shards.isEmpty()) {
+        return;
+      }
+      File dir = getShardDirectory();
+      long bytes = 0;
+      boolean complete = true;
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        logger.error("Could not create stats directory " + dir.getAbsolutePath());
+        rollback();
+        return;
+      }
+      for (Map.Entry<Integer, Map<String, StatsSeries>> en : shards.entrySet()) {
+        File file = new File(dir, en.getKey() + ".dat");
+        File tmpFile = new File(dir, en.getKey() + ".dat.tmp");
+        try {
+          bytes += BinaryStatsFormat.write(en.getValue(), tmpFile);
+          if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+            throw new IOException("Could not rename " + tmpFile.getAbsolutePath());
+          }
+        } catch (IOException e) {
+          logger.error("Could not write stats data to " + file.getAbsolutePath(), e);
+          dirtyShards.set(en.getKey(), 1);
+          complete = false;
+        }
+      }
+      if (complete) {
+        if (journal != null) {
+          journal.discard(supersededSegment);
+        }
+        if (shards.size() == shardCount) {
+          deleteObsoleteFiles();
+        }
+      }
+      lastWriteBytes = bytes;
+      lastWriteShards = shards.size();
+      lastWriteTime = System.currentTimeMillis() - start;
+      totalBytesWritten += bytes;
+      logger.debug("stats serialized in " + lastWriteTime + "ms, " + shards.size() + " of "
+          + shardCount + " shards, " + bytes + " bytes.");
+    }
+
+    /**
+     * Flags the copied shards as changed again, so that the next run writes them.
+     */
+    void rollback() {
+      for (Integer shard : shards.keySet()) {
+        dirtyShards.set(shard, 1);
+      }
+    }
+
+  }
+
+  /**
+   * Deletes the files superseded by the shard files.
+   */
+  private void deleteObsoleteFiles() {
+    synchronized (obsoleteFiles) {
+      for (File file : obsoleteFiles) {
+        if (file.exists() && !file.delete()) {
+          logger.warn("Could not delete obsolete stats file " + file.getAbsolutePath());
+        }
+      }
+      obsoleteFiles.clear();
     }
   }
 
@@ -257,35 +1384,15 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
    * @param file the file
    * @return the map
    */
-  private Map<String, List<XYDataItem>> deserialize(File file) {
-    Map<String, List<XYDataItem>> stats = null;
+  private Map<String, StatsSeries> deserialize(File file) {
+    Map<String, StatsSeries> stats = null;
     if (file.exists() && file.canRead()) {
       long start = System.currentTimeMillis();
       try {
-        FileInputStream fis = new FileInputStream(file);
-        try {
-          stats = (Map<String, List<XYDataItem>>) (new XStream().fromXML(fis));
-
-          if (stats != null) {
-            // adjust stats data so that charts look realistic.
-            // we do that by ending the previous stats group with 0 value
-            // and starting the current stats group also with 0
-            // thus giving the chart nice plunge to zero indicating downtime
-            //
-            // and lets not bother about rotating stats;
-            // regular stats collection cycle will do it
-
-            for (String key : stats.keySet()) {
-              List<XYDataItem> list = stats.get(key);
-              if (list.size() > 0) {
-                XYDataItem xy = list.get(list.size() - 1);
-                list.add(new XYDataItem(xy.getX().longValue() + 1, 0));
-                list.add(new XYDataItem(System.currentTimeMillis(), 0));
-              }
-            }
-          }
-        } finally {
-          fis.close();
+        if (BinaryStatsFormat.isBinary(file)) {
+          stats = BinaryStatsFormat.read(file);
+        } else {
+          stats = deserializeXml(file);
         }
         logger.debug("stats data read in " + (System.currentTimeMillis() - start) + "ms.");
       } catch (Throwable e) {
@@ -303,49 +1410,126 @@ public class StatsCollection implements InitializingBean, DisposableBean, Applic
   }
 
   /**
-   * Lock for update.
+   * Reads stats data written by XStream by older versions of Probe.
    *
-   * @throws InterruptedException the interrupted exception
-   */
-  public void lockForUpdate() throws InterruptedException {
-    lock.lockForUpdate();
-  }
-
-  /**
-   * Release lock.
+   * @param file the file
+   * @return the map
+   * @throws IOException if the file cannot be read
    */
-  public void releaseLock() {
-    lock.releaseUpdateLock();
+  private Map<String, StatsSeries> deserializeXml(File file) throws IOException {
+    Map<String, StatsSeries> stats = null;
+    FileInputStream fis = new FileInputStream(file);
+    try {
+      Map<String, List<XYDataItem>> data =
+          (Map<String, List<XYDataItem>>) (new XStream().fromXML(fis));
+      if (data != null) {
+        stats = new TreeMap<String, StatsSeries>();
+        for (Map.Entry<String, List<XYDataItem>> en : data.entrySet()) {
+          // leave room for the downtime markers
+          stats.put(en.getKey(), StatsSeries.fromList(en.getValue(), en.getValue().size() + 2));
+        }
+      }
+    } finally {
+      fis.close();
+    }
+    return stats;
   }
 
   /**
    * Reads stats data from file on disk.
    */
   @Override
-  public synchronized void afterPropertiesSet() {
-    int index = 0;
-    Map<String, List<XYDataItem>> stats;
+  public void afterPropertiesSet() {
+    Map<String, StatsSeries> stats = readShards(getShardDirectory());
 
-    while (true) {
+    // swap files written in one piece by older versions, including their rotated copies
+    for (int index = 0; stats == null && index < maxFiles; index++) {
       File file = index == 0 ? makeFile() : new File(makeFile().getAbsolutePath() + "." + index);
       stats = deserialize(file);
-      index += 1;
-      if (stats != null || index >= maxFiles - 1) {
-        break;
+    }
+    if (stats == null || !getShardDirectory().isDirectory()) {
+      for (int index = 0; index < maxFiles; index++) {
+        obsoleteFiles.add(index == 0 ? makeFile()
+            : new File(makeFile().getAbsolutePath() + "." + index));
       }
     }
 
-    if (stats != null) {
-      statsData = stats;
-    } else {
+    if (stats == null && legacySwapFileName != null) {
+      File file = makeFile(legacySwapFileName);
+      stats = deserialize(file);
+      if (stats != null) {
+        logger.info("Migrated stats data from " + file.getAbsolutePath());
+      }
+    }
+
+    if (stats == null) {
       logger.debug("Stats data file not found. Empty file assumed.");
     }
 
+    if (journalEnabled) {
+      try {
+        journal = new StatsJournal(makeFile(), journalSegmentSize);
+        if (stats == null) {
+          stats = new TreeMap<String, StatsSeries>();
+        }
+        int replayed = journal.replay(stats);
+        logger.debug("replayed " + replayed + " journaled stats.");
+      } catch (IOException e) {
+        logger.error("Could not open stats journal, journaling is disabled", e);
+        journal = null;
+      }
+    }
+
+    if (stats != null) {
+      // adjust stats data so that charts look realistic.
+      // we do that by ending the previous stats group with 0 value
+      // and starting the current stats group also with 0
+      // thus giving the chart nice plunge to zero indicating downtime
+      //
+      // and lets not bother about rotating stats;
+      // regular stats collection cycle will do it
+
+      for (Iterator<Map.Entry<String, StatsSeries>> it = stats.entrySet().iterator();
+          it.hasNext();) {
+        Map.Entry<String, StatsSeries> en = it.next();
+        StatsSeries series = en.getValue();
+        configureRollups(series, policyOf(en.getKey()));
+        if (series.isEmpty()) {
+          // removed or reset series, collectors create them again if they are still needed
+          it.remove();
+        } else {
+          if (series.getCapacity() - series.size() < 2) {
+            series.setCapacity(series.size() + 2);
+          }
+          series.add(series.getTime(series.size() - 1) + 1, 0, false);
+          series.add(System.currentTimeMillis(), 0, false);
+        }
+      }
+      statsData.putAll(stats);
+    }
+
+    // everything is written once after a restart, to persist the downtime markers and to move
+    // series between shard files if the shard count changed
+    for (int i = 0; i < dirtyShards.length(); i++) {
+      dirtyShards.set(i, 1);
+    }
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("psi-probe-stats-");
+    threadFactory.setDaemon(true);
+    writer = Executors.newSingleThreadExecutor(threadFactory);
   }
 
   @Override
   public void destroy() throws Exception {
-    serialize();
+    if (writer != null) {
+      writer.shutdown();
+      writer.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    synchronized (swapFileLock) {
+      prepareWrite().run();
+    }
+    if (journal != null) {
+      journal.force();
+    }
   }
 
   @Override
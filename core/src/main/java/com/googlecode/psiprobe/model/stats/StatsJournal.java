@@ -0,0 +1,534 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append-only journal of collected stats, kept in two memory mapped segment files. Every sample is
+ * written straight into the mapped pages, so it survives a crash of the JVM without any explicit
+ * I/O on the collector thread.
+ *
+ * <p>
+ * Only one segment is active at a time. When the stats collection is compacted into a snapshot,
+ * the journal is {@link #rotate() rotated} to the spare segment and the previous one is
+ * {@link #discard(int) discarded} once the snapshot is safely on disk. On startup both segments
+ * are {@link #replay(Map) replayed} on top of the snapshot, oldest generation first.
+ * </p>
+ *
+ * <p>
+ * Appending takes no lock. A writer reserves the bytes of its record by advancing the position of
+ * the active segment atomically, and fills them with absolute puts, so writers of different series
+ * only share that counter. Only the first record of a series in a segment, which assigns its id,
+ * is written under the lock of the segment.
+ * </p>
+ *
+ * <p>
+ * Each record is written body first and type byte last, and segments are zeroed before reuse, so a
+ * record torn by a crash reads as the end of the segment. Records completed by other writers after
+ * a torn one are lost with it.
+ * </p>
+ */
+public class StatsJournal {
+
+  /** The magic number at the start of each segment. */
+  private static final int MAGIC = 0x5053494A;
+
+  /** The segment format version. */
+  private static final byte VERSION = 1;
+
+  /** The size of the segment header: magic, version and generation. */
+  private static final int HEADER_SIZE = 16;
+
+  /** Marks the end of the records. */
+  private static final byte END = 0;
+
+  /** Assigns an id to a series name: type, id, name length, name. */
+  private static final byte DEFINE = 1;
+
+  /** A sample: type, id, time, value. */
+  private static final byte SAMPLE = 2;
+
+  /** A series reset: type, id. */
+  private static final byte CLEAR = 3;
+
+  /** The size of a sample record. */
+  private static final int SAMPLE_SIZE = 21;
+
+  /** The size of a clear record. */
+  private static final int CLEAR_SIZE = 5;
+
+  /** The logger. */
+  private final Log logger = LogFactory.getLog(getClass());
+
+  /** The segments. */
+  private final Segment[] segments = new Segment[2];
+
+  /** The active segment. */
+  private volatile Segment active;
+
+  /**
+   * Opens or creates the journal segments.
+   *
+   * @param baseFile the file the segment names are derived from
+   * @param segmentSize the size of each segment in bytes
+   * @throws IOException if a segment cannot be mapped
+   */
+  public StatsJournal(File baseFile, int segmentSize) throws IOException {
+    for (int i = 0; i < 2; i++) {
+      File file = new File(baseFile.getAbsolutePath() + ".journal." + i);
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        int size = (int) Math.max(raf.length(), Math.max(segmentSize, HEADER_SIZE * 2));
+        segments[i] =
+            new Segment(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+      } finally {
+        // the mapping stays valid after the channel is closed
+        raf.close();
+      }
+      segments[i].generation = readGeneration(segments[i].buffer);
+    }
+    active = segments[0];
+  }
+
+  /**
+   * Replays both segments, oldest first, on top of the given stats. Samples that are not newer than
+   * the last value of their series are skipped, as they are already part of the snapshot.
+   *
+   * <p>
+   * Afterwards the newest segment becomes the active one and new records are appended after its
+   * last complete record.
+   * </p>
+   *
+   * @param stats the stats read from the snapshot
+   * @return the number of samples replayed
+   */
+  public synchronized int replay(Map<String, StatsSeries> stats) {
+    int newest = segments[0].generation >= segments[1].generation ? 0 : 1;
+    int replayed = 0;
+    int[] order = {1 - newest, newest};
+    for (int i : order) {
+      if (segments[i].generation > 0) {
+        replayed += replaySegment(segments[i], stats, i == newest);
+      }
+    }
+    if (segments[newest].generation == 0) {
+      start(segments[newest], 1);
+    }
+    active = segments[newest];
+    return replayed;
+  }
+
+  /**
+   * Appends a sample.
+   *
+   * @param name the series name
+   * @param time the time
+   * @param value the value
+   */
+  public void append(String name, long time, double value) {
+    Segment segment = enter();
+    try {
+      Integer id = define(segment, name);
+      if (id != null) {
+        int pos = reserve(segment, SAMPLE_SIZE);
+        if (pos >= 0) {
+          MappedByteBuffer buffer = segment.buffer;
+          buffer.putInt(pos + 1, id);
+          buffer.putLong(pos + 5, time);
+          buffer.putDouble(pos + 13, value);
+          buffer.put(pos, SAMPLE);
+        }
+      }
+    } finally {
+      segment.writers.decrementAndGet();
+    }
+  }
+
+  /**
+   * Records that a series has been reset.
+   *
+   * @param name the series name
+   */
+  public void clear(String name) {
+    Segment segment = enter();
+    try {
+      Integer id = define(segment, name);
+      if (id != null) {
+        int pos = reserve(segment, CLEAR_SIZE);
+        if (pos >= 0) {
+          segment.buffer.putInt(pos + 1, id);
+          segment.buffer.put(pos, CLEAR);
+        }
+      }
+    } finally {
+      segment.writers.decrementAndGet();
+    }
+  }
+
+  /**
+   * Switches appends to the spare segment, together with taking the snapshot that supersedes the
+   * active segment. Samples may be appended meanwhile: a writer that still appends to the
+   * superseded segment once it has been rotated out must have added the sample to its series and
+   * flagged the series changed before it appends to the journal, so that the snapshot taken after
+   * the rotation holds the sample. {@link StatsCollection} appends in that order.
+   *
+   * @return the index of the superseded segment, to be passed to {@link #discard(int)} once the
+   *         snapshot has been written
+   */
+  public synchronized int rotate() {
+    Segment previous = active;
+    Segment next = segments[0] == previous ? segments[1] : segments[0];
+    start(next, previous.generation + 1);
+    active = next;
+    return segments[0] == previous ? 0 : 1;
+  }
+
+  /**
+   * Empties a superseded segment, so that it can become the active one on the next rotation. Waits
+   * for the writers that entered the segment before it was rotated out.
+   *
+   * @param index the segment index returned by {@link #rotate()}
+   */
+  public synchronized void discard(int index) {
+    Segment segment = segments[index];
+    if (segment != active) {
+      while (segment.writers.get() > 0) {
+        Thread.yield();
+      }
+      zero(segment.buffer);
+      segment.buffer.force();
+      segment.generation = 0;
+    }
+  }
+
+  /**
+   * Flushes the active segment to disk.
+   */
+  public void force() {
+    active.buffer.force();
+  }
+
+  /**
+   * Gets the number of bytes used in the active segment.
+   *
+   * @return the used bytes
+   */
+  public int getUsed() {
+    Segment segment = active;
+    return Math.min(segment.position.get(), segment.buffer.limit());
+  }
+
+  /**
+   * Enters the active segment, so that it is not discarded while the caller writes to it. The
+   * caller must decrement the writers of the segment when done.
+   *
+   * @return the active segment
+   */
+  private Segment enter() {
+    while (true) {
+      Segment segment = active;
+      segment.writers.incrementAndGet();
+      if (segment == active) {
+        return segment;
+      }
+      // rotated meanwhile
+      segment.writers.decrementAndGet();
+    }
+  }
+
+  /**
+   * Looks up the id of a series, writing a record that defines it the first time the series is
+   * seen in the segment.
+   *
+   * @param segment the segment
+   * @param name the series name
+   * @return the id, or null if the segment is full
+   */
+  private Integer define(Segment segment, String name) {
+    Integer id = segment.ids.get(name);
+    if (id != null || segment.full) {
+      return id;
+    }
+    byte[] bytes;
+    try {
+      bytes = name.getBytes("UTF-8");
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    if (bytes.length > Short.MAX_VALUE) {
+      return null;
+    }
+    synchronized (segment) {
+      // ids are assigned in the order their records are reserved, which replay relies on
+      id = segment.ids.get(name);
+      if (id == null) {
+        int pos = reserve(segment, 7 + bytes.length);
+        if (pos < 0) {
+          return null;
+        }
+        id = segment.nextId++;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putInt(pos + 1, id);
+        buffer.putShort(pos + 5, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+          buffer.put(pos + 7 + i, bytes[i]);
+        }
+        buffer.put(pos, DEFINE);
+        segment.ids.put(name, id);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * Reserves room for a record in a segment.
+   *
+   * @param segment the segment
+   * @param size the size of the record
+   * @return the position of the record, or -1 if the segment is full
+   */
+  private int reserve(Segment segment, int size) {
+    if (segment.full) {
+      return -1;
+    }
+    int pos = segment.position.getAndAdd(size);
+    if (pos + size > segment.buffer.limit()) {
+      if (!segment.full) {
+        segment.full = true;
+        logger.warn("Stats journal " + segment.file.getAbsolutePath()
+            + " is full, samples are not journaled until the next compaction");
+      }
+      return -1;
+    }
+    return pos;
+  }
+
+  /**
+   * Initializes a segment for appending.
+   *
+   * @param segment the segment
+   * @param generation the generation
+   */
+  private void start(Segment segment, long generation) {
+    MappedByteBuffer buffer = segment.buffer;
+    if (segment.generation != 0) {
+      // the segment has not been discarded, which only happens if writing a snapshot failed
+      zero(buffer);
+    }
+    buffer.putInt(0, MAGIC);
+    buffer.put(4, VERSION);
+    buffer.putLong(8, generation);
+    segment.generation = generation;
+    segment.reset(HEADER_SIZE);
+  }
+
+  /**
+   * Replays the records of a segment.
+   *
+   * @param segment the segment
+   * @param stats the stats
+   * @param keepPosition whether to continue appending after the last record of the segment
+   * @return the number of samples replayed
+   */
+  private int replaySegment(Segment segment, Map<String, StatsSeries> stats,
+      boolean keepPosition) {
+
+    MappedByteBuffer buffer = segment.buffer;
+    List<String> names = new ArrayList<String>();
+    names.add(null);
+    int replayed = 0;
+    buffer.position(HEADER_SIZE);
+    int end = HEADER_SIZE;
+    try {
+      while (buffer.hasRemaining()) {
+        byte type = buffer.get();
+        if (type == DEFINE) {
+          int id = buffer.getInt();
+          byte[] bytes = new byte[buffer.getShort()];
+          buffer.get(bytes);
+          if (id != names.size()) {
+            break;
+          }
+          names.add(new String(bytes, "UTF-8"));
+        } else if (type == SAMPLE) {
+          int id = buffer.getInt();
+          long time = buffer.getLong();
+          double value = buffer.getDouble();
+          if (id <= 0 || id >= names.size()) {
+            break;
+          }
+          if (replaySample(stats, names.get(id), time, value)) {
+            replayed++;
+          }
+        } else if (type == CLEAR) {
+          int id = buffer.getInt();
+          if (id <= 0 || id >= names.size()) {
+            break;
+          }
+          StatsSeries series = stats.get(names.get(id));
+          if (series != null) {
+            series.clear();
+          }
+        } else {
+          break;
+        }
+        end = buffer.position();
+      }
+    } catch (BufferUnderflowException e) {
+      logger.debug("Stats journal ends with a partial record");
+    } catch (IOException e) {
+      logger.error("Could not decode stats journal record", e);
+    }
+    buffer.clear();
+    if (keepPosition) {
+      // forget anything after the last complete record, including records completed after a torn
+      // one, as it would confuse the next replay
+      int last = buffer.limit();
+      while (last > end && buffer.get(last - 1) == END) {
+        last--;
+      }
+      for (int i = end; i < last; i++) {
+        buffer.put(i, END);
+      }
+      segment.reset(end);
+      for (int i = 1; i < names.size(); i++) {
+        segment.ids.put(names.get(i), i);
+      }
+      segment.nextId = names.size();
+    }
+    return replayed;
+  }
+
+  /**
+   * Adds a replayed sample to its series, growing the series if it is full.
+   *
+   * @param stats the stats
+   * @param name the series name
+   * @param time the time
+   * @param value the value
+   * @return true, if the sample was added
+   */
+  private boolean replaySample(Map<String, StatsSeries> stats, String name, long time,
+      double value) {
+
+    StatsSeries series = stats.get(name);
+    if (series == null) {
+      series = new StatsSeries(16);
+      stats.put(name, series);
+    } else if (!series.isEmpty() && series.getTime(series.size() - 1) >= time) {
+      return false;
+    }
+    if (series.size() == series.getCapacity()) {
+      series.setCapacity(series.getCapacity() * 2);
+    }
+    series.add(time, value);
+    return true;
+  }
+
+  /**
+   * Reads the generation of a segment.
+   *
+   * @param segment the segment
+   * @return the generation, or 0 if the segment is empty or not a journal segment
+   */
+  private static long readGeneration(MappedByteBuffer segment) {
+    if (segment.getInt(0) != MAGIC || segment.get(4) != VERSION) {
+      return 0;
+    }
+    return Math.max(segment.getLong(8), 0);
+  }
+
+  /**
+   * Fills a segment with zeros.
+   *
+   * @param segment the segment
+   */
+  private static void zero(MappedByteBuffer segment) {
+    byte[] zeros = new byte[8192];
+    segment.clear();
+    while (segment.hasRemaining()) {
+      segment.put(zeros, 0, Math.min(zeros.length, segment.remaining()));
+    }
+    segment.clear();
+  }
+
+  /**
+   * A segment file and the state of appending to it.
+   */
+  private static class Segment {
+
+    /** The file. */
+    private final File file;
+
+    /** The mapped file. Only written with absolute puts once appending started. */
+    private final MappedByteBuffer buffer;
+
+    /** The position the next record is reserved at. */
+    private final AtomicInteger position = new AtomicInteger(HEADER_SIZE);
+
+    /** The number of writers appending to the segment. */
+    private final AtomicInteger writers = new AtomicInteger();
+
+    /** The ids of the series defined in the segment. */
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    /** The next series id, guarded by the segment. */
+    private int nextId = 1;
+
+    /** The generation, 0 if the segment is empty. */
+    private long generation;
+
+    /** Whether the segment ran out of space. */
+    private volatile boolean full;
+
+    /**
+     * Instantiates a new segment.
+     *
+     * @param file the file
+     * @param buffer the mapped file
+     */
+    Segment(File file, MappedByteBuffer buffer) {
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    /**
+     * Forgets the records of the segment, appending from the given position on.
+     *
+     * @param start the position of the first record
+     */
+    void reset(int start) {
+      synchronized (this) {
+        ids.clear();
+        nextId = 1;
+      }
+      position.set(start);
+      full = false;
+    }
+  }
+
+}
@@ -0,0 +1,515 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import org.jfree.data.xy.XYDataItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Fixed capacity time series backed by a pair of primitive ring buffers. Appending a value is O(1)
+ * and, once the series is full, silently evicts the oldest value. Every value is also fed to the
+ * {@link RollupSeries rollups} of the series, which keep a downsampled history reaching further
+ * back than the raw values.
+ *
+ * <p>
+ * Values are addressed by index, where 0 is the oldest value and {@code size() - 1} is the most
+ * recent one. All methods synchronize on the series itself, so callers that need a consistent view
+ * over several reads should iterate inside a {@code synchronized (series)} block, the same way they
+ * would with a synchronized list.
+ * </p>
+ */
+public class StatsSeries {
+
+  /** The timestamps, in milliseconds. */
+  private long[] times;
+
+  /** The values. */
+  private double[] values;
+
+  /** The position of the oldest value. */
+  private int head = 0;
+
+  /** The number of values held. */
+  private int size = 0;
+
+  /** The rollups, finest resolution first. */
+  private RollupSeries[] rollups = new RollupSeries[0];
+
+  /** The aggregates of the values held, null until they are first asked for. */
+  private WindowAggregates aggregates;
+
+  /** The time of the most recent value, or the time the series was created if it has none. */
+  private long lastUpdate = System.currentTimeMillis();
+
+  /**
+   * Instantiates a new stats series.
+   *
+   * @param capacity the max number of values the series holds
+   */
+  public StatsSeries(int capacity) {
+    int cap = Math.max(capacity, 1);
+    times = new long[cap];
+    values = new double[cap];
+  }
+
+  /**
+   * Appends a value, evicting the oldest one if the series is full.
+   *
+   * @param time the time
+   * @param value the value
+   */
+  public synchronized void add(long time, double value) {
+    add(time, value, true);
+  }
+
+  /**
+   * Appends a value, evicting the oldest one if the series is full.
+   *
+   * @param time the time
+   * @param value the value
+   * @param rollup whether the value is also added to the rollups. Synthetic values, such as the
+   *        markers of a downtime, are only kept in the raw series.
+   */
+  public synchronized void add(long time, double value, boolean rollup) {
+    if (rollup) {
+      for (RollupSeries rollupSeries : rollups) {
+        rollupSeries.add(time, value);
+      }
+    }
+    if (aggregates != null) {
+      int frame = aggregates.getFrame();
+      boolean frameFull = frame > 0 && size >= frame;
+      double leaving = frameFull ? values[physical(size - frame)] : 0;
+      if (size == times.length) {
+        aggregates.evict(values[head]);
+      }
+      aggregates.add(value, leaving, frameFull);
+    }
+    int pos = head + size;
+    if (pos >= times.length) {
+      pos -= times.length;
+    }
+    times[pos] = time;
+    values[pos] = value;
+    if (size < times.length) {
+      size++;
+    } else {
+      head = head + 1 == times.length ? 0 : head + 1;
+    }
+    lastUpdate = time;
+  }
+
+  /**
+   * Gets the number of values held.
+   *
+   * @return the size
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Checks if the series is empty.
+   *
+   * @return true, if is empty
+   */
+  public synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Gets the capacity.
+   *
+   * @return the capacity
+   */
+  public synchronized int getCapacity() {
+    return times.length;
+  }
+
+  /**
+   * Resizes the series. When shrinking, only the most recent values are kept.
+   *
+   * @param capacity the new capacity
+   */
+  public synchronized void setCapacity(int capacity) {
+    int cap = Math.max(capacity, 1);
+    if (cap != times.length) {
+      int keep = Math.min(size, cap);
+      long[] newTimes = new long[cap];
+      double[] newValues = new double[cap];
+      for (int i = 0; i < keep; i++) {
+        int pos = physical(size - keep + i);
+        newTimes[i] = times[pos];
+        newValues[i] = values[pos];
+      }
+      times = newTimes;
+      values = newValues;
+      head = 0;
+      size = keep;
+      aggregates = null;
+    }
+  }
+
+  /**
+   * Gets the time of the value at the given index.
+   *
+   * @param index the index, 0 being the oldest value
+   * @return the time
+   */
+  public synchronized long getTime(int index) {
+    return times[physical(checkIndex(index))];
+  }
+
+  /**
+   * Gets the value at the given index.
+   *
+   * @param index the index, 0 being the oldest value
+   * @return the value
+   */
+  public synchronized double getValue(int index) {
+    return values[physical(checkIndex(index))];
+  }
+
+  /**
+   * Gets the most recent value.
+   *
+   * @return the last value or 0 if the series is empty
+   */
+  public synchronized double getLastValue() {
+    return size == 0 ? 0 : values[physical(size - 1)];
+  }
+
+  /**
+   * Gets the time the series was last appended to. Series that have not been appended to since
+   * they were created or read back from disk report the time they were created.
+   *
+   * @return the last update time
+   */
+  public synchronized long getLastUpdate() {
+    return lastUpdate;
+  }
+
+  /**
+   * Removes the values older than a given time.
+   *
+   * @param before the time of the oldest value kept
+   * @return the number of values removed
+   */
+  public synchronized int trim(long before) {
+    int removed = 0;
+    while (size > 0 && times[head] < before) {
+      head = head + 1 == times.length ? 0 : head + 1;
+      size--;
+      removed++;
+    }
+    if (removed > 0) {
+      // the moving average frame may have lost values, rebuilt on the next summary
+      aggregates = null;
+    }
+    return removed;
+  }
+
+  /**
+   * Estimates the heap taken by the series, including its rollups and aggregates.
+   *
+   * @return the size in bytes
+   */
+  public synchronized long getMemoryUsage() {
+    // object and array headers, then a time and a value per slot
+    long bytes = 64 + 2 * 16 + times.length * 16L;
+    for (RollupSeries rollup : rollups) {
+      bytes += rollup.getMemoryUsage();
+    }
+    if (aggregates != null) {
+      bytes += aggregates.getMemoryUsage();
+    }
+    return bytes;
+  }
+
+  /**
+   * Removes all values.
+   */
+  public synchronized void clear() {
+    head = 0;
+    size = 0;
+    aggregates = null;
+    for (RollupSeries rollup : rollups) {
+      rollup.clear();
+    }
+  }
+
+  /**
+   * Summarizes the values held. The aggregates are computed on the first call and then kept up to
+   * date as values are added, so later calls take constant time.
+   *
+   * @param movingAvgFrame the number of values the moving averages are computed over, 0 to average
+   *        all values
+   * @return the summary
+   */
+  public synchronized SeriesSummary getSummary(int movingAvgFrame) {
+    int frame = movingAvgFrame <= 0 ? 0 : Math.min(movingAvgFrame, times.length);
+    if (aggregates == null || aggregates.getFrame() != frame) {
+      aggregates = new WindowAggregates(times.length, frame);
+      for (int i = 0; i < size; i++) {
+        boolean frameFull = frame > 0 && i >= frame;
+        aggregates.add(values[physical(i)], frameFull ? values[physical(i - frame)] : 0,
+            frameFull);
+      }
+    }
+    return aggregates.summarize();
+  }
+
+  /**
+   * Gets the number of rollups.
+   *
+   * @return the rollup count
+   */
+  public synchronized int getRollupCount() {
+    return rollups.length;
+  }
+
+  /**
+   * Gets a rollup. The rollup is guarded by the monitor of this series.
+   *
+   * @param index the index, 0 being the finest resolution
+   * @return the rollup
+   */
+  public synchronized RollupSeries getRollup(int index) {
+    return rollups[index];
+  }
+
+  /**
+   * Sets up the rollups of the series. Existing rollups with a requested resolution are kept, new
+   * ones are seeded from the raw values.
+   *
+   * @param resolutions the bucket widths in milliseconds, finest first
+   * @param capacities the max number of buckets of each rollup
+   */
+  public synchronized void configureRollups(long[] resolutions, int[] capacities) {
+    RollupSeries[] configured = new RollupSeries[resolutions.length];
+    for (int i = 0; i < resolutions.length; i++) {
+      for (RollupSeries rollup : rollups) {
+        if (rollup.getResolution() == resolutions[i]) {
+          configured[i] = rollup;
+          rollup.setCapacity(capacities[i]);
+        }
+      }
+      if (configured[i] == null) {
+        configured[i] = new RollupSeries(resolutions[i], capacities[i]);
+        for (int j = 0; j < size; j++) {
+          int pos = physical(j);
+          configured[i].add(times[pos], values[pos]);
+        }
+      }
+    }
+    rollups = configured;
+  }
+
+  /**
+   * Adds a rollup as is, replacing any rollup with the same resolution.
+   *
+   * @param rollup the rollup
+   */
+  synchronized void putRollup(RollupSeries rollup) {
+    for (int i = 0; i < rollups.length; i++) {
+      if (rollups[i].getResolution() == rollup.getResolution()) {
+        rollups[i] = rollup;
+        return;
+      }
+    }
+    RollupSeries[] extended = new RollupSeries[rollups.length + 1];
+    System.arraycopy(rollups, 0, extended, 0, rollups.length);
+    extended[rollups.length] = rollup;
+    rollups = extended;
+  }
+
+  /**
+   * Picks the finest level of detail that reaches back to the given time. A rollup is only
+   * preferred to a finer level when it holds older values than that level, by at least one of its
+   * buckets: bucket starts are floored to the resolution, so a rollup of a young series always
+   * starts a little before its raw values without holding anything more. If no level reaches back
+   * to the given time, the finest one holding the oldest values is picked.
+   *
+   * @param from the earliest time of interest
+   * @return this series, if its raw values reach back far enough, or a new series holding the bucket
+   *         averages of the picked rollup
+   */
+  public synchronized StatsSeries select(long from) {
+    if (size == 0 || times[head] <= from || rollups.length == 0) {
+      return this;
+    }
+    RollupSeries[] byResolution = rollups.clone();
+    Arrays.sort(byResolution, new Comparator<RollupSeries>() {
+      @Override
+      public int compare(RollupSeries rollup1, RollupSeries rollup2) {
+        return rollup1.getResolution() < rollup2.getResolution() ? -1
+            : rollup1.getResolution() == rollup2.getResolution() ? 0 : 1;
+      }
+    });
+    RollupSeries best = null;
+    long oldest = times[head];
+    for (RollupSeries rollup : byResolution) {
+      if (rollup.size() > 0 && rollup.getTime(0) + rollup.getResolution() <= oldest) {
+        best = rollup;
+        oldest = rollup.getTime(0);
+        if (oldest <= from) {
+          break;
+        }
+      }
+    }
+    if (best == null) {
+      return this;
+    }
+    StatsSeries series = new StatsSeries(best.size());
+    for (int i = 0; i < best.size(); i++) {
+      series.add(best.getTime(i), best.getAvg(i), false);
+    }
+    return series;
+  }
+
+  /**
+   * Copies the values whose time falls into a range. The range is located by binary search, so
+   * only the points of the range are touched. If there are more than {@code maxPoints} of them,
+   * they are downsampled by averaging runs of consecutive points into one point each, timed at the
+   * first point of the run.
+   *
+   * <p>
+   * Times are expected not to decrease, which holds for series filled by collectors.
+   * </p>
+   *
+   * @param from the earliest time, inclusive
+   * @param to the latest time, inclusive
+   * @param maxPoints the max number of points returned, 0 for no limit
+   * @return the view
+   */
+  public synchronized SeriesView query(long from, long to, int maxPoints) {
+    int lo = lowerBound(from);
+    int hi = to == Long.MAX_VALUE ? size : lowerBound(to + 1);
+    int count = hi - lo;
+    if (count <= 0) {
+      return SeriesView.EMPTY;
+    }
+    int points = maxPoints > 0 ? Math.min(count, maxPoints) : count;
+    long[] viewTimes = new long[points];
+    double[] viewValues = new double[points];
+    for (int i = 0; i < points; i++) {
+      int start = lo + (int) ((long) i * count / points);
+      int end = lo + (int) ((long) (i + 1) * count / points);
+      double sum = 0;
+      for (int j = start; j < end; j++) {
+        sum += values[physical(j)];
+      }
+      viewTimes[i] = times[physical(start)];
+      viewValues[i] = sum / (end - start);
+    }
+    return new SeriesView(viewTimes, viewValues);
+  }
+
+  /**
+   * Finds the first value timed at or after the given time.
+   *
+   * @param time the time
+   * @return the index, or the size if all values are older
+   */
+  private int lowerBound(long time) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (times[physical(mid)] < time) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Creates an independent copy of the series, trimmed to its current size.
+   *
+   * @return the copy
+   */
+  public synchronized StatsSeries copy() {
+    StatsSeries series = new StatsSeries(size);
+    for (int i = 0; i < size; i++) {
+      int pos = physical(i);
+      series.times[i] = times[pos];
+      series.values[i] = values[pos];
+    }
+    series.size = size;
+    series.rollups = new RollupSeries[rollups.length];
+    for (int i = 0; i < rollups.length; i++) {
+      series.rollups[i] = rollups[i].copy();
+    }
+    return series;
+  }
+
+  /**
+   * Copies the series into a list of data items, oldest first.
+   *
+   * @return the list
+   */
+  public synchronized List<XYDataItem> toList() {
+    List<XYDataItem> list = new ArrayList<XYDataItem>(size);
+    for (int i = 0; i < size; i++) {
+      int pos = physical(i);
+      list.add(new XYDataItem(times[pos], values[pos]));
+    }
+    return list;
+  }
+
+  /**
+   * Creates a series from a list of data items. The capacity of the new series is the larger of the
+   * given capacity and the list size.
+   *
+   * @param items the items
+   * @param capacity the capacity
+   * @return the stats series
+   */
+  public static StatsSeries fromList(List<XYDataItem> items, int capacity) {
+    StatsSeries series = new StatsSeries(Math.max(capacity, items.size()));
+    for (XYDataItem item : items) {
+      series.add(item.getX().longValue(), item.getY().doubleValue());
+    }
+    return series;
+  }
+
+  /**
+   * Maps a logical index to a position in the arrays.
+   *
+   * @param index the logical index
+   * @return the position
+   */
+  private int physical(int index) {
+    int pos = head + index;
+    return pos >= times.length ? pos - times.length : pos;
+  }
+
+  /**
+   * Check index.
+   *
+   * @param index the index
+   * @return the index
+   */
+  private int checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return index;
+  }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+/**
+ * Aggregates of the values held by a {@link StatsSeries}, maintained in O(1) amortized time as
+ * values are appended and evicted. Min, max and the peak moving average are tracked with monotonic
+ * queues, percentiles with a {@link QuantileSketch}.
+ *
+ * <p>
+ * Values are numbered in the order they are added; the window is made of the {@code count} most
+ * recent ones. Instances are owned by a stats series and guarded by its monitor.
+ * </p>
+ */
+class WindowAggregates {
+
+  /** The relative accuracy of the percentiles. */
+  private static final double ACCURACY = 0.02;
+
+  /** The number of values the moving average is computed over, 0 for the whole window. */
+  private final int frame;
+
+  /** The number of the next value. */
+  private long next = 0;
+
+  /** The number of values in the window. */
+  private int count = 0;
+
+  /** The sum of the values in the window. */
+  private double sum = 0;
+
+  /** The sum of the values in the moving average frame. */
+  private double frameSum = 0;
+
+  /** The most recent moving average. */
+  private double movingAvg = 0;
+
+  /** The candidates for the min. */
+  private final MonotonicQueue mins;
+
+  /** The candidates for the max. */
+  private final MonotonicQueue maxs;
+
+  /** The candidates for the peak moving average. */
+  private final MonotonicQueue peaks;
+
+  /** The percentile sketch. */
+  private final QuantileSketch sketch = new QuantileSketch(ACCURACY);
+
+  /**
+   * Instantiates new window aggregates.
+   *
+   * @param capacity the max number of values in the window
+   * @param frame the number of values the moving average is computed over, 0 for the whole window
+   */
+  WindowAggregates(int capacity, int frame) {
+    this.frame = Math.max(frame, 0);
+    mins = new MonotonicQueue(capacity, false);
+    maxs = new MonotonicQueue(capacity, true);
+    peaks = new MonotonicQueue(capacity, true);
+  }
+
+  /**
+   * Gets the moving average frame.
+   *
+   * @return the frame
+   */
+  int getFrame() {
+    return frame;
+  }
+
+  /**
+   * Removes the oldest value from the window.
+   *
+   * @param value the oldest value
+   */
+  void evict(double value) {
+    double clean = clean(value);
+    count--;
+    sum -= clean;
+    sketch.remove(clean);
+    long oldest = next - count;
+    mins.expire(oldest);
+    maxs.expire(oldest);
+    peaks.expire(oldest);
+    if (frame == 0) {
+      frameSum = sum;
+    }
+  }
+
+  /**
+   * Adds a value to the window.
+   *
+   * @param value the value
+   * @param leaving the value that drops out of the moving average frame, if {@code frameFull}
+   * @param frameFull whether the frame was full before the value was added
+   */
+  void add(double value, double leaving, boolean frameFull) {
+    double clean = clean(value);
+    count++;
+    sum += clean;
+    sketch.add(clean);
+    if (frame == 0) {
+      frameSum = sum;
+      movingAvg = sum / count;
+    } else {
+      frameSum += clean;
+      if (frameFull) {
+        frameSum -= clean(leaving);
+      }
+      movingAvg = frameSum / (frameFull ? frame : Math.min(count, frame));
+    }
+    mins.push(next, clean);
+    maxs.push(next, clean);
+    peaks.push(next, movingAvg);
+    next++;
+  }
+
+  /**
+   * Summarizes the window.
+   *
+   * @return the summary
+   */
+  SeriesSummary summarize() {
+    if (count == 0) {
+      return new SeriesSummary(0, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+    return new SeriesSummary(count, sum, mins.peek(), maxs.peek(), movingAvg, peaks.peek(),
+        sketch.getQuantile(0.5), sketch.getQuantile(0.9), sketch.getQuantile(0.99));
+  }
+
+  /**
+   * Estimates the heap taken by the aggregates.
+   *
+   * @return the size in bytes
+   */
+  long getMemoryUsage() {
+    // the queues hold a number and a value per slot, the sketch a few dozen buckets
+    return 64 + 3 * (48 + mins.numbers.length * 16L) + 512;
+  }
+
+  /**
+   * Maps values that cannot be aggregated to 0.
+   *
+   * @param value the value
+   * @return the value, or 0 if it is not a finite number
+   */
+  private static double clean(double value) {
+    return Double.isNaN(value) || Double.isInfinite(value) ? 0 : value;
+  }
+
+  /**
+   * Queue of values in which every value is larger (or smaller) than the ones added after it, so
+   * that the head is always the max (or min) of the values not yet expired.
+   */
+  private static class MonotonicQueue {
+
+    /** The numbers of the values. */
+    private final long[] numbers;
+
+    /** The values. */
+    private final double[] values;
+
+    /** Whether the head is the max rather than the min. */
+    private final boolean max;
+
+    /** The position of the head. */
+    private int head = 0;
+
+    /** The number of values held. */
+    private int size = 0;
+
+    /**
+     * Instantiates a new monotonic queue.
+     *
+     * @param capacity the max number of values in the window
+     * @param max whether the head is the max rather than the min
+     */
+    MonotonicQueue(int capacity, boolean max) {
+      numbers = new long[Math.max(capacity, 1)];
+      values = new double[Math.max(capacity, 1)];
+      this.max = max;
+    }
+
+    /**
+     * Adds a value, dropping the values it supersedes.
+     *
+     * @param number the number of the value
+     * @param value the value
+     */
+    void push(long number, double value) {
+      while (size > 0) {
+        double last = values[position(size - 1)];
+        if (max ? last > value : last < value) {
+          break;
+        }
+        size--;
+      }
+      if (size == values.length) {
+        // only happens if values have not been expired, drop the oldest
+        head = position(1);
+        size--;
+      }
+      int pos = position(size);
+      numbers[pos] = number;
+      values[pos] = value;
+      size++;
+    }
+
+    /**
+     * Drops the values numbered below the oldest value of the window.
+     *
+     * @param oldest the number of the oldest value in the window
+     */
+    void expire(long oldest) {
+      while (size > 0 && numbers[head] < oldest) {
+        head = position(1);
+        size--;
+      }
+    }
+
+    /**
+     * Gets the max (or min) value.
+     *
+     * @return the value
+     */
+    double peek() {
+      return size == 0 ? 0 : values[head];
+    }
+
+    /**
+     * Maps a logical index to a position in the arrays.
+     *
+     * @param index the logical index
+     * @return the position
+     */
+    private int position(int index) {
+      int pos = head + index;
+      return pos >= values.length ? pos - values.length : pos;
+    }
+  }
+
+}
@@ -122,7 +122,8 @@ public class ApplicationUtils {
         long size = 0;
 
         for (Session session : context.getManager().findSessions()) {
-          ApplicationSession appSession = getApplicationSession(session, calcSize, false);
+          ApplicationSession appSession = getApplicationSession(session, context, calcSize, false,
+              containerWrapper);
           if (appSession != null) {
             sessionAttributeCount += appSession.getObjectCount();
             serializable = serializable && appSession.isSerializable();
@@ -219,12 +220,14 @@ public class ApplicationUtils {
    * Gets the application session.
    *
    * @param session the session
+   * @param context the context of the session
    * @param calcSize the calc size
    * @param addAttributes the add attributes
+   * @param containerWrapper the wrapper of the container, holding the last accessed ips
    * @return the application session
    */
-  public static ApplicationSession getApplicationSession(Session session, boolean calcSize,
-      boolean addAttributes) {
+  public static ApplicationSession getApplicationSession(Session session, Context context,
+      boolean calcSize, boolean addAttributes, ContainerWrapperBean containerWrapper) {
 
     ApplicationSession sbean = null;
     if (session != null && session.isValid()) {
@@ -281,8 +284,8 @@ public class ApplicationUtils {
           attributeCount++;
           size += objSize;
         }
-        String lastAccessedIp =
-            (String) httpSession.getAttribute(ApplicationSession.LAST_ACCESSED_BY_IP);
+        String lastAccessedIp = containerWrapper.getTomcatContainer().getLastAccessedIps()
+            .get(context.getName(), session.getIdInternal());
         if (lastAccessedIp != null) {
           sbean.setLastAccessedIp(lastAccessedIp);
         }
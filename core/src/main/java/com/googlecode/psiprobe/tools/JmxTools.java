@@ -14,11 +14,22 @@ package com.googlecode.psiprobe.tools;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanInfo;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.management.ReflectionException;
 import javax.management.openmbean.CompositeData;
 
 /**
@@ -31,6 +42,21 @@ public class JmxTools {
   /** The logger. */
   private static final Log logger = LogFactory.getLog(JmxTools.class);
 
+  /** The max number of MBeans whose attribute names are cached. */
+  private static final int ATTRIBUTE_NAMES_CACHE_SIZE = 256;
+
+  /** The attribute names of recently checked MBeans, by server and name, oldest first. */
+  private static final Map<MBeanKey, Set<String>> attributeNames =
+      Collections.synchronizedMap(new LinkedHashMap<MBeanKey, Set<String>>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MBeanKey, Set<String>> eldest) {
+          return size() > ATTRIBUTE_NAMES_CACHE_SIZE;
+        }
+      });
+
   /**
    * Gets the attribute.
    *
@@ -51,6 +77,108 @@ public class JmxTools {
     }
   }
 
+  /**
+   * Gets several attributes of an MBean in a single call. Attributes that cannot be read are
+   * missing from the result.
+   *
+   * @param mbeanServer the mbean server
+   * @param objName the obj name
+   * @param attrNames the attr names
+   * @return the attribute values, by name
+   * @throws InstanceNotFoundException if the MBean is not registered
+   * @throws ReflectionException if the MBean fails to read its attributes
+   */
+  public static Map<String, Object> getAttributes(MBeanServer mbeanServer, ObjectName objName,
+      String... attrNames) throws InstanceNotFoundException, ReflectionException {
+
+    AttributeList list = mbeanServer.getAttributes(objName, attrNames);
+    Map<String, Object> attrs = new HashMap<String, Object>(list.size() * 2);
+    for (Object item : list) {
+      Attribute attr = (Attribute) item;
+      attrs.put(attr.getName(), attr.getValue());
+    }
+    if (logger.isDebugEnabled() && attrs.size() < attrNames.length) {
+      for (String attrName : attrNames) {
+        if (!attrs.containsKey(attrName)) {
+          logger.debug(objName + " does not have \"" + attrName + "\" attribute");
+        }
+      }
+    }
+    return attrs;
+  }
+
+  /**
+   * Gets the long attr.
+   *
+   * @param attrs the attributes read by {@link #getAttributes(MBeanServer, ObjectName, String...)}
+   * @param name the name
+   * @param defaultValue the default value
+   * @return the long attr
+   */
+  public static long getLongAttr(Map<String, Object> attrs, String name, long defaultValue) {
+    Object obj = attrs.get(name);
+    return obj instanceof Number ? ((Number) obj).longValue() : defaultValue;
+  }
+
+  /**
+   * Gets the long attr.
+   *
+   * @param attrs the attributes read by {@link #getAttributes(MBeanServer, ObjectName, String...)}
+   * @param name the name
+   * @return the long attr, 0 if missing
+   */
+  public static long getLongAttr(Map<String, Object> attrs, String name) {
+    return getLongAttr(attrs, name, 0);
+  }
+
+  /**
+   * Gets the int attr.
+   *
+   * @param attrs the attributes read by {@link #getAttributes(MBeanServer, ObjectName, String...)}
+   * @param name the name
+   * @param defaultValue the default value
+   * @return the int attr
+   */
+  public static int getIntAttr(Map<String, Object> attrs, String name, int defaultValue) {
+    Object obj = attrs.get(name);
+    return obj instanceof Number ? ((Number) obj).intValue() : defaultValue;
+  }
+
+  /**
+   * Gets the int attr.
+   *
+   * @param attrs the attributes read by {@link #getAttributes(MBeanServer, ObjectName, String...)}
+   * @param name the name
+   * @return the int attr, 0 if missing
+   */
+  public static int getIntAttr(Map<String, Object> attrs, String name) {
+    return getIntAttr(attrs, name, 0);
+  }
+
+  /**
+   * Gets the string attr.
+   *
+   * @param attrs the attributes read by {@link #getAttributes(MBeanServer, ObjectName, String...)}
+   * @param name the name
+   * @return the string attr, null if missing
+   */
+  public static String getStringAttr(Map<String, Object> attrs, String name) {
+    Object obj = attrs.get(name);
+    return obj != null ? obj.toString() : null;
+  }
+
+  /**
+   * Gets the boolean attr.
+   *
+   * @param attrs the attributes read by {@link #getAttributes(MBeanServer, ObjectName, String...)}
+   * @param name the name
+   * @return the boolean attr, false if missing
+   */
+  public static boolean getBooleanAttr(Map<String, Object> attrs, String name) {
+    Object obj = attrs.get(name);
+    return obj instanceof Boolean && ((Boolean) obj);
+  }
+
   /**
    * Gets the long attr.
    *
@@ -176,7 +304,11 @@ public class JmxTools {
   }
 
   /**
-   * Checks for attribute.
+   * Checks for attribute. The attribute names of an MBean are looked up once, and cached for the
+   * most recently checked MBeans of each server. The cache is meant for MBeans whose attributes
+   * never change, such as those of the platform; it is not told about unregistered MBeans, which
+   * would take a listener on the server keeping the classes of Probe loaded once it is undeployed.
+   * Entries of unregistered MBeans are only dropped once others push them out.
    *
    * @param server the server
    * @param mbean the mbean
@@ -187,14 +319,55 @@ public class JmxTools {
   public static boolean hasAttribute(MBeanServer server, ObjectName mbean, String attrName)
       throws Exception {
 
-    MBeanInfo info = server.getMBeanInfo(mbean);
-    MBeanAttributeInfo[] ai = info.getAttributes();
-    for (MBeanAttributeInfo attribInfo : ai) {
-      if (attribInfo.getName().equals(attrName)) {
-        return true;
+    MBeanKey key = new MBeanKey(server, mbean);
+    Set<String> names = attributeNames.get(key);
+    if (names == null) {
+      MBeanInfo info = server.getMBeanInfo(mbean);
+      MBeanAttributeInfo[] ai = info.getAttributes();
+      names = new HashSet<String>(ai.length * 2);
+      for (MBeanAttributeInfo attribInfo : ai) {
+        names.add(attribInfo.getName());
       }
+      attributeNames.put(key, names);
+    }
+    return names.contains(attrName);
+  }
+
+  /**
+   * An MBean of a given server: the same name may be registered with other servers.
+   */
+  private static final class MBeanKey {
+
+    /** The server. */
+    private final MBeanServer server;
+
+    /** The name. */
+    private final ObjectName name;
+
+    /**
+     * Instantiates a new MBean key.
+     *
+     * @param server the server
+     * @param name the name
+     */
+    MBeanKey(MBeanServer server, ObjectName name) {
+      this.server = server;
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof MBeanKey)) {
+        return false;
+      }
+      MBeanKey other = (MBeanKey) obj;
+      return server == other.server && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(server) + name.hashCode();
     }
-    return false;
   }
 
 }
@@ -34,6 +34,11 @@ import javax.mail.internet.MimeMultipart;
 
 /**
  * Facade for sending emails with the JavaMail API.
+ *
+ * <p>
+ * The mail session is created on the first message and reused afterwards, rather than copying the
+ * system properties for every message. Changing the SMTP settings discards it.
+ * </p>
  * 
  * @author Mark Lewis
  */
@@ -42,6 +47,15 @@ public class Mailer {
   /** The Constant PROPERTY_KEY_SMTP. */
   public static final String PROPERTY_KEY_SMTP = "mail.smtp.host";
 
+  /** The Constant PROPERTY_KEY_SMTP_PORT. */
+  public static final String PROPERTY_KEY_SMTP_PORT = "mail.smtp.port";
+
+  /** The Constant PROPERTY_KEY_SMTP_CONNECTION_TIMEOUT. */
+  public static final String PROPERTY_KEY_SMTP_CONNECTION_TIMEOUT = "mail.smtp.connectiontimeout";
+
+  /** The Constant PROPERTY_KEY_SMTP_TIMEOUT. */
+  public static final String PROPERTY_KEY_SMTP_TIMEOUT = "mail.smtp.timeout";
+
   /** The log. */
   private final Log log = LogFactory.getLog(this.getClass());
   
@@ -57,6 +71,18 @@ public class Mailer {
   /** The subject prefix. */
   private String subjectPrefix;
 
+  /** The smtp port, or 0 for the default. */
+  private int smtpPort;
+
+  /**
+   * The connection and read timeout in milliseconds, unless set by the system properties. JavaMail
+   * waits forever by default.
+   */
+  private int smtpTimeout = 30000;
+
+  /** The mail session, created on the first message. */
+  private Session session;
+
   /**
    * Instantiates a new mailer.
    */
@@ -120,8 +146,48 @@ public class Mailer {
    *
    * @param smtp the new smtp
    */
-  public void setSmtp(String smtp) {
+  public synchronized void setSmtp(String smtp) {
     this.smtp = smtp;
+    this.session = null;
+  }
+
+  /**
+   * Gets the smtp port.
+   *
+   * @return the smtp port, 0 for the default
+   */
+  public int getSmtpPort() {
+    return smtpPort;
+  }
+
+  /**
+   * Sets the smtp port.
+   *
+   * @param smtpPort the new smtp port, 0 for the default
+   */
+  public synchronized void setSmtpPort(int smtpPort) {
+    this.smtpPort = smtpPort;
+    this.session = null;
+  }
+
+  /**
+   * Gets the smtp timeout.
+   *
+   * @return the connection and read timeout in milliseconds
+   */
+  public int getSmtpTimeout() {
+    return smtpTimeout;
+  }
+
+  /**
+   * Sets the smtp timeout. The {@code mail.smtp.connectiontimeout} and {@code mail.smtp.timeout}
+   * system properties take precedence.
+   *
+   * @param smtpTimeout the new connection and read timeout in milliseconds, 0 to wait forever
+   */
+  public synchronized void setSmtpTimeout(int smtpTimeout) {
+    this.smtpTimeout = smtpTimeout;
+    this.session = null;
   }
 
   /**
@@ -167,21 +233,42 @@ public class Mailer {
    * @throws MessagingException the messaging exception
    */
   public void send(MailMessage mailMessage) throws MessagingException {
-    Properties props = (Properties) System.getProperties().clone();
-    if (smtp != null) {
-      props.put(PROPERTY_KEY_SMTP, smtp);
-    }
-    PrintStream debugOut = LogOutputStream.createPrintStream(log, LogOutputStream.LEVEL_DEBUG);
-
-    Session session = Session.getDefaultInstance(props);
-    session.setDebug(true);
-    session.setDebugOut(debugOut);
-
-    MimeMessage message = createMimeMessage(session, mailMessage);
+    MimeMessage message = createMimeMessage(getSession(), mailMessage);
     log.debug("Sending message");
     Transport.send(message);
   }
 
+  /**
+   * Gets the mail session, creating it on the first call.
+   *
+   * @return the session
+   */
+  synchronized Session getSession() {
+    if (session == null) {
+      Properties props = (Properties) System.getProperties().clone();
+      if (smtp != null) {
+        props.put(PROPERTY_KEY_SMTP, smtp);
+      }
+      if (smtpPort > 0) {
+        props.put(PROPERTY_KEY_SMTP_PORT, String.valueOf(smtpPort));
+      }
+      if (smtpTimeout > 0) {
+        if (props.getProperty(PROPERTY_KEY_SMTP_CONNECTION_TIMEOUT) == null) {
+          props.put(PROPERTY_KEY_SMTP_CONNECTION_TIMEOUT, String.valueOf(smtpTimeout));
+        }
+        if (props.getProperty(PROPERTY_KEY_SMTP_TIMEOUT) == null) {
+          props.put(PROPERTY_KEY_SMTP_TIMEOUT, String.valueOf(smtpTimeout));
+        }
+      }
+      PrintStream debugOut = LogOutputStream.createPrintStream(log, LogOutputStream.LEVEL_DEBUG);
+
+      session = Session.getInstance(props);
+      session.setDebug(log.isDebugEnabled());
+      session.setDebugOut(debugOut);
+    }
+    return session;
+  }
+
   /**
    * Creates the mime message.
    *
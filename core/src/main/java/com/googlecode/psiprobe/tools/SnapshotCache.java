@@ -0,0 +1,134 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.tools;
+
+/**
+ * Keeps the last value loaded for a limited time, so that callers asking within that time share it
+ * instead of loading it again. Only one caller loads at a time; callers arriving while a load is in
+ * flight wait for it and share its value. A fresh value is read without locking.
+ *
+ * @param <T> the type of the value, which callers must not modify
+ */
+public abstract class SnapshotCache<T> {
+
+  /** How long a value is shared, in milliseconds. */
+  private volatile long ttl;
+
+  /** The last value loaded. */
+  private volatile Snapshot<T> snapshot;
+
+  /** Held while a value is loaded. */
+  private final Object loadLock = new Object();
+
+  /**
+   * Instantiates a new snapshot cache.
+   *
+   * @param ttl how long a value is shared, in milliseconds
+   */
+  protected SnapshotCache(long ttl) {
+    this.ttl = ttl;
+  }
+
+  /**
+   * Gets the ttl.
+   *
+   * @return the ttl in milliseconds
+   */
+  public long getTtl() {
+    return ttl;
+  }
+
+  /**
+   * Sets how long a value is shared. With 0, callers only share the loads in flight.
+   *
+   * @param ttl the new ttl in milliseconds
+   */
+  public void setTtl(long ttl) {
+    this.ttl = ttl;
+  }
+
+  /**
+   * Gets the value, loading it if the last one is older than the ttl.
+   *
+   * @return the value
+   * @throws Exception if the load fails
+   */
+  public T get() throws Exception {
+    long requested = System.currentTimeMillis();
+    Snapshot<T> current = snapshot;
+    if (isFresh(current, requested)) {
+      return current.value;
+    }
+    synchronized (loadLock) {
+      current = snapshot;
+      if (isFresh(current, requested)) {
+        return current.value;
+      }
+      T value = load();
+      snapshot = new Snapshot<T>(value, System.currentTimeMillis());
+      return value;
+    }
+  }
+
+  /**
+   * Discards the last value, so that the next caller loads a new one.
+   */
+  public void invalidate() {
+    snapshot = null;
+  }
+
+  /**
+   * Checks if a snapshot can be returned to a caller.
+   *
+   * @param current the snapshot
+   * @param requested the time the caller asked for the value
+   * @return true, if it was loaded within the ttl, or completed after the caller asked
+   */
+  private boolean isFresh(Snapshot<T> current, long requested) {
+    return current != null
+        && (current.loaded >= requested || requested - current.loaded < ttl);
+  }
+
+  /**
+   * Loads a new value.
+   *
+   * @return the value
+   * @throws Exception if the load fails
+   */
+  protected abstract T load() throws Exception;
+
+  /**
+   * A value and the time it was loaded.
+   *
+   * @param <T> the type of the value
+   */
+  private static final class Snapshot<T> {
+
+    /** The value. */
+    final T value;
+
+    /** The time the load completed. */
+    final long loaded;
+
+    /**
+     * Instantiates a new snapshot.
+     *
+     * @param value the value
+     * @param loaded the time the load completed
+     */
+    Snapshot(T value, long loaded) {
+      this.value = value;
+      this.loaded = loaded;
+    }
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe;
+
+import org.apache.catalina.Session;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * The Class LastAccessedIpsTests.
+ */
+public class LastAccessedIpsTests {
+
+  /**
+   * Test the table is only written when the address changes.
+   */
+  @Test
+  public void testUpdate() {
+    LastAccessedIps ips = new LastAccessedIps();
+    Assert.assertTrue(ips.update("/shop", "s1", "10.0.0.1"));
+    Assert.assertFalse(ips.update("/shop", "s1", "10.0.0.1"));
+    Assert.assertTrue(ips.update("/shop", "s1", "10.0.0.2"));
+    Assert.assertEquals("10.0.0.2", ips.get("/shop", "s1"));
+    Assert.assertNull(ips.get("/blog", "s1"));
+    Assert.assertNull(ips.get("/shop", null));
+
+    ips.remove("/shop");
+    Assert.assertNull(ips.get("/shop", "s1"));
+  }
+
+  /**
+   * Test the addresses of sessions the manager no longer holds are purged, and nothing is attached
+   * to the sessions.
+   */
+  @Test
+  public void testRetain() {
+    LastAccessedIps ips = new LastAccessedIps();
+    Session s1 = newSession("s1");
+    Session s2 = newSession("s2");
+    ips.record("/shop", s1, "10.0.0.1");
+    ips.record("/shop", s2, "10.0.0.2");
+    ips.record("/blog", s1, "10.0.0.3");
+
+    ips.retain("/shop", new Session[] {s2});
+    Assert.assertNull(ips.get("/shop", "s1"));
+    Assert.assertEquals("10.0.0.2", ips.get("/shop", "s2"));
+    Assert.assertEquals("10.0.0.3", ips.get("/blog", "s1"));
+
+    ips.retain("/shop", new Session[0]);
+    Assert.assertNull(ips.get("/shop", "s2"));
+  }
+
+  /**
+   * Creates a session only answering its id, and failing on anything else.
+   *
+   * @param id the session id
+   * @return the session
+   */
+  private Session newSession(final String id) {
+    return (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] {Session.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getIdInternal".equals(method.getName())) {
+              return id;
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Benchmark of a runtime and memory pool collection, read through JMX attributes as
+ * {@link RuntimeInfoAccessorBean} and {@link JvmMemoryInfoAccessorBean} formerly did, and read from
+ * the platform MXBeans they now look up once.
+ *
+ * <p>
+ * Not a unit test; run it with {@code java -cp <test classpath>
+ * com.googlecode.psiprobe.beans.PlatformMxBeanBenchmark [iterations]}.
+ * </p>
+ */
+public class PlatformMxBeanBenchmark {
+
+  /**
+   * The main method.
+   *
+   * @param args the number of measured iterations
+   * @throws Exception the exception
+   */
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    // register the platform mbean server, so that the JMX path finds the java.lang mbeans
+    ManagementFactory.getPlatformMBeanServer();
+    final RuntimeInfoAccessorBean runtime = new RuntimeInfoAccessorBean();
+    final JvmMemoryInfoAccessorBean memory = new JvmMemoryInfoAccessorBean();
+
+    Collection jmxRuntime = new Collection() {
+      @Override
+      public Object collect() throws Exception {
+        return runtime.getJmxRuntimeInformation();
+      }
+    };
+    Collection platformRuntime = new Collection() {
+      @Override
+      public Object collect() throws Exception {
+        return runtime.getPlatformRuntimeInformation();
+      }
+    };
+    Collection jmxPools = new Collection() {
+      @Override
+      public Object collect() throws Exception {
+        return memory.getJmxPools();
+      }
+    };
+    Collection platformPools = new Collection() {
+      @Override
+      public Object collect() throws Exception {
+        return memory.getPlatformPools();
+      }
+    };
+
+    System.out.println("iterations: " + iterations);
+    compare("runtime", jmxRuntime, platformRuntime, iterations);
+    compare("memory pools", jmxPools, platformPools, iterations);
+  }
+
+  /**
+   * Measures a collection read through JMX and from the platform MXBeans, and prints the results.
+   *
+   * @param label the label
+   * @param jmx the collection through JMX
+   * @param platform the collection from the platform MXBeans
+   * @param iterations the number of measured collections
+   * @throws Exception the exception
+   */
+  private static void compare(String label, Collection jmx, Collection platform, int iterations)
+      throws Exception {
+
+    // warm up both paths before measuring either
+    run(jmx, iterations / 4);
+    run(platform, iterations / 4);
+    long jmxNanos = run(jmx, iterations);
+    long platformNanos = run(platform, iterations);
+    System.out.println(label + ": jmx " + jmxNanos / iterations / 1000.0 + "us, platform "
+        + platformNanos / iterations / 1000.0 + "us per collection");
+  }
+
+  /**
+   * Runs collections.
+   *
+   * @param collection the collection
+   * @param iterations the number of collections
+   * @return the elapsed time in nanoseconds
+   * @throws Exception the exception
+   */
+  private static long run(Collection collection, int iterations) throws Exception {
+    int sink = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      sink += System.identityHashCode(collection.collect());
+    }
+    long elapsed = System.nanoTime() - start;
+    if (sink == 42) {
+      System.out.println(sink);
+    }
+    return elapsed;
+  }
+
+  /**
+   * A collection of the runtime information or the memory pools.
+   */
+  private interface Collection {
+
+    /**
+     * Collects the runtime information or the memory pools.
+     *
+     * @return the result
+     * @throws Exception the exception
+     */
+    Object collect() throws Exception;
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Class AdaptiveSamplingTests.
+ */
+public class AdaptiveSamplingTests {
+
+  /**
+   * Test relative changes only boost the collector once they are larger than the min change.
+   */
+  @Test
+  public void testMinChange() {
+    AdaptiveSampling sampling = new AdaptiveSampling();
+    sampling.setMaxChange(3);
+    Assert.assertTrue(sampling.isChangeTooFast("a", 1, 5));
+    Assert.assertFalse(sampling.isChangeTooFast("a", 0, 1000));
+
+    sampling.setMinChange(100);
+    Assert.assertFalse(sampling.isChangeTooFast("a", 1, 5));
+    Assert.assertFalse(sampling.isChangeTooFast("a", 20, 120));
+    Assert.assertTrue(sampling.isChangeTooFast("a", 20, 121));
+    Assert.assertFalse(sampling.isChangeTooFast("a", 1000, 3000));
+    Assert.assertTrue(sampling.isChangeTooFast("a", 1000, 5000));
+    Assert.assertTrue(sampling.isChangeTooFast("a", 0, 101));
+    Assert.assertFalse(sampling.isChangeTooFast("a", 0, 100));
+
+    sampling.setMaxChange(0);
+    Assert.assertFalse(sampling.isChangeTooFast("a", 1000, 50000));
+  }
+
+  /**
+   * Test each series gets the min change of the first pattern its name matches.
+   */
+  @Test
+  public void testMinChangesByPattern() {
+    AdaptiveSampling sampling = new AdaptiveSampling();
+    sampling.setMaxChange(3);
+    sampling.setMinChange(100);
+    Map<String, Double> minChanges = new LinkedHashMap<String, Double>();
+    minChanges.put("stat.connector.*.errors", 5.0);
+    minChanges.put("stat.connector.*.sent", 1048576.0);
+    sampling.setMinChanges(minChanges);
+
+    Assert.assertEquals(5, sampling.getMinChange("stat.connector.http-8080.errors"), 0);
+    Assert.assertEquals(1048576, sampling.getMinChange("stat.connector.http-8080.sent"), 0);
+    Assert.assertEquals(100, sampling.getMinChange("stat.connector.http-8080.requests"), 0);
+    Assert.assertTrue(sampling.isChangeTooFast("stat.connector.http-8080.errors", 1, 7));
+    Assert.assertFalse(sampling.isChangeTooFast("stat.connector.http-8080.sent", 100000, 900000));
+    Assert.assertFalse(sampling.isChangeTooFast("stat.connector.http-8080.requests", 1, 7));
+  }
+
+}
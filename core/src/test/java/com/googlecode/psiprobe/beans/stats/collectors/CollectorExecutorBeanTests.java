@@ -0,0 +1,200 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.model.stats.StatsCollection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class CollectorExecutorBeanTests.
+ */
+public class CollectorExecutorBeanTests {
+
+  /** The executor. */
+  private CollectorExecutorBean executor;
+
+  /**
+   * Sets the up.
+   */
+  @Before
+  public void setUp() {
+    executor = new CollectorExecutorBean();
+    executor.setPoolSize(2);
+    executor.setTimeout("1s");
+    executor.afterPropertiesSet();
+  }
+
+  /**
+   * Tear down.
+   *
+   * @throws Exception the exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    executor.destroy();
+  }
+
+  /**
+   * Test a collector still running is skipped, while other collectors go on.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testOverrunIsSkipped() throws Exception {
+    BlockingCollector slow = new BlockingCollector("slow");
+    BlockingCollector fast = new BlockingCollector("fast");
+    fast.release.countDown();
+
+    Assert.assertTrue(executor.execute(slow));
+    Assert.assertTrue(slow.started.await(5, TimeUnit.SECONDS));
+    Assert.assertFalse(executor.execute(slow));
+    Assert.assertEquals(1, executor.getStatus(slow).getSkippedRuns());
+
+    Assert.assertTrue(executor.execute(fast));
+    Assert.assertTrue(fast.finished.await(5, TimeUnit.SECONDS));
+
+    slow.release.countDown();
+    Assert.assertTrue(slow.finished.await(5, TimeUnit.SECONDS));
+    waitUntilIdle(executor.getStatus(slow));
+    Assert.assertEquals(1, executor.getStatus(slow).getRuns());
+    Assert.assertTrue(executor.execute(slow));
+  }
+
+  /**
+   * Test a collector running for longer than its timeout is interrupted.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testTimeout() throws Exception {
+    BlockingCollector hung = new BlockingCollector("hung");
+    Assert.assertTrue(executor.execute(hung));
+    Assert.assertTrue(hung.finished.await(5, TimeUnit.SECONDS));
+    CollectorStatus status = executor.getStatus(hung);
+    waitUntilIdle(status);
+    Assert.assertEquals(1, status.getTimeouts());
+    Assert.assertEquals(1, status.getFailures());
+    Assert.assertTrue(status.getLastDuration() >= 900);
+  }
+
+  /**
+   * Test a boosted collector is run again every boost period, in place of its regular runs.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testBoostedRuns() throws Exception {
+    BlockingCollector boosted = new BlockingCollector("boosted");
+    boosted.release.countDown();
+    AdaptiveSampling sampling = new AdaptiveSampling();
+    sampling.setBoostPeriod("1s");
+    sampling.setBoostDuration("1m");
+    sampling.boost("test", System.currentTimeMillis());
+    boosted.setSampling(sampling);
+
+    Assert.assertTrue(executor.execute(boosted));
+    CollectorStatus status = executor.getStatus(boosted);
+    for (int i = 0; i < 300 && status.getRuns() < 3; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(3, status.getRuns());
+    Assert.assertTrue(status.isBoosted());
+    Assert.assertFalse(executor.execute(boosted));
+    Assert.assertEquals(0, status.getSkippedRuns());
+  }
+
+  /**
+   * Test each run is recorded in the overhead series of its collector.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testOverheadSeries() throws Exception {
+    StatsCollection statsCollection = new StatsCollection();
+    AbstractStatsCollectorBean collector = new AbstractStatsCollectorBean() {
+      @Override
+      public void collect() throws Exception {
+        buildAbsoluteStats("sample.a", 1);
+        buildAbsoluteStats("sample.b", 2);
+      }
+    };
+    collector.setBeanName("sampleStatsCollector");
+    collector.setStatsCollection(statsCollection);
+    Assert.assertEquals("sample", collector.getCollectorName());
+
+    for (int i = 0; i < 2; i++) {
+      Assert.assertTrue(executor.execute(collector));
+      waitUntilIdle(executor.getStatus(collector));
+    }
+    Assert.assertEquals(2, statsCollection.getStats("probe.collector.duration.sample").size());
+    Assert.assertEquals(2, statsCollection.getStats("probe.collector.lag.sample").size());
+    Assert.assertEquals(2, (long) statsCollection.getStats("probe.collector.items.sample")
+        .getLastValue());
+    Assert.assertEquals(0, (long) statsCollection.getStats("probe.collector.errors.sample")
+        .getLastValue());
+  }
+
+  /**
+   * Waits for the pending run of a collector to be recorded.
+   *
+   * @param status the status
+   * @throws InterruptedException the interrupted exception
+   */
+  private static void waitUntilIdle(CollectorStatus status) throws InterruptedException {
+    for (int i = 0; i < 500 && status.isPending(); i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertFalse(status.isPending());
+  }
+
+  /**
+   * A collector that blocks until it is released.
+   */
+  private static class BlockingCollector extends AbstractStatsCollectorBean {
+
+    /** Counted down when the collector starts. */
+    final CountDownLatch started = new CountDownLatch(1);
+
+    /** Counted down to let the collector finish. */
+    final CountDownLatch release = new CountDownLatch(1);
+
+    /** Counted down when the collector finishes. */
+    final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * Instantiates a new blocking collector.
+     *
+     * @param name the bean name
+     */
+    BlockingCollector(String name) {
+      setBeanName(name);
+    }
+
+    @Override
+    public void collect() throws Exception {
+      started.countDown();
+      try {
+        release.await();
+      } finally {
+        finished.countDown();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.model.stats.StatsCollection;
+import com.googlecode.psiprobe.model.stats.StatsSeries;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Class GcStatsCollectorBeanTests.
+ */
+public class GcStatsCollectorBeanTests {
+
+  /** The stats collection. */
+  private StatsCollection statsCollection;
+
+  /** The collector. */
+  private GcStatsCollectorBean collector;
+
+  /**
+   * Sets the up.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    statsCollection = new StatsCollection();
+    collector = new GcStatsCollectorBean();
+    collector.setStatsCollection(statsCollection);
+    collector.setMaxSeries(10);
+    collector.afterPropertiesSet();
+  }
+
+  /**
+   * Tear down.
+   *
+   * @throws Exception the exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    collector.destroy();
+  }
+
+  /**
+   * Test the series of each collector and the overhead.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testCollectorSeries() throws Exception {
+    collector.collect();
+    Thread.sleep(10);
+    collector.collect();
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      Assert.assertEquals(1, statsCollection.getStats("gc.count." + gc.getName()).size());
+      Assert.assertEquals(1, statsCollection.getStats("gc.time." + gc.getName()).size());
+    }
+    Assert.assertEquals(1, statsCollection.getStats("gc.overhead").size());
+  }
+
+  /**
+   * Test the pauses recorded between two collections.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testPauses() throws Exception {
+    String heapPool = null;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPool = pool.getName();
+      }
+    }
+    Map<String, MemoryUsage> before = new HashMap<String, MemoryUsage>();
+    before.put(heapPool, new MemoryUsage(0, 3000, 4000, 4000));
+    Map<String, MemoryUsage> after = new HashMap<String, MemoryUsage>();
+    after.put(heapPool, new MemoryUsage(0, 1000, 4000, 4000));
+
+    collector.collect();
+    collector.recordCollection("G1 Young Generation", "end of minor GC", 40, before, after);
+    collector.recordCollection("G1 Young Generation", "end of minor GC", 40, before, after);
+    collector.recordCollection("G1 Old Generation", "end of major GC", 200, before, after);
+    collector.recordCollection("ZGC Cycles", "end of GC cycle", 3000, before, after);
+    Thread.sleep(10);
+    collector.collect();
+
+    StatsSeries max = statsCollection.getStats("gc.pause.max");
+    Assert.assertNotNull("garbage collection notifications are not available", max);
+    Assert.assertTrue(max.getLastValue() >= 200 && max.getLastValue() < 3000);
+    Assert.assertTrue(statsCollection.getStats("gc.cycle.max").getLastValue() >= 3000);
+    Assert.assertTrue(statsCollection.getStats("gc.pause.median").getLastValue() >= 39);
+    // the allocation rate needs the heap usage of the previous collection
+    Assert.assertNotNull(statsCollection.getStats("gc.alloc"));
+  }
+
+  /**
+   * Test the notifications of concurrent cycles are told from those of pauses.
+   */
+  @Test
+  public void testConcurrentCycles() {
+    Assert.assertTrue(GcStatsCollectorBean.isConcurrentCycle("ConcurrentMarkSweep",
+        "end of major GC"));
+    Assert.assertTrue(GcStatsCollectorBean.isConcurrentCycle("ZGC", "end of major GC"));
+    Assert.assertTrue(GcStatsCollectorBean.isConcurrentCycle("ZGC Major Cycles",
+        "end of GC cycle"));
+    Assert.assertTrue(GcStatsCollectorBean.isConcurrentCycle("Shenandoah Cycles",
+        "end of GC cycle"));
+    Assert.assertTrue(GcStatsCollectorBean.isConcurrentCycle("G1 Concurrent GC",
+        "end of concurrent GC pause"));
+    Assert.assertFalse(GcStatsCollectorBean.isConcurrentCycle("G1 Young Generation",
+        "end of minor GC"));
+    Assert.assertFalse(GcStatsCollectorBean.isConcurrentCycle("G1 Old Generation",
+        "end of major GC"));
+    Assert.assertFalse(GcStatsCollectorBean.isConcurrentCycle("Shenandoah Pauses",
+        "end of GC pause"));
+    Assert.assertFalse(GcStatsCollectorBean.isConcurrentCycle("PS MarkSweep", "end of major GC"));
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.beans.stats.listeners.StatsCollectionEvent;
+import com.googlecode.psiprobe.beans.stats.listeners.StatsCollectionListener;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class ListenerDispatcherBeanTests.
+ */
+public class ListenerDispatcherBeanTests {
+
+  /** The dispatcher. */
+  private ListenerDispatcherBean dispatcher;
+
+  /**
+   * Sets the up.
+   */
+  @Before
+  public void setUp() {
+    dispatcher = new ListenerDispatcherBean();
+    dispatcher.setCapacity(2);
+    dispatcher.afterPropertiesSet();
+  }
+
+  /**
+   * Tear down.
+   *
+   * @throws Exception the exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    dispatcher.destroy();
+  }
+
+  /**
+   * Test a stuck listener neither blocks the caller nor grows the queue beyond one event per
+   * series, and only the latest value of each series is delivered once it resumes.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testCoalesceAndDrop() throws Exception {
+    BlockingListener listener = new BlockingListener();
+    List<StatsCollectionListener> listeners =
+        Collections.<StatsCollectionListener>singletonList(listener);
+
+    dispatcher.dispatch(listeners, new StatsCollectionEvent("a", 1, 1));
+    Assert.assertTrue(listener.entered.await(5, TimeUnit.SECONDS));
+    // the listener thread is stuck on "a"=1, the following events wait for it
+    dispatcher.dispatch(listeners, new StatsCollectionEvent("a", 2, 2));
+    dispatcher.dispatch(listeners, new StatsCollectionEvent("b", 2, 20));
+    dispatcher.dispatch(listeners, new StatsCollectionEvent("a", 3, 3));
+    dispatcher.dispatch(listeners, new StatsCollectionEvent("c", 3, 30));
+    dispatcher.dispatch(listeners, new StatsCollectionEvent("b", 4, 40));
+    Assert.assertEquals(2, dispatcher.getQueueDepth());
+    Assert.assertEquals(2, dispatcher.getCoalescedCount());
+    Assert.assertEquals(1, dispatcher.getDroppedCount());
+
+    listener.release.countDown();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dispatcher.getDispatchedCount() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(3, dispatcher.getDispatchedCount());
+    Assert.assertEquals(0, dispatcher.getQueueDepth());
+    Assert.assertEquals(2, dispatcher.getMaxQueueDepth());
+    Assert.assertEquals("[a=1, a=3, b=40]", listener.received.toString());
+  }
+
+  /**
+   * Test a failing listener does not keep the others from their events.
+   */
+  @Test
+  public void testFailureIsIsolated() {
+    ListenerDispatcherBean inline = new ListenerDispatcherBean();
+    final List<String> received = new ArrayList<String>();
+    StatsCollectionListener failing = new StatsCollectionListener() {
+      @Override
+      public void statsCollected(StatsCollectionEvent sce) {
+        throw new IllegalStateException("mail relay down");
+      }
+
+      @Override
+      public boolean isEnabled() {
+        return true;
+      }
+    };
+    StatsCollectionListener recording = new StatsCollectionListener() {
+      @Override
+      public void statsCollected(StatsCollectionEvent sce) {
+        received.add(sce.getName());
+      }
+
+      @Override
+      public boolean isEnabled() {
+        return true;
+      }
+    };
+    List<StatsCollectionListener> listeners = new ArrayList<StatsCollectionListener>();
+    listeners.add(failing);
+    listeners.add(recording);
+
+    // not started, so the event is delivered on the calling thread
+    inline.dispatch(listeners, new StatsCollectionEvent("a", 1, 1));
+    Assert.assertEquals(Collections.singletonList("a"), received);
+    Assert.assertEquals(1, inline.getFailedCount());
+    Assert.assertEquals(1, inline.getDispatchedCount());
+  }
+
+  /**
+   * Test an error thrown by a listener does not stop the delivery of later events.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testErrorDoesNotStopDelivery() throws Exception {
+    final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+    StatsCollectionListener listener = new StatsCollectionListener() {
+      @Override
+      public void statsCollected(StatsCollectionEvent sce) {
+        if ("a".equals(sce.getName())) {
+          throw new NoClassDefFoundError("javax/mail/Transport");
+        }
+        received.add(sce.getName());
+      }
+
+      @Override
+      public boolean isEnabled() {
+        return true;
+      }
+    };
+    List<StatsCollectionListener> listeners =
+        Collections.<StatsCollectionListener>singletonList(listener);
+
+    dispatcher.dispatch(listeners, new StatsCollectionEvent("a", 1, 1));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dispatcher.getFailedCount() < 1 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    for (String name : new String[] {"b", "c", "d", "e"}) {
+      dispatcher.dispatch(listeners, new StatsCollectionEvent(name, 2, 2));
+      while (!received.contains(name) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+    }
+    Assert.assertEquals("[b, c, d, e]", received.toString());
+    Assert.assertEquals(1, dispatcher.getFailedCount());
+    Assert.assertEquals(0, dispatcher.getDroppedCount());
+  }
+
+  /**
+   * A listener blocking on its first event until released, recording the values it receives.
+   */
+  private static class BlockingListener implements StatsCollectionListener {
+
+    /** Counted down once the first event is received. */
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    /** Counted down to let the first event through. */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /** The received values, as name=value. */
+    private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    public void statsCollected(StatsCollectionEvent sce) {
+      received.add(sce.getName() + "=" + sce.getValue());
+      entered.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return true;
+    }
+  }
+
+}
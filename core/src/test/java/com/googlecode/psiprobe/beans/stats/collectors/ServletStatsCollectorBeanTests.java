@@ -0,0 +1,151 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.model.stats.StatsCollection;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.core.StandardWrapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The Class ServletStatsCollectorBeanTests.
+ */
+public class ServletStatsCollectorBeanTests {
+
+  /** The stats collection. */
+  private StatsCollection statsCollection;
+
+  /** The collector. */
+  private ServletStatsCollectorBean collector;
+
+  /** The busy servlet. */
+  private CountingWrapper busy;
+
+  /** The idle servlet. */
+  private CountingWrapper idle;
+
+  /** The servlets of each application. */
+  private Map<String, Container[]> apps;
+
+  /**
+   * Sets the up.
+   */
+  @Before
+  public void setUp() {
+    statsCollection = new StatsCollection();
+    collector = new ServletStatsCollectorBean();
+    collector.setStatsCollection(statsCollection);
+    collector.setMaxSeries(10);
+    collector.setTop(1);
+    collector.setReleaseAfter(2);
+
+    busy = new CountingWrapper();
+    busy.setName("cart");
+    idle = new CountingWrapper();
+    idle.setName("help");
+    apps = Collections.singletonMap("/shop", new Container[] {busy, idle});
+  }
+
+  /**
+   * Test only the busiest servlets are recorded.
+   */
+  @Test
+  public void testTopServlets() {
+    collector.collect(apps, 1000);
+    serve(busy, 10, 500);
+    serve(idle, 10, 100);
+    collector.collect(apps, 2000);
+    serve(busy, 4, 400);
+    serve(idle, 10, 100);
+    collector.collect(apps, 3000);
+
+    Assert.assertEquals(1, statsCollection.getStats("servlet.requests./shop:cart").size());
+    Assert.assertEquals(4, (long) statsCollection.getStats("servlet.requests./shop:cart")
+        .getLastValue());
+    Assert.assertEquals(400, (long) statsCollection.getStats("servlet.proc_time./shop:cart")
+        .getLastValue());
+    Assert.assertEquals(100, (long) statsCollection.getStats("servlet.avg_proc_time./shop:cart")
+        .getLastValue());
+    Assert.assertNull(statsCollection.getStats("servlet.requests./shop:help"));
+  }
+
+  /**
+   * Test a servlet out of the top is released after a while, and replaced.
+   */
+  @Test
+  public void testRelease() {
+    collector.collect(apps, 1000);
+    serve(busy, 10, 500);
+    collector.collect(apps, 2000);
+    Assert.assertNotNull(statsCollection.getStats("servlet.requests./shop:cart"));
+
+    // the other servlet takes the lead, the first one stays tracked for two more collections
+    serve(idle, 10, 100);
+    collector.collect(apps, 3000);
+    serve(idle, 10, 100);
+    collector.collect(apps, 4000);
+    Assert.assertEquals(2, statsCollection.getStats("servlet.requests./shop:cart").size());
+    serve(idle, 10, 100);
+    collector.collect(apps, 5000);
+    Assert.assertEquals(2, statsCollection.getStats("servlet.requests./shop:cart").size());
+    Assert.assertNotNull(statsCollection.getStats("servlet.requests./shop:help"));
+  }
+
+  /**
+   * Adds requests to a servlet.
+   *
+   * @param wrapper the servlet
+   * @param requests the requests
+   * @param procTime the processing time of the requests
+   */
+  private static void serve(CountingWrapper wrapper, int requests, long procTime) {
+    wrapper.requestCount += requests;
+    wrapper.processingTime += procTime;
+  }
+
+  /**
+   * A servlet whose counters are set by the test.
+   */
+  private static class CountingWrapper extends StandardWrapper {
+
+    /** The request count. */
+    private int requestCount;
+
+    /** The error count. */
+    private int errorCount;
+
+    /** The processing time. */
+    private long processingTime;
+
+    @Override
+    public int getRequestCount() {
+      return requestCount;
+    }
+
+    @Override
+    public int getErrorCount() {
+      return errorCount;
+    }
+
+    @Override
+    public long getProcessingTime() {
+      return processingTime;
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.collectors;
+
+import com.googlecode.psiprobe.model.java.HotThread;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The Class ThreadStatsCollectorBeanTests.
+ */
+public class ThreadStatsCollectorBeanTests {
+
+  /**
+   * Test pool names derived from thread names.
+   */
+  @Test
+  public void testPoolName() {
+    Assert.assertEquals("http-nio-8080-exec",
+        ThreadStatsCollectorBean.toPoolName("http-nio-8080-exec-12"));
+    Assert.assertEquals("catalina-exec", ThreadStatsCollectorBean.toPoolName("catalina-exec-1"));
+    Assert.assertEquals("pool-1-thread", ThreadStatsCollectorBean.toPoolName("pool-1-thread-3"));
+    Assert.assertNull(ThreadStatsCollectorBean.toPoolName("main"));
+    Assert.assertNull(ThreadStatsCollectorBean.toPoolName("42"));
+  }
+
+  /**
+   * Test a thread burning CPU tops the ranking.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testTopCpuThreads() throws Exception {
+    ThreadStatsCollectorBean collector = new ThreadStatsCollectorBean();
+    collector.setTop(3);
+    final CountDownLatch go = new CountDownLatch(1);
+    Thread busy = new Thread("busy-worker-1") {
+      @Override
+      public void run() {
+        try {
+          go.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        long end = System.currentTimeMillis() + 300;
+        double sink = 0;
+        while (System.currentTimeMillis() < end) {
+          sink += Math.sqrt(sink + 1);
+        }
+        if (sink == 42) {
+          System.out.println(sink);
+        }
+      }
+    };
+    busy.start();
+    // the thread is known from the first sample, and still alive at the second
+    collector.collect();
+    go.countDown();
+    Thread.sleep(250);
+    collector.collect();
+    busy.join();
+
+    List<HotThread> ranking = collector.getTopCpuThreads(0);
+    Assert.assertTrue(ranking.size() <= 3);
+    HotThread hot = null;
+    for (HotThread thread : ranking) {
+      if (thread.getId() == busy.getId()) {
+        hot = thread;
+      }
+    }
+    Assert.assertNotNull(hot);
+    Assert.assertEquals("busy-worker", hot.getPoolName());
+    Assert.assertTrue(hot.getCpuTime() > 0);
+    Assert.assertTrue(hot.getCpuUsage() > 0);
+  }
+
+  /**
+   * Test at least one window is required, and a window shorter than the period keeps no samples.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testWindows() throws Exception {
+    ThreadStatsCollectorBean collector = new ThreadStatsCollectorBean();
+    try {
+      collector.setWindows(Collections.<String>emptyList());
+      Assert.fail("no window accepted");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    Assert.assertEquals(3, collector.getWindows().size());
+
+    collector.setWindows(Arrays.asList("0s"));
+    collector.collect();
+    Thread.sleep(20);
+    collector.collect();
+    Assert.assertTrue(collector.getTopCpuThreads(0).isEmpty());
+    try {
+      collector.getTopCpuThreads(1);
+      Assert.fail("unknown window ranked");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
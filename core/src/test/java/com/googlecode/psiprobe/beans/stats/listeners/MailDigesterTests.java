@@ -0,0 +1,223 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.beans.stats.listeners;
+
+import com.googlecode.psiprobe.tools.Mailer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.StaticMessageSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The Class MailDigesterTests.
+ */
+public class MailDigesterTests {
+
+  /** The SMTP stand-in. */
+  private SmtpStandIn smtp;
+
+  /** The digester. */
+  private MailDigester digester;
+
+  /**
+   * Sets the up.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    smtp = new SmtpStandIn();
+    smtp.start();
+
+    Mailer mailer = new Mailer("probe@localhost", "localhost");
+    mailer.setSmtpPort(smtp.getPort());
+    mailer.setSmtpTimeout(5000);
+    mailer.setDefaultTo("ops@localhost");
+
+    StaticMessageSource messageSource = new StaticMessageSource();
+    messageSource.addMessage("probe.src.stats.listener.digest.subject", Locale.getDefault(),
+        "{0} (and {1} more)");
+    messageSource.addMessage("probe.src.stats.listener.digest.superseded", Locale.getDefault(),
+        "Replaces {0} earlier.");
+
+    digester = new MailDigester();
+    digester.setMailer(mailer);
+    digester.setMessageSource(messageSource);
+    digester.setMinInterval("1m");
+  }
+
+  /**
+   * Tear down.
+   *
+   * @throws Exception the exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    smtp.close();
+  }
+
+  /**
+   * Test notifications are mailed as one digest, keeping the latest of each series, and a series
+   * is not mailed again before its interval is over.
+   */
+  @Test
+  public void testDigestAndRateLimit() {
+    long now = 1000000;
+    digester.notify("Heap", "WARNING - Heap above", "Heap is above.");
+    digester.notify("Heap", "OK - Heap below", "Heap is below.");
+    digester.notify("Metaspace", "WARNING - Metaspace above", "Metaspace is above.");
+    Assert.assertEquals(2, digester.flush(now));
+    Assert.assertEquals(1, smtp.getMessages().size());
+    String digest = smtp.getMessages().get(0);
+    Assert.assertTrue(digest, digest.contains("Subject: OK - Heap below (and 1 more)"));
+    Assert.assertTrue(digest, digest.contains("Heap is below."));
+    Assert.assertTrue(digest, digest.contains("Replaces 1 earlier."));
+    Assert.assertTrue(digest, digest.contains("Metaspace is above."));
+    Assert.assertFalse(digest, digest.contains("Heap is above."));
+
+    digester.notify("Heap", "WARNING - Heap above", "Heap is above again.");
+    Assert.assertEquals(0, digester.flush(now + 1000));
+    Assert.assertEquals(0, digester.flush(now + 59000));
+    Assert.assertEquals(1, digester.flush(now + 60000));
+    Assert.assertEquals(2, smtp.getMessages().size());
+    String single = smtp.getMessages().get(1);
+    Assert.assertTrue(single, single.contains("Subject: WARNING - Heap above"));
+    Assert.assertTrue(single, single.contains("Heap is above again."));
+    Assert.assertEquals(0, digester.flush(now + 120000));
+  }
+
+  /**
+   * Speaks just enough SMTP to accept messages, one connection at a time, and keeps their data.
+   */
+  private static class SmtpStandIn extends Thread {
+
+    /** The server socket. */
+    private final ServerSocket serverSocket;
+
+    /** The data of the messages received. */
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Instantiates a new SMTP stand-in on a free local port.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    SmtpStandIn() throws IOException {
+      serverSocket = new ServerSocket(0, 5, InetAddress.getByName("localhost"));
+      setDaemon(true);
+    }
+
+    /**
+     * Gets the port.
+     *
+     * @return the port
+     */
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the messages.
+     *
+     * @return the data of the messages received
+     */
+    List<String> getMessages() {
+      return messages;
+    }
+
+    @Override
+    public void run() {
+      while (!serverSocket.isClosed()) {
+        try {
+          Socket socket = serverSocket.accept();
+          try {
+            converse(socket);
+          } finally {
+            socket.close();
+          }
+        } catch (IOException ex) {
+          // closed
+        }
+      }
+    }
+
+    /**
+     * Answers the commands of a client until it quits.
+     *
+     * @param socket the socket
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void converse(Socket socket) throws IOException {
+      BufferedReader in =
+          new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+      Writer out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+      reply(out, "220 localhost SMTP stand-in");
+      String line;
+      while ((line = in.readLine()) != null) {
+        String command = line.toUpperCase(Locale.ENGLISH);
+        if (command.startsWith("DATA")) {
+          reply(out, "354 End data with <CR><LF>.<CR><LF>");
+          StringBuilder data = new StringBuilder();
+          while ((line = in.readLine()) != null && !".".equals(line)) {
+            data.append(line).append('\n');
+          }
+          messages.add(data.toString());
+          reply(out, "250 OK");
+        } else if (command.startsWith("QUIT")) {
+          reply(out, "221 Bye");
+          return;
+        } else if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+          reply(out, "250 localhost");
+        } else {
+          reply(out, "250 OK");
+        }
+      }
+    }
+
+    /**
+     * Sends a reply.
+     *
+     * @param out the writer
+     * @param reply the reply
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void reply(Writer out, String reply) throws IOException {
+      out.write(reply + "\r\n");
+      out.flush();
+    }
+
+    /**
+     * Stops accepting connections.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void close() throws IOException {
+      serverSocket.close();
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Class BinaryStatsFormatTests.
+ */
+public class BinaryStatsFormatTests {
+
+  /** The file. */
+  private File file;
+
+  /**
+   * Sets the up.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    file = File.createTempFile("stats", ".dat");
+  }
+
+  /**
+   * Tear down.
+   *
+   * @throws Exception the exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    file.delete();
+  }
+
+  /**
+   * Test round trip.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    Map<String, StatsSeries> data = new TreeMap<String, StatsSeries>();
+    StatsSeries requests = new StatsSeries(10);
+    requests.configureRollups(new long[] {60000}, new int[] {10});
+    requests.add(1000000000000L, 5);
+    requests.add(1000000030000L, 0);
+    requests.add(1000000060000L, -3);
+    requests.add(1000000090000L, Long.MAX_VALUE / 4096);
+    data.put("app.requests./", requests);
+    StatsSeries cpu = new StatsSeries(10);
+    cpu.add(1000000000000L, 12.5);
+    cpu.add(1000000030000L, 0.1);
+    data.put("os.cpu", cpu);
+    data.put("empty", new StatsSeries(10));
+
+    long bytes = BinaryStatsFormat.write(data, file);
+    Assert.assertEquals(file.length(), bytes);
+    Assert.assertTrue(BinaryStatsFormat.isBinary(file));
+
+    Map<String, StatsSeries> read = BinaryStatsFormat.read(file);
+    Assert.assertEquals(data.keySet(), read.keySet());
+    for (Map.Entry<String, StatsSeries> en : data.entrySet()) {
+      StatsSeries expected = en.getValue();
+      StatsSeries actual = read.get(en.getKey());
+      Assert.assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        Assert.assertEquals(expected.getTime(i), actual.getTime(i));
+        Assert.assertEquals(expected.getValue(i), actual.getValue(i), 0);
+      }
+    }
+    RollupSeries rollup = read.get("app.requests./").getRollup(0);
+    Assert.assertEquals(requests.getRollup(0).size(), rollup.size());
+    Assert.assertEquals(requests.getRollup(0).getSum(1), rollup.getSum(1), 0);
+  }
+
+  /**
+   * Test xml file is not binary.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testXmlIsNotBinary() throws Exception {
+    FileOutputStream fos = new FileOutputStream(file);
+    try {
+      fos.write("<map/>".getBytes("UTF-8"));
+    } finally {
+      fos.close();
+    }
+    Assert.assertFalse(BinaryStatsFormat.isBinary(file));
+  }
+
+  /**
+   * Test truncated file.
+   *
+   * @throws Exception the exception
+   */
+  @Test(expected = IOException.class)
+  public void testTruncated() throws Exception {
+    Map<String, StatsSeries> data = new TreeMap<String, StatsSeries>();
+    StatsSeries series = new StatsSeries(10);
+    series.add(1, 1);
+    data.put("series", series);
+    BinaryStatsFormat.write(data, file);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(file.length() - 1);
+    } finally {
+      raf.close();
+    }
+    BinaryStatsFormat.read(file);
+  }
+
+  /**
+   * Test zigzag.
+   */
+  @Test
+  public void testZigzag() {
+    long[] values = {0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long value : values) {
+      Assert.assertEquals(value, BinaryStatsFormat.unzigzag(BinaryStatsFormat.zigzag(value)));
+    }
+  }
+
+}
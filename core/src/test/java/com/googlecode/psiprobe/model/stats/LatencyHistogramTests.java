@@ -0,0 +1,94 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class LatencyHistogramTests.
+ */
+public class LatencyHistogramTests {
+
+  /**
+   * Test every value falls in a bucket whose bounds are within the precision.
+   */
+  @Test
+  public void testBuckets() {
+    Assert.assertEquals(1024, LatencyHistogram.BUCKET_COUNT);
+    long[] values = {0, 1, 31, 32, 63, 64, 65, 1000, 12345, 999999, LatencyHistogram.MAX_VALUE};
+    for (long value : values) {
+      int index = LatencyHistogram.indexOf(value);
+      long highest = LatencyHistogram.highestValueOf(index);
+      Assert.assertTrue(highest >= value);
+      Assert.assertTrue(highest - value <= value / LatencyHistogram.SUB_BUCKETS);
+      Assert.assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < value);
+    }
+    Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+        LatencyHistogram.indexOf(Long.MAX_VALUE));
+    Assert.assertEquals(0, LatencyHistogram.indexOf(-5));
+  }
+
+  /**
+   * Test quantiles of the difference between two snapshots.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testQuantiles() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram(4);
+    long[] before = new long[LatencyHistogram.BUCKET_COUNT];
+    histogram.record(5000000);
+    histogram.getCounts(before);
+
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    long[] interval = new long[LatencyHistogram.BUCKET_COUNT];
+    histogram.getCounts(interval);
+    long total = 0;
+    for (int i = 0; i < interval.length; i++) {
+      interval[i] -= before[i];
+      total += interval[i];
+    }
+    Assert.assertEquals(4000, total);
+    assertNear(500000, LatencyHistogram.getValueAtQuantile(interval, 0.5));
+    assertNear(990000, LatencyHistogram.getValueAtQuantile(interval, 0.99));
+    assertNear(1000000, LatencyHistogram.getValueAtQuantile(interval, 1));
+    Assert.assertEquals(0, LatencyHistogram.getValueAtQuantile(new long[10], 0.5));
+  }
+
+  /**
+   * Asserts a value is estimated within the precision of the histogram.
+   *
+   * @param expected the expected value
+   * @param actual the estimated value
+   */
+  private static void assertNear(long expected, long actual) {
+    Assert.assertTrue(actual + " is not near " + expected,
+        Math.abs(actual - expected) <= expected / LatencyHistogram.SUB_BUCKETS);
+  }
+
+}
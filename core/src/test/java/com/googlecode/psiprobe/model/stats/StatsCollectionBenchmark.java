@@ -0,0 +1,384 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention benchmark of the stats pipeline. Collector threads append to their own series while
+ * chart readers look series up by prefix and iterate them, and a serializer persists the collection
+ * at a short interval. The same load is run against a model of the former design, where collectors
+ * took a global update/commit lock that the serializer held while writing, and against
+ * {@link StatsCollection}.
+ *
+ * <p>
+ * Not a unit test; run it with {@code java -cp <test classpath>
+ * com.googlecode.psiprobe.model.stats.StatsCollectionBenchmark [seconds] [collectors] [readers]}.
+ * </p>
+ */
+public class StatsCollectionBenchmark {
+
+  /** The number of series each collector appends to. */
+  private static final int SERIES_PER_COLLECTOR = 250;
+
+  /** The interval between two serializer runs in milliseconds. */
+  private static final long SERIALIZE_INTERVAL = 100;
+
+  /**
+   * The main method.
+   *
+   * @param args duration in seconds, collector threads and reader threads
+   * @throws Exception the exception
+   */
+  public static void main(String[] args) throws Exception {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    int collectors = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int readers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+    File dir = File.createTempFile("stats-benchmark", "");
+    dir.delete();
+    dir.mkdirs();
+    try {
+      System.out.println("collectors: " + collectors + ", readers: " + readers + ", "
+          + seconds + "s per run");
+      run("locking", new LockingTarget(new File(dir, "locking.dat")), seconds, collectors,
+          readers);
+      StatsCollection collection = new StatsCollection();
+      collection.setStoragePath(dir.getAbsolutePath());
+      collection.setSwapFileName("stats.dat");
+      collection.setJournalEnabled(true);
+      collection.afterPropertiesSet();
+      run("lock-free", new CollectionTarget(collection), seconds, collectors, readers);
+      collection.destroy();
+    } finally {
+      delete(dir);
+    }
+  }
+
+  /**
+   * Runs the load against a target and prints the results.
+   *
+   * @param label the label
+   * @param target the target
+   * @param seconds the duration in seconds
+   * @param collectors the number of collector threads
+   * @param readers the number of reader threads
+   * @throws Exception the exception
+   */
+  private static void run(String label, final Target target, int seconds, int collectors,
+      int readers) throws Exception {
+
+    final long end = System.currentTimeMillis() + seconds * 1000L;
+    final AtomicLong appends = new AtomicLong();
+    final AtomicLong reads = new AtomicLong();
+    final AtomicLong maxAppendNanos = new AtomicLong();
+    final AtomicLong serializations = new AtomicLong();
+    List<Thread> threads = new ArrayList<Thread>();
+
+    for (int c = 0; c < collectors; c++) {
+      final String prefix = "collector" + c + ".";
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          long time = 0;
+          while (System.currentTimeMillis() < end) {
+            time++;
+            for (int i = 0; i < SERIES_PER_COLLECTOR; i++) {
+              long start = System.nanoTime();
+              target.append(prefix + i, time, i);
+              long elapsed = System.nanoTime() - start;
+              if (elapsed > maxAppendNanos.get()) {
+                maxAppendNanos.set(elapsed);
+              }
+            }
+            appends.addAndGet(SERIES_PER_COLLECTOR);
+          }
+        }
+      });
+    }
+    for (int r = 0; r < readers; r++) {
+      final String prefix = "collector" + (r % Math.max(collectors, 1)) + ".1";
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          double sum = 0;
+          while (System.currentTimeMillis() < end) {
+            for (StatsSeries series : target.getStatsByPrefix(prefix).values()) {
+              synchronized (series) {
+                for (int i = 0; i < series.size(); i++) {
+                  sum += series.getValue(i);
+                }
+              }
+            }
+            reads.incrementAndGet();
+          }
+          if (sum < 0) {
+            System.out.println(sum);
+          }
+        }
+      });
+    }
+    threads.add(new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (System.currentTimeMillis() < end) {
+            target.serialize();
+            serializations.incrementAndGet();
+            Thread.sleep(SERIALIZE_INTERVAL);
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      }
+    });
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    System.out.println(label + ": " + appends.get() / seconds + " appends/s, "
+        + reads.get() / seconds + " reads/s, max append " + maxAppendNanos.get() / 1000
+        + "us, " + serializations.get() + " serializations");
+  }
+
+  /**
+   * Deletes a file or directory tree.
+   *
+   * @param file the file
+   */
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * The stats store under load.
+   */
+  private interface Target {
+
+    /**
+     * Appends a value, creating the series if needed.
+     *
+     * @param name the name
+     * @param time the time
+     * @param value the value
+     */
+    void append(String name, long time, double value);
+
+    /**
+     * Gets the series starting with a prefix.
+     *
+     * @param prefix the prefix
+     * @return the series
+     */
+    Map<String, StatsSeries> getStatsByPrefix(String prefix);
+
+    /**
+     * Persists the series.
+     *
+     * @throws Exception the exception
+     */
+    void serialize() throws Exception;
+  }
+
+  /**
+   * The current stats collection.
+   */
+  private static class CollectionTarget implements Target {
+
+    /** The collection. */
+    private final StatsCollection collection;
+
+    /**
+     * Instantiates a new collection target.
+     *
+     * @param collection the collection
+     */
+    CollectionTarget(StatsCollection collection) {
+      this.collection = collection;
+    }
+
+    @Override
+    public void append(String name, long time, double value) {
+      StatsSeries series = collection.getStats(name);
+      if (series == null) {
+        series = collection.newStats(name, 240);
+      }
+      collection.append(name, series, time, value);
+    }
+
+    @Override
+    public Map<String, StatsSeries> getStatsByPrefix(String prefix) {
+      return collection.getStatsByPrefix(prefix);
+    }
+
+    @Override
+    public void serialize() {
+      collection.serialize();
+    }
+  }
+
+  /**
+   * Model of the former design: synchronized collection methods and a global update/commit lock,
+   * held for commit while the whole collection is copied and written.
+   */
+  private static class LockingTarget implements Target {
+
+    /** The swap file. */
+    private final File file;
+
+    /** The series. */
+    private final Map<String, StatsSeries> statsData = new TreeMap<String, StatsSeries>();
+
+    /** The number of collectors holding the update lock. */
+    private int updateCount = 0;
+
+    /** The number of serializers holding the commit lock. */
+    private int commitCount = 0;
+
+    /** The number of serializers waiting for the commit lock. */
+    private int commitRequests = 0;
+
+    /**
+     * Instantiates a new locking target.
+     *
+     * @param file the swap file
+     */
+    LockingTarget(File file) {
+      this.file = file;
+    }
+
+    @Override
+    public void append(String name, long time, double value) {
+      try {
+        lockForUpdate();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      try {
+        StatsSeries series = getStats(name);
+        if (series == null) {
+          series = newStats(name);
+        }
+        series.add(time, value);
+      } finally {
+        releaseUpdateLock();
+      }
+    }
+
+    @Override
+    public synchronized Map<String, StatsSeries> getStatsByPrefix(String prefix) {
+      Map<String, StatsSeries> map = new HashMap<String, StatsSeries>();
+      for (Map.Entry<String, StatsSeries> en : statsData.entrySet()) {
+        if (en.getKey().startsWith(prefix)) {
+          map.put(en.getKey(), en.getValue());
+        }
+      }
+      return map;
+    }
+
+    @Override
+    public void serialize() throws Exception {
+      lockForCommit();
+      try {
+        synchronized (this) {
+          Map<String, StatsSeries> copy = new TreeMap<String, StatsSeries>();
+          for (Map.Entry<String, StatsSeries> en : statsData.entrySet()) {
+            copy.put(en.getKey(), en.getValue().copy());
+          }
+          BinaryStatsFormat.write(copy, file);
+        }
+      } finally {
+        releaseCommitLock();
+      }
+    }
+
+    /**
+     * Gets a series.
+     *
+     * @param name the name
+     * @return the series
+     */
+    private synchronized StatsSeries getStats(String name) {
+      return statsData.get(name);
+    }
+
+    /**
+     * Creates a series.
+     *
+     * @param name the name
+     * @return the series
+     */
+    private synchronized StatsSeries newStats(String name) {
+      StatsSeries series = new StatsSeries(240);
+      statsData.put(name, series);
+      return series;
+    }
+
+    /**
+     * Lock for update.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    private synchronized void lockForUpdate() throws InterruptedException {
+      while (commitCount > 0 || commitRequests > 0) {
+        wait();
+      }
+      updateCount++;
+    }
+
+    /**
+     * Release update lock.
+     */
+    private synchronized void releaseUpdateLock() {
+      updateCount--;
+      notifyAll();
+    }
+
+    /**
+     * Lock for commit.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    private synchronized void lockForCommit() throws InterruptedException {
+      commitRequests++;
+      while (updateCount > 0 || commitCount > 0) {
+        wait();
+      }
+      commitRequests--;
+      commitCount++;
+    }
+
+    /**
+     * Release commit lock.
+     */
+    private synchronized void releaseCommitLock() {
+      commitCount--;
+      notifyAll();
+    }
+  }
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Class StatsCollectionTests.
+ */
+public class StatsCollectionTests {
+
+  /** The storage dir. */
+  private File storageDir;
+
+  /**
+   * Sets the up.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    storageDir = File.createTempFile("stats", "");
+    storageDir.delete();
+    storageDir.mkdirs();
+  }
+
+  /**
+   * Tear down.
+   */
+  @After
+  public void tearDown() {
+    delete(storageDir);
+  }
+
+  /**
+   * Test only changed shards are written and all shards are read back.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testIncrementalWrite() throws Exception {
+    StatsCollection collection = newCollection();
+    collection.afterPropertiesSet();
+    for (int i = 0; i < 8; i++) {
+      StatsSeries series = collection.newStats("series." + i, 10);
+      collection.append("series." + i, series, 1000, i);
+    }
+    collection.serialize();
+    collection.flush();
+    Assert.assertEquals(4, collection.getLastWriteShards());
+    Assert.assertTrue(collection.getLastWriteBytes() > 0);
+
+    collection.append("series.1", collection.getStats("series.1"), 2000, 5);
+    collection.serialize();
+    collection.flush();
+    Assert.assertEquals(1, collection.getLastWriteShards());
+
+    long total = collection.getTotalBytesWritten();
+    collection.serialize();
+    collection.flush();
+    Assert.assertEquals(total, collection.getTotalBytesWritten());
+    collection.destroy();
+
+    StatsCollection restored = newCollection();
+    restored.afterPropertiesSet();
+    for (int i = 0; i < 8; i++) {
+      Assert.assertTrue(restored.isCollected("series." + i));
+    }
+    Assert.assertEquals(2000, restored.getStats("series.1").getTime(1));
+    restored.destroy();
+  }
+
+  /**
+   * Test a swap file written in one piece is migrated to shard files.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testMigrateSwapFile() throws Exception {
+    Map<String, StatsSeries> data = new TreeMap<String, StatsSeries>();
+    StatsSeries series = new StatsSeries(5);
+    series.add(1000, 1);
+    data.put("series", series);
+    File swapFile = new File(storageDir, "stats.dat");
+    BinaryStatsFormat.write(data, swapFile);
+
+    StatsCollection collection = newCollection();
+    collection.afterPropertiesSet();
+    Assert.assertTrue(collection.isCollected("series"));
+    collection.destroy();
+    Assert.assertFalse(swapFile.exists());
+    Assert.assertTrue(new File(storageDir, "stats.dat.shards").isDirectory());
+  }
+
+  /**
+   * Test lookups by prefix and by pattern.
+   */
+  @Test
+  public void testLookupByPrefix() {
+    StatsCollection collection = newCollection();
+    collection.newStats("app.requests./a", 10);
+    collection.newStats("app.requests./b", 10);
+    collection.newStats("app.requestsx", 10);
+    collection.newStats("ds.busy./a/jdbc/one", 10);
+    collection.newStats("ds.busy./b/mail/two", 10);
+    collection.newStats("ds.est./a/jdbc/one", 10);
+
+    Assert.assertEquals(2, collection.getStatsByPrefix("app.requests.").size());
+    Assert.assertEquals(6, collection.getStatsByPrefix("").size());
+    Assert.assertTrue(collection.getStatsByPrefix("zzz").isEmpty());
+
+    Map<String, StatsSeries> busy = collection.getStatsByPattern("ds.busy.*/jdbc/*");
+    Assert.assertEquals(1, busy.size());
+    Assert.assertTrue(busy.containsKey("ds.busy./a/jdbc/one"));
+    Assert.assertEquals(2, collection.getStatsByPattern("ds.*/jdbc/*").size());
+    Assert.assertEquals(2, collection.getStatsByPrefix("ds.*/a/").size());
+    Assert.assertEquals(1, collection.getStatsByPattern("app.requestsx").size());
+  }
+
+  /**
+   * Test the series with the largest values are picked.
+   */
+  @Test
+  public void testTopStats() {
+    StatsCollection collection = newCollection();
+    for (int i = 0; i < 5; i++) {
+      StatsSeries series = collection.newStats("app.requests./" + i, 10);
+      series.add(1, i);
+      series.add(2, i == 1 ? 100 : i);
+    }
+    List<String> top = collection.getTopStats("app.requests.", 2, 1);
+    Assert.assertEquals(2, top.size());
+    Assert.assertEquals("app.requests./1", top.get(0));
+    Assert.assertEquals("app.requests./4", top.get(1));
+    Assert.assertEquals(5, collection.getSummariesByPrefix("app.", 0).size());
+  }
+
+  /**
+   * Test idle series are removed, from memory and from the shard files.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRemoveIdleStats() throws Exception {
+    StatsCollection collection = newCollection();
+    collection.setSeriesGracePeriod("1h");
+    collection.setJournalEnabled(true);
+    collection.afterPropertiesSet();
+    long now = System.currentTimeMillis();
+    SeriesKey undeployed = collection.getKey("app.requests./old");
+    collection.append(undeployed, collection.newStats(undeployed, 10), now - 7200000, 1);
+    collection.append("app.requests./live", collection.newStats("app.requests./live", 10), now, 1);
+    collection.serialize();
+    collection.flush();
+
+    Assert.assertFalse(collection.isCollected("app.requests./old"));
+    Assert.assertTrue(collection.isCollected("app.requests./live"));
+    Assert.assertTrue(undeployed.isRemoved());
+    Assert.assertNotSame(undeployed, collection.getKey("app.requests./old"));
+    Assert.assertEquals(1, collection.getRemovedSeries());
+    collection.destroy();
+
+    StatsCollection restored = newCollection();
+    restored.setJournalEnabled(true);
+    restored.afterPropertiesSet();
+    Assert.assertFalse(restored.isCollected("app.requests./old"));
+    Assert.assertTrue(restored.isCollected("app.requests./live"));
+    restored.destroy();
+  }
+
+  /**
+   * Test the least recently updated series are removed beyond the max series count.
+   */
+  @Test
+  public void testMaxSeriesCount() {
+    StatsCollection collection = newCollection();
+    collection.setMaxSeriesCount(2);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 4; i++) {
+      collection.append("series." + i, collection.newStats("series." + i, 10), now + i, i);
+    }
+    Assert.assertEquals(2, collection.applyRetention());
+    Assert.assertFalse(collection.isCollected("series.0"));
+    Assert.assertFalse(collection.isCollected("series.1"));
+    Assert.assertTrue(collection.isCollected("series.2"));
+    Assert.assertTrue(collection.isCollected("series.3"));
+    Assert.assertEquals(2, collection.removeStatsByPrefix("series."));
+    Assert.assertTrue(collection.getStatsByPrefix("").isEmpty());
+  }
+
+  /**
+   * Test retention policies and the memory budget.
+   */
+  @Test
+  public void testRetention() {
+    StatsCollection collection = newCollection();
+    RetentionPolicy memory = new RetentionPolicy();
+    memory.setPattern("memory.pool.*");
+    memory.setMaxAge("1h");
+    RetentionPolicy app = new RetentionPolicy();
+    app.setPattern("app.*");
+    app.setMaxPoints(5);
+    collection.setRetentionPolicies(Arrays.asList(memory, app));
+
+    long now = System.currentTimeMillis();
+    StatsSeries pool = collection.newStats("memory.pool.Eden", 10);
+    pool.add(now - 7200000, 1);
+    pool.add(now, 2);
+    Assert.assertEquals(5, collection.newStats("app.requests./a", 10).getCapacity());
+    Assert.assertEquals(10, collection.newStats("total.requests", 10).getCapacity());
+
+    Assert.assertEquals(0, collection.applyRetention());
+    Assert.assertEquals(1, pool.size());
+    Assert.assertEquals(2, pool.getLastValue(), 0);
+
+    long usage = collection.getMemoryUsage();
+    Assert.assertTrue(usage > 0);
+    Assert.assertEquals(3, collection.getSeriesCount());
+    collection.setMemoryBudget(Long.toString(usage - 1));
+    Assert.assertEquals(0, collection.applyRetention());
+    Assert.assertEquals(3, collection.getSeriesCount());
+    Assert.assertTrue(collection.getMemoryUsage() < usage);
+  }
+
+  /**
+   * Test series still updated are not removed to meet the memory budget, but their history is cut,
+   * rollups first, and series created later get the cut history too.
+   */
+  @Test
+  public void testMemoryBudgetCutsHistory() {
+    StatsCollection collection = newCollection();
+    collection.setRollups(Arrays.asList("1s:1000s"));
+    long now = System.currentTimeMillis();
+    for (int s = 0; s < 10; s++) {
+      StatsSeries stats = collection.newStats("app.requests./" + s, 100);
+      for (int i = 0; i < 1000; i++) {
+        collection.append("app.requests./" + s, stats, now - 1000000 + i * 1000L, i);
+      }
+    }
+    long usage = collection.getMemoryUsage();
+    long rollupsOnly = 0;
+    for (int i = 0; i < 10; i++) {
+      rollupsOnly += collection.getStats("app.requests./" + i).getRollup(0).getMemoryUsage();
+    }
+
+    // halving the rollups is enough
+    collection.setMemoryBudget(Long.toString(usage - rollupsOnly / 4));
+    Assert.assertEquals(0, collection.applyRetention());
+    Assert.assertEquals(10, collection.getSeriesCount());
+    Assert.assertTrue(collection.getMemoryUsage() <= collection.getMemoryBudgetBytes());
+    StatsSeries first = collection.getStats("app.requests./0");
+    Assert.assertEquals(100, first.getCapacity());
+    Assert.assertEquals(500, first.getRollup(0).getCapacity());
+
+    // then the raw values, down to a floor, even if the budget cannot be met
+    collection.setMemoryBudget("1");
+    Assert.assertEquals(0, collection.applyRetention());
+    Assert.assertEquals(10, collection.getSeriesCount());
+    Assert.assertEquals(1, first.getRollup(0).getCapacity());
+    Assert.assertEquals(2, first.getCapacity());
+    Assert.assertEquals(2, first.size());
+    Assert.assertEquals(999, first.getLastValue(), 0);
+    Assert.assertEquals(2, collection.newStats("app.errors./0", 100).getCapacity());
+  }
+
+  /**
+   * Creates a collection storing its files in the storage dir.
+   *
+   * @return the stats collection
+   */
+  private StatsCollection newCollection() {
+    StatsCollection collection = new StatsCollection();
+    collection.setStoragePath(storageDir.getAbsolutePath());
+    collection.setSwapFileName("stats.dat");
+    collection.setShardCount(4);
+    return collection;
+  }
+
+  /**
+   * Deletes a file or directory tree.
+   *
+   * @param file the file
+   */
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+}
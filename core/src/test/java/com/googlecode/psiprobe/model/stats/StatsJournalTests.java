@@ -0,0 +1,207 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Class StatsJournalTests.
+ */
+public class StatsJournalTests {
+
+  /** The base file. */
+  private File baseFile;
+
+  /**
+   * Sets the up.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    baseFile = File.createTempFile("stats", ".dat");
+  }
+
+  /**
+   * Tear down.
+   *
+   * @throws Exception the exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    baseFile.delete();
+    new File(baseFile.getAbsolutePath() + ".journal.0").delete();
+    new File(baseFile.getAbsolutePath() + ".journal.1").delete();
+  }
+
+  /**
+   * Test samples survive reopening the journal.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testReplay() throws Exception {
+    StatsJournal journal = new StatsJournal(baseFile, 4096);
+    journal.replay(new TreeMap<String, StatsSeries>());
+    journal.append("a", 1, 10);
+    journal.append("b", 1, 20);
+    journal.append("a", 2, 11);
+
+    Map<String, StatsSeries> stats = new TreeMap<String, StatsSeries>();
+    Assert.assertEquals(3, new StatsJournal(baseFile, 4096).replay(stats));
+    Assert.assertEquals(2, stats.get("a").size());
+    Assert.assertEquals(11, stats.get("a").getLastValue(), 0);
+    Assert.assertEquals(20, stats.get("b").getLastValue(), 0);
+  }
+
+  /**
+   * Test samples already in the snapshot are skipped.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSnapshotSamplesSkipped() throws Exception {
+    StatsJournal journal = new StatsJournal(baseFile, 4096);
+    journal.replay(new TreeMap<String, StatsSeries>());
+    journal.append("a", 1, 10);
+    journal.append("a", 2, 11);
+
+    Map<String, StatsSeries> stats = new TreeMap<String, StatsSeries>();
+    StatsSeries snapshot = new StatsSeries(4);
+    snapshot.add(1, 10);
+    stats.put("a", snapshot);
+    Assert.assertEquals(1, new StatsJournal(baseFile, 4096).replay(stats));
+    Assert.assertEquals(2, stats.get("a").size());
+  }
+
+  /**
+   * Test rotation and discarding.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRotate() throws Exception {
+    StatsJournal journal = new StatsJournal(baseFile, 4096);
+    journal.replay(new TreeMap<String, StatsSeries>());
+    journal.append("a", 1, 10);
+    int superseded = journal.rotate();
+    journal.append("a", 2, 11);
+
+    // snapshot not written yet: both segments are replayed
+    Map<String, StatsSeries> stats = new TreeMap<String, StatsSeries>();
+    Assert.assertEquals(2, new StatsJournal(baseFile, 4096).replay(stats));
+
+    journal.discard(superseded);
+    stats = new TreeMap<String, StatsSeries>();
+    Assert.assertEquals(1, new StatsJournal(baseFile, 4096).replay(stats));
+    Assert.assertEquals(2, stats.get("a").getTime(0));
+  }
+
+  /**
+   * Test clear is replayed.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testClear() throws Exception {
+    StatsJournal journal = new StatsJournal(baseFile, 4096);
+    journal.replay(new TreeMap<String, StatsSeries>());
+    journal.append("a", 1, 10);
+    journal.clear("a");
+    journal.append("a", 2, 11);
+
+    Map<String, StatsSeries> stats = new TreeMap<String, StatsSeries>();
+    new StatsJournal(baseFile, 4096).replay(stats);
+    Assert.assertEquals(1, stats.get("a").size());
+  }
+
+  /**
+   * Test a full segment drops samples instead of failing.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testFull() throws Exception {
+    StatsJournal journal = new StatsJournal(baseFile, 128);
+    journal.replay(new TreeMap<String, StatsSeries>());
+    for (int i = 0; i < 100; i++) {
+      journal.append("a", i, i);
+    }
+    Map<String, StatsSeries> stats = new TreeMap<String, StatsSeries>();
+    int replayed = new StatsJournal(baseFile, 128).replay(stats);
+    Assert.assertTrue(replayed > 0 && replayed < 100);
+  }
+
+  /**
+   * Test appending after a replay continues the active segment.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testAppendAfterReplay() throws Exception {
+    StatsJournal journal = new StatsJournal(baseFile, 4096);
+    journal.replay(new TreeMap<String, StatsSeries>());
+    journal.append("a", 1, 10);
+
+    journal = new StatsJournal(baseFile, 4096);
+    journal.replay(new TreeMap<String, StatsSeries>());
+    journal.append("a", 2, 11);
+    journal.append("b", 2, 12);
+
+    Map<String, StatsSeries> stats = new TreeMap<String, StatsSeries>();
+    Assert.assertEquals(3, new StatsJournal(baseFile, 4096).replay(stats));
+  }
+
+  /**
+   * Test samples appended by concurrent writers are all replayed.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testConcurrentAppend() throws Exception {
+    final StatsJournal journal = new StatsJournal(baseFile, 1 << 20);
+    journal.replay(new TreeMap<String, StatsSeries>());
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      final int thread = t;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int i = 1; i <= 1000; i++) {
+            // series are defined while the other threads append to theirs
+            journal.append("s" + (i % 10) + "." + thread, i, i);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Map<String, StatsSeries> stats = new TreeMap<String, StatsSeries>();
+    Assert.assertEquals(4000, new StatsJournal(baseFile, 1 << 20).replay(stats));
+    Assert.assertEquals(40, stats.size());
+  }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.model.stats;
+
+import org.jfree.data.xy.XYDataItem;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * The Class StatsSeriesTests.
+ */
+public class StatsSeriesTests {
+
+  /**
+   * Test add within capacity.
+   */
+  @Test
+  public void testAddWithinCapacity() {
+    StatsSeries series = new StatsSeries(3);
+    series.add(1, 10);
+    series.add(2, 20);
+    Assert.assertEquals(2, series.size());
+    Assert.assertEquals(1, series.getTime(0));
+    Assert.assertEquals(20, series.getValue(1), 0);
+    Assert.assertEquals(20, series.getLastValue(), 0);
+  }
+
+  /**
+   * Test oldest value is evicted.
+   */
+  @Test
+  public void testEviction() {
+    StatsSeries series = new StatsSeries(3);
+    for (int i = 1; i <= 5; i++) {
+      series.add(i, i * 10);
+    }
+    Assert.assertEquals(3, series.size());
+    Assert.assertEquals(3, series.getTime(0));
+    Assert.assertEquals(5, series.getTime(2));
+    Assert.assertEquals(50, series.getLastValue(), 0);
+  }
+
+  /**
+   * Test shrinking keeps the most recent values.
+   */
+  @Test
+  public void testShrink() {
+    StatsSeries series = new StatsSeries(4);
+    for (int i = 1; i <= 6; i++) {
+      series.add(i, i);
+    }
+    series.setCapacity(2);
+    Assert.assertEquals(2, series.size());
+    Assert.assertEquals(5, series.getTime(0));
+    Assert.assertEquals(6, series.getTime(1));
+    series.add(7, 7);
+    Assert.assertEquals(6, series.getTime(0));
+  }
+
+  /**
+   * Test growing keeps all values.
+   */
+  @Test
+  public void testGrow() {
+    StatsSeries series = new StatsSeries(2);
+    series.add(1, 1);
+    series.add(2, 2);
+    series.add(3, 3);
+    series.setCapacity(4);
+    series.add(4, 4);
+    Assert.assertEquals(3, series.size());
+    Assert.assertEquals(2, series.getTime(0));
+    Assert.assertEquals(4, series.getTime(2));
+  }
+
+  /**
+   * Test clear.
+   */
+  @Test
+  public void testClear() {
+    StatsSeries series = new StatsSeries(2);
+    series.add(1, 1);
+    series.clear();
+    Assert.assertTrue(series.isEmpty());
+    Assert.assertEquals(0, series.getLastValue(), 0);
+  }
+
+  /**
+   * Test out of range index.
+   */
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testIndexOutOfBounds() {
+    StatsSeries series = new StatsSeries(2);
+    series.add(1, 1);
+    series.getValue(1);
+  }
+
+  /**
+   * Test list round trip.
+   */
+  @Test
+  public void testListRoundTrip() {
+    StatsSeries series = new StatsSeries(2);
+    series.add(1, 1);
+    series.add(2, 2);
+    series.add(3, 3);
+    List<XYDataItem> list = series.toList();
+    Assert.assertEquals(2, list.size());
+    Assert.assertEquals(2, list.get(0).getX().longValue());
+    StatsSeries copy = StatsSeries.fromList(list, 1);
+    Assert.assertEquals(2, copy.getCapacity());
+    Assert.assertEquals(3, copy.getTime(1));
+  }
+
+  /**
+   * Test values are aggregated into rollup buckets.
+   */
+  @Test
+  public void testRollup() {
+    StatsSeries series = new StatsSeries(2);
+    series.configureRollups(new long[] {10}, new int[] {3});
+    series.add(1, 4);
+    series.add(5, 2);
+    series.add(12, 7);
+    series.add(15, 0, false);
+    RollupSeries rollup = series.getRollup(0);
+    Assert.assertEquals(2, rollup.size());
+    Assert.assertEquals(0, rollup.getTime(0));
+    Assert.assertEquals(2, rollup.getMin(0), 0);
+    Assert.assertEquals(4, rollup.getMax(0), 0);
+    Assert.assertEquals(3, rollup.getAvg(0), 0);
+    Assert.assertEquals(2, rollup.getCount(0));
+    Assert.assertEquals(1, rollup.getCount(1));
+  }
+
+  /**
+   * Test new rollups are seeded from the raw values.
+   */
+  @Test
+  public void testRollupSeeded() {
+    StatsSeries series = new StatsSeries(10);
+    series.add(1, 1);
+    series.add(11, 3);
+    series.configureRollups(new long[] {10}, new int[] {5});
+    Assert.assertEquals(2, series.getRollup(0).size());
+  }
+
+  /**
+   * Test the level of detail fitting a window is selected.
+   */
+  @Test
+  public void testSelect() {
+    StatsSeries series = new StatsSeries(5);
+    series.configureRollups(new long[] {10, 100}, new int[] {5, 5});
+    for (int i = 0; i < 300; i++) {
+      series.add(i, i);
+    }
+    Assert.assertSame(series, series.select(297));
+    StatsSeries fine = series.select(260);
+    Assert.assertEquals(5, fine.size());
+    Assert.assertEquals(250, fine.getTime(0));
+    Assert.assertEquals(254.5, fine.getValue(0), 0);
+    StatsSeries coarse = series.select(100);
+    Assert.assertEquals(0, coarse.getTime(0));
+    Assert.assertEquals(3, coarse.size());
+  }
+
+  /**
+   * Test a young series keeps its raw values, or its finest rollup, for windows longer than its
+   * age, although the buckets of its rollups start a little before its first value.
+   */
+  @Test
+  public void testSelectYoungSeries() {
+    long minute = 60000;
+    long start = 1000 * 60 * minute + 7 * minute;
+    StatsSeries series = new StatsSeries(240);
+    series.configureRollups(new long[] {5 * minute, 60 * minute}, new int[] {288, 168});
+    for (int i = 0; i < 120; i++) {
+      series.add(start + i * 30000L, i);
+    }
+    long now = start + 120 * 30000L;
+    Assert.assertSame(series, series.select(now - 24 * 60 * minute));
+
+    // ten hours in, the raw values cover the last two hours and the 5 minute rollup all of it
+    for (int i = 120; i < 1200; i++) {
+      series.add(start + i * 30000L, i);
+    }
+    now = start + 1200 * 30000L;
+    StatsSeries fine = series.select(now - 24 * 60 * minute);
+    Assert.assertEquals(start - 2 * minute, fine.getTime(0));
+    Assert.assertEquals(121, fine.size());
+  }
+
+  /**
+   * Test the summary follows values as they are added and evicted.
+   */
+  @Test
+  public void testSummary() {
+    StatsSeries series = new StatsSeries(4);
+    series.add(1, 5);
+    series.add(2, 1);
+    SeriesSummary summary = series.getSummary(2);
+    Assert.assertEquals(2, summary.getCount());
+    Assert.assertEquals(1, summary.getMin(), 0);
+    Assert.assertEquals(5, summary.getMax(), 0);
+    Assert.assertEquals(3, summary.getMovingAvg(), 0);
+    for (int i = 3; i <= 6; i++) {
+      series.add(i, i);
+    }
+    summary = series.getSummary(2);
+    Assert.assertEquals(4, summary.getCount());
+    Assert.assertEquals(18, summary.getSum(), 0);
+    Assert.assertEquals(3, summary.getMin(), 0);
+    Assert.assertEquals(6, summary.getMax(), 0);
+    Assert.assertEquals(5.5, summary.getMovingAvg(), 0);
+    Assert.assertEquals(5.5, summary.getPeakMovingAvg(), 0);
+    Assert.assertEquals(4.5, series.getSummary(0).getMovingAvg(), 0);
+  }
+
+  /**
+   * Test percentiles are estimated within the sketch accuracy.
+   */
+  @Test
+  public void testPercentiles() {
+    StatsSeries series = new StatsSeries(1000);
+    for (int i = 0; i < 2000; i++) {
+      series.add(i, i % 1000 + 1);
+    }
+    series.getSummary(0);
+    series.add(2000, 1001);
+    SeriesSummary summary = series.getSummary(0);
+    Assert.assertEquals(501, summary.getP50(), 501 * 0.02);
+    Assert.assertEquals(901, summary.getP90(), 901 * 0.02);
+    Assert.assertEquals(991, summary.getP99(), 991 * 0.02);
+  }
+
+  /**
+   * Test time range queries, with and without downsampling.
+   */
+  @Test
+  public void testQuery() {
+    StatsSeries series = new StatsSeries(8);
+    for (int i = 1; i <= 12; i++) {
+      series.add(i * 10, i);
+    }
+    SeriesView view = series.query(45, 90, 0);
+    Assert.assertEquals(5, view.size());
+    Assert.assertEquals(50, view.getTime(0));
+    Assert.assertEquals(9, view.getValue(4), 0);
+    Assert.assertEquals(8, series.query(Long.MIN_VALUE, Long.MAX_VALUE, 0).size());
+    Assert.assertEquals(0, series.query(130, 200, 0).size());
+
+    view = series.query(50, 120, 4);
+    Assert.assertEquals(4, view.size());
+    Assert.assertEquals(50, view.getTime(0));
+    Assert.assertEquals(5.5, view.getValue(0), 0);
+    Assert.assertEquals(11.5, view.getValue(3), 0);
+  }
+
+}
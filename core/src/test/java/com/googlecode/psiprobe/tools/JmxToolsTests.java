@@ -0,0 +1,169 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.tools;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * The Class JmxToolsTests.
+ */
+public class JmxToolsTests {
+
+  /** The mbean server. */
+  private MBeanServer server;
+
+  /** The name of the test mbean. */
+  private ObjectName name;
+
+  /**
+   * Sets the up.
+   *
+   * @throws Exception the exception
+   */
+  @Before
+  public void setUp() throws Exception {
+    server = ManagementFactory.getPlatformMBeanServer();
+    name = new ObjectName("psiprobe.test:type=Counter");
+    server.registerMBean(new StandardMBean(new Counter(), CounterMBean.class), name);
+  }
+
+  /**
+   * Tear down.
+   *
+   * @throws Exception the exception
+   */
+  @After
+  public void tearDown() throws Exception {
+    server.unregisterMBean(name);
+  }
+
+  /**
+   * Test the attributes read in one call, missing ones being left out.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testGetAttributes() throws Exception {
+    Map<String, Object> attrs =
+        JmxTools.getAttributes(server, name, "Count", "Total", "Label", "Active", "Missing");
+    Assert.assertEquals(4, attrs.size());
+    Assert.assertEquals(3, JmxTools.getIntAttr(attrs, "Count"));
+    Assert.assertEquals(40L, JmxTools.getLongAttr(attrs, "Total"));
+    Assert.assertEquals("counter", JmxTools.getStringAttr(attrs, "Label"));
+    Assert.assertTrue(JmxTools.getBooleanAttr(attrs, "Active"));
+    Assert.assertEquals(-1, JmxTools.getLongAttr(attrs, "Missing", -1));
+    Assert.assertNull(JmxTools.getStringAttr(attrs, "Missing"));
+  }
+
+  /**
+   * Test attribute presence checks.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testHasAttribute() throws Exception {
+    Assert.assertTrue(JmxTools.hasAttribute(server, name, "Count"));
+    Assert.assertFalse(JmxTools.hasAttribute(server, name, "Missing"));
+    Assert.assertTrue(JmxTools.hasAttribute(server, name, "Label"));
+  }
+
+  /**
+   * Test the attribute names of an MBean are not taken for those of an MBean of the same name in
+   * another server.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testHasAttributeByServer() throws Exception {
+    MBeanServer other = MBeanServerFactory.newMBeanServer();
+    other.registerMBean(new StandardMBean(new Runnable() {
+      @Override
+      public void run() {
+        // no attributes
+      }
+    }, Runnable.class), name);
+    Assert.assertTrue(JmxTools.hasAttribute(server, name, "Count"));
+    Assert.assertFalse(JmxTools.hasAttribute(other, name, "Count"));
+  }
+
+  /**
+   * The interface of the test mbean.
+   */
+  public interface CounterMBean {
+
+    /**
+     * Gets the count.
+     *
+     * @return the count
+     */
+    int getCount();
+
+    /**
+     * Gets the total.
+     *
+     * @return the total
+     */
+    long getTotal();
+
+    /**
+     * Gets the label.
+     *
+     * @return the label
+     */
+    String getLabel();
+
+    /**
+     * Checks if is active.
+     *
+     * @return true, if is active
+     */
+    boolean isActive();
+  }
+
+  /**
+   * The test mbean.
+   */
+  public static class Counter implements CounterMBean {
+
+    @Override
+    public int getCount() {
+      return 3;
+    }
+
+    @Override
+    public long getTotal() {
+      return 40;
+    }
+
+    @Override
+    public String getLabel() {
+      return "counter";
+    }
+
+    @Override
+    public boolean isActive() {
+      return true;
+    }
+  }
+
+}
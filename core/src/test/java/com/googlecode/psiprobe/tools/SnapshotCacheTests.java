@@ -0,0 +1,117 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Class SnapshotCacheTests.
+ */
+public class SnapshotCacheTests {
+
+  /**
+   * Test a value is shared within the ttl and loaded again after it.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testTtl() throws Exception {
+    CountingCache cache = new CountingCache(60000);
+    Assert.assertEquals(1, cache.get().intValue());
+    Assert.assertEquals(1, cache.get().intValue());
+    cache.invalidate();
+    Assert.assertEquals(2, cache.get().intValue());
+    cache.setTtl(0);
+    Thread.sleep(5);
+    Assert.assertEquals(3, cache.get().intValue());
+  }
+
+  /**
+   * Test callers arriving during a load share its value.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSingleFlight() throws Exception {
+    final CountingCache cache = new CountingCache(0);
+    cache.release = new CountDownLatch(1);
+    final List<Integer> values = new ArrayList<Integer>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 4; i++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            Integer value = cache.get();
+            synchronized (values) {
+              values.add(value);
+            }
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    Assert.assertTrue(cache.started.await(5, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    cache.release.countDown();
+    for (Thread thread : threads) {
+      thread.join(5000);
+    }
+    Assert.assertEquals(4, values.size());
+    Assert.assertEquals(1, cache.loads.get());
+  }
+
+  /**
+   * A cache counting its loads.
+   */
+  private static class CountingCache extends SnapshotCache<Integer> {
+
+    /** The number of loads. */
+    final AtomicInteger loads = new AtomicInteger();
+
+    /** Counted down when a load starts. */
+    final CountDownLatch started = new CountDownLatch(1);
+
+    /** Awaited by the loads, if set. */
+    volatile CountDownLatch release;
+
+    /**
+     * Instantiates a new counting cache.
+     *
+     * @param ttl the ttl
+     */
+    CountingCache(long ttl) {
+      super(ttl);
+    }
+
+    @Override
+    protected Integer load() throws Exception {
+      started.countDown();
+      if (release != null) {
+        release.await();
+      }
+      return loads.incrementAndGet();
+    }
+  }
+
+}
@@ -54,7 +54,7 @@ public class Tomcat70ContainerAdapter extends AbstractTomcatContainer {
 
   @Override
   protected Valve createValve() {
-    return new Tomcat70AgentValve();
+    return new Tomcat70AgentValve(requestLatencies, lastAccessedIps);
   }
 
   @Override
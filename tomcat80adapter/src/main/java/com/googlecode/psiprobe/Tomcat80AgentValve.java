@@ -11,21 +11,23 @@
 
 package com.googlecode.psiprobe;
 
-import com.googlecode.psiprobe.model.ApplicationSession;
 import com.googlecode.psiprobe.model.IpInfo;
 
+import org.apache.catalina.Context;
+import org.apache.catalina.Session;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
 import org.apache.catalina.valves.ValveBase;
 
 import java.io.IOException;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpSession;
 
 /**
- * Valve which inserts the client's IP address into the session for Tomcat 8.0.
+ * Valve which records the client's IP address of each session and the latency of requests
+ * for Tomcat 8.0.
  * 
  * @author Vlad Ilyushchenko
  * @author Mark Lewis
@@ -33,22 +35,126 @@ import javax.servlet.http.HttpSession;
  */
 public class Tomcat80AgentValve extends ValveBase {
 
+  /** The note marking requests whose latency is recorded on completion. */
+  private static final String LATENCY_NOTE = "com.googlecode.psiprobe.LATENCY";
+
+  /** The request latencies, null if they are not recorded. */
+  private final RequestLatencies requestLatencies;
+
+  /** The addresses sessions were last accessed from, null if they are not recorded. */
+  private final LastAccessedIps lastAccessedIps;
+
   /**
    * Instantiates a new tomcat80 agent valve.
    */
   public Tomcat80AgentValve() {
+    this(null, null);
+  }
+
+  /**
+   * Instantiates a new tomcat80 agent valve recording the latency of requests and the address
+   * sessions are accessed from.
+   *
+   * @param requestLatencies the request latencies
+   * @param lastAccessedIps the addresses sessions were last accessed from
+   */
+  public Tomcat80AgentValve(RequestLatencies requestLatencies, LastAccessedIps lastAccessedIps) {
     super(true);
+    this.requestLatencies = requestLatencies;
+    this.lastAccessedIps = lastAccessedIps;
   }
 
   @Override
   public void invoke(Request request, Response response) throws IOException, ServletException {
-    getNext().invoke(request, response);
+    // an asynchronous request comes through again on each dispatch, but is only timed once
+    boolean redispatched = request.getNote(LATENCY_NOTE) != null;
+    long start = System.nanoTime();
+    try {
+      getNext().invoke(request, response);
+    } finally {
+      Context context = request.getContext();
+      if (context != null) {
+        if (requestLatencies != null && !redispatched) {
+          recordLatency(request, context.getName(), start);
+        }
+        Session session = request.getSessionInternal(false);
+        if (session != null && lastAccessedIps != null) {
+          lastAccessedIps.record(context.getName(), session,
+              IpInfo.getClientAddress(request.getRequest()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Records the latency of a request once it is complete: now, or when its asynchronous processing
+   * completes if it went asynchronous.
+   *
+   * @param request the request
+   * @param contextName the context name
+   * @param start the time the request entered the valve, in nanoseconds
+   */
+  private void recordLatency(Request request, String contextName, long start) {
+    if (request.isAsync()) {
+      try {
+        request.getAsyncContext().addListener(
+            new LatencyListener(requestLatencies, contextName, start));
+        request.setNote(LATENCY_NOTE, Boolean.TRUE);
+        return;
+      } catch (IllegalStateException ex) {
+        // the asynchronous processing is already complete
+      }
+    }
+    requestLatencies.record(contextName, System.nanoTime() - start);
+  }
+
+  /**
+   * Records the latency of an asynchronous request when it completes, following it across
+   * restarts of its asynchronous processing.
+   */
+  private static class LatencyListener implements AsyncListener {
+
+    /** The request latencies. */
+    private final RequestLatencies requestLatencies;
+
+    /** The context name. */
+    private final String contextName;
+
+    /** The time the request entered the valve, in nanoseconds. */
+    private final long start;
+
+    /**
+     * Instantiates a new latency listener.
+     *
+     * @param requestLatencies the request latencies
+     * @param contextName the context name
+     * @param start the time the request entered the valve, in nanoseconds
+     */
+    LatencyListener(RequestLatencies requestLatencies, String contextName, long start) {
+      this.requestLatencies = requestLatencies;
+      this.contextName = contextName;
+      this.start = start;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      requestLatencies.record(contextName, System.nanoTime() - start);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      // completion follows
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      // completion follows
+    }
 
-    HttpServletRequest servletRequest = request.getRequest();
-    HttpSession session = servletRequest.getSession(false);
-    if (session != null) {
-      String ip = IpInfo.getClientAddress(servletRequest);
-      session.setAttribute(ApplicationSession.LAST_ACCESSED_BY_IP, ip);
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      // listeners are dropped when the processing restarts
+      event.getAsyncContext().addListener(this);
     }
   }
 
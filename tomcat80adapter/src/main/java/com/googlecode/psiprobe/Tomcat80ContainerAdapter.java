@@ -52,7 +52,7 @@ public class Tomcat80ContainerAdapter extends AbstractTomcatContainer {
 
   @Override
   protected Valve createValve() {
-    return new Tomcat80AgentValve();
+    return new Tomcat80AgentValve(requestLatencies, lastAccessedIps);
   }
 
   @Override
@@ -0,0 +1,221 @@
+/*
+ * Licensed under the GPL License. You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF MERCHANTIBILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE.
+ */
+
+package com.googlecode.psiprobe;
+
+import com.googlecode.psiprobe.model.IpInfo;
+
+import org.apache.catalina.Valve;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.valves.ValveBase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Per-request overhead of the agent valve. Threads play requests of existing sessions through a
+ * valve followed by one doing nothing, first without the agent valve, then with the former agent
+ * valve setting a session attribute on every request, then with {@link Tomcat80AgentValve}
+ * recording the address the session was accessed from, and finally with the latency recorded as
+ * well. The differences with the first run are the overheads of the valves on the request path.
+ *
+ * <p>
+ * Requests, the context and its sessions are those of Tomcat, but the context is not started and
+ * has no listeners: the cost of the former valve is that of a bare session attribute, and is
+ * higher with attribute listeners, replicated or persistent managers.
+ * </p>
+ *
+ * <p>
+ * Not a unit test; run it with {@code java -cp <test classpath>
+ * com.googlecode.psiprobe.Tomcat80AgentValveBenchmark [seconds] [threads] [sessions]}.
+ * </p>
+ */
+public class Tomcat80AgentValveBenchmark {
+
+  /** The attribute the former valve stored the address in. */
+  private static final String LAST_ACCESSED_BY_IP = "__psiprobe_la_ip";
+
+  /**
+   * The main method.
+   *
+   * @param args duration in seconds, threads and sessions
+   * @throws Exception the exception
+   */
+  public static void main(String[] args) throws Exception {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int sessionCount = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+    StandardContext context = new StandardContext();
+    context.setName("/app");
+    context.setPath("/app");
+    StandardManager manager = new StandardManager();
+    context.setManager(manager);
+    String[] ids = new String[sessionCount];
+    String[] ips = new String[sessionCount];
+    for (int i = 0; i < sessionCount; i++) {
+      ids[i] = manager.createSession("session" + i).getIdInternal();
+      ips[i] = "10.0." + (i / 256 % 256) + "." + (i % 256);
+    }
+
+    System.out.println("threads: " + threads + ", sessions: " + sessionCount + ", " + seconds
+        + "s per run");
+    // warm up all paths before measuring
+    for (int i = 0; i < 2; i++) {
+      run(newNone(), context, ids, ips, 1, threads);
+      run(newFormer(), context, ids, ips, 1, threads);
+      run(newCurrent(null), context, ids, ips, 1, threads);
+      run(newCurrent(new RequestLatencies()), context, ids, ips, 1, threads);
+    }
+
+    double none = run(newNone(), context, ids, ips, seconds, threads);
+    double former = run(newFormer(), context, ids, ips, seconds, threads);
+    double address = run(newCurrent(null), context, ids, ips, seconds, threads);
+    double current = run(newCurrent(new RequestLatencies()), context, ids, ips, seconds, threads);
+    System.out.println(String.format("without agent valve: %.1f ns/request", none));
+    System.out.println(String.format("former agent valve: %.1f ns/request (+%.1f)", former,
+        former - none));
+    System.out.println(String.format("agent valve, address only: %.1f ns/request (+%.1f)",
+        address, address - none));
+    System.out.println(String.format("agent valve: %.1f ns/request (+%.1f)", current,
+        current - none));
+  }
+
+  /**
+   * Creates the valve chain without the agent valve.
+   *
+   * @return the first valve
+   */
+  private static Valve newNone() {
+    return new NextValve();
+  }
+
+  /**
+   * Creates the valve chain with the former agent valve.
+   *
+   * @return the first valve
+   */
+  private static Valve newFormer() {
+    Valve valve = new FormerAgentValve();
+    valve.setNext(new NextValve());
+    return valve;
+  }
+
+  /**
+   * Creates the valve chain with the agent valve.
+   *
+   * @param latencies the request latencies, null to only record addresses
+   * @return the first valve
+   */
+  private static Valve newCurrent(RequestLatencies latencies) {
+    Valve valve = new Tomcat80AgentValve(latencies, new LastAccessedIps());
+    valve.setNext(new NextValve());
+    return valve;
+  }
+
+  /**
+   * Plays requests for a while.
+   *
+   * @param valve the first valve
+   * @param context the context
+   * @param ids the session ids
+   * @param ips the address of each session
+   * @param seconds the duration in seconds
+   * @param threadCount the number of threads
+   * @return the time per request and thread in nanoseconds
+   * @throws Exception the exception
+   */
+  private static double run(final Valve valve, final StandardContext context, final String[] ids,
+      final String[] ips, int seconds, int threadCount) throws Exception {
+
+    final long end = System.nanoTime() + seconds * 1000000000L;
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong elapsed = new AtomicLong();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < threadCount; t++) {
+      final int seed = t;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          Request request = new Request();
+          request.setCoyoteRequest(new org.apache.coyote.Request());
+          long count = 0;
+          long start = System.nanoTime();
+          long now = start;
+          int index = seed;
+          try {
+            while (now < end) {
+              index = (index * 31 + 7) % ids.length;
+              request.recycle();
+              request.setContext(context);
+              request.setRequestedSessionId(ids[index]);
+              request.setRemoteAddr(ips[index]);
+              valve.invoke(request, null);
+              count++;
+              now = System.nanoTime();
+            }
+          } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+          }
+          requests.addAndGet(count);
+          elapsed.addAndGet(now - start);
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return (double) elapsed.get() / requests.get();
+  }
+
+  /**
+   * The valve serving requests, doing nothing.
+   */
+  private static class NextValve extends ValveBase {
+
+    @Override
+    public void invoke(Request request, Response response) {
+      // served
+    }
+  }
+
+  /**
+   * The agent valve as it was before the latency and the address were recorded by the collector,
+   * storing the address in a session attribute.
+   */
+  private static class FormerAgentValve extends ValveBase {
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+      getNext().invoke(request, response);
+
+      HttpServletRequest servletRequest = request.getRequest();
+      HttpSession session = servletRequest.getSession(false);
+      if (session != null) {
+        String ip = IpInfo.getClientAddress(servletRequest);
+        session.setAttribute(LAST_ACCESSED_BY_IP, ip);
+      }
+    }
+  }
+
+}
@@ -53,7 +53,7 @@ public class Tomcat90ContainerAdapter extends AbstractTomcatContainer {
 
   @Override
   protected Valve createValve() {
-    return new Tomcat90AgentValve();
+    return new Tomcat90AgentValve(requestLatencies, lastAccessedIps);
   }
 
   @Override
@@ -0,0 +1,69 @@
+<%--
+ * Licensed under the GPL License.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+--%>
+
+<%@ page contentType="text/html;charset=UTF-8" language="java" session="false" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt" %>
+<%@ taglib uri="http://www.springframework.org/tags" prefix="spring" %>
+<%@ taglib uri="http://displaytag.sf.net" prefix="display" %>
+<%@ taglib uri="/WEB-INF/tld/probe.tld" prefix="probe" %>
+
+<p>
+	<spring:message code="probe.jsp.threads.hot.window"/>
+	<c:forEach items="${windows}" var="w" varStatus="status">
+		<c:choose>
+			<c:when test="${status.index == window}">
+				<strong>${w}</strong>
+			</c:when>
+			<c:otherwise>
+				<a href="#" onclick="return showHotThreads(${status.index});">${w}</a>
+			</c:otherwise>
+		</c:choose>
+	</c:forEach>
+</p>
+
+<h4><spring:message code="probe.jsp.threads.hot.cpu"/></h4>
+
+<display:table name="cpuThreads" uid="ht" class="genericTbl" cellspacing="0">
+	<display:column property="name" titleKey="probe.jsp.threads.col.name" maxLength="40" style="white-space:nowrap;"/>
+	<display:column titleKey="probe.jsp.threads.hot.col.pool" style="white-space:nowrap;">
+		${ht.poolName}&nbsp;
+	</display:column>
+	<display:column titleKey="probe.jsp.threads.col.application" style="white-space:nowrap;">
+		${ht.appName}&nbsp;
+	</display:column>
+	<display:column titleKey="probe.jsp.threads.hot.col.cpuUsage">
+		<fmt:formatNumber maxFractionDigits="1" value="${ht.cpuUsage}"/>%
+	</display:column>
+	<display:column titleKey="probe.jsp.threads.hot.col.cpuTime">
+		<probe:duration value="${ht.cpuTime}"/>
+	</display:column>
+</display:table>
+
+<c:if test="${! empty allocatingThreads}">
+	<h4><spring:message code="probe.jsp.threads.hot.allocation"/></h4>
+
+	<display:table name="allocatingThreads" uid="ht" class="genericTbl" cellspacing="0">
+		<display:column property="name" titleKey="probe.jsp.threads.col.name" maxLength="40" style="white-space:nowrap;"/>
+		<display:column titleKey="probe.jsp.threads.hot.col.pool" style="white-space:nowrap;">
+			${ht.poolName}&nbsp;
+		</display:column>
+		<display:column titleKey="probe.jsp.threads.col.application" style="white-space:nowrap;">
+			${ht.appName}&nbsp;
+		</display:column>
+		<display:column titleKey="probe.jsp.threads.hot.col.allocationRate">
+			<probe:volume value="${ht.allocationRate}" fractions="1"/>/s
+		</display:column>
+		<display:column titleKey="probe.jsp.threads.hot.col.allocated">
+			<probe:volume value="${ht.allocatedBytes}" fractions="1"/>
+		</display:column>
+	</display:table>
+</c:if>
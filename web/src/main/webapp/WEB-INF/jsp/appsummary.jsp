@@ -196,6 +196,79 @@
 							</c:param>
 						</c:url>
 
+						<c:url value="/chart.png" var="latency_url">
+							<c:param name="p" value="app_latency"/>
+							<c:param name="sp" value="${param.webapp}"/>
+							<c:param name="xz" value="${chartWidth}"/>
+							<c:param name="yz" value="${chartHeight}"/>
+							<c:param name="l" value="false"/>
+						</c:url>
+
+						<c:url value="/chart.png" var="latency_url_full">
+							<c:param name="p" value="app_latency"/>
+							<c:param name="sp" value="${param.webapp}"/>
+							<c:param name="xz" value="${fullChartWidth}"/>
+							<c:param name="yz" value="${fullChartHeight}"/>
+							<c:param name="s1l">
+								<spring:message code="probe.jsp.app.summary.charts.latency.p50.legend"/>
+							</c:param>
+							<c:param name="s2l">
+								<spring:message code="probe.jsp.app.summary.charts.latency.p95.legend"/>
+							</c:param>
+							<c:param name="s3l">
+								<spring:message code="probe.jsp.app.summary.charts.latency.p99.legend"/>
+							</c:param>
+							<c:param name="s4l">
+								<spring:message code="probe.jsp.app.summary.charts.latency.max.legend"/>
+							</c:param>
+						</c:url>
+
+
+						<c:url value="/chart.png" var="servlet_req_url">
+							<c:param name="p" value="servlet_req"/>
+							<c:param name="sp" value="${param.webapp}"/>
+							<c:param name="xz" value="${chartWidth}"/>
+							<c:param name="yz" value="${chartHeight}"/>
+							<c:param name="l" value="false"/>
+						</c:url>
+
+						<c:url value="/chart.png" var="servlet_req_url_full">
+							<c:param name="p" value="servlet_req"/>
+							<c:param name="sp" value="${param.webapp}"/>
+							<c:param name="xz" value="${fullChartWidth}"/>
+							<c:param name="yz" value="${fullChartHeight}"/>
+						</c:url>
+
+						<c:url value="/chart.png" var="servlet_avg_proc_time_url">
+							<c:param name="p" value="servlet_avg_proc_time"/>
+							<c:param name="sp" value="${param.webapp}"/>
+							<c:param name="xz" value="${chartWidth}"/>
+							<c:param name="yz" value="${chartHeight}"/>
+							<c:param name="l" value="false"/>
+						</c:url>
+
+						<c:url value="/chart.png" var="servlet_avg_proc_time_url_full">
+							<c:param name="p" value="servlet_avg_proc_time"/>
+							<c:param name="sp" value="${param.webapp}"/>
+							<c:param name="xz" value="${fullChartWidth}"/>
+							<c:param name="yz" value="${fullChartHeight}"/>
+						</c:url>
+
+						<c:url value="/chart.png" var="servlet_err_url">
+							<c:param name="p" value="servlet_err"/>
+							<c:param name="sp" value="${param.webapp}"/>
+							<c:param name="xz" value="${chartWidth}"/>
+							<c:param name="yz" value="${chartHeight}"/>
+							<c:param name="l" value="false"/>
+						</c:url>
+
+						<c:url value="/chart.png" var="servlet_err_url_full">
+							<c:param name="p" value="servlet_err"/>
+							<c:param name="sp" value="${param.webapp}"/>
+							<c:param name="xz" value="${fullChartWidth}"/>
+							<c:param name="yz" value="${fullChartHeight}"/>
+						</c:url>
+
 						<div id="chart_group">
 							<div class="chartContainer">
 								<dl>
@@ -220,6 +293,42 @@
 									</dd>
 								</dl>
 							</div>
+
+							<div class="chartContainer">
+								<dl>
+									<dt><spring:message code="probe.jsp.app.summary.charts.latency.title"/></dt>
+									<dd class="image">
+										<img id="latency_chart" border="0" src="${latency_url}" width="${chartWidth}" height="${chartHeight}" alt="+"/>
+									</dd>
+								</dl>
+							</div>
+
+							<div class="chartContainer">
+								<dl>
+									<dt><spring:message code="probe.jsp.app.summary.charts.servletRequests.title"/></dt>
+									<dd class="image">
+										<img id="servlet_req_chart" border="0" src="${servlet_req_url}" width="${chartWidth}" height="${chartHeight}" alt="+"/>
+									</dd>
+								</dl>
+							</div>
+
+							<div class="chartContainer">
+								<dl>
+									<dt><spring:message code="probe.jsp.app.summary.charts.servletAvgProcTime.title"/></dt>
+									<dd class="image">
+										<img id="servlet_avg_proc_time_chart" border="0" src="${servlet_avg_proc_time_url}" width="${chartWidth}" height="${chartHeight}" alt="+"/>
+									</dd>
+								</dl>
+							</div>
+
+							<div class="chartContainer">
+								<dl>
+									<dt><spring:message code="probe.jsp.app.summary.charts.servletErrors.title"/></dt>
+									<dd class="image">
+										<img id="servlet_err_chart" border="0" src="${servlet_err_url}" width="${chartWidth}" height="${chartHeight}" alt="+"/>
+									</dd>
+								</dl>
+							</div>
 						</div>
 
 						<div id="full_chart" class="chartContainer" style="display: none;">
@@ -277,6 +386,26 @@
 									zoomIn('${avg_proc_time_url_full}', '<spring:message code="probe.jsp.app.summary.charts.avgProcTime.title"/>');
 								}
 							},
+							'#latency_chart': function(element) {
+								element.onclick = function() {
+									zoomIn('${latency_url_full}', '<spring:message code="probe.jsp.app.summary.charts.latency.title"/>');
+								}
+							},
+							'#servlet_req_chart': function(element) {
+								element.onclick = function() {
+									zoomIn('${servlet_req_url_full}', '<spring:message code="probe.jsp.app.summary.charts.servletRequests.title"/>');
+								}
+							},
+							'#servlet_avg_proc_time_chart': function(element) {
+								element.onclick = function() {
+									zoomIn('${servlet_avg_proc_time_url_full}', '<spring:message code="probe.jsp.app.summary.charts.servletAvgProcTime.title"/>');
+								}
+							},
+							'#servlet_err_chart': function(element) {
+								element.onclick = function() {
+									zoomIn('${servlet_err_url_full}', '<spring:message code="probe.jsp.app.summary.charts.servletErrors.title"/>');
+								}
+							},
 							'#full_chart': function(element) {
 								element.onclick = function() {
 									zoomOut();
@@ -288,6 +417,10 @@
 
 						imageUpdaters[0] = new Ajax.ImgUpdater('req_chart', ${probe:max(collectionPeriod, 5)});
 						imageUpdaters[1] = new Ajax.ImgUpdater('avg_proc_time_chart', ${probe:max(collectionPeriod, 5)});
+						imageUpdaters[2] = new Ajax.ImgUpdater('servlet_req_chart', ${probe:max(collectionPeriod, 5)});
+						imageUpdaters[3] = new Ajax.ImgUpdater('servlet_avg_proc_time_chart', ${probe:max(collectionPeriod, 5)});
+						imageUpdaters[4] = new Ajax.ImgUpdater('servlet_err_chart', ${probe:max(collectionPeriod, 5)});
+						imageUpdaters[5] = new Ajax.ImgUpdater('latency_chart', ${probe:max(collectionPeriod, 5)});
 						new Ajax.PeriodicalUpdater('dd-req', '<c:url value="/appreqdetails.ajax"><c:param name="webapp" value="${app.name}" /></c:url>', {frequency: 3});
 						new Ajax.PeriodicalUpdater('dd-proc_time', '<c:url value="/appprocdetails.ajax"><c:param name="webapp" value="${app.name}" /></c:url>', {frequency: 3});
 					</script>
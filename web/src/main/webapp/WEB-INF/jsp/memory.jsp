@@ -49,6 +49,100 @@
 				<c:param name="yz" value="${fullChartHeight}"/>
 			</c:url>
 
+			<spring:message code="probe.jsp.memory.gc.chart.overhead.legend" var="gc_overhead_legend"/>
+
+			<c:url value="/chart.png" var="gc_overhead_url">
+				<c:param name="p" value="gc_overhead"/>
+				<c:param name="xz" value="${chartWidth}"/>
+				<c:param name="yz" value="${chartHeight}"/>
+				<c:param name="l" value="false"/>
+			</c:url>
+
+			<c:url value="/chart.png" var="gc_overhead_url_full">
+				<c:param name="p" value="gc_overhead"/>
+				<c:param name="xz" value="${fullChartWidth}"/>
+				<c:param name="yz" value="${fullChartHeight}"/>
+				<c:param name="s1l" value="${gc_overhead_legend}"/>
+			</c:url>
+
+			<spring:message code="probe.jsp.memory.gc.chart.pause.legend.median" var="gc_pause_median_legend"/>
+			<spring:message code="probe.jsp.memory.gc.chart.pause.legend.p99" var="gc_pause_p99_legend"/>
+			<spring:message code="probe.jsp.memory.gc.chart.pause.legend.max" var="gc_pause_max_legend"/>
+
+			<c:url value="/chart.png" var="gc_pause_url">
+				<c:param name="p" value="gc_pause"/>
+				<c:param name="xz" value="${chartWidth}"/>
+				<c:param name="yz" value="${chartHeight}"/>
+				<c:param name="l" value="false"/>
+			</c:url>
+
+			<c:url value="/chart.png" var="gc_pause_url_full">
+				<c:param name="p" value="gc_pause"/>
+				<c:param name="xz" value="${fullChartWidth}"/>
+				<c:param name="yz" value="${fullChartHeight}"/>
+				<c:param name="s1l" value="${gc_pause_median_legend}"/>
+				<c:param name="s2l" value="${gc_pause_p99_legend}"/>
+				<c:param name="s3l" value="${gc_pause_max_legend}"/>
+			</c:url>
+
+			<c:url value="/chart.png" var="gc_cycle_url">
+				<c:param name="p" value="gc_cycle"/>
+				<c:param name="xz" value="${chartWidth}"/>
+				<c:param name="yz" value="${chartHeight}"/>
+				<c:param name="l" value="false"/>
+			</c:url>
+
+			<c:url value="/chart.png" var="gc_cycle_url_full">
+				<c:param name="p" value="gc_cycle"/>
+				<c:param name="xz" value="${fullChartWidth}"/>
+				<c:param name="yz" value="${fullChartHeight}"/>
+				<c:param name="s1l" value="${gc_pause_median_legend}"/>
+				<c:param name="s2l" value="${gc_pause_p99_legend}"/>
+				<c:param name="s3l" value="${gc_pause_max_legend}"/>
+			</c:url>
+
+			<spring:message code="probe.jsp.memory.gc.chart.alloc.legend" var="gc_alloc_legend"/>
+
+			<c:url value="/chart.png" var="gc_alloc_url">
+				<c:param name="p" value="gc_alloc"/>
+				<c:param name="xz" value="${chartWidth}"/>
+				<c:param name="yz" value="${chartHeight}"/>
+				<c:param name="l" value="false"/>
+			</c:url>
+
+			<c:url value="/chart.png" var="gc_alloc_url_full">
+				<c:param name="p" value="gc_alloc"/>
+				<c:param name="xz" value="${fullChartWidth}"/>
+				<c:param name="yz" value="${fullChartHeight}"/>
+				<c:param name="s1l" value="${gc_alloc_legend}"/>
+			</c:url>
+
+			<c:url value="/chart.png" var="gc_time_url">
+				<c:param name="p" value="gc_time"/>
+				<c:param name="xz" value="${chartWidth}"/>
+				<c:param name="yz" value="${chartHeight}"/>
+				<c:param name="l" value="false"/>
+			</c:url>
+
+			<c:url value="/chart.png" var="gc_time_url_full">
+				<c:param name="p" value="gc_time"/>
+				<c:param name="xz" value="${fullChartWidth}"/>
+				<c:param name="yz" value="${fullChartHeight}"/>
+			</c:url>
+
+			<c:url value="/chart.png" var="gc_count_url">
+				<c:param name="p" value="gc_count"/>
+				<c:param name="xz" value="${chartWidth}"/>
+				<c:param name="yz" value="${chartHeight}"/>
+				<c:param name="l" value="false"/>
+			</c:url>
+
+			<c:url value="/chart.png" var="gc_count_url_full">
+				<c:param name="p" value="gc_count"/>
+				<c:param name="xz" value="${fullChartWidth}"/>
+				<c:param name="yz" value="${fullChartHeight}"/>
+			</c:url>
+
 			<div class="memory">
 
 				<ul class="options">
@@ -114,6 +208,62 @@
 						</script>
 
 					</c:forEach>
+
+					<h3 style="clear: both;"><spring:message code="probe.jsp.memory.h3.gc"/></h3>
+
+					<div class="memoryChart">
+						<dl>
+							<dt><spring:message code="probe.jsp.memory.gc.chart.overhead"/></dt>
+							<dd class="image"><img id="gc_overhead_chart"
+												src="<c:out value='${gc_overhead_url}' escapeXml='false'/>" width="${chartWidth}" height="${chartHeight}" alt="+"
+												onclick="zoomTo('<c:out value="${gc_overhead_url_full}" escapeXml="false"/>')"/></dd>
+						</dl>
+					</div>
+
+					<div class="memoryChart">
+						<dl>
+							<dt><spring:message code="probe.jsp.memory.gc.chart.pause"/></dt>
+							<dd class="image"><img id="gc_pause_chart"
+												src="<c:out value='${gc_pause_url}' escapeXml='false'/>" width="${chartWidth}" height="${chartHeight}" alt="+"
+												onclick="zoomTo('<c:out value="${gc_pause_url_full}" escapeXml="false"/>')"/></dd>
+						</dl>
+					</div>
+
+					<div class="memoryChart">
+						<dl>
+							<dt><spring:message code="probe.jsp.memory.gc.chart.cycle"/></dt>
+							<dd class="image"><img id="gc_cycle_chart"
+												src="<c:out value='${gc_cycle_url}' escapeXml='false'/>" width="${chartWidth}" height="${chartHeight}" alt="+"
+												onclick="zoomTo('<c:out value="${gc_cycle_url_full}" escapeXml="false"/>')"/></dd>
+						</dl>
+					</div>
+
+					<div class="memoryChart">
+						<dl>
+							<dt><spring:message code="probe.jsp.memory.gc.chart.alloc"/></dt>
+							<dd class="image"><img id="gc_alloc_chart"
+												src="<c:out value='${gc_alloc_url}' escapeXml='false'/>" width="${chartWidth}" height="${chartHeight}" alt="+"
+												onclick="zoomTo('<c:out value="${gc_alloc_url_full}" escapeXml="false"/>')"/></dd>
+						</dl>
+					</div>
+
+					<div class="memoryChart">
+						<dl>
+							<dt><spring:message code="probe.jsp.memory.gc.chart.time"/></dt>
+							<dd class="image"><img id="gc_time_chart"
+												src="<c:out value='${gc_time_url}' escapeXml='false'/>" width="${chartWidth}" height="${chartHeight}" alt="+"
+												onclick="zoomTo('<c:out value="${gc_time_url_full}" escapeXml="false"/>')"/></dd>
+						</dl>
+					</div>
+
+					<div class="memoryChart">
+						<dl>
+							<dt><spring:message code="probe.jsp.memory.gc.chart.count"/></dt>
+							<dd class="image"><img id="gc_count_chart"
+												src="<c:out value='${gc_count_url}' escapeXml='false'/>" width="${chartWidth}" height="${chartHeight}" alt="+"
+												onclick="zoomTo('<c:out value="${gc_count_url_full}" escapeXml="false"/>')"/></dd>
+						</dl>
+					</div>
 				</div>
 
 				<div id="fullMemoryChart" style="display: none;">
@@ -126,12 +276,16 @@
 				var fullImageUpdater;
 
 				function zoomIn(newPool) {
+					zoomTo('<c:out value="${fullChartBase}" escapeXml="false"/>&sp=' + newPool + "&s1l=" + newPool);
+				}
+
+				function zoomTo(url) {
 					if (fullImageUpdater) {
 						fullImageUpdater.stop();
 					}
 					Effect.DropOut('memChartGroup');
 					Effect.Appear('fullMemoryChart');
-					fullImageUpdater = new Ajax.ImgUpdater('fullImg', ${probe:max(collectionPeriod, 5)}, '<c:out value="${fullChartBase}" escapeXml="false"/>&sp=' + newPool + "&s1l=" + newPool);
+					fullImageUpdater = new Ajax.ImgUpdater('fullImg', ${probe:max(collectionPeriod, 5)}, url);
 				}
 
 				function zoomOut() {
@@ -143,6 +297,12 @@
 					}
 				}
 
+				new Ajax.ImgUpdater('gc_overhead_chart', ${probe:max(collectionPeriod, 5)});
+				new Ajax.ImgUpdater('gc_pause_chart', ${probe:max(collectionPeriod, 5)});
+				new Ajax.ImgUpdater('gc_cycle_chart', ${probe:max(collectionPeriod, 5)});
+				new Ajax.ImgUpdater('gc_alloc_chart', ${probe:max(collectionPeriod, 5)});
+				new Ajax.ImgUpdater('gc_time_chart', ${probe:max(collectionPeriod, 5)});
+				new Ajax.ImgUpdater('gc_count_chart', ${probe:max(collectionPeriod, 5)});
 				new Ajax.PeriodicalUpdater('memoryPools', '<c:url value="/memory.ajax"/>?<%=request.getQueryString()%>', {frequency: 5});
 
 			</script>
@@ -0,0 +1,257 @@
+<%--
+ * Licensed under the GPL License.  You may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * THIS PACKAGE IS PROVIDED "AS IS" AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+--%>
+
+<%@ page contentType="text/html;charset=UTF-8" language="java" session="false" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<%@ taglib uri="http://www.springframework.org/tags" prefix="spring" %>
+<%@ taglib uri="http://displaytag.sf.net" prefix="display" %>
+<%@ taglib uri="/WEB-INF/tld/probe.tld" prefix="probe" %>
+
+<%--
+	Displays what the stats collectors of Probe cost, to help tuning their periods.
+--%>
+
+<html>
+	<head>
+		<title><spring:message code="probe.jsp.title.overhead"/></title>
+		<script type="text/javascript" src="<c:url value='/js/prototype.js'/>"></script>
+		<script type="text/javascript" src="<c:url value='/js/scriptaculous.js'/>"></script>
+		<script type="text/javascript" src="<c:url value='/js/func.js'/>"></script>
+		<script type="text/javascript" src="<c:url value='/js/behaviour.js'/>"></script>
+	</head>
+
+	<c:set var="navTabSystem" value="active" scope="request"/>
+	<c:set var="systemTabOverhead" value="active" scope="request"/>
+	<c:set var="use_decorator" value="system" scope="request"/>
+
+	<c:set var="chartWidth" value="345"/>
+	<c:set var="chartHeight" value="250"/>
+	<c:set var="fullChartWidth" value="700"/>
+	<c:set var="fullChartHeight" value="320"/>
+
+	<body>
+
+		<h3><spring:message code="probe.jsp.overhead.h3.collectors"/></h3>
+
+		<c:choose>
+			<c:when test="${empty collectors}">
+				<div class="infoMessage">
+					<p>
+						<spring:message code="probe.jsp.overhead.empty"/>
+					</p>
+				</div>
+			</c:when>
+			<c:otherwise>
+				<display:table name="collectors" uid="collector" class="genericTbl" cellspacing="0" requestURI="" defaultsort="1" defaultorder="ascending">
+					<display:column property="name"         sortable="true" titleKey="probe.jsp.overhead.col.name"         style="white-space:nowrap;" class="leftmost"/>
+					<display:column property="runs"         sortable="true" titleKey="probe.jsp.overhead.col.runs"/>
+					<display:column property="skippedRuns"  sortable="true" titleKey="probe.jsp.overhead.col.skipped"/>
+					<display:column property="timeouts"     sortable="true" titleKey="probe.jsp.overhead.col.timeouts"/>
+					<display:column property="failures"     sortable="true" titleKey="probe.jsp.overhead.col.failures"/>
+					<display:column property="lastDuration" sortable="true" titleKey="probe.jsp.overhead.col.lastDuration"/>
+					<display:column property="maxDuration"  sortable="true" titleKey="probe.jsp.overhead.col.maxDuration"/>
+					<display:column property="lastLag"      sortable="true" titleKey="probe.jsp.overhead.col.lastLag"/>
+					<display:column titleKey="probe.jsp.overhead.col.state" style="white-space:nowrap;">
+						<c:choose>
+							<c:when test="${collector.pending}">
+								<spring:message code="probe.jsp.overhead.state.pending"/>
+							</c:when>
+							<c:when test="${collector.boosted}">
+								<spring:message code="probe.jsp.overhead.state.boosted"/>
+							</c:when>
+							<c:otherwise>
+								<spring:message code="probe.jsp.overhead.state.idle"/>
+							</c:otherwise>
+						</c:choose>
+					</display:column>
+					<display:column titleKey="probe.jsp.overhead.col.lastError">
+						<c:out value="${collector.lastError}"/>
+					</display:column>
+				</display:table>
+			</c:otherwise>
+		</c:choose>
+
+		<c:if test="${! empty listenerDispatcher}">
+			<div id="listenerInfo">
+				<h3><spring:message code="probe.jsp.overhead.h3.listeners"/></h3>
+				<span class="name"><spring:message code="probe.jsp.overhead.listeners.queue"/></span>&nbsp;${listenerDispatcher.queueDepth}&nbsp;/&nbsp;${listenerDispatcher.capacity}
+				<span class="name"><spring:message code="probe.jsp.overhead.listeners.maxQueue"/></span>&nbsp;${listenerDispatcher.maxQueueDepth}
+				<span class="name"><spring:message code="probe.jsp.overhead.listeners.dispatched"/></span>&nbsp;${listenerDispatcher.dispatchedCount}
+				<span class="name"><spring:message code="probe.jsp.overhead.listeners.coalesced"/></span>&nbsp;${listenerDispatcher.coalescedCount}
+				<span class="name"><spring:message code="probe.jsp.overhead.listeners.dropped"/></span>&nbsp;${listenerDispatcher.droppedCount}
+				<span class="name"><spring:message code="probe.jsp.overhead.listeners.failed"/></span>&nbsp;${listenerDispatcher.failedCount}
+			</div>
+		</c:if>
+
+		<h3><spring:message code="probe.jsp.overhead.h3.charts"/></h3>
+
+		<c:url value="/chart.png" var="duration_url">
+			<c:param name="p" value="collector_duration"/>
+			<c:param name="xz" value="${chartWidth}"/>
+			<c:param name="yz" value="${chartHeight}"/>
+		</c:url>
+
+		<c:url value="/chart.png" var="duration_url_full">
+			<c:param name="p" value="collector_duration"/>
+			<c:param name="xz" value="${fullChartWidth}"/>
+			<c:param name="yz" value="${fullChartHeight}"/>
+		</c:url>
+
+		<c:url value="/chart.png" var="lag_url">
+			<c:param name="p" value="collector_lag"/>
+			<c:param name="xz" value="${chartWidth}"/>
+			<c:param name="yz" value="${chartHeight}"/>
+		</c:url>
+
+		<c:url value="/chart.png" var="lag_url_full">
+			<c:param name="p" value="collector_lag"/>
+			<c:param name="xz" value="${fullChartWidth}"/>
+			<c:param name="yz" value="${fullChartHeight}"/>
+		</c:url>
+
+		<c:url value="/chart.png" var="items_url">
+			<c:param name="p" value="collector_items"/>
+			<c:param name="xz" value="${chartWidth}"/>
+			<c:param name="yz" value="${chartHeight}"/>
+		</c:url>
+
+		<c:url value="/chart.png" var="items_url_full">
+			<c:param name="p" value="collector_items"/>
+			<c:param name="xz" value="${fullChartWidth}"/>
+			<c:param name="yz" value="${fullChartHeight}"/>
+		</c:url>
+
+		<c:url value="/chart.png" var="errors_url">
+			<c:param name="p" value="collector_errors"/>
+			<c:param name="xz" value="${chartWidth}"/>
+			<c:param name="yz" value="${chartHeight}"/>
+		</c:url>
+
+		<c:url value="/chart.png" var="errors_url_full">
+			<c:param name="p" value="collector_errors"/>
+			<c:param name="xz" value="${fullChartWidth}"/>
+			<c:param name="yz" value="${fullChartHeight}"/>
+		</c:url>
+
+		<div id="chart_group">
+			<div class="chartContainer">
+				<dl>
+					<dt><spring:message code="probe.jsp.overhead.chart.duration"/></dt>
+					<dd class="image">
+						<img id="duration_chart" border="0" src="${duration_url}" width="${chartWidth}" height="${chartHeight}" alt="+"/>
+					</dd>
+				</dl>
+			</div>
+
+			<div class="chartContainer">
+				<dl>
+					<dt><spring:message code="probe.jsp.overhead.chart.lag"/></dt>
+					<dd class="image">
+						<img id="lag_chart" border="0" src="${lag_url}" width="${chartWidth}" height="${chartHeight}" alt="+"/>
+					</dd>
+				</dl>
+			</div>
+
+			<div class="chartContainer">
+				<dl>
+					<dt><spring:message code="probe.jsp.overhead.chart.items"/></dt>
+					<dd class="image">
+						<img id="items_chart" border="0" src="${items_url}" width="${chartWidth}" height="${chartHeight}" alt="+"/>
+					</dd>
+				</dl>
+			</div>
+
+			<div class="chartContainer">
+				<dl>
+					<dt><spring:message code="probe.jsp.overhead.chart.errors"/></dt>
+					<dd class="image">
+						<img id="errors_chart" border="0" src="${errors_url}" width="${chartWidth}" height="${chartHeight}" alt="+"/>
+					</dd>
+				</dl>
+			</div>
+		</div>
+
+		<div id="full_chart" class="chartContainer" style="display: none;">
+			<dl>
+				<dt id="full_title"></dt>
+				<dd class="image">
+					<img id="fullImg" border="0" src="" width="${fullChartWidth}" height="${fullChartHeight}" alt="-"/>
+				</dd>
+			</dl>
+		</div>
+
+		<script type="text/javascript">
+			var imageUpdaters = new Array();
+			var fullImageUpdater;
+
+			function zoomIn(imgUrl, title) {
+				if (fullImageUpdater) {
+					fullImageUpdater.stop();
+				}
+				for (var i = 0; i < imageUpdaters.length; i++) {
+					imageUpdaters[i].stop();
+				}
+				$('full_title').update(title);
+				Effect.DropOut('chart_group');
+				Effect.Appear('full_chart');
+				fullImageUpdater = new Ajax.ImgUpdater('fullImg', ${probe:max(collectionPeriod, 5)}, imgUrl);
+			}
+
+			function zoomOut() {
+				Effect.DropOut('full_chart');
+				Effect.Appear('chart_group');
+				if (fullImageUpdater) {
+					fullImageUpdater.stop();
+					fullImageUpdater = null;
+				}
+				for (var i = 0; i < imageUpdaters.length; i++) {
+					imageUpdaters[i].start();
+				}
+			}
+
+			var rules = {
+				'#duration_chart': function(element) {
+					element.onclick = function() {
+						zoomIn('${duration_url_full}', '<spring:message code="probe.jsp.overhead.chart.duration"/>');
+					}
+				},
+				'#lag_chart': function(element) {
+					element.onclick = function() {
+						zoomIn('${lag_url_full}', '<spring:message code="probe.jsp.overhead.chart.lag"/>');
+					}
+				},
+				'#items_chart': function(element) {
+					element.onclick = function() {
+						zoomIn('${items_url_full}', '<spring:message code="probe.jsp.overhead.chart.items"/>');
+					}
+				},
+				'#errors_chart': function(element) {
+					element.onclick = function() {
+						zoomIn('${errors_url_full}', '<spring:message code="probe.jsp.overhead.chart.errors"/>');
+					}
+				},
+				'#full_chart': function(element) {
+					element.onclick = function() {
+						zoomOut();
+					}
+				}
+			}
+
+			Behaviour.register(rules);
+
+			imageUpdaters[0] = new Ajax.ImgUpdater('duration_chart', ${probe:max(collectionPeriod, 5)});
+			imageUpdaters[1] = new Ajax.ImgUpdater('lag_chart', ${probe:max(collectionPeriod, 5)});
+			imageUpdaters[2] = new Ajax.ImgUpdater('items_chart', ${probe:max(collectionPeriod, 5)});
+			imageUpdaters[3] = new Ajax.ImgUpdater('errors_chart', ${probe:max(collectionPeriod, 5)});
+		</script>
+
+	</body>
+</html>
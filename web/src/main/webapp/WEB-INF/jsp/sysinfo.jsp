@@ -57,6 +57,18 @@
 			<span class="name"><spring:message code="probe.jsp.sysinfo.memory.max"/></span>&nbsp;<probe:volume value="${systemInformation.maxMemory}" fractions="2"/>
 		</div>
 
+		<c:if test="${! empty statsSeriesCount}">
+			<div id="statsInfo">
+				<h3><spring:message code="probe.jsp.sysinfo.stats.title"/></h3>
+				<span class="name"><spring:message code="probe.jsp.sysinfo.stats.series"/></span>&nbsp;${statsSeriesCount}
+				<span class="name"><spring:message code="probe.jsp.sysinfo.stats.memory"/></span>&nbsp;<probe:volume value="${statsMemoryUsage}" fractions="2"/>
+				<span class="name"><spring:message code="probe.jsp.sysinfo.stats.budget"/></span>&nbsp;<c:choose>
+					<c:when test="${statsMemoryBudget > 0}"><probe:volume value="${statsMemoryBudget}" fractions="2"/></c:when>
+					<c:otherwise><spring:message code="probe.jsp.sysinfo.stats.unlimited"/></c:otherwise>
+				</c:choose>
+			</div>
+		</c:if>
+
 		<div id="osInformation">
 			<h3><spring:message code="probe.jsp.sysinfo.os.title"/></h3>
 			<span class="name"><spring:message code="probe.jsp.sysinfo.os.jvm"/></span>&nbsp;<a href="${systemInformation.systemProperties['java.vendor.url']}" target="_blank">
@@ -42,6 +42,12 @@
 				</li>
 			</ul>
 
+			<h3><spring:message code="probe.jsp.threads.hot.h3"/></h3>
+
+			<div id="hotThreads" class="blockContainer">
+				<div class="ajax_activity"></div>
+			</div>
+
 			<div class="blockContainer">
 
 				<div id="help" class="helpMessage" style="display: none;">
@@ -91,6 +97,17 @@
 		</div>
 
 		<script type="text/javascript">
+			var hotThreadsUpdater;
+
+			function showHotThreads(index) {
+				if (hotThreadsUpdater) {
+					hotThreadsUpdater.stop();
+				}
+				hotThreadsUpdater = new Ajax.PeriodicalUpdater('hotThreads', '<c:url value="/hotthreads.ajax"/>?w=' + index, {frequency: 10});
+				return false;
+			}
+
+			showHotThreads(0);
 			setupHelpToggle('<c:url value="/help/threads.ajax"/>');
 		</script>
 
@@ -44,6 +44,12 @@
 			</ul>
 
 
+			<h3><spring:message code="probe.jsp.threads.hot.h3"/></h3>
+
+			<div id="hotThreads" class="blockContainer">
+				<div class="ajax_activity"></div>
+			</div>
+
 			<div class="blockContainer">
 
 				<div id="ttdiv" class="tooltip" style="display: none;">
@@ -123,6 +129,17 @@
 		</div>
 
 		<script type="text/javascript">
+			var hotThreadsUpdater;
+
+			function showHotThreads(index) {
+				if (hotThreadsUpdater) {
+					hotThreadsUpdater.stop();
+				}
+				hotThreadsUpdater = new Ajax.PeriodicalUpdater('hotThreads', '<c:url value="/hotthreads.ajax"/>?w=' + index, {frequency: 10});
+				return false;
+			}
+
+			showHotThreads(0);
 			setupHelpToggle('<c:url value="/help/threads2.ajax"/>');
 			var rules = {
 				'#ttdiv_close': function(e) {
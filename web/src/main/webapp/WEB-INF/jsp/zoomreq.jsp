@@ -29,6 +29,7 @@
 		<c:param name="l" value="true"/>
 		<c:param name="p" value="${param.p}"/>
 		<c:param name="sp" value="${param.sp}"/>
+		<c:param name="w" value="${param.w}"/>
 		<c:choose>
 			<c:when test="${param.p == 'traffic'}">
 				<c:param name="s1c" value="#95FE8B"/>
@@ -60,6 +61,18 @@
 					<spring:message code="probe.jsp.zoomedchart.back"/>
 				</a>
 			</li>
+			<c:forEach items="2h,1d,7d" var="window">
+				<c:url value="/zoomchart.htm" var="windowUrl">
+					<c:param name="p" value="${param.p}"/>
+					<c:param name="sp" value="${param.sp}"/>
+					<c:param name="w" value="${window}"/>
+				</c:url>
+				<li>
+					<a href="${windowUrl}">
+						<spring:message code="probe.jsp.zoomedchart.window" arguments="${window}"/>
+					</a>
+				</li>
+			</c:forEach>
 		</ul>
 
 		<div class="blockContainer">